@@ -0,0 +1,112 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import static enigma.TestUtils.*;
+
+/** Allocation regression tests: once warmed up, converting a character
+ *  must not allocate, with or without a composite cache.
+ *  @author Shelden Shi
+ */
+public class AllocationTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Number of characters converted while warming up. */
+    static final int WARMUP = 200_000;
+    /** Number of characters converted while measuring. */
+    static final int RUN = 1_000_000;
+
+    /** Return the number of bytes allocated so far by this thread. */
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean())
+            .getCurrentThreadAllocatedBytes();
+    }
+
+    /** Bytes a run may allocate in all and still pass: enough for the
+     *  few objects the JIT rematerializes should it deoptimize code
+     *  during the run, and far less than one small object per rotor
+     *  turnover over RUN characters. */
+    static final long SLACK = 1024;
+
+    /** Return the number of bytes that reading allocatedBytes twice
+     *  shows with nothing in between: what the reading itself costs. */
+    static long overhead() {
+        long result = Long.MAX_VALUE;
+        for (int k = 0; k < 3; k += 1) {
+            long before = allocatedBytes();
+            result = Math.min(result, allocatedBytes() - before);
+        }
+        return result;
+    }
+
+    /** Return the number of bytes allocated in all by converting RUN
+     *  characters on M, after WARMUP characters, not counting those of
+     *  the measurement. */
+    static long bytesAllocated(Machine m) {
+        int sum = 0;
+        for (int k = 0; k < WARMUP; k += 1) {
+            sum += m.convert(k % m.getAlphabet().size());
+        }
+        long before = allocatedBytes();
+        for (int k = 0; k < RUN; k += 1) {
+            sum += m.convert(k % m.getAlphabet().size());
+        }
+        long after = allocatedBytes();
+        assertTrue(sum >= 0);
+        return after - before - overhead();
+    }
+
+    @Test
+    public void convertDoesNotAllocate() {
+        Machine m = navalMachine(5, 3);
+        m.insertRotors(new String[] {"B", "Beta", "VI", "VII", "VIII"});
+        m.setRing("AQZE");
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("(AQ) (EP) (TZ)", UPPER));
+        long bytes = bytesAllocated(m);
+        assertTrue(bytes + " bytes allocated", bytes <= SLACK);
+    }
+
+    @Test
+    public void compositeConvertDoesNotAllocate() {
+        Machine m = navalMachine(5, 3);
+        m.setCompositeCache(new CompositeCache(
+            CompositeCache.DEFAULT_ENTRIES));
+        m.setUp("* B Beta III IV I AXLE AQZE (YF) (ZH)");
+        long bytes = bytesAllocated(m);
+        assertTrue(bytes + " bytes allocated", bytes <= SLACK);
+    }
+
+    @Test
+    public void checkSetUpDoesNotAllocate() {
+        Machine m = navalMachine(5, 3);
+        String[] lines = {
+            "* B Beta III IV I AXLE AQZE (YF) (ZH)",
+            "* B III Beta IV I AXLE",
+            "* B Beta II III IV AXLE",
+            "* B Beta III IV III AXLE",
+        };
+        int sum = 0;
+        for (int k = 0; k < WARMUP; k += 1) {
+            sum += m.checkSetUp(lines[k % lines.length]);
+        }
+        long before = allocatedBytes();
+        for (int k = 0; k < RUN; k += 1) {
+            sum += m.checkSetUp(lines[k % lines.length]);
+        }
+        long after = allocatedBytes();
+        assertTrue(sum > 0);
+        long bytes = after - before - overhead();
+        assertTrue(bytes + " bytes allocated", bytes <= SLACK);
+    }
+
+}
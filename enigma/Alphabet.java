@@ -14,6 +14,9 @@ class Alphabet {
     private String[] alphabets;
     /** SMD. */
     private String _chars;
+    /** Index of each character in alphabets, by character code, or -1;
+     *  covers codes up to the largest in the alphabet. */
+    private int[] _index;
     /** A new alphabet containing CHARS.  Character number #k has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
@@ -30,6 +33,42 @@ class Alphabet {
                                 + "alphabets in the arguement");
             }
         }
+        buildIndex();
+    }
+
+    /** Rebuild _index from alphabets. */
+    private void buildIndex() {
+        int max = -1;
+        for (String x : alphabets) {
+            max = Math.max(max, x.charAt(0));
+        }
+        _index = new int[max + 1];
+        Arrays.fill(_index, -1);
+        for (int i = 0; i < alphabets.length; i += 1) {
+            _index[alphabets[i].charAt(0)] = i;
+        }
+    }
+
+    /** An alphabet of SYMBOLS, one character each, taken as they are. */
+    private Alphabet(String[] symbols) {
+        alphabets = symbols;
+        _chars = String.join("", symbols);
+        buildIndex();
+    }
+
+    /** Number of symbols in the alphabet of bytes(). */
+    static final int BYTES = 256;
+
+    /** Return the alphabet of the byte values 0 .. 255, symbol K being
+     *  the character with code K.  Unlike those built from a string, it
+     *  includes whitespace and the characters of cycle notation, so its
+     *  permutations are built from tables rather than cycles. */
+    static Alphabet bytes() {
+        String[] symbols = new String[BYTES];
+        for (int k = 0; k < BYTES; k += 1) {
+            symbols[k] = String.valueOf((char) k);
+        }
+        return new Alphabet(symbols);
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -49,6 +88,7 @@ class Alphabet {
             newAlpha[x] = alphabets[mod(x + i)];
         }
         alphabets = newAlpha;
+        buildIndex();
     }
     /** Return the value of P modulo the size of this permutation. */
     final int mod(int p) {
@@ -65,8 +105,7 @@ class Alphabet {
     }
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        String s = String.valueOf(ch);
-        return _chars.contains(s);
+        return _chars.indexOf(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -79,16 +118,18 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (this.contains(ch)) {
-            String s = String.valueOf(ch);
-            for (int i = 0; i < alphabets.length; i++) {
-                if (alphabets[i].equals(s)) {
-                    return i;
-                }
-            }
+        int i = indexOf(ch);
+        if (i < 0) {
+            throw EnigmaException.error(
+                    "Arguement is not in the alphabet");
         }
-        throw EnigmaException.error(
-                "Arguement is not in the alphabet");
+        return i;
+    }
+
+    /** Returns the index of character CH, or -1 if it is not in the
+     *  alphabet.  Does not allocate. */
+    int indexOf(char ch) {
+        return ch < _index.length ? _index[ch] : -1;
     }
 
 }
@@ -0,0 +1,419 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/** Converts many independent messages at once.  Each message (a lane)
+ *  has its own Engine, and so its own rotors, rings, positions and
+ *  plugboard, but all lanes share the alphabet and the slot layout
+ *  (which slots rotate) of the machine they came from.  Lane state is
+ *  kept as structure of arrays: for each slot, one array each of table
+ *  offsets, positions and notch flags, indexed by lane, over tables that
+ *  hold each distinct rotor once, end to end.  Each character position
+ *  is stepped and converted for all lanes together by a Kernel: the
+ *  vector kernel (VectorKernel, compiled separately from the source
+ *  root vector) when it and the jdk.incubator.vector module are present
+ *  (and the system property enigma.vector is not false), and otherwise
+ *  a scalar loop over the same arrays.
+ *
+ *  Each rotor's tables are stored three times over, so that a
+ *  character can be carried from slot to slot as an offset from the
+ *  contact it left, between -size and size, and looked up at that offset
+ *  from the middle copy without ever being reduced modulo the alphabet
+ *  size.  The plugboards are stored twice over for the same reason.
+ *  @author Shelden Shi
+ */
+final class BatchEngine {
+
+    /** Steps and converts one character position for a run of lanes. */
+    interface Kernel {
+        /** Return the number of lanes converted at once; array lengths
+         *  are rounded up to a multiple of this. */
+        int width();
+
+        /** Advance the first ACTIVE lanes of B by one keypress, as
+         *  Engine.advance would, and then replace CURR[0 .. ACTIVE-1] by
+         *  their conversions through the plugboards and rotors of those
+         *  lanes.  Entries of CURR past ACTIVE, up to the next multiple of
+         *  width(), may be overwritten. */
+        void convert(BatchEngine b, int[] curr, int active);
+    }
+
+    /** Number of character positions whose input and output are moved
+     *  between the messages and the lanes at a time, so that each
+     *  message is read and written in runs rather than one character
+     *  at a time. */
+    private static final int BLOCK = 64;
+
+    /** The scalar kernel. */
+    static final Kernel SCALAR = new Kernel() {
+            @Override
+            public int width() {
+                return 1;
+            }
+
+            @Override
+            public void convert(BatchEngine b, int[] curr, int active) {
+                int[][] offsets = b._offsets;
+                int[][] shifts = b._shifts;
+                for (int k = 0; k < active; k += 1) {
+                    b.advance(k);
+                    int c = b._plugboards[b._plugboardBase[k] + curr[k]];
+                    for (int slot = b._numRotors - 1; slot >= 0; slot -= 1) {
+                        c = b._forward[offsets[slot][k] + c]
+                            - shifts[slot][k];
+                    }
+                    for (int slot = 1; slot < b._numRotors; slot += 1) {
+                        c = b._backward[offsets[slot][k] + c]
+                            - shifts[slot][k];
+                    }
+                    curr[k] = b._plugboards[b._plugboardBase[k] + c];
+                }
+            }
+        };
+
+    /** The kernel used by default. */
+    static final Kernel DEFAULT = defaultKernel();
+
+    /** Name of the class of the vector kernel, which is compiled
+     *  separately and may be absent. */
+    static final String VECTOR_KERNEL = "enigma.VectorKernel";
+
+    /** Return the vector kernel if it can be loaded and is wanted, and
+     *  otherwise SCALAR. */
+    private static Kernel defaultKernel() {
+        if (!Boolean.parseBoolean(System.getProperty("enigma.vector",
+                                                     "true"))) {
+            return SCALAR;
+        }
+        try {
+            return (Kernel) Class.forName(VECTOR_KERNEL)
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return SCALAR;
+        }
+    }
+
+    /** A batch over ENGINES, one per lane, started from positions POSNS
+     *  (one array per lane, which is left at the final positions of its
+     *  lane by convert), using KERNEL.  Rotor tables are shared by all
+     *  lanes in which they occur, as are plugboards, so the tables stay
+     *  small enough to be cached however many lanes there are. */
+    BatchEngine(Engine[] engines, int[][] posns, Kernel kernel) {
+        _kernel = kernel;
+        _lanes = engines.length;
+        int width = kernel.width();
+        int padded = (_lanes + width - 1) / width * width;
+        _engines = engines;
+        _posns = posns;
+        Engine first = engines[0];
+        _size = first.size();
+        _numRotors = first.numRotors();
+        _rotates = new boolean[_numRotors];
+        _reflecting = new boolean[_numRotors];
+        for (int slot = 0; slot < _numRotors; slot += 1) {
+            _rotates[slot] = first.rotates(slot);
+            _reflecting[slot] = first.reflecting(slot);
+        }
+        _tableBase = new int[_lanes][_numRotors];
+        _plugboardOf = new int[_lanes];
+        Map<Table, Integer> tables = new HashMap<>();
+        Map<Table, Integer> plugboards = new HashMap<>();
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            Engine e = engines[lane];
+            if (!sameShape(e)) {
+                throw EnigmaException.error("lanes must share a shape");
+            }
+            for (int slot = 0; slot < _numRotors; slot += 1) {
+                _tableBase[lane][slot] =
+                    offset(tables, new Table(e, slot), 3 * _size);
+            }
+            _plugboardOf[lane] =
+                offset(plugboards, new Table(e, -1), 2 * _size) + _size;
+        }
+        _forward = new int[tables.size() * 3 * _size];
+        _backward = new int[_forward.length];
+        _notchTable = new int[_forward.length];
+        for (Map.Entry<Table, Integer> entry : tables.entrySet()) {
+            entry.getKey().copy(_forward, _backward, _notchTable,
+                                entry.getValue(), 3);
+        }
+        _plugboards = new int[plugboards.size() * 2 * _size];
+        for (Map.Entry<Table, Integer> entry : plugboards.entrySet()) {
+            entry.getKey().copy(_plugboards, null, null,
+                                entry.getValue(), 2);
+        }
+        _bases = new int[_numRotors][padded];
+        _positions = new int[_numRotors][padded];
+        _shifts = new int[_numRotors][padded];
+        _offsets = new int[_numRotors][padded];
+        _notch = new int[_numRotors][padded];
+        _plugboardBase = new int[padded];
+        _scratch = new int[width];
+    }
+
+    /** Return true iff E has my alphabet size and slot layout. */
+    private boolean sameShape(Engine e) {
+        if (e.size() != _size || e.numRotors() != _numRotors) {
+            return false;
+        }
+        for (int slot = 0; slot < _numRotors; slot += 1) {
+            if (e.rotates(slot) != _rotates[slot]
+                || e.reflecting(slot) != _reflecting[slot]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the offset of T among TABLES, each taking STRIDE entries,
+     *  adding it at the end if it is not there yet. */
+    private static int offset(Map<Table, Integer> tables, Table t,
+                              int stride) {
+        Integer result = tables.get(t);
+        if (result == null) {
+            result = tables.size() * stride;
+            tables.put(t, result);
+        }
+        return result;
+    }
+
+    /** Convert MSGS (alphabet indices), message K in lane K, returning
+     *  the converted messages. */
+    int[][] convert(int[][] msgs) {
+        int[] order = IntStream.range(0, _lanes).boxed()
+            .sorted((a, b) -> msgs[b].length - msgs[a].length)
+            .mapToInt(Integer::intValue).toArray();
+        int[][] result = new int[_lanes][];
+        for (int k = 0; k < _lanes; k += 1) {
+            int lane = order[k];
+            result[lane] = new int[msgs[lane].length];
+            for (int slot = 0; slot < _numRotors; slot += 1) {
+                int base = _tableBase[lane][slot];
+                int posn = _posns[lane][slot];
+                int shift = wrap(posn - _engines[lane]._rings[slot], _size);
+                _bases[slot][k] = base;
+                _positions[slot][k] = posn;
+                _shifts[slot][k] = shift;
+                _offsets[slot][k] = base + _size + shift;
+                _notch[slot][k] = _notchTable[base + posn];
+            }
+            _plugboardBase[k] = _plugboardOf[lane];
+        }
+        for (int k = _lanes; k < _plugboardBase.length; k += 1) {
+            for (int slot = 0; slot < _numRotors; slot += 1) {
+                _offsets[slot][k] = _size;
+            }
+            _plugboardBase[k] = _size;
+        }
+        int[][] block = new int[BLOCK][_plugboardBase.length];
+        int active = _lanes;
+        for (int t0 = 0; active > 0; t0 += BLOCK) {
+            while (active > 0 && msgs[order[active - 1]].length <= t0) {
+                active -= 1;
+            }
+            for (int k = 0; k < active; k += 1) {
+                int[] msg = msgs[order[k]];
+                int end = Math.min(BLOCK, msg.length - t0);
+                for (int dt = 0; dt < end; dt += 1) {
+                    block[dt][k] = msg[t0 + dt];
+                }
+            }
+            int blockActive = active;
+            for (int dt = 0; dt < BLOCK && active > 0; dt += 1) {
+                while (active > 0
+                       && msgs[order[active - 1]].length <= t0 + dt) {
+                    active -= 1;
+                }
+                _kernel.convert(this, block[dt], active);
+            }
+            for (int k = 0; k < blockActive; k += 1) {
+                int[] out = result[order[k]];
+                int end = Math.min(BLOCK, out.length - t0);
+                for (int dt = 0; dt < end; dt += 1) {
+                    out[t0 + dt] = block[dt][k];
+                }
+            }
+        }
+        for (int k = 0; k < _lanes; k += 1) {
+            for (int slot = 0; slot < _numRotors; slot += 1) {
+                _posns[order[k]][slot] = _positions[slot][k];
+            }
+        }
+        return result;
+    }
+
+    /** Advance the positions of the lane in position K by one keypress,
+     *  following the same rules as Engine.advance. */
+    void advance(int k) {
+        int indexAdvance = 1;
+        boolean rotate = true;
+        boolean preAdvanced = true;
+        while (!_reflecting[_numRotors - indexAdvance]) {
+            int slot = _numRotors - indexAdvance;
+            boolean rot = _rotates[slot];
+            boolean notch = rot && atNotch(slot, k);
+            if (rotate && notch && preAdvanced) {
+                step(slot, k);
+            } else if (preAdvanced && notch && atNotch(slot - 1, k)) {
+                step(slot, k);
+                rotate = true;
+            } else if (preAdvanced && notch && _rotates[slot - 1]) {
+                step(slot, k);
+                rotate = true;
+            } else if (rotate && rot && indexAdvance == 1) {
+                step(slot, k);
+                rotate = false;
+            } else if (rotate && rot) {
+                step(slot, k);
+                rotate = false;
+                preAdvanced = false;
+            }
+            indexAdvance += 1;
+        }
+    }
+
+    /** Return true iff the rotor in SLOT of the lane in position K is at
+     *  a notch. */
+    private boolean atNotch(int slot, int k) {
+        return _notch[slot][k] != 0;
+    }
+
+    /** Advance the rotor in SLOT of the lane in position K by one. */
+    private void step(int slot, int k) {
+        int p = _positions[slot][k] + 1;
+        p = p == _size ? 0 : p;
+        int shift = _shifts[slot][k] + 1;
+        shift = shift == _size ? 0 : shift;
+        int base = _bases[slot][k];
+        _positions[slot][k] = p;
+        _shifts[slot][k] = shift;
+        _offsets[slot][k] = base + _size + shift;
+        _notch[slot][k] = _notchTable[base + p];
+    }
+
+    /** Return the value of P, which must be in the range
+     *  -SIZE < P < 2 * SIZE, modulo SIZE. */
+    static int wrap(int p, int size) {
+        int r = p + (size & (p >> (Integer.SIZE - 1))) - size;
+        return r + (size & (r >> (Integer.SIZE - 1)));
+    }
+
+    /** The tables of one rotor or plugboard, compared by content. */
+    private static final class Table {
+        /** The tables of the rotor in SLOT of E, or of E's plugboard if
+         *  SLOT is negative. */
+        Table(Engine e, int slot) {
+            int size = e.size();
+            _forward = new int[size];
+            _backward = new int[size];
+            _notches = new int[size];
+            for (int c = 0; c < size; c += 1) {
+                if (slot < 0) {
+                    _forward[c] = e.plugboard(c);
+                } else {
+                    _forward[c] = e._forward[slot * size + c];
+                    _backward[c] = e._backward[slot * size + c];
+                    _notches[c] =
+                        e.rotates(slot) && e.atNotch(slot, c) ? -1 : 0;
+                }
+            }
+        }
+
+        /** Copy COPIES repetitions of my tables into FORWARD and (unless
+         *  null) BACKWARD at OFFSET, and my notch flags (-1 at a notch, 0
+         *  elsewhere) once into NOTCHES at OFFSET. */
+        void copy(int[] forward, int[] backward, int[] notches,
+                  int offset, int copies) {
+            int size = _forward.length;
+            for (int i = 0; i < copies; i += 1) {
+                System.arraycopy(_forward, 0, forward, offset + i * size,
+                                 size);
+                if (backward != null) {
+                    System.arraycopy(_backward, 0, backward,
+                                     offset + i * size, size);
+                }
+            }
+            if (notches != null) {
+                System.arraycopy(_notches, 0, notches, offset, size);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Table)) {
+                return false;
+            }
+            Table t = (Table) obj;
+            return Arrays.equals(_forward, t._forward)
+                && Arrays.equals(_backward, t._backward)
+                && Arrays.equals(_notches, t._notches);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(_forward);
+        }
+
+        /** Forward table. */
+        private final int[] _forward;
+        /** Backward table. */
+        private final int[] _backward;
+        /** Notch flags. */
+        private final int[] _notches;
+    }
+
+    /** Conversion kernel. */
+    private final Kernel _kernel;
+    /** Number of lanes. */
+    private final int _lanes;
+    /** Engine of each lane. */
+    private final Engine[] _engines;
+    /** Positions of each lane, as given and as returned. */
+    private final int[][] _posns;
+    /** Offset in _forward and _backward of the tables of each slot of
+     *  each lane. */
+    private final int[][] _tableBase;
+    /** Offset in _plugboards of the middle of the plugboard of each
+     *  lane. */
+    private final int[] _plugboardOf;
+    /** Alphabet size. */
+    final int _size;
+    /** Number of slots. */
+    final int _numRotors;
+    /** Ratchet flag of each slot. */
+    final boolean[] _rotates;
+    /** Reflector flag of each slot. */
+    final boolean[] _reflecting;
+    /** Forward tables of every distinct rotor, three copies each, end to
+     *  end. */
+    final int[] _forward;
+    /** Backward tables of every distinct rotor, laid out as _forward. */
+    final int[] _backward;
+    /** Notch flags of every distinct rotor, -1 at a notch and 0
+     *  elsewhere, each at the offset of its rotor's tables. */
+    final int[] _notchTable;
+    /** Every distinct plugboard, two copies each, end to end. */
+    final int[] _plugboards;
+    /** For each slot, the offset of its tables for the lane in each
+     *  position, lanes being kept longest message first. */
+    final int[][] _bases;
+    /** For each slot, its rotor position in the lane in each position. */
+    final int[][] _positions;
+    /** For each slot, its position less its ring setting, modulo the
+     *  alphabet size, in the lane in each position. */
+    final int[][] _shifts;
+    /** For each slot, the offset of the middle copy of its tables plus
+     *  its shift, in the lane in each position. */
+    final int[][] _offsets;
+    /** For each slot, its notch flag at its current position, as in
+     *  _notchTable, in the lane in each position. */
+    final int[][] _notch;
+    /** Offset of the middle of the plugboard of the lane in each
+     *  position. */
+    final int[] _plugboardBase;
+    /** Scratch of the kernel's width, for gather indices. */
+    final int[] _scratch;
+}
@@ -0,0 +1,172 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** The engine for alphabets of at most MAX_SIZE characters, which
+ *  covers the default 26-letter alphabet.  Every slot has a byte table
+ *  for each of its size() offsets, so a rotor costs a single lookup and
+ *  no arithmetic; for 26 letters all the tables of a five-slot machine
+ *  take under 7K.  The tables come from a TableArena, so that for large
+ *  alphabets they may be kept off the heap or shared through a mapped
+ *  file.  When the alphabet is ASCII, whole byte buffers of text can be
+ *  converted in place without going through chars.
+ *  @author Shelden Shi
+ */
+final class ByteEngine extends Engine {
+
+    /** Largest alphabet handled. */
+    static final int MAX_SIZE = 256;
+    /** Mask that recovers an unsigned byte. */
+    private static final int BYTE_MASK = 0xFF;
+    /** Largest ASCII character code. */
+    private static final int ASCII_MAX = 0x7F;
+
+    /** Tag that starts the arena key of my tables. */
+    private static final int KEY_TAG = 0x42454e47;
+
+    /** An engine for ROTORS (ROTORS[0] being the reflector) with ring
+     *  settings RINGS and plugboard PLUGBOARD, whose tables come from
+     *  ARENA.  The alphabet may have at most MAX_SIZE characters. */
+    ByteEngine(Rotor[] rotors, int[] rings, Permutation plugboard,
+               TableArena arena) {
+        super(rotors, rings, plugboard);
+        int size = _size;
+        int square = size * size;
+        _backwardBase = _numRotors * square;
+        _shifted = arena.allocate(tableKey(), 2 * _backwardBase, 1);
+        if (!_shifted.sealed()) {
+            for (int slot = 0; slot < _numRotors; slot += 1) {
+                for (int shift = 0; shift < size; shift += 1) {
+                    int base = slot * square + shift * size;
+                    for (int c = 0; c < size; c += 1) {
+                        int in = wrap(c + shift);
+                        _shifted.set(base + c,
+                                     wrap(_forward[slot * size + in]
+                                          - shift));
+                        _shifted.set(_backwardBase + base + c,
+                                     wrap(_backward[slot * size + in]
+                                          - shift));
+                    }
+                }
+            }
+            _shifted.seal();
+        }
+        Alphabet alpha = rotors[0].alphabet();
+        _asciiIndex = new int[MAX_SIZE];
+        Arrays.fill(_asciiIndex, -1);
+        _asciiChars = new byte[size];
+        boolean ascii = true;
+        for (int c = 0; c < size; c += 1) {
+            char ch = alpha.toChar(c);
+            if (ch > ASCII_MAX) {
+                ascii = false;
+            } else {
+                _asciiIndex[ch] = c;
+                _asciiChars[c] = (byte) ch;
+            }
+        }
+        _ascii = ascii;
+    }
+
+    /** An engine sharing the tables of ENGINE, with plugboard
+     *  PLUGBOARD. */
+    private ByteEngine(ByteEngine engine, Plugboard plugboard) {
+        super(engine, plugboard);
+        _shifted = engine._shifted;
+        _backwardBase = engine._backwardBase;
+        _asciiIndex = engine._asciiIndex;
+        _asciiChars = engine._asciiChars;
+        _ascii = engine._ascii;
+    }
+
+    @Override
+    ByteEngine withPlugboard(Plugboard plugboard) {
+        return new ByteEngine(this, plugboard);
+    }
+
+    /** Return the key that identifies my tables in an arena: they
+     *  depend only on the wiring. */
+    private int[] tableKey() {
+        int n = _numRotors * _size;
+        int[] key = new int[3 + 2 * n];
+        key[0] = KEY_TAG;
+        key[1] = _size;
+        key[2] = _numRotors;
+        System.arraycopy(_forward, 0, key, 3, n);
+        System.arraycopy(_backward, 0, key, 3 + n, n);
+        return key;
+    }
+
+    @Override
+    int convertRotors(int[] posns, int c) {
+        TableStore shifted = _shifted;
+        int size = _size;
+        int square = size * size;
+        int curr = c;
+        for (int slot = _numRotors - 1; slot >= 0; slot -= 1) {
+            int shift = wrap(posns[slot] - _rings[slot]);
+            curr = shifted.get(slot * square + shift * size + curr);
+        }
+        for (int slot = 1; slot < _numRotors; slot += 1) {
+            int shift = wrap(posns[slot] - _rings[slot]);
+            curr = shifted.get(_backwardBase + slot * square
+                               + shift * size + curr);
+        }
+        return curr;
+    }
+
+    @Override
+    int forward(int slot, int posn, int c) {
+        int shift = wrap(posn - _rings[slot]);
+        return _shifted.get((slot * _size + shift) * _size + c);
+    }
+
+    @Override
+    int backward(int slot, int posn, int c) {
+        int shift = wrap(posn - _rings[slot]);
+        return _shifted.get(_backwardBase
+                            + (slot * _size + shift) * _size + c);
+    }
+
+    /** Return true iff every character of my alphabet is ASCII, so that
+     *  convertAscii may be used. */
+    boolean isAscii() {
+        return _ascii;
+    }
+
+    /** Convert the ASCII characters TEXT[OFF .. OFF + LEN - 1] in place,
+     *  advancing POSNS before each as the machine would.  Whitespace, in
+     *  the sense of Machine.isSpace, is left as it is.  Returns the
+     *  number of characters converted. */
+    int convertAscii(int[] posns, byte[] text, int off, int len) {
+        int count = 0;
+        for (int k = off; k < off + len; k += 1) {
+            int b = text[k] & BYTE_MASK;
+            int c = _asciiIndex[b];
+            if (c < 0) {
+                if (Machine.isSpace((char) b)) {
+                    continue;
+                }
+                throw EnigmaException.error(
+                        "Arguement is not in the alphabet");
+            }
+            advance(posns);
+            text[k] = _asciiChars[convert(posns, c)];
+            count += 1;
+        }
+        return count;
+    }
+
+    /** Forward tables, _size * _size entries per slot (entry
+     *  SHIFT * _size + C being the conversion of C at offset SHIFT),
+     *  followed by the backward tables, laid out in the same way. */
+    private final TableStore _shifted;
+    /** Index in _shifted of the first backward table. */
+    private final int _backwardBase;
+    /** Index of each ASCII character code, or -1. */
+    private final int[] _asciiIndex;
+    /** ASCII code of each index. */
+    private final byte[] _asciiChars;
+    /** True iff the alphabet is all ASCII. */
+    private final boolean _ascii;
+}
@@ -0,0 +1,203 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static enigma.EnigmaException.*;
+
+/** The machine as a transform over arbitrary bytes.  A configuration
+ *  whose alphabet line is CONFIG_ALPHABET describes a machine over
+ *  Alphabet.bytes(), symbol K being the byte value K, and each of its
+ *  rotors by a line
+ *
+ *      NAME TYPE[NOTCHES] seed:SEED      or
+ *      NAME TYPE[NOTCHES] hex:TABLE
+ *
+ *  where NOTCHES are byte values in hex, run together (as in M1A80),
+ *  SEED is a long from which a random permutation is drawn (a random
+ *  pairing for reflectors), and TABLE is 512 hex digits giving the
+ *  image of each byte value in turn.  TABLE may be split by spaces and
+ *  carried on over following lines that start with "hex:".  A setting
+ *  line names the rotors as usual, but gives positions and rings as hex
+ *  byte values run together and the plugboard as cycles of hex byte
+ *  values, as in
+ *
+ *      * B I II III 00A0FF 000010 (1A2B) (C0C1C2)
+ *
+ *  From the command line,
+ *
+ *      java enigma.ByteStream CONFIG SETTING [INPUT [OUTPUT]]
+ *
+ *  transforms the file INPUT (the standard input if absent) into OUTPUT
+ *  (the standard output), streaming them through direct buffers of
+ *  BLOCK bytes.  Engine tables are put where TableArena.fromProperties
+ *  says.
+ *  @author Shelden Shi
+ */
+public final class ByteStream {
+
+    /** Alphabet line of a byte configuration.  It has a repeated
+     *  character, so it cannot be an ordinary alphabet. */
+    static final String CONFIG_ALPHABET = "00-FF";
+    /** Prefix of a permutation given as a table in hex. */
+    static final String HEX = "hex:";
+    /** Prefix of a permutation drawn from a seed. */
+    static final String SEED = "seed:";
+    /** Bytes per block streamed. */
+    static final int BLOCK = 1 << 16;
+
+    /** Radix of hex digits. */
+    private static final int HEX_RADIX = 16;
+    /** A plugboard cycle in a byte setting line. */
+    private static final Pattern CYCLE = Pattern.compile("\\(([^()]*)\\)");
+
+    /** Not instantiable. */
+    private ByteStream() {
+    }
+
+    /** Transform a file as described in the class comment, according to
+     *  ARGS. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 4) {
+                throw error("Usage: ByteStream CONFIG SETTING "
+                            + "[INPUT [OUTPUT]]");
+            }
+            try (TableArena arena = TableArena.fromProperties();
+                 Machine m = new Main(new String[] {args[0]}).readConfig()) {
+                m.setTableArena(arena);
+                setUp(m, args[1]);
+                transform(m, args);
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Transform the input named by ARGS (as for main) with M into the
+     *  output they name. */
+    private static void transform(Machine m, String[] args) {
+        try (ReadableByteChannel in = args.length > 2
+                 ? FileChannel.open(Paths.get(args[2]))
+                 : Channels.newChannel(System.in);
+             WritableByteChannel out = args.length > 3
+                 ? FileChannel.open(Paths.get(args[3]),
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING)
+                 : Channels.newChannel(System.out)) {
+            transform(m, in, out, BLOCK);
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Set up M, whose alphabet is Alphabet.bytes(), according to the
+     *  byte setting line SETTING (see the class comment). */
+    static void setUp(Machine m, String setting) {
+        String[] fields = setting.trim().split("\\s+");
+        int n = m.numRotors();
+        if (!fields[0].equals("*") || fields.length < n + 2) {
+            throw error("bad byte setting line");
+        }
+        String[] order = Arrays.copyOfRange(fields, 1, n + 1);
+        String posns = symbols(parseHex(fields[n + 1]));
+        String ring = "";
+        int k = n + 2;
+        if (k < fields.length && !fields[k].startsWith("(")) {
+            ring = symbols(parseHex(fields[k]));
+            k += 1;
+        }
+        String cycles = String.join("",
+                                    Arrays.copyOfRange(fields, k,
+                                                       fields.length));
+        m.setUp(order, posns, ring, plugboard(cycles, m.getAlphabet()));
+    }
+
+    /** Return the permutation of ALPHABET given by CYCLES, cycles of hex
+     *  byte values in parentheses, run together. */
+    private static Permutation plugboard(String cycles, Alphabet alphabet) {
+        int[] table = new int[alphabet.size()];
+        boolean[] used = new boolean[table.length];
+        for (int c = 0; c < table.length; c += 1) {
+            table[c] = c;
+        }
+        Matcher cycle = CYCLE.matcher(cycles);
+        int end = 0;
+        while (cycle.lookingAt()) {
+            int[] values = parseHex(cycle.group(1));
+            for (int i = 0; i < values.length; i += 1) {
+                if (values[i] >= table.length || used[values[i]]) {
+                    throw error("bad plugboard value %02X", values[i]);
+                }
+                used[values[i]] = true;
+                table[values[i]] = values[(i + 1) % values.length];
+            }
+            end = cycle.end();
+            cycle.region(end, cycles.length());
+        }
+        if (end != cycles.length()) {
+            throw error("bad plugboard: %s", cycles);
+        }
+        return new Permutation(table, alphabet);
+    }
+
+    /** Convert everything read from IN on M, writing the results to OUT,
+     *  a block of at most BLOCK bytes at a time.  Returns the number of
+     *  bytes converted.  M's alphabet must be Alphabet.bytes(). */
+    static long transform(Machine m, ReadableByteChannel in,
+                          WritableByteChannel out, int block)
+        throws IOException {
+        ByteBuffer src = ByteBuffer.allocateDirect(block);
+        ByteBuffer dst = ByteBuffer.allocateDirect(block);
+        long total = 0;
+        while (in.read(src) >= 0) {
+            src.flip();
+            total += m.convert(src, dst);
+            dst.flip();
+            while (dst.hasRemaining()) {
+                out.write(dst);
+            }
+            src.clear();
+            dst.clear();
+        }
+        return total;
+    }
+
+    /** Return the byte values written in hex in HEX, two digits each. */
+    static int[] parseHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw error("odd number of hex digits in %s", hex);
+        }
+        int[] result = new int[hex.length() / 2];
+        for (int k = 0; k < result.length; k += 1) {
+            int hi = Character.digit(hex.charAt(2 * k), HEX_RADIX);
+            int lo = Character.digit(hex.charAt(2 * k + 1), HEX_RADIX);
+            if (hi < 0 || lo < 0) {
+                throw error("bad hex digits in %s", hex);
+            }
+            result[k] = hi * HEX_RADIX + lo;
+        }
+        return result;
+    }
+
+    /** Return the string of the characters of Alphabet.bytes() whose
+     *  indices are VALUES. */
+    static String symbols(int[] values) {
+        char[] result = new char[values.length];
+        for (int k = 0; k < values.length; k += 1) {
+            result[k] = (char) values[k];
+        }
+        return new String(result);
+    }
+}
@@ -0,0 +1,141 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the byte mode: Alphabet.bytes(),
+ *  table and seeded permutations, and the ByteStream class.
+ *  @author Shelden Shi
+ */
+public class ByteStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Setting line used by these tests. */
+    private static final String SETTING =
+        "* B Beta I II III 0020FF28 00010203 (1A2B) (2029) (0D0A)";
+
+    /** Return a byte machine read from a configuration in a temporary
+     *  file. */
+    private static Machine machine() throws IOException {
+        File file = File.createTempFile("enigma", ".conf");
+        file.deleteOnExit();
+        StringBuilder table = new StringBuilder();
+        for (int k = 0; k < Alphabet.BYTES; k += 1) {
+            table.append(String.format("%02x", (k * 7 + 3) % 256));
+        }
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.println(ByteStream.CONFIG_ALPHABET);
+            out.println(" 5 3");
+            out.println(" I    M00FF  seed:1");
+            out.println(" II   M20    hex:" + table.substring(0, 256));
+            out.println("             hex:" + table.substring(256, 300)
+                        + " " + table.substring(300));
+            out.println(" III  M28    seed:-3");
+            out.println(" Beta N      seed:4");
+            out.println(" B    R      seed:5");
+        }
+        return new Main(new String[] {file.getPath()}).readConfig();
+    }
+
+    /** Return the conversion of MSG on M, set up by ByteStream.setUp
+     *  with SETTING, streamed in blocks of BLOCK. */
+    private static byte[] transform(Machine m, byte[] msg, int block)
+        throws IOException {
+        ByteStream.setUp(m, SETTING);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long n = ByteStream.transform(
+            m, Channels.newChannel(new ByteArrayInputStream(msg)),
+            Channels.newChannel(out), block);
+        assertEquals(msg.length, n);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void checkByteAlphabet() {
+        Alphabet bytes = Alphabet.bytes();
+        assertEquals(256, bytes.size());
+        for (int k = 0; k < 256; k += 1) {
+            assertEquals(k, bytes.toInt((char) k));
+            assertEquals((char) k, bytes.toChar(k));
+        }
+        assertTrue(bytes.contains(' '));
+        assertTrue(bytes.contains('('));
+        assertEquals(-1, bytes.indexOf('\u0100'));
+    }
+
+    @Test
+    public void checkPermutations() {
+        Alphabet bytes = Alphabet.bytes();
+        Permutation p = Permutation.seeded(42, bytes, false);
+        Permutation q = Permutation.seeded(42, bytes, false);
+        Permutation r = Permutation.seeded(42, bytes, true);
+        for (int k = 0; k < 256; k += 1) {
+            assertEquals(p.permute(k), q.permute(k));
+            assertEquals(k, p.invert(p.permute(k)));
+            assertEquals(k, r.permute(r.permute(k)));
+            assertTrue(k != r.permute(k));
+        }
+        int[] table = new int[256];
+        table[0] = 1;
+        try {
+            new Permutation(table, bytes);
+            fail("accepted a table that is not a permutation");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkStreamMatchesReference() throws IOException {
+        Machine m = machine();
+        byte[] msg = new byte[200_000];
+        new Random(7).nextBytes(msg);
+        byte[] out = transform(m, msg, 4096);
+        ByteStream.setUp(m, SETTING);
+        for (int k = 0; k < 5000; k += 1) {
+            assertEquals("byte " + k, out[k] & 0xFF,
+                         m.convertReference(msg[k] & 0xFF));
+        }
+        assertArrayEquals(out, transform(machine(), msg, ByteStream.BLOCK));
+        assertArrayEquals(msg, transform(m, out, 1000));
+    }
+
+    @Test
+    public void checkBuffers() throws IOException {
+        Machine m = machine();
+        ByteStream.setUp(m, SETTING);
+        ByteBuffer in = ByteBuffer.wrap(new byte[] {0, 1, 2, (byte) 255});
+        ByteBuffer out = ByteBuffer.allocate(3);
+        assertEquals(3, m.convert(in, out));
+        assertEquals(1, in.remaining());
+        assertFalse(out.hasRemaining());
+        try {
+            navalMachineConvert();
+            fail("converted bytes on a 26-letter machine");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    /** Convert a byte on a 26-letter machine. */
+    private static void navalMachineConvert() {
+        Machine m = TestUtils.navalMachine(5, 3);
+        m.setUp("* B Beta I II III AAAA");
+        m.convert(ByteBuffer.allocate(1), ByteBuffer.allocate(1));
+    }
+
+}
@@ -0,0 +1,327 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** A cache of the composite substitutions of the slow rotors.  All the
+ *  slots of a machine but the rightmost (the reflector, the fixed rotors
+ *  and the moving rotors other than the fast one) move only now and
+ *  then, and between moves perform a fixed substitution between the
+ *  fast rotor's left side and back again.  Engine.composite computes it
+ *  as one table, after which each character costs the fast rotor, one
+ *  lookup and the plugboard rather than a pass through every slot.
+ *
+ *  Tables are keyed by the wiring and rings of the slow slots and the
+ *  positions of the slow rotors, by content, so that the many machines
+ *  of a process that share a rotor order and rings share the tables,
+ *  whichever setUp made them.  Lookups do not lock; a table is built at
+ *  most once however many threads ask for it at the same time; and once
+ *  more than maxEntries tables are held, those not used since the last
+ *  sweep are dropped (CLOCK eviction).  All methods are thread-safe.
+ *
+ *  A Machine uses a cache given to it with setCompositeCache; Main gives
+ *  it the shared one when the system property described at
+ *  fromProperties asks for it.
+ *  @author Shelden Shi
+ */
+final class CompositeCache {
+
+    /** Default bound on the number of tables held. */
+    static final int DEFAULT_ENTRIES = 1 << 16;
+
+    /** A cache holding at most about MAXENTRIES tables. */
+    CompositeCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw EnigmaException.error("bad composite cache size");
+        }
+        _maxEntries = maxEntries;
+    }
+
+    /** Holds the cache shared by the whole process. */
+    private static final class Shared {
+        /** The shared cache. */
+        static final CompositeCache CACHE = new CompositeCache(
+            Integer.getInteger("enigma.composites", DEFAULT_ENTRIES));
+    }
+
+    /** Return the cache shared by the whole process, holding at most the
+     *  number of tables given by the system property enigma.composites
+     *  (DEFAULT_ENTRIES if absent). */
+    static CompositeCache shared() {
+        return Shared.CACHE;
+    }
+
+    /** Return shared() if the system property enigma.composites is set,
+     *  and otherwise null. */
+    static CompositeCache fromProperties() {
+        if (System.getProperty("enigma.composites") == null) {
+            return null;
+        }
+        return shared();
+    }
+
+    /** The tables for one engine, as one machine uses them.  Not
+     *  thread-safe: each thread or machine takes its own. */
+    final class Session {
+        /** A session for ENGINE. */
+        private Session(Engine engine) {
+            _engine = engine;
+            _slow = engine.numRotors() - 1;
+            long states = 1;
+            for (int slot = 0; slot < _slow && states > 0; slot += 1) {
+                states = Long.MAX_VALUE / engine.size() < states ? -1
+                    : states * engine.size();
+            }
+            _wiring = states > 0 && _slow > 0 ? new Wiring(engine) : null;
+            _probe = _wiring == null ? null : new Key(_wiring, 0);
+            _last = new int[Math.max(_slow, 0)];
+        }
+
+        /** Return the engine I am for. */
+        Engine engine() {
+            return _engine;
+        }
+
+        /** Return the composite table of my engine's slow slots in
+         *  positions POSNS, as Engine.convert(int[], int, int[]) uses
+         *  it, or null if my engine is not one this cache can serve. */
+        int[] table(int[] posns) {
+            if (_wiring == null) {
+                return null;
+            }
+            if (_table != null && same(posns)) {
+                return _table;
+            }
+            long key = 0;
+            for (int slot = 0; slot < _slow; slot += 1) {
+                _last[slot] = posns[slot];
+                key = key * _engine.size() + posns[slot];
+            }
+            _probe._posns = key;
+            _table = get(_probe, _engine, posns);
+            return _table;
+        }
+
+        /** Return true iff the slow slots of POSNS are where they were at
+         *  the last lookup. */
+        private boolean same(int[] posns) {
+            for (int slot = _slow - 1; slot >= 0; slot -= 1) {
+                if (_last[slot] != posns[slot]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** The engine. */
+        private final Engine _engine;
+        /** Number of slow slots. */
+        private final int _slow;
+        /** Wiring of the slow slots, or null if they have too many
+         *  positions to pack into a long. */
+        private final Wiring _wiring;
+        /** Key of my lookups, reset for each one, so that looking up a
+         *  cached table allocates nothing. */
+        private final Key _probe;
+        /** Positions of the slow slots at the last lookup. */
+        private final int[] _last;
+        /** Table found at the last lookup, or null. */
+        private int[] _table;
+    }
+
+    /** Return a new session for ENGINE. */
+    Session session(Engine engine) {
+        return new Session(engine);
+    }
+
+    /** Return the table for KEY, that of ENGINE with its slow slots in
+     *  positions POSNS, building it if it is not cached.  KEY may be a
+     *  session's probe: it is only looked up, and a copy of it is what
+     *  goes into the map. */
+    private int[] get(Key key, Engine engine, int[] posns) {
+        Entry entry = _entries.get(key);
+        if (entry != null) {
+            _hits.increment();
+        } else {
+            _misses.increment();
+            entry = _entries.computeIfAbsent(new Key(key._wiring, key._posns),
+                                             k -> build(engine, posns));
+            if (_count.get() > _maxEntries) {
+                evict();
+            }
+        }
+        if (!entry._referenced) {
+            entry._referenced = true;
+        }
+        return entry._table;
+    }
+
+    /** Return a new entry for ENGINE in positions POSNS. */
+    private Entry build(Engine engine, int[] posns) {
+        int[] table = new int[engine.size()];
+        engine.composite(posns, table);
+        _builds.increment();
+        _count.incrementAndGet();
+        return new Entry(table);
+    }
+
+    /** Sweep the clock hand over the tables until no more than
+     *  _maxEntries are held, clearing the reference flags of those it
+     *  passes and dropping those whose flags were already clear.  Does
+     *  nothing if another thread is sweeping. */
+    private void evict() {
+        if (!_sweep.tryLock()) {
+            return;
+        }
+        try {
+            int limit = 2 * _count.get() + 1;
+            while (_count.get() > _maxEntries && limit > 0) {
+                limit -= 1;
+                if (_hand == null || !_hand.hasNext()) {
+                    _hand = _entries.entrySet().iterator();
+                    if (!_hand.hasNext()) {
+                        break;
+                    }
+                }
+                Map.Entry<Key, Entry> next = _hand.next();
+                Entry entry = next.getValue();
+                if (entry._referenced) {
+                    entry._referenced = false;
+                } else if (_entries.remove(next.getKey(), entry)) {
+                    _count.decrementAndGet();
+                    _evictions.increment();
+                }
+            }
+        } finally {
+            _sweep.unlock();
+        }
+    }
+
+    /** Return the number of tables held. */
+    int size() {
+        return _count.get();
+    }
+
+    /** Return the number of lookups that found their table. */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /** Return the number of lookups that did not, including those that
+     *  waited for another thread to build it. */
+    long misses() {
+        return _misses.sum();
+    }
+
+    /** Return the number of tables built. */
+    long builds() {
+        return _builds.sum();
+    }
+
+    /** Return the number of tables dropped. */
+    long evictions() {
+        return _evictions.sum();
+    }
+
+    /** A cached table. */
+    private static final class Entry {
+        /** An entry holding TABLE. */
+        Entry(int[] table) {
+            _table = table;
+        }
+
+        /** The composite table. */
+        private final int[] _table;
+        /** True iff used since the clock hand last passed. */
+        private volatile boolean _referenced;
+    }
+
+    /** The wiring and rings of the slow slots of an engine, by
+     *  content. */
+    private static final class Wiring {
+        /** The wiring of the slow slots of ENGINE. */
+        Wiring(Engine engine) {
+            int size = engine.size();
+            int slow = engine.numRotors() - 1;
+            int[] data = new int[slow * (size + 1) + 1];
+            int k = 0;
+            data[k++] = size;
+            for (int slot = 0; slot < slow; slot += 1) {
+                System.arraycopy(engine._forward, slot * size, data, k, size);
+                k += size;
+                data[k++] = engine._rings[slot];
+            }
+            _data = data;
+            _hash = Arrays.hashCode(data);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj == this || obj instanceof Wiring
+                && ((Wiring) obj)._hash == _hash
+                && Arrays.equals(((Wiring) obj)._data, _data);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** Size, then the forward table and ring of each slow slot. */
+        private final int[] _data;
+        /** Hash of _data. */
+        private final int _hash;
+    }
+
+    /** Identifies a table by the wiring of the slow slots and their
+     *  positions, packed into a long.  Keys in the map never change;
+     *  only a session's probe, which is never put there, is reset. */
+    private static final class Key {
+        /** The key for WIRING in positions POSNS. */
+        Key(Wiring wiring, long posns) {
+            _wiring = wiring;
+            _posns = posns;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj)._posns == _posns
+                && ((Key) obj)._wiring.equals(_wiring);
+        }
+
+        @Override
+        public int hashCode() {
+            return _wiring.hashCode() * 31 + Long.hashCode(_posns);
+        }
+
+        /** The wiring. */
+        private final Wiring _wiring;
+        /** The positions. */
+        private long _posns;
+    }
+
+    /** Bound on the number of tables held. */
+    private final int _maxEntries;
+    /** The tables. */
+    private final ConcurrentHashMap<Key, Entry> _entries =
+        new ConcurrentHashMap<>();
+    /** Number of tables held. */
+    private final AtomicInteger _count = new AtomicInteger();
+    /** Held while sweeping. */
+    private final ReentrantLock _sweep = new ReentrantLock();
+    /** The clock hand, or null; guarded by _sweep. */
+    private Iterator<Map.Entry<Key, Entry>> _hand;
+    /** Lookups that hit. */
+    private final LongAdder _hits = new LongAdder();
+    /** Lookups that missed. */
+    private final LongAdder _misses = new LongAdder();
+    /** Tables built. */
+    private final LongAdder _builds = new LongAdder();
+    /** Tables dropped. */
+    private final LongAdder _evictions = new LongAdder();
+}
@@ -0,0 +1,122 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CompositeCache class.
+ *  @author Shelden Shi
+ */
+public class CompositeCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Setting lines used by these tests. */
+    private static final String[] SETTINGS = {
+        "* B Beta I II III AAAA",
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* C Gamma IV V VI AXLE BCDE (YF) (ZH)",
+        "* B Beta VI VII VIII AAZM CCCC",
+    };
+
+    /** Number of characters converted per setting. */
+    private static final int CHARS = 2000;
+
+    /** Return the conversion of CHARS characters on M, set up with
+     *  SETTING, one at a time. */
+    private static int[] run(Machine m, String setting) {
+        m.setUp(setting);
+        int[] result = new int[CHARS];
+        for (int k = 0; k < CHARS; k += 1) {
+            result[k] = m.convert((k * 7) % 26);
+        }
+        return result;
+    }
+
+    @Test
+    public void checkMatchesUncached() {
+        Machine plain = navalMachine(5, 3);
+        Machine cached = navalMachine(5, 3);
+        CompositeCache cache = new CompositeCache(1 << 12);
+        cached.setCompositeCache(cache);
+        for (String setting : SETTINGS) {
+            assertArrayEquals(msg("composite", "%s", setting),
+                              run(plain, setting), run(cached, setting));
+        }
+        assertTrue(cache.size() > 0);
+        assertEquals(cache.builds(), cache.size());
+        assertEquals(cache.builds(), cache.misses());
+    }
+
+    @Test
+    public void checkShared() {
+        CompositeCache cache = new CompositeCache(1 << 12);
+        Machine first = navalMachine(5, 3);
+        Machine second = navalMachine(5, 3);
+        first.setCompositeCache(cache);
+        second.setCompositeCache(cache);
+        int[] expected = run(first, SETTINGS[1]);
+        long builds = cache.builds();
+        long hits = cache.hits();
+        assertArrayEquals(expected, run(second, SETTINGS[1]));
+        assertEquals(builds, cache.builds());
+        assertTrue(cache.hits() > hits);
+    }
+
+    @Test
+    public void checkRace() throws InterruptedException {
+        CompositeCache cache = new CompositeCache(1 << 12);
+        Machine plain = navalMachine(5, 3);
+        int[] expected = run(plain, SETTINGS[2]);
+        int threads = 8;
+        CountDownLatch go = new CountDownLatch(1);
+        boolean[] ok = new boolean[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t += 1) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                Machine m = navalMachine(5, 3);
+                m.setCompositeCache(cache);
+                try {
+                    go.await();
+                } catch (InterruptedException excp) {
+                    return;
+                }
+                ok[id] = Arrays.equals(expected, run(m, SETTINGS[2]));
+            });
+            workers[t].start();
+        }
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        for (boolean b : ok) {
+            assertTrue(b);
+        }
+        assertEquals(cache.size(), cache.builds());
+        assertEquals(0, cache.evictions());
+    }
+
+    @Test
+    public void checkBounded() {
+        CompositeCache cache = new CompositeCache(4);
+        Machine plain = navalMachine(5, 3);
+        Machine cached = navalMachine(5, 3);
+        cached.setCompositeCache(cache);
+        for (String setting : SETTINGS) {
+            assertArrayEquals(run(plain, setting), run(cached, setting));
+            assertTrue(cache.size() <= 4);
+        }
+        assertTrue(cache.evictions() > 0);
+        assertEquals(cache.builds() - cache.evictions(), cache.size());
+    }
+
+}
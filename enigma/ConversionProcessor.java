@@ -0,0 +1,242 @@
+package enigma;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A Flow.Processor that converts a stream of text with a Machine.  Each
+ *  item received is either a setting line (one whose first field is
+ *  "*", as in Main), which sets the machine up and produces nothing, or
+ *  a chunk of message text, which produces its conversion, grouped in
+ *  fives as by Machine.convert(String).  Items are handled strictly in
+ *  the order received, so a setting line applies to exactly the chunks
+ *  that follow it.
+ *
+ *  There is one subscriber.  Items are requested from upstream CHUNK at
+ *  a time, and no more than CHUNK are ever outstanding, so memory use is
+ *  bounded however fast the upstream is; a larger CHUNK means fewer
+ *  request round trips, a smaller one less buffering.  Nothing is
+ *  converted until the subscriber has asked for it, and no thread ever
+ *  blocks: whichever thread delivers an item or a request does the work
+ *  that has become possible, and the others leave it to that thread.
+ *  A conversion or setting error, including message text before the
+ *  first setting line, cancels the upstream and is passed to the
+ *  subscriber through onError.
+ *  @author Shelden Shi
+ */
+final class ConversionProcessor
+    implements Flow.Processor<String, String> {
+
+    /** Default number of items requested from upstream at a time. */
+    static final int DEFAULT_CHUNK = 64;
+
+    /** A processor driving MACHINE that requests DEFAULT_CHUNK items
+     *  from upstream at a time. */
+    ConversionProcessor(Machine machine) {
+        this(machine, DEFAULT_CHUNK);
+    }
+
+    /** A processor driving MACHINE that requests CHUNK items from
+     *  upstream at a time. */
+    ConversionProcessor(Machine machine, int chunk) {
+        if (chunk <= 0) {
+            throw EnigmaException.error("chunk size must be positive");
+        }
+        _machine = machine;
+        _chunk = chunk;
+    }
+
+    @Override
+    public synchronized void subscribe(
+            Flow.Subscriber<? super String> subscriber) {
+        if (_downstream != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+            subscriber.onError(
+                new IllegalStateException("already subscribed"));
+            return;
+        }
+        _downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    if (n <= 0) {
+                        _badRequest = new IllegalArgumentException(
+                            "non-positive request");
+                    } else {
+                        _requested.getAndAccumulate(n, (a, b) ->
+                            a + b < 0 ? Long.MAX_VALUE : a + b);
+                    }
+                    drain();
+                }
+
+                @Override
+                public void cancel() {
+                    _cancelled = true;
+                    drain();
+                }
+            });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (_upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        _upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(String item) {
+        _queue.offer(item);
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        _error = throwable;
+        _done = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        _done = true;
+        drain();
+    }
+
+    /** Do all the work that the items received and the demand allow.
+     *  Only one thread at a time gets past the _work counter; a call
+     *  made while another thread is draining just makes that thread go
+     *  round again. */
+    private void drain() {
+        if (_work.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            step();
+            missed = _work.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /** One round of drain: convert queued items while there is demand,
+     *  then finish, or ask upstream for more. */
+    private void step() {
+        Flow.Subscriber<? super String> down = _downstream;
+        if (down == null || _finished) {
+            return;
+        }
+        if (_cancelled) {
+            finish(null, null);
+            return;
+        }
+        if (_badRequest != null) {
+            finish(down, _badRequest);
+            return;
+        }
+        while (_requested.get() > 0 && !_queue.isEmpty()) {
+            String item = _queue.poll();
+            _inFlight -= 1;
+            String out;
+            try {
+                out = process(item);
+            } catch (RuntimeException excp) {
+                finish(down, excp);
+                return;
+            }
+            if (out != null) {
+                _requested.decrementAndGet();
+                down.onNext(out);
+            }
+        }
+        if (_done && (_queue.isEmpty() || _error != null)) {
+            finish(down, _error);
+            return;
+        }
+        Flow.Subscription up = _upstream;
+        if (up != null && _requested.get() > 0 && _inFlight <= _chunk / 2) {
+            long n = _chunk - _inFlight;
+            _inFlight = _chunk;
+            up.request(n);
+        }
+    }
+
+    /** Return the conversion of ITEM, or null if it is a setting line,
+     *  which is applied to my machine.  Text other than an empty line
+     *  before the first setting line is an error, as in Main. */
+    private String process(String item) {
+        if (item.split("\\s+")[0].equals("*")) {
+            _machine.setUp(item);
+            _hasSet = true;
+            return null;
+        }
+        if (!_hasSet && !item.isEmpty()) {
+            throw EnigmaException.error("has not set");
+        }
+        return _machine.convert(item);
+    }
+
+    /** Stop for good: cancel the upstream unless it is done, and tell
+     *  DOWN (if not null) that the stream ended, with ERROR if that is
+     *  not null. */
+    private void finish(Flow.Subscriber<? super String> down,
+                        Throwable error) {
+        _finished = true;
+        _queue.clear();
+        if (!_done && _upstream != null) {
+            _upstream.cancel();
+        }
+        if (down != null) {
+            if (error != null) {
+                down.onError(error);
+            } else {
+                down.onComplete();
+            }
+        }
+    }
+
+    /** The machine that does the conversions. */
+    private final Machine _machine;
+    /** Number of items requested from upstream at a time. */
+    private final int _chunk;
+    /** Items received and not yet processed. */
+    private final Queue<String> _queue = new ConcurrentLinkedQueue<>();
+    /** Outputs requested by the subscriber and not yet delivered. */
+    private final AtomicLong _requested = new AtomicLong();
+    /** Count of drain calls not yet accounted for. */
+    private final AtomicInteger _work = new AtomicInteger();
+    /** Items requested from upstream and not yet processed; touched
+     *  only while draining. */
+    private long _inFlight;
+    /** The upstream subscription, once received. */
+    private volatile Flow.Subscription _upstream;
+    /** The subscriber, once there is one. */
+    private volatile Flow.Subscriber<? super String> _downstream;
+    /** True once the upstream has completed or failed. */
+    private volatile boolean _done;
+    /** The upstream error, if any. */
+    private volatile Throwable _error;
+    /** The error to report for an invalid request by the subscriber. */
+    private volatile Throwable _badRequest;
+    /** True once the subscriber has cancelled. */
+    private volatile boolean _cancelled;
+    /** True once the subscriber has been told the stream ended; touched
+     *  only while draining. */
+    private boolean _finished;
+    /** True once a setting line has been applied; touched only while
+     *  draining. */
+    private boolean _hasSet;
+}
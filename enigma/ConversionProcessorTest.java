@@ -0,0 +1,269 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConversionProcessor class.
+ *  @author Shelden Shi
+ */
+public class ConversionProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** An upstream that hands out ITEMS synchronously, as requested,
+     *  keeping track of how many are outstanding. */
+    private static class ListPublisher implements Flow.Publisher<String> {
+        /** A publisher of ITEMS. */
+        ListPublisher(List<String> items) {
+            _items = items;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super String> sub) {
+            sub.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                        _outstanding += n;
+                        _maxOutstanding = Math.max(_maxOutstanding,
+                                                   _outstanding);
+                        while (_outstanding > 0 && _next < _items.size()
+                               && !_cancelled) {
+                            _outstanding -= 1;
+                            _next += 1;
+                            sub.onNext(_items.get(_next - 1));
+                        }
+                        if (_next == _items.size() && !_completed) {
+                            _completed = true;
+                            sub.onComplete();
+                        }
+                    }
+
+                    @Override
+                    public void cancel() {
+                        _cancelled = true;
+                    }
+                });
+        }
+
+        /** Items to publish. */
+        private final List<String> _items;
+        /** Index of the next item. */
+        private int _next;
+        /** Items requested and not yet delivered. */
+        private long _outstanding;
+        /** Largest value of _outstanding. */
+        private long _maxOutstanding;
+        /** True once cancelled. */
+        private boolean _cancelled;
+        /** True once completed. */
+        private boolean _completed;
+    }
+
+    /** A subscriber that records what it receives and requests only
+     *  when told to. */
+    private static class Collector implements Flow.Subscriber<String> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+        }
+
+        @Override
+        public void onNext(String item) {
+            _items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            _error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            _complete = true;
+        }
+
+        /** The subscription. */
+        private Flow.Subscription _subscription;
+        /** Items received. */
+        private final List<String> _items = new ArrayList<>();
+        /** Error received, if any. */
+        private Throwable _error;
+        /** True once completed. */
+        private boolean _complete;
+    }
+
+    /** The setting line used by these tests. */
+    private static final String SETTING = "* B Beta I II III AAAA";
+
+    @Test
+    public void checkSettingLinesMidStream() {
+        List<String> input = List.of(SETTING, "HELLO WORLD", SETTING,
+                                     "HELLO", "WORLD",
+                                     "* B Beta I II III AXLE (HQ) (EX)",
+                                     "FROM HIS SHOULDER");
+        Machine expect = navalMachine(5, 3);
+        List<String> expected = new ArrayList<>();
+        for (String line : input) {
+            if (line.startsWith("*")) {
+                expect.setUp(line);
+            } else {
+                expected.add(expect.convert(line));
+            }
+        }
+        ConversionProcessor proc =
+            new ConversionProcessor(navalMachine(5, 3), 2);
+        Collector out = new Collector();
+        proc.subscribe(out);
+        new ListPublisher(input).subscribe(proc);
+        out._subscription.request(Long.MAX_VALUE);
+        assertEquals(expected, out._items);
+        assertEquals("ILBDA AMTAZ", out._items.get(0).trim());
+        assertTrue(out._complete);
+        assertNull(out._error);
+    }
+
+    @Test
+    public void checkBackpressure() {
+        List<String> input = new ArrayList<>();
+        input.add(SETTING);
+        for (int k = 0; k < 100; k += 1) {
+            input.add("HELLO");
+        }
+        ListPublisher upstream = new ListPublisher(input);
+        ConversionProcessor proc =
+            new ConversionProcessor(navalMachine(5, 3), 8);
+        Collector out = new Collector();
+        proc.subscribe(out);
+        upstream.subscribe(proc);
+        assertEquals(0, upstream._next);
+        out._subscription.request(3);
+        assertEquals(3, out._items.size());
+        assertTrue(upstream._next <= 8);
+        for (int k = 3; k < 100; k += 1) {
+            out._subscription.request(1);
+            assertEquals(k + 1, out._items.size());
+        }
+        assertTrue(out._complete);
+        assertTrue(upstream._maxOutstanding <= 8);
+    }
+
+    @Test
+    public void checkErrorCancelsUpstream() {
+        List<String> input = List.of(SETTING, "HELLO", "* B Beta I II",
+                                     "WORLD");
+        ListPublisher upstream = new ListPublisher(input);
+        ConversionProcessor proc =
+            new ConversionProcessor(navalMachine(5, 3), 1);
+        Collector out = new Collector();
+        proc.subscribe(out);
+        upstream.subscribe(proc);
+        out._subscription.request(10);
+        assertEquals(1, out._items.size());
+        assertTrue(out._error instanceof EnigmaException);
+        assertTrue(upstream._cancelled);
+        assertFalse(out._complete);
+    }
+
+    @Test
+    public void checkTextBeforeSetting() {
+        ListPublisher upstream =
+            new ListPublisher(List.of("", "HELLO", SETTING, "WORLD"));
+        ConversionProcessor proc =
+            new ConversionProcessor(navalMachine(5, 3), 1);
+        Collector out = new Collector();
+        proc.subscribe(out);
+        upstream.subscribe(proc);
+        out._subscription.request(10);
+        assertEquals(List.of(""), out._items);
+        assertTrue(out._error instanceof EnigmaException);
+        assertEquals("has not set", out._error.getMessage());
+        assertTrue(upstream._cancelled);
+        assertFalse(out._complete);
+    }
+
+    @Test
+    public void checkThrowingConvert() {
+        Machine naval = navalMachine(5, 3);
+        Machine m = new Machine(naval.getAlphabet(), 5, 3,
+                                naval.getAllRotors()) {
+                @Override
+                String convert(String msg) {
+                    throw new IllegalStateException("broken");
+                }
+            };
+        ListPublisher upstream =
+            new ListPublisher(List.of(SETTING, "HELLO", "WORLD"));
+        ConversionProcessor proc = new ConversionProcessor(m, 1);
+        Collector out = new Collector();
+        proc.subscribe(out);
+        upstream.subscribe(proc);
+        out._subscription.request(10);
+        assertTrue(out._items.isEmpty());
+        assertTrue(out._error instanceof IllegalStateException);
+        assertTrue(upstream._cancelled);
+        assertFalse(out._complete);
+        out._subscription.request(10);
+        assertTrue(out._items.isEmpty());
+    }
+
+    @Test
+    public void checkAsynchronousPublisher() throws Exception {
+        Machine expect = navalMachine(5, 3);
+        expect.setUp(SETTING);
+        List<String> expected = new ArrayList<>();
+        ConversionProcessor proc =
+            new ConversionProcessor(navalMachine(5, 3), 4);
+        CompletableFuture<List<String>> result = new CompletableFuture<>();
+        proc.subscribe(new Flow.Subscriber<String>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    _sub = subscription;
+                    _sub.request(1);
+                }
+
+                @Override
+                public void onNext(String item) {
+                    _got.add(item);
+                    _sub.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    result.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    result.complete(_got);
+                }
+
+                /** The subscription. */
+                private Flow.Subscription _sub;
+                /** Items received. */
+                private final List<String> _got = new ArrayList<>();
+            });
+        try (SubmissionPublisher<String> pub = new SubmissionPublisher<>()) {
+            pub.subscribe(proc);
+            pub.submit(SETTING);
+            for (int k = 0; k < 500; k += 1) {
+                String line = "MESSAGE NUMBER " + (char) ('A' + k % 26);
+                expected.add(expect.convert(line));
+                pub.submit(line);
+            }
+        }
+        assertEquals(expected, result.get());
+    }
+
+}
@@ -0,0 +1,151 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** A filter of crib placements.  Since the reflector has no fixed
+ *  points, the machine never converts a letter to itself, so a crib
+ *  cannot sit at any offset where one of its letters lines up with the
+ *  same letter of the ciphertext.  The ciphertext is held as one bitset
+ *  per letter (bit K of letter C's set meaning that character K is C),
+ *  and the impossible offsets of a crib are found a word (64 offsets) at
+ *  a time by OR-ing those bitsets, each shifted by the position of its
+ *  letter in the crib.
+ *  @author Shelden Shi
+ */
+final class CribFilter {
+
+    /** Number of bits in a word of a bitset. */
+    private static final int WORD = Long.SIZE;
+
+    /** A filter for the ciphertext CIPHER, given as indices into an
+     *  alphabet of SIZE characters. */
+    CribFilter(int[] cipher, int size) {
+        _cipher = cipher.clone();
+        int words = (cipher.length + WORD - 1) / WORD;
+        _occurs = new long[size][words + 1];
+        for (int k = 0; k < cipher.length; k += 1) {
+            _occurs[cipher[k]][k / WORD] |= 1L << (k % WORD);
+        }
+    }
+
+    /** Return a filter for the characters of CIPHERTEXT that are in
+     *  ALPHA, ignoring whitespace. */
+    static CribFilter of(String ciphertext, Alphabet alpha) {
+        return new CribFilter(toIndices(ciphertext, alpha), alpha.size());
+    }
+
+    /** Return the indices in ALPHA of the characters of TEXT that are
+     *  not whitespace in the sense of Machine.isSpace, as
+     *  Machine.convert(String) takes them. */
+    static int[] toIndices(String text, Alphabet alpha) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int k = 0; k < text.length(); k += 1) {
+            char ch = text.charAt(k);
+            if (!Machine.isSpace(ch)) {
+                result[n] = alpha.toInt(ch);
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return the length of my ciphertext. */
+    int length() {
+        return _cipher.length;
+    }
+
+    /** Return a bitset in which bit K is set iff CRIB may start at
+     *  offset K of the ciphertext without any letter encrypting to
+     *  itself. */
+    long[] feasible(int[] crib) {
+        int offsets = _cipher.length - crib.length + 1;
+        if (offsets <= 0) {
+            return new long[0];
+        }
+        int words = (offsets + WORD - 1) / WORD;
+        long[] bad = new long[words];
+        for (int k = 0; k < crib.length; k += 1) {
+            long[] occurs = _occurs[crib[k]];
+            int shift = k / WORD, bits = k % WORD;
+            if (bits == 0) {
+                for (int w = 0; w < words; w += 1) {
+                    bad[w] |= occurs[w + shift];
+                }
+            } else {
+                for (int w = 0; w < words; w += 1) {
+                    bad[w] |= (occurs[w + shift] >>> bits)
+                        | (occurs[w + shift + 1] << (WORD - bits));
+                }
+            }
+        }
+        for (int w = 0; w < words; w += 1) {
+            bad[w] = ~bad[w];
+        }
+        if (offsets % WORD != 0) {
+            bad[words - 1] &= (1L << (offsets % WORD)) - 1;
+        }
+        return bad;
+    }
+
+    /** Return the offsets, in increasing order, at which CRIB may be
+     *  placed. */
+    int[] alignments(int[] crib) {
+        long[] ok = feasible(crib);
+        int count = 0;
+        for (long word : ok) {
+            count += Long.bitCount(word);
+        }
+        int[] result = new int[count];
+        int n = 0;
+        for (int w = 0; w < ok.length; w += 1) {
+            for (long word = ok[w]; word != 0; word &= word - 1) {
+                result[n] = w * WORD + Long.numberOfTrailingZeros(word);
+                n += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the feasible offsets of each of CRIBS, computed in
+     *  parallel. */
+    List<int[]> alignments(List<int[]> cribs) {
+        return cribs.parallelStream().map(this::alignments)
+            .collect(Collectors.toList());
+    }
+
+    /** Return those of ALIGNMENTS (in increasing order) at which CRIB is
+     *  consistent with ENGINE started from positions START, i.e. where
+     *  each crib letter converts to the ciphertext letter beneath it.
+     *  The rotors are only stepped between offsets; conversion is done
+     *  for crib letters alone and stops at the first mismatch. */
+    int[] check(Engine engine, int[] start, int[] crib, int[] alignments) {
+        int[] posns = start.clone();
+        int[] trial = new int[posns.length];
+        int stepped = 0;
+        List<Integer> result = new ArrayList<>();
+        for (int offset : alignments) {
+            for (; stepped < offset; stepped += 1) {
+                engine.advance(posns);
+            }
+            System.arraycopy(posns, 0, trial, 0, posns.length);
+            boolean ok = true;
+            for (int k = 0; k < crib.length && ok; k += 1) {
+                engine.advance(trial);
+                ok = engine.convert(trial, crib[k]) == _cipher[offset + k];
+            }
+            if (ok) {
+                result.add(offset);
+            }
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** The ciphertext. */
+    private final int[] _cipher;
+    /** Occurrence bitsets, one per letter, with one word of padding. */
+    private final long[][] _occurs;
+}
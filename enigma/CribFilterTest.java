@@ -0,0 +1,66 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribFilter class.
+ *  @author Shelden Shi
+ */
+public class CribFilterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void checkAgainstDirectComparison() {
+        Random random = new Random(61);
+        int[] cipher = new int[1000];
+        for (int k = 0; k < cipher.length; k += 1) {
+            cipher[k] = random.nextInt(26);
+        }
+        CribFilter filter = new CribFilter(cipher, 26);
+        for (int len : new int[] {1, 5, 63, 64, 65, 130}) {
+            int[] crib = new int[len];
+            for (int k = 0; k < len; k += 1) {
+                crib[k] = random.nextInt(26);
+            }
+            int n = 0;
+            int[] found = filter.alignments(crib);
+            for (int off = 0; off + len <= cipher.length; off += 1) {
+                boolean ok = true;
+                for (int k = 0; k < len; k += 1) {
+                    ok &= crib[k] != cipher[off + k];
+                }
+                if (ok) {
+                    assertEquals(off, found[n]);
+                    n += 1;
+                }
+            }
+            assertEquals(n, found.length);
+        }
+    }
+
+    @Test
+    public void checkMachineConsistency() {
+        Machine m = navalMachine(5, 3);
+        m.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        m.setRotors("AXLE");
+        String plain = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        String cipher = m.convert(plain).replace(" ", "");
+        m.setRotors("AXLE");
+        CribFilter filter = CribFilter.of(cipher, UPPER);
+        int[] crib = CribFilter.toIndices("BROWNFOX", UPPER);
+        int[] aligned = filter.alignments(crib);
+        int[] consistent = filter.check(Engine.of(m), Engine.positions(m),
+                                        crib, aligned);
+        assertArrayEquals(new int[] {8}, consistent);
+    }
+
+}
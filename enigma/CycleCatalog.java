@@ -0,0 +1,628 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog of Rejewski cycle signatures.  For a start position, let
+ *  A1 ... A6 be the substitutions the machine performs on the six
+ *  keypresses of a doubled message key.  The signature of the position
+ *  is the cycle type of the three products A1A4, A2A5 and A3A6.  Cycle
+ *  types are invariant under conjugation, so the plugboard plays no part
+ *  and the catalog is built with an empty one.
+ *
+ *  A catalog is built once, in parallel, into a file of (signature key,
+ *  setting) records sorted by key, and is then opened memory-mapped so
+ *  that all settings for an observed signature are found by binary
+ *  search.  Keys are 64-bit hashes of the three cycle types, and
+ *  records hold no more than the key, so a lookup returns candidates:
+ *  every setting whose signature has the same key.  Settings with a
+ *  different signature are among them only if it collides with the one
+ *  sought, which the caller can rule out with signature().
+ *  @author Shelden Shi
+ */
+final class CycleCatalog implements AutoCloseable {
+
+    /** Number of keypresses in a doubled message key. */
+    static final int KEY_LENGTH = 6;
+    /** Number of products in a signature. */
+    static final int PRODUCTS = KEY_LENGTH / 2;
+
+    /** File magic number. */
+    private static final int MAGIC = 0x45434154;
+    /** File format version. */
+    private static final int VERSION = 1;
+    /** Bytes per record: a key and a setting code. */
+    private static final int RECORD_BYTES = 16;
+    /** Log2 of the number of records in one mapped chunk. */
+    private static final int CHUNK_SHIFT = 26;
+    /** Maximum number of runs merged at once. */
+    private static final int MERGE_FANIN = 64;
+    /** Size of I/O buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Open the catalog stored in FILE. */
+    private CycleCatalog(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            int headerLength = raf.readInt();
+            byte[] header = new byte[headerLength];
+            raf.readFully(header);
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(header));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw error("%s is not a cycle catalog", file);
+            }
+            _alphabet = new Alphabet(in.readUTF());
+            int numRotors = in.readInt();
+            _orders = new String[in.readInt()][numRotors];
+            for (String[] order : _orders) {
+                for (int i = 0; i < numRotors; i += 1) {
+                    order[i] = in.readUTF();
+                }
+            }
+            _numPositions = in.readLong();
+            _numRecords = in.readLong();
+            long start = Integer.BYTES + headerLength;
+            int numChunks = (int) ((_numRecords >>> CHUNK_SHIFT) + 1);
+            _chunks = new MappedByteBuffer[numChunks];
+            FileChannel channel = raf.getChannel();
+            for (int k = 0; k < numChunks; k += 1) {
+                long first = (long) k << CHUNK_SHIFT;
+                long count = Math.min(_numRecords - first, 1L << CHUNK_SHIFT);
+                _chunks[k] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start + first * RECORD_BYTES, count * RECORD_BYTES);
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Return the catalog stored in FILE, memory-mapped. */
+    static CycleCatalog open(File file) {
+        return new CycleCatalog(file);
+    }
+
+    /** Return the rotor orders accepted by M in the usual layout: a
+     *  reflector, then numRotors() - numPawls() - 1 non-moving rotors,
+     *  then numPawls() moving rotors, with no name repeated. */
+    static List<String[]> allOrders(Machine m) {
+        List<Rotor> reflectors = new ArrayList<>();
+        List<Rotor> fixed = new ArrayList<>();
+        List<Rotor> moving = new ArrayList<>();
+        for (Rotor r : m.getAllRotors()) {
+            if (r.reflecting()) {
+                reflectors.add(r);
+            } else if (r.rotates()) {
+                moving.add(r);
+            } else {
+                fixed.add(r);
+            }
+        }
+        List<String[]> result = new ArrayList<>();
+        String[] order = new String[m.numRotors()];
+        for (Rotor r : reflectors) {
+            order[0] = r.name();
+            int numFixed = m.numRotors() - m.numPawls() - 1;
+            fillOrders(order, 1, numFixed, fixed, moving, result);
+        }
+        return result;
+    }
+
+    /** Add to RESULT every completion of ORDER from slot SLOT on, using
+     *  rotors from FIXED for the slots before NUMFIXED + 1 and from MOVING
+     *  for the rest. */
+    private static void fillOrders(String[] order, int slot, int numFixed,
+                                   List<Rotor> fixed, List<Rotor> moving,
+                                   List<String[]> result) {
+        if (slot == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        List<Rotor> choices = slot <= numFixed ? fixed : moving;
+        for (Rotor r : choices) {
+            if (!Arrays.asList(order).subList(1, slot).contains(r.name())) {
+                order[slot] = r.name();
+                fillOrders(order, slot + 1, numFixed, fixed, moving, result);
+            }
+        }
+        order[slot] = null;
+    }
+
+    /** Write to FILE a catalog of the signatures of every start position
+     *  of every rotor order in ORDERS, using the rotors available to M.
+     *  All ring settings are taken to be 0.  Orders are processed in
+     *  parallel, each into a sorted run, and the runs are then merged.
+     *  Every order is checked before any run is written, and the runs
+     *  written are deleted if the build fails. */
+    static void build(Machine m, List<String[]> orders, File file) {
+        if (orders.isEmpty()) {
+            throw error("no rotor orders to catalog");
+        }
+        HashMap<String, Rotor> byName = new HashMap<>();
+        for (Rotor r : m.getAllRotors()) {
+            byName.put(r.name(), r);
+        }
+        int numRotors = m.numRotors();
+        int size = m.getAlphabet().size();
+        long numPositions = 1;
+        for (int i = 1; i < numRotors; i += 1) {
+            numPositions = Math.multiplyExact(numPositions, size);
+        }
+        if (numPositions > Integer.MAX_VALUE) {
+            throw error("too many positions per rotor order");
+        }
+        final long positions = numPositions;
+        Rotor[][] rotors = new Rotor[orders.size()][numRotors];
+        for (int k = 0; k < orders.size(); k += 1) {
+            if (orders.get(k).length != numRotors) {
+                throw error("wrong number of rotors in order");
+            }
+            for (int i = 0; i < numRotors; i += 1) {
+                rotors[k][i] = byName.get(orders.get(k)[i]);
+                if (rotors[k][i] == null) {
+                    throw error("Name not in all rotors");
+                }
+            }
+        }
+        File[] runs = new File[orders.size()];
+        File merged;
+        try {
+            AtomicReference<RuntimeException> failure =
+                new AtomicReference<>();
+            IntStream.range(0, orders.size()).parallel().forEach(k -> {
+                if (failure.get() != null) {
+                    return;
+                }
+                try {
+                    Engine engine = Engine.create(rotors[k],
+                            new int[numRotors],
+                            new Permutation("", m.getAlphabet()));
+                    runs[k] = writeRun(engine, k * positions,
+                                       (int) positions);
+                } catch (RuntimeException excp) {
+                    failure.compareAndSet(null, excp);
+                }
+            });
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            merged = mergeRuns(new ArrayList<>(Arrays.asList(runs)));
+        } catch (RuntimeException excp) {
+            for (File run : runs) {
+                if (run != null) {
+                    run.delete();
+                }
+            }
+            throw excp;
+        }
+        long numRecords = merged.length() / RECORD_BYTES;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file),
+                        BUFFER_SIZE));
+             FileInputStream records = new FileInputStream(merged)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(bytes);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeUTF(alphabetString(m.getAlphabet()));
+            header.writeInt(numRotors);
+            header.writeInt(orders.size());
+            for (String[] order : orders) {
+                for (String name : order) {
+                    header.writeUTF(name);
+                }
+            }
+            header.writeLong(positions);
+            header.writeLong(numRecords);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+            records.transferTo(out);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        } finally {
+            merged.delete();
+        }
+    }
+
+    /** Return a temporary file holding the sorted records of every start
+     *  position of ENGINE.  The setting code of position number P is
+     *  BASE + P; there are NUMPOSITIONS positions. */
+    private static File writeRun(Engine engine, long base, int numPositions) {
+        long[] keys = new long[numPositions];
+        long[] codes = new long[numPositions];
+        int size = engine.size();
+        int numRotors = engine.numRotors();
+        int[] start = new int[numRotors];
+        int[] posns = new int[numRotors];
+        int[][] steps = new int[KEY_LENGTH][size];
+        int[][] types = new int[PRODUCTS][];
+        int[] product = new int[size];
+        boolean[] seen = new boolean[size];
+        for (int p = 0; p < numPositions; p += 1) {
+            System.arraycopy(start, 0, posns, 0, numRotors);
+            for (int s = 0; s < KEY_LENGTH; s += 1) {
+                engine.advance(posns);
+                engine.permutation(posns, steps[s]);
+            }
+            for (int j = 0; j < PRODUCTS; j += 1) {
+                for (int c = 0; c < size; c += 1) {
+                    product[c] = steps[j + PRODUCTS][steps[j][c]];
+                }
+                types[j] = cycleType(product, seen);
+            }
+            keys[p] = key(types);
+            codes[p] = base + p;
+            for (int i = numRotors - 1; i > 0; i -= 1) {
+                start[i] += 1;
+                if (start[i] < size) {
+                    break;
+                }
+                start[i] = 0;
+            }
+        }
+        sort(keys, codes, 0, numPositions - 1);
+        try {
+            File run = File.createTempFile("enigma-run", ".bin");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(run),
+                            BUFFER_SIZE))) {
+                for (int p = 0; p < numPositions; p += 1) {
+                    out.writeLong(keys[p]);
+                    out.writeLong(codes[p]);
+                }
+            }
+            return run;
+        } catch (IOException excp) {
+            throw error("could not write temporary run");
+        }
+    }
+
+    /** Merge the sorted record files RUNS, deleting them, and return the
+     *  file holding the result. */
+    private static File mergeRuns(List<File> runs) {
+        while (runs.size() > 1) {
+            List<File> next = new ArrayList<>();
+            for (int i = 0; i < runs.size(); i += MERGE_FANIN) {
+                List<File> group =
+                    runs.subList(i, Math.min(runs.size(), i + MERGE_FANIN));
+                next.add(mergeGroup(group));
+            }
+            runs = next;
+        }
+        return runs.get(0);
+    }
+
+    /** Merge the sorted record files GROUP into a new file, deleting
+     *  them, and return the new file. */
+    private static File mergeGroup(List<File> group) {
+        if (group.size() == 1) {
+            return group.get(0);
+        }
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(group.size(),
+            (a, b) -> Long.compare(a._key, b._key));
+        File result = null;
+        try {
+            result = File.createTempFile("enigma-run", ".bin");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(result),
+                            BUFFER_SIZE))) {
+                for (File run : group) {
+                    RunReader reader = new RunReader(run);
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                }
+                while (!queue.isEmpty()) {
+                    RunReader reader = queue.poll();
+                    out.writeLong(reader._key);
+                    out.writeLong(reader._code);
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                }
+            }
+            return result;
+        } catch (IOException excp) {
+            if (result != null) {
+                result.delete();
+            }
+            throw error("could not merge temporary runs");
+        }
+    }
+
+    /** Sequential reader of a sorted record file that deletes the file
+     *  once it is exhausted. */
+    private static final class RunReader {
+        /** A reader of RUN. */
+        RunReader(File run) throws IOException {
+            _file = run;
+            _remaining = run.length() / RECORD_BYTES;
+            _in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(run), BUFFER_SIZE));
+        }
+
+        /** Read the next record into _key and _code, returning false
+         *  (and closing and deleting the file) at the end. */
+        boolean next() throws IOException {
+            if (_remaining == 0) {
+                _in.close();
+                _file.delete();
+                return false;
+            }
+            _key = _in.readLong();
+            _code = _in.readLong();
+            _remaining -= 1;
+            return true;
+        }
+
+        /** The file read. */
+        private final File _file;
+        /** Its contents. */
+        private final DataInputStream _in;
+        /** Number of records not yet read. */
+        private long _remaining;
+        /** Key of the current record. */
+        private long _key;
+        /** Setting code of the current record. */
+        private long _code;
+    }
+
+    /** Return the signature of ENGINE started from positions START: the
+     *  cycle types of A1A4, A2A5 and A3A6. */
+    static int[][] signature(Engine engine, int[] start) {
+        int size = engine.size();
+        int[] posns = start.clone();
+        int[][] steps = new int[KEY_LENGTH][size];
+        for (int s = 0; s < KEY_LENGTH; s += 1) {
+            engine.advance(posns);
+            engine.permutation(posns, steps[s]);
+        }
+        int[][] types = new int[PRODUCTS][];
+        int[] product = new int[size];
+        for (int j = 0; j < PRODUCTS; j += 1) {
+            for (int c = 0; c < size; c += 1) {
+                product[c] = steps[j + PRODUCTS][steps[j][c]];
+            }
+            types[j] = cycleType(product, new boolean[size]);
+        }
+        return types;
+    }
+
+    /** Return the cycle type of PERM: the lengths of its cycles in
+     *  decreasing order.  SEEN is scratch space of the same length. */
+    static int[] cycleType(int[] perm, boolean[] seen) {
+        Arrays.fill(seen, false);
+        int[] lengths = new int[perm.length];
+        int count = 0;
+        for (int c = 0; c < perm.length; c += 1) {
+            if (!seen[c]) {
+                int length = 0;
+                for (int x = c; !seen[x]; x = perm[x]) {
+                    seen[x] = true;
+                    length += 1;
+                }
+                lengths[count] = length;
+                count += 1;
+            }
+        }
+        int[] result = Arrays.copyOf(lengths, count);
+        Arrays.sort(result);
+        for (int i = 0, j = count - 1; i < j; i += 1, j -= 1) {
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Return the cycle type of PERM. */
+    static int[] cycleType(Permutation perm) {
+        return perm.cycleType().clone();
+    }
+
+    /** Return the catalog key of the signature TYPES. */
+    static long key(int[][] types) {
+        long h = 0xcbf29ce484222325L;
+        for (int[] type : types) {
+            for (int length : type) {
+                h = (h ^ length) * 0x100000001b3L;
+            }
+            h = (h ^ -1) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Return every setting in this catalog whose signature has the key
+     *  of TYPES.  These include every setting whose signature is TYPES,
+     *  and may include others whose signature's key collides with it. */
+    List<Entry> lookup(int[][] types) {
+        return lookup(key(types));
+    }
+
+    /** Return every setting in this catalog whose signature has the key
+     *  of that of the observed products A1A4, A2A5 and A3A6 in PRODUCTS,
+     *  as lookup(int[][]) does. */
+    List<Entry> lookup(Permutation... products) {
+        int[][] types = new int[products.length][];
+        for (int j = 0; j < products.length; j += 1) {
+            types[j] = cycleType(products[j]);
+        }
+        return lookup(types);
+    }
+
+    /** Return every setting in this catalog whose signature key is KEY:
+     *  candidates for any signature with that key. */
+    List<Entry> lookup(long key) {
+        Events.CacheLookup event = new Events.CacheLookup();
+        event.begin();
+        long lo = 0, hi = _numRecords;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (keyAt(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<Entry> result = new ArrayList<>();
+        for (long r = lo; r < _numRecords && keyAt(r) == key; r += 1) {
+            result.add(decode(codeAt(r)));
+        }
+        if (event.shouldCommit()) {
+            event.cache = "cycle-catalog";
+            event.hit = !result.isEmpty();
+            event.entries = result.size();
+            event.commit();
+        }
+        return result;
+    }
+
+    /** Return the number of settings in this catalog. */
+    long size() {
+        return _numRecords;
+    }
+
+    /** Return the key of record R. */
+    private long keyAt(long r) {
+        return _chunks[(int) (r >>> CHUNK_SHIFT)]
+            .getLong((int) (r & ((1 << CHUNK_SHIFT) - 1)) * RECORD_BYTES);
+    }
+
+    /** Return the setting code of record R. */
+    private long codeAt(long r) {
+        return _chunks[(int) (r >>> CHUNK_SHIFT)]
+            .getLong((int) (r & ((1 << CHUNK_SHIFT) - 1)) * RECORD_BYTES
+                     + Long.BYTES);
+    }
+
+    /** Return the setting denoted by CODE. */
+    private Entry decode(long code) {
+        String[] order = _orders[(int) (code / _numPositions)];
+        long p = code % _numPositions;
+        char[] posns = new char[order.length - 1];
+        for (int i = posns.length - 1; i >= 0; i -= 1) {
+            posns[i] = _alphabet.toChar((int) (p % _alphabet.size()));
+            p /= _alphabet.size();
+        }
+        return new Entry(order, new String(posns));
+    }
+
+    /** Return the characters of ALPHA, in order. */
+    private static String alphabetString(Alphabet alpha) {
+        return String.join("", alpha.alphabet());
+    }
+
+    /** Sort KEYS[LO .. HI] into increasing order, permuting CODES in the
+     *  same way. */
+    private static void sort(long[] keys, long[] codes, int lo, int hi) {
+        while (hi - lo > INSERTION_LIMIT) {
+            long pivot = keys[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i += 1;
+                }
+                while (keys[j] > pivot) {
+                    j -= 1;
+                }
+                if (i <= j) {
+                    swap(keys, codes, i, j);
+                    i += 1;
+                    j -= 1;
+                }
+            }
+            if (j - lo < hi - i) {
+                sort(keys, codes, lo, j);
+                lo = i;
+            } else {
+                sort(keys, codes, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i += 1) {
+            for (int j = i; j > lo && keys[j - 1] > keys[j]; j -= 1) {
+                swap(keys, codes, j - 1, j);
+            }
+        }
+    }
+
+    /** Exchange entries I and J of both KEYS and CODES. */
+    private static void swap(long[] keys, long[] codes, int i, int j) {
+        long k = keys[i];
+        keys[i] = keys[j];
+        keys[j] = k;
+        long c = codes[i];
+        codes[i] = codes[j];
+        codes[j] = c;
+    }
+
+    @Override
+    public void close() {
+        Arrays.fill(_chunks, null);
+    }
+
+    /** One setting found in a catalog. */
+    static final class Entry {
+        /** A setting with rotor order ORDER and start positions POSNS. */
+        Entry(String[] order, String posns) {
+            _order = order;
+            _posns = posns;
+        }
+
+        /** Return the rotor names, reflector first. */
+        String[] order() {
+            return _order.clone();
+        }
+
+        /** Return the start positions, leftmost rotor first. */
+        String positions() {
+            return _posns;
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" ", _order) + " " + _posns;
+        }
+
+        /** Rotor names. */
+        private final String[] _order;
+        /** Start positions. */
+        private final String _posns;
+    }
+
+    /** Ranges shorter than this are insertion-sorted. */
+    private static final int INSERTION_LIMIT = 16;
+
+    /** Alphabet of the catalogued machine. */
+    private final Alphabet _alphabet;
+    /** Rotor orders, indexed by the high part of a setting code. */
+    private final String[][] _orders;
+    /** Number of start positions per rotor order. */
+    private final long _numPositions;
+    /** Number of records. */
+    private final long _numRecords;
+    /** Mapped record chunks. */
+    private final MappedByteBuffer[] _chunks;
+}
@@ -0,0 +1,126 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CycleCatalog class.
+ *  @author Shelden Shi
+ */
+public class CycleCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the substitution M performs on keypress number STEP
+     *  (numbering from 1) after its rotors are set to POSNS. */
+    private int[] stepPermutation(Machine m, String posns, int step) {
+        int[] result = new int[m.getAlphabet().size()];
+        for (int c = 0; c < result.length; c += 1) {
+            m.setRotors(posns);
+            for (int s = 1; s < step; s += 1) {
+                m.convert(0);
+            }
+            result[c] = m.convert(c);
+        }
+        return result;
+    }
+
+    @Test
+    public void checkSignatureMatchesMachine() {
+        Machine m = navalMachine(3, 2);
+        m.insertRotors(new String[] {"B", "I", "II"});
+        m.setRotors("QD");
+        int[][] types = CycleCatalog.signature(Engine.of(m),
+                                               Engine.positions(m));
+        for (int j = 0; j < CycleCatalog.PRODUCTS; j += 1) {
+            int[] first = stepPermutation(m, "QD", j + 1);
+            int[] second = stepPermutation(m, "QD", j + 1 + 3);
+            int[] product = new int[first.length];
+            for (int c = 0; c < product.length; c += 1) {
+                product[c] = second[first[c]];
+            }
+            assertArrayEquals(CycleCatalog.cycleType(product,
+                                  new boolean[product.length]), types[j]);
+        }
+    }
+
+    @Test
+    public void checkCycleType() {
+        Permutation p = new Permutation("(ABC) (DE)", new Alphabet("ABCDEF"));
+        assertArrayEquals(new int[] {3, 2, 1}, CycleCatalog.cycleType(p));
+    }
+
+    @Test
+    public void checkBuildAndLookup() throws IOException {
+        Machine m = navalMachine(3, 2);
+        List<String[]> orders = CycleCatalog.allOrders(m);
+        assertEquals(2 * 8 * 7, orders.size());
+        orders = orders.subList(0, 4);
+        File file = File.createTempFile("catalog", ".bin");
+        try {
+            CycleCatalog.build(m, orders, file);
+            try (CycleCatalog catalog = CycleCatalog.open(file)) {
+                assertEquals(4 * 26 * 26, catalog.size());
+                String[] order = orders.get(2);
+                m.insertRotors(order);
+                m.setRotors("KX");
+                int[][] types = CycleCatalog.signature(Engine.of(m),
+                                                       Engine.positions(m));
+                boolean found = false;
+                for (CycleCatalog.Entry e : catalog.lookup(types)) {
+                    if (e.toString().equals(String.join(" ", order)
+                                            + " KX")) {
+                        found = true;
+                    }
+                    assertArrayEquals(types, signatureOf(m, e));
+                }
+                assertTrue(found);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void checkBadOrderWritesNoRuns() throws IOException {
+        Machine m = navalMachine(3, 2);
+        List<String[]> orders =
+            new ArrayList<>(CycleCatalog.allOrders(m).subList(0, 4));
+        orders.add(new String[] {"B", "I", "XI"});
+        File file = File.createTempFile("catalog", ".bin");
+        int before = runFiles();
+        try {
+            CycleCatalog.build(m, orders, file);
+            fail("bad order accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(before, runFiles());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /** Return the number of temporary run files of CycleCatalog.build. */
+    private static int runFiles() {
+        String[] names = new File(System.getProperty("java.io.tmpdir"))
+            .list((dir, name) -> name.startsWith("enigma-run"));
+        return names == null ? 0 : names.length;
+    }
+
+    /** Return the signature of the setting E on M. */
+    private int[][] signatureOf(Machine m, CycleCatalog.Entry e) {
+        m.insertRotors(e.order());
+        m.setRotors(e.positions());
+        return CycleCatalog.signature(Engine.of(m), Engine.positions(m));
+    }
+
+}
@@ -0,0 +1,257 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A filter of trial decryptions that looks for words from a dictionary
+ *  (expected words, call signs and the like), as a first stage in front
+ *  of costlier scoring.  The words are compiled into an Aho-Corasick
+ *  automaton over alphabet indices, held as one flat table of
+ *  transitions, entry STATE * size + C being the state after reading C
+ *  in STATE, so each character costs one lookup whatever the size of
+ *  the dictionary.  For each state the filter also knows the fewest
+ *  characters that must follow before a word can end, so a scan gives
+ *  up as soon as the rest of the text is too short to hold a hit.
+ *  @author Shelden Shi
+ */
+final class DictionaryFilter {
+
+    /** The start state. */
+    static final int START = 0;
+
+    /** A filter for WORDS, given as indices into an alphabet of SIZE
+     *  characters. */
+    DictionaryFilter(List<int[]> words, int size) {
+        int total = 1;
+        for (int[] word : words) {
+            if (word.length == 0) {
+                throw error("empty word in dictionary");
+            }
+            total += word.length;
+        }
+        _size = size;
+        int[] next = new int[total * size];
+        int[] hits = new int[total];
+        Arrays.fill(next, -1);
+        int states = 1;
+        for (int[] word : words) {
+            int state = START;
+            for (int c : word) {
+                if (c < 0 || c >= size) {
+                    throw error("word character out of range");
+                }
+                if (next[state * size + c] < 0) {
+                    next[state * size + c] = states;
+                    states += 1;
+                }
+                state = next[state * size + c];
+            }
+            hits[state] += 1;
+        }
+        _next = Arrays.copyOf(next, states * size);
+        _hits = Arrays.copyOf(hits, states);
+        link();
+        _need = need();
+        _words = words.size();
+        _maxHits = Arrays.stream(_hits).max().getAsInt();
+    }
+
+    /** Return a filter for WORDS, written in ALPHA, ignoring
+     *  whitespace. */
+    static DictionaryFilter of(Collection<String> words, Alphabet alpha) {
+        List<int[]> indices = new ArrayList<>();
+        for (String word : words) {
+            indices.add(CribFilter.toIndices(word, alpha));
+        }
+        return new DictionaryFilter(indices, alpha.size());
+    }
+
+    /** Turn the trie in _next into the full automaton: fill in the
+     *  missing transitions through the failure links, breadth first, and
+     *  add to each state's hits those of its longest proper suffix that
+     *  is a state. */
+    private void link() {
+        int states = _hits.length;
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+        for (int c = 0; c < _size; c += 1) {
+            int child = _next[c];
+            if (child < 0) {
+                _next[c] = START;
+            } else {
+                fail[child] = START;
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            _hits[state] += _hits[fail[state]];
+            int base = state * _size;
+            int failBase = fail[state] * _size;
+            for (int c = 0; c < _size; c += 1) {
+                int child = _next[base + c];
+                if (child < 0) {
+                    _next[base + c] = _next[failBase + c];
+                } else {
+                    fail[child] = _next[failBase + c];
+                    queue[tail++] = child;
+                }
+            }
+        }
+    }
+
+    /** Return, for each state, the fewest characters that take it to a
+     *  state with hits (0 for those states), or Integer.MAX_VALUE if
+     *  none do.  Found breadth first from the states with hits along the
+     *  transitions reversed. */
+    private int[] need() {
+        int states = _hits.length;
+        int[] start = new int[states + 1];
+        for (int t : _next) {
+            start[t + 1] += 1;
+        }
+        for (int s = 0; s < states; s += 1) {
+            start[s + 1] += start[s];
+        }
+        int[] from = new int[_next.length];
+        int[] fill = Arrays.copyOf(start, states);
+        for (int k = 0; k < _next.length; k += 1) {
+            from[fill[_next[k]]++] = k / _size;
+        }
+        int[] result = new int[states];
+        Arrays.fill(result, Integer.MAX_VALUE);
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+        for (int s = 0; s < states; s += 1) {
+            if (_hits[s] > 0) {
+                result[s] = 0;
+                queue[tail++] = s;
+            }
+        }
+        while (head < tail) {
+            int t = queue[head++];
+            for (int k = start[t]; k < start[t + 1]; k += 1) {
+                int s = from[k];
+                if (result[s] == Integer.MAX_VALUE) {
+                    result[s] = result[t] + 1;
+                    queue[tail++] = s;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of words in my dictionary. */
+    int words() {
+        return _words;
+    }
+
+    /** Return the number of states of my automaton. */
+    int states() {
+        return _hits.length;
+    }
+
+    /** Return the state after reading C in STATE. */
+    int next(int state, int c) {
+        return _next[state * _size + c];
+    }
+
+    /** Return the number of words that end on reaching STATE. */
+    int hits(int state) {
+        return _hits[state];
+    }
+
+    /** Return the fewest characters that must be read from STATE
+     *  before a word ends, or Integer.MAX_VALUE if none can. */
+    int need(int state) {
+        return _need[state];
+    }
+
+    /** Return the most words that end on reaching any one state. */
+    int maxHits() {
+        return _maxHits;
+    }
+
+    /** Return true iff a word can end within the next REMAINING
+     *  characters read from STATE. */
+    boolean possible(int state, int remaining) {
+        return _need[state] <= remaining;
+    }
+
+    /** Return the number of occurrences of my words in TEXT, overlapping
+     *  ones included. */
+    int count(int[] text) {
+        int state = START;
+        int result = 0;
+        for (int c : text) {
+            state = _next[state * _size + c];
+            result += _hits[state];
+        }
+        return result;
+    }
+
+    /** Return the number of characters of TEXT up to and including the
+     *  end of the first occurrence of one of my words, or -1 if there is
+     *  none.  Stops as soon as no word can end in the rest of TEXT. */
+    int firstHit(int[] text) {
+        int state = START;
+        for (int k = 0; k < text.length; k += 1) {
+            if (_need[state] > text.length - k) {
+                return -1;
+            }
+            state = _next[state * _size + text[k]];
+            if (_hits[state] > 0) {
+                return k + 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Return true iff one of my words occurs in TEXT. */
+    boolean accepts(int[] text) {
+        return firstHit(text) >= 0;
+    }
+
+    /** Convert the characters of CIPHER on M one at a time, as
+     *  firstHit(int[]) reads them, and return what it would return for
+     *  the conversion.  M converts only the characters read, so it stops
+     *  early when a word is found or can no longer be. */
+    int firstHit(Machine m, int[] cipher) {
+        int state = START;
+        for (int k = 0; k < cipher.length; k += 1) {
+            if (_need[state] > cipher.length - k) {
+                return -1;
+            }
+            state = _next[state * _size + m.convert(cipher[k])];
+            if (_hits[state] > 0) {
+                return k + 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Return a scorer that gives the decryptions I reject negative
+     *  infinity and passes the others on to SCORER. */
+    RingSearch.Scorer before(RingSearch.Scorer scorer) {
+        return plain -> accepts(plain) ? scorer.score(plain)
+            : Double.NEGATIVE_INFINITY;
+    }
+
+    /** Alphabet size. */
+    private final int _size;
+    /** Transitions, _size per state. */
+    private final int[] _next;
+    /** Number of words ending at each state. */
+    private final int[] _hits;
+    /** Fewest characters from each state to a hit. */
+    private final int[] _need;
+    /** Number of words. */
+    private final int _words;
+    /** Largest entry of _hits. */
+    private final int _maxHits;
+}
@@ -0,0 +1,151 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the DictionaryFilter class.
+ *  @author Shelden Shi
+ */
+public class DictionaryFilterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Words used by these tests. */
+    private static final List<String> WORDS = Arrays.asList(
+        "WETTER", "WETTERBERICHT", "OBERKOMMANDO", "KOMMANDO", "HEIL",
+        "EINS", "ZWEI", "NULL", "UBOOT", "AN", "NAN");
+
+    /** Return the number of occurrences of WORD in TEXT, by brute
+     *  force. */
+    private static int occurrences(String word, String text) {
+        int result = 0;
+        for (int k = text.indexOf(word); k >= 0;
+             k = text.indexOf(word, k + 1)) {
+            result += 1;
+        }
+        return result;
+    }
+
+    @Test
+    public void checkAgainstBruteForce() {
+        DictionaryFilter filter = DictionaryFilter.of(WORDS, UPPER);
+        assertEquals(WORDS.size(), filter.words());
+        Random random = new Random(3);
+        String pieces = String.join("", WORDS);
+        for (int trial = 0; trial < 300; trial += 1) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(80);
+            while (text.length() < length) {
+                if (random.nextInt(4) == 0) {
+                    int k = random.nextInt(pieces.length());
+                    text.append(pieces, k, Math.min(pieces.length(),
+                                                    k + 8));
+                } else {
+                    text.append((char) ('A' + random.nextInt(26)));
+                }
+            }
+            String s = text.toString();
+            int expected = 0;
+            int first = -1;
+            for (String word : WORDS) {
+                expected += occurrences(word, s);
+                int at = s.indexOf(word);
+                if (at >= 0) {
+                    int end = at + word.length();
+                    first = first < 0 ? end : Math.min(first, end);
+                }
+            }
+            int[] indices = CribFilter.toIndices(s, UPPER);
+            assertEquals(s, expected, filter.count(indices));
+            assertEquals(s, first, filter.firstHit(indices));
+            assertEquals(s, first >= 0, filter.accepts(indices));
+        }
+    }
+
+    @Test
+    public void checkEarlyExit() {
+        DictionaryFilter filter = DictionaryFilter.of(
+            Arrays.asList("WETTERBERICHT"), UPPER);
+        int state = DictionaryFilter.START;
+        assertFalse(filter.possible(state, 12));
+        assertTrue(filter.possible(state, 13));
+        for (char ch : "WETTER".toCharArray()) {
+            state = filter.next(state, UPPER.toInt(ch));
+        }
+        assertTrue(filter.possible(state, 7));
+        assertFalse(filter.possible(state, 6));
+
+        Machine m = navalMachine(5, 3);
+        Machine copy = navalMachine(5, 3);
+        String setting = "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+        m.setUp(setting);
+        int[] plain = CribFilter.toIndices("XXWETTERBERICHTXXXXX", UPPER);
+        int[] cipher = new int[plain.length];
+        for (int k = 0; k < plain.length; k += 1) {
+            cipher[k] = m.convert(plain[k]);
+        }
+        m.setUp(setting);
+        copy.setUp(setting);
+        assertEquals(15, filter.firstHit(m, cipher));
+        for (int k = 0; k < 15; k += 1) {
+            copy.convert(0);
+        }
+        assertArrayEquals(Engine.positions(copy), Engine.positions(m));
+
+        m.setUp("* B Beta III IV I AXLF");
+        copy.setUp("* B Beta III IV I AXLF");
+        assertEquals(-1, filter.firstHit(m, cipher));
+        int converted = 0;
+        while (!Arrays.equals(Engine.positions(copy),
+                              Engine.positions(m))) {
+            copy.convert(0);
+            converted += 1;
+        }
+        assertTrue(converted <= plain.length - 12);
+    }
+
+    @Test
+    public void checkInFrontOfSearch() {
+        Machine m = smallMachine();
+        List<int[]> words = new ArrayList<>();
+        words.add(new int[] {0, 1, 2, 3});
+        DictionaryFilter filter = new DictionaryFilter(words, 6);
+        int[] plain = {5, 5, 0, 1, 2, 3, 4, 4, 1, 0, 2, 2};
+        int[] cipher = new int[plain.length];
+        for (int k = 0; k < plain.length; k += 1) {
+            cipher[k] = m.convert(plain[k]);
+        }
+        RingSearch search = new RingSearch(Engine.of(m),
+                                           Engine.positions(m), cipher);
+        int[] scored = {0};
+        RingSearch.Result best = search.search(filter.before(p -> {
+            scored[0] += 1;
+            int score = 0;
+            for (int k = 0; k < p.length; k += 1) {
+                score += p[k] == plain[k] ? 1 : 0;
+            }
+            return score;
+        }));
+        assertEquals(plain.length, best.score(), 0);
+        assertTrue(scored[0] < search.offsetClasses()
+                   * search.timingClasses());
+        try {
+            new DictionaryFilter(Arrays.asList(new int[0]), 6);
+            fail("accepted an empty word");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+}
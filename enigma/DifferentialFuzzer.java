@@ -0,0 +1,748 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A randomized differential test of the conversion paths of Machine
+ *  against Machine.convertReference, which steps and converts through
+ *  the Rotor and Permutation objects themselves.  From the command
+ *  line,
+ *
+ *      java enigma.DifferentialFuzzer [SEED [CASES [LENGTH]]]
+ *
+ *  generates CASES cases (default 1000) from SEED (default 1), each a
+ *  random alphabet, a catalog of rotors written as a configuration file
+ *  is, a setting line and a message of at most LENGTH characters
+ *  (default 64), and converts the message along every path.  The first
+ *  case on which a path disagrees with the reference is shrunk, while
+ *  it still disagrees, and printed as a configuration, setting line and
+ *  message that reproduce it.  Either way, the throughput of each path,
+ *  setting up included, is reported relative to the reference.  Exits
+ *  with status 1 on a divergence.
+ *
+ *  Alphabets run from two characters to beyond ByteEngine.MAX_SIZE, so
+ *  that both engines are used, and mix ASCII with other characters.
+ *  Machines may have fewer moving rotors than pawls, several notches
+ *  per rotor and reflectors with a fixed point, and each case is
+ *  converted from its start, so the keystream and composite caches
+ *  (which the fuzzer shares across cases) are also tested for keying.
+ *  @author Shelden Shi
+ */
+final class DifferentialFuzzer {
+
+    /** A conversion path under test. */
+    interface Path {
+        /** Set M, which is freshly built from C's configuration, up for
+         *  C and return the conversion of C's message. */
+        int[] convert(Machine m, Case c);
+    }
+
+    /** A rotor of a generated catalog, as a configuration file
+     *  describes it. */
+    static final class RotorSpec {
+        /** The rotor NAME of type TYPE ('M', 'N' or 'R') with notches
+         *  NOTCHES and cycles CYCLES, in configuration-file form. */
+        RotorSpec(String name, char type, String notches, String cycles) {
+            _name = name;
+            _type = type;
+            _notches = notches;
+            _cycles = cycles;
+        }
+
+        /** Return my line of a configuration file. */
+        String line() {
+            return String.format(" %s %c%s %s", _name, _type, _notches,
+                                 _cycles);
+        }
+
+        /** Name. */
+        private final String _name;
+        /** Type letter. */
+        private final char _type;
+        /** Notch characters. */
+        private final String _notches;
+        /** Cycles of the permutation. */
+        private final String _cycles;
+    }
+
+    /** A generated machine, setting and message. */
+    static final class Case {
+        /** The case with alphabet ALPHABET, SLOTS slots and PAWLS
+         *  pawls, catalog ROTORS, rotor order ORDER, positions POSNS,
+         *  ring settings RING (possibly empty), plugboard PAIRS (each a
+         *  string of two characters) and message MESSAGE. */
+        Case(String alphabet, int slots, int pawls, List<RotorSpec> rotors,
+             String[] order, String posns, String ring, List<String> pairs,
+             String message) {
+            _alphabet = alphabet;
+            _slots = slots;
+            _pawls = pawls;
+            _rotors = Collections.unmodifiableList(new ArrayList<>(rotors));
+            _order = order.clone();
+            _posns = posns;
+            _ring = ring;
+            _pairs = Collections.unmodifiableList(new ArrayList<>(pairs));
+            _message = message;
+        }
+
+        /** Return my configuration file. */
+        String config() {
+            StringBuilder result = new StringBuilder(_alphabet);
+            result.append(String.format("%n %d %d%n", _slots, _pawls));
+            for (RotorSpec rotor : _rotors) {
+                result.append(rotor.line()).append(System.lineSeparator());
+            }
+            return result.toString();
+        }
+
+        /** Return my setting line, with my plugboard iff PLUGBOARD. */
+        String setting(boolean plugboard) {
+            StringBuilder result = new StringBuilder("*");
+            for (String name : _order) {
+                result.append(' ').append(name);
+            }
+            result.append(' ').append(_posns);
+            if (!_ring.isEmpty()) {
+                result.append(' ').append(_ring);
+            }
+            if (plugboard) {
+                for (String pair : _pairs) {
+                    result.append(" (").append(pair).append(')');
+                }
+            }
+            return result.toString();
+        }
+
+        /** Return a new machine built from my configuration. */
+        Machine machine() {
+            return new Main(new Scanner(config())).readConfig();
+        }
+
+        /** Return my message as indices into ALPHA. */
+        int[] message(Alphabet alpha) {
+            return CribFilter.toIndices(_message, alpha);
+        }
+
+        /** Return the length of my message. */
+        int length() {
+            return _message.length();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("config:%n%ssetting: %s%nmessage: %s",
+                                 config(), setting(true), _message);
+        }
+
+        /** Return a copy of me with catalog ROTORS. */
+        Case withRotors(List<RotorSpec> rotors) {
+            return new Case(_alphabet, _slots, _pawls, rotors, _order,
+                            _posns, _ring, _pairs, _message);
+        }
+
+        /** Return a copy of me with positions POSNS and ring settings
+         *  RING. */
+        Case withSetting(String posns, String ring) {
+            return new Case(_alphabet, _slots, _pawls, _rotors, _order,
+                            posns, ring, _pairs, _message);
+        }
+
+        /** Return a copy of me with plugboard PAIRS. */
+        Case withPairs(List<String> pairs) {
+            return new Case(_alphabet, _slots, _pawls, _rotors, _order,
+                            _posns, _ring, pairs, _message);
+        }
+
+        /** Return a copy of me with message MESSAGE. */
+        Case withMessage(String message) {
+            return new Case(_alphabet, _slots, _pawls, _rotors, _order,
+                            _posns, _ring, _pairs, message);
+        }
+
+        /** Alphabet characters. */
+        private final String _alphabet;
+        /** Number of slots. */
+        private final int _slots;
+        /** Number of pawls. */
+        private final int _pawls;
+        /** Catalog of rotors. */
+        private final List<RotorSpec> _rotors;
+        /** Names of the rotors used, reflector first. */
+        private final String[] _order;
+        /** Positions. */
+        private final String _posns;
+        /** Ring settings, or empty. */
+        private final String _ring;
+        /** Plugboard pairs. */
+        private final List<String> _pairs;
+        /** Message. */
+        private final String _message;
+    }
+
+    /** A disagreement between a path and the reference. */
+    static final class Divergence {
+        /** PATH disagrees with the reference on C at character INDEX,
+         *  which should be EXPECTED, with DETAIL saying what it was. */
+        Divergence(String path, Case c, int index, int expected,
+                   String detail) {
+            _path = path;
+            _case = c;
+            _index = index;
+            _expected = expected;
+            _detail = detail;
+        }
+
+        /** Return the name of the path. */
+        String path() {
+            return _path;
+        }
+
+        /** Return the case. */
+        Case reproducer() {
+            return _case;
+        }
+
+        /** Return the index of the first character that differs. */
+        int index() {
+            return _index;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s diverges from the reference at "
+                                 + "character %d: expected index %d, %s%n%s",
+                                 _path, _index, _expected, _detail, _case);
+        }
+
+        /** Name of the path. */
+        private final String _path;
+        /** The case. */
+        private final Case _case;
+        /** Index of the first character that differs. */
+        private final int _index;
+        /** Reference conversion of that character. */
+        private final int _expected;
+        /** What the path produced instead. */
+        private final String _detail;
+    }
+
+    /** Characters from which alphabets are drawn: printable ASCII save
+     *  those special to configuration files and setting lines, then
+     *  letters beyond ASCII. */
+    private static final String POOL = pool();
+
+    /** Return POOL. */
+    private static String pool() {
+        StringBuilder result = new StringBuilder();
+        for (char ch = '!'; ch <= '~'; ch += 1) {
+            if ("()*|".indexOf(ch) < 0) {
+                result.append(ch);
+            }
+        }
+        for (char ch = '\u00c0'; ch <= '\u02af'; ch += 1) {
+            result.append(ch);
+        }
+        return result.toString();
+    }
+
+    /** Number of ASCII characters at the start of POOL. */
+    private static final int ASCII = '~' - '!' + 1 - "()*|".length();
+
+    /** Largest alphabet generated. */
+    private static final int MAX_SIZE = ByteEngine.MAX_SIZE + 44;
+
+    /** Number of lanes in the batch paths. */
+    private static final int LANES = 3;
+
+    /** Steps per keystream of the shared keystream cache, fewer than
+     *  most messages so that conversion carries on past the end. */
+    private static final int KEYSTREAM = 16;
+
+    /** Default number of cases. */
+    private static final int DEFAULT_CASES = 1000;
+
+    /** Default greatest message length. */
+    private static final int DEFAULT_LENGTH = 64;
+
+    /** A fuzzer generating cases from SEED with messages of at most
+     *  LENGTH characters, testing the paths of Machine. */
+    DifferentialFuzzer(long seed, int length) {
+        this(seed, length, null);
+    }
+
+    /** A fuzzer as for DifferentialFuzzer(SEED, LENGTH) that also tests
+     *  PATHS, if not null. */
+    DifferentialFuzzer(long seed, int length, Map<String, Path> paths) {
+        if (length <= 0) {
+            throw error("bad message length");
+        }
+        _random = new Random(seed);
+        _length = length;
+        _paths.put("engine", this::engine);
+        _paths.put("composite cache", this::composite);
+        _paths.put("keystream cache", this::keystream);
+        _paths.put("packed plugboard", this::packed);
+        _paths.put("string", this::string);
+        _paths.put("batch (scalar)",
+                   (m, c) -> batch(m, c, BatchEngine.SCALAR));
+        _paths.put("batch (default)",
+                   (m, c) -> batch(m, c, BatchEngine.DEFAULT));
+        if (paths != null) {
+            _paths.putAll(paths);
+        }
+        for (String name : _paths.keySet()) {
+            _nanos.put(name, new long[1]);
+        }
+    }
+
+    /** Return the reference conversion of C on M. */
+    static int[] reference(Machine m, Case c) {
+        m.setUp(c.setting(true));
+        int[] msg = c.message(m.getAlphabet());
+        for (int k = 0; k < msg.length; k += 1) {
+            msg[k] = m.convertReference(msg[k]);
+        }
+        return msg;
+    }
+
+    /** Return the conversion of C on M by the engine. */
+    private int[] engine(Machine m, Case c) {
+        m.setUp(c.setting(true));
+        int[] msg = c.message(m.getAlphabet());
+        for (int k = 0; k < msg.length; k += 1) {
+            msg[k] = m.convert(msg[k]);
+        }
+        return msg;
+    }
+
+    /** Return the conversion of C on M with the shared composite
+     *  cache. */
+    private int[] composite(Machine m, Case c) {
+        m.setCompositeCache(_composites);
+        return engine(m, c);
+    }
+
+    /** Return the conversion of C on M with the shared keystream
+     *  cache, setting up once beforehand so that the cache computes the
+     *  keystream when the conversion sets up again. */
+    private int[] keystream(Machine m, Case c) {
+        m.setKeystreamCache(_keystreams);
+        m.setUp(c.setting(true));
+        return engine(m, c);
+    }
+
+    /** Return the conversion of C on M with its plugboard set as a
+     *  Plugboard after setting up without one. */
+    private int[] packed(Machine m, Case c) {
+        m.setUp(c.setting(false));
+        m.setPlugboard(Plugboard.of(String.join("", c._pairs),
+                                    m.getAlphabet()));
+        int[] msg = c.message(m.getAlphabet());
+        for (int k = 0; k < msg.length; k += 1) {
+            msg[k] = m.convert(msg[k]);
+        }
+        return msg;
+    }
+
+    /** Return the conversion of C on M by Machine.convert(String). */
+    private int[] string(Machine m, Case c) {
+        m.setUp(c.setting(true));
+        String out = m.convert(c._message).replaceAll("\\s+", "");
+        return CribFilter.toIndices(out, m.getAlphabet());
+    }
+
+    /** Return the conversion of C on M by a BatchEngine using KERNEL
+     *  over LANES lanes, all of which must agree. */
+    private int[] batch(Machine m, Case c, BatchEngine.Kernel kernel) {
+        m.setUp(c.setting(true));
+        Engine[] engines = new Engine[LANES];
+        int[][] posns = new int[LANES][];
+        int[][] msgs = new int[LANES][];
+        for (int k = 0; k < LANES; k += 1) {
+            engines[k] = Engine.of(m);
+            posns[k] = Engine.positions(m);
+            msgs[k] = c.message(m.getAlphabet());
+        }
+        int[][] out = new BatchEngine(engines, posns, kernel).convert(msgs);
+        for (int k = 1; k < LANES; k += 1) {
+            if (!Arrays.equals(out[0], out[k])) {
+                throw error("lane %d disagrees with lane 0", k);
+            }
+        }
+        return out[0];
+    }
+
+    /** Return a new random case. */
+    Case generate() {
+        Random random = _random;
+        int size;
+        int roll = random.nextInt(10);
+        if (roll < 7) {
+            size = 2 + random.nextInt(29);
+        } else if (roll < 9) {
+            size = 31 + random.nextInt(ASCII - 30);
+        } else {
+            size = 2 + random.nextInt(MAX_SIZE - 1);
+        }
+        String alphabet = alphabet(size, size <= ASCII
+                                   && random.nextInt(3) > 0);
+        int slots = 2 + random.nextInt(5);
+        int pawls = random.nextInt(slots);
+        int moving = random.nextInt(4) == 0 ? random.nextInt(pawls + 1)
+            : pawls;
+        int fixed = slots - 1 - moving;
+
+        List<RotorSpec> rotors = new ArrayList<>();
+        List<String> reflectors = new ArrayList<>();
+        List<String> fixeds = new ArrayList<>();
+        List<String> movings = new ArrayList<>();
+        int extra = random.nextInt(2);
+        for (int k = 0; k <= extra; k += 1) {
+            reflectors.add("R" + k);
+            rotors.add(new RotorSpec("R" + k, 'R', "",
+                                     cycles(involution(size), alphabet)));
+        }
+        extra = random.nextInt(3);
+        for (int k = 0; k < fixed + extra; k += 1) {
+            fixeds.add("N" + k);
+            rotors.add(new RotorSpec("N" + k, 'N', "",
+                                     cycles(permutation(size), alphabet)));
+        }
+        extra = random.nextInt(3);
+        for (int k = 0; k < moving + extra; k += 1) {
+            movings.add("M" + k);
+            rotors.add(new RotorSpec("M" + k, 'M',
+                                     chars(1 + random.nextInt(3),
+                                           alphabet),
+                                     cycles(permutation(size), alphabet)));
+        }
+        Collections.shuffle(rotors, random);
+        Collections.shuffle(reflectors, random);
+        Collections.shuffle(fixeds, random);
+        Collections.shuffle(movings, random);
+        String[] order = new String[slots];
+        order[0] = reflectors.get(0);
+        for (int k = 0; k < fixed; k += 1) {
+            order[1 + k] = fixeds.get(k);
+        }
+        for (int k = 0; k < moving; k += 1) {
+            order[1 + fixed + k] = movings.get(k);
+        }
+
+        String ring = random.nextBoolean() ? chars(slots - 1, alphabet)
+            : "";
+        int[] shuffled = permutation(size);
+        List<String> pairs = new ArrayList<>();
+        int numPairs = random.nextInt(Math.min(size / 2, 13) + 1);
+        for (int k = 0; k < numPairs; k += 1) {
+            pairs.add("" + alphabet.charAt(shuffled[2 * k])
+                      + alphabet.charAt(shuffled[2 * k + 1]));
+        }
+        return new Case(alphabet, slots, pawls, rotors, order,
+                        chars(slots - 1, alphabet), ring, pairs,
+                        chars(1 + random.nextInt(_length), alphabet));
+    }
+
+    /** Return an alphabet of SIZE distinct characters drawn from POOL,
+     *  from its ASCII part alone if ASCIIONLY, and not all digits. */
+    private String alphabet(int size, boolean asciiOnly) {
+        List<Character> chars = new ArrayList<>();
+        int limit = asciiOnly ? ASCII : POOL.length();
+        for (int k = 0; k < limit; k += 1) {
+            chars.add(POOL.charAt(k));
+        }
+        while (true) {
+            Collections.shuffle(chars, _random);
+            StringBuilder result = new StringBuilder();
+            for (int k = 0; k < size; k += 1) {
+                result.append(chars.get(k));
+            }
+            if (!result.toString().matches("\\d+")) {
+                return result.toString();
+            }
+        }
+    }
+
+    /** Return a random string of N characters of ALPHABET. */
+    private String chars(int n, String alphabet) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < n; k += 1) {
+            result.append(alphabet.charAt(_random.nextInt(alphabet.length())));
+        }
+        return result.toString();
+    }
+
+    /** Return a random permutation of 0 .. SIZE - 1 as a table. */
+    private int[] permutation(int size) {
+        int[] result = new int[size];
+        for (int k = 0; k < size; k += 1) {
+            result[k] = k;
+        }
+        for (int k = size - 1; k > 0; k -= 1) {
+            int j = _random.nextInt(k + 1);
+            int tmp = result[k];
+            result[k] = result[j];
+            result[j] = tmp;
+        }
+        return result;
+    }
+
+    /** Return a random involution of 0 .. SIZE - 1 made of swaps,
+     *  fixing one index if SIZE is odd. */
+    private int[] involution(int size) {
+        int[] order = permutation(size);
+        int[] result = new int[size];
+        result[order[size - 1]] = order[size - 1];
+        for (int k = 0; k + 1 < size; k += 2) {
+            result[order[k]] = order[k + 1];
+            result[order[k + 1]] = order[k];
+        }
+        return result;
+    }
+
+    /** Return TABLE, a permutation, in cycle notation over ALPHABET,
+     *  each fixed point written out or left out at random. */
+    private String cycles(int[] table, String alphabet) {
+        StringBuilder result = new StringBuilder();
+        boolean[] seen = new boolean[table.length];
+        for (int start = 0; start < table.length; start += 1) {
+            if (seen[start]
+                || (table[start] == start && _random.nextBoolean())) {
+                continue;
+            }
+            result.append('(');
+            for (int c = start; !seen[c]; c = table[c]) {
+                seen[c] = true;
+                result.append(alphabet.charAt(c));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return the first divergence of the path NAME from the reference
+     *  on C, or null if they agree. */
+    Divergence compare(String name, Case c) {
+        try (Machine m = c.machine()) {
+            return compare(name, c, reference(m, c), new long[1]);
+        }
+    }
+
+    /** Return compare(NAME, C), given that the reference converts C to
+     *  EXPECTED, adding the time the path takes to NANOS[0]. */
+    private Divergence compare(String name, Case c, int[] expected,
+                               long[] nanos) {
+        Path path = _paths.get(name);
+        Machine n = c.machine();
+        int[] got;
+        long start = System.nanoTime();
+        try {
+            got = path.convert(n, c);
+        } catch (RuntimeException excp) {
+            return new Divergence(name, c, 0, expected[0],
+                                  "threw " + excp);
+        } finally {
+            nanos[0] += System.nanoTime() - start;
+            n.close();
+        }
+        int k = Arrays.mismatch(expected, got);
+        if (k < 0) {
+            return null;
+        } else if (k >= got.length) {
+            return new Divergence(name, c, k, expected[k],
+                                  "got nothing (too few characters)");
+        } else if (k >= expected.length) {
+            return new Divergence(name, c, k, -1,
+                                  "got extra characters");
+        }
+        return new Divergence(name, c, k, expected[k],
+                              "got index " + got[k]);
+    }
+
+    /** Return the first divergence on C of any path, in the order they
+     *  were added, or null if all agree with the reference.  Times the
+     *  reference too, like the paths, from a machine already built. */
+    Divergence check(Case c) {
+        int[] expected;
+        try (Machine m = c.machine()) {
+            long start = System.nanoTime();
+            expected = reference(m, c);
+            _referenceNanos += System.nanoTime() - start;
+        }
+        _chars += c.length();
+        _cases += 1;
+        for (String name : _paths.keySet()) {
+            Divergence d = compare(name, c, expected, _nanos.get(name));
+            if (d != null) {
+                return d;
+            }
+        }
+        return null;
+    }
+
+    /** Return a divergence of the same path as D, on a case that is as
+     *  small as greedy shrinking can make it. */
+    Divergence minimize(Divergence d) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Case smaller : shrinks(d._case, d._index)) {
+                Divergence e = compare(d._path, smaller);
+                if (e != null) {
+                    d = e;
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        return d;
+    }
+
+    /** Return cases one step simpler than C, whose first divergence is
+     *  at character INDEX: with the message cut after it, a plugboard
+     *  pair, the ring settings or an unused rotor dropped, a notch of a
+     *  rotor with several dropped, or a position or character made the
+     *  first of the alphabet. */
+    private List<Case> shrinks(Case c, int index) {
+        List<Case> result = new ArrayList<>();
+        if (c._message.length() > index + 1) {
+            result.add(c.withMessage(c._message.substring(0, index + 1)));
+        }
+        for (int k = 0; k < c._pairs.size(); k += 1) {
+            List<String> pairs = new ArrayList<>(c._pairs);
+            pairs.remove(k);
+            result.add(c.withPairs(pairs));
+        }
+        if (!c._ring.isEmpty()) {
+            result.add(c.withSetting(c._posns, ""));
+        }
+        List<String> used = Arrays.asList(c._order);
+        for (int k = 0; k < c._rotors.size(); k += 1) {
+            RotorSpec rotor = c._rotors.get(k);
+            List<RotorSpec> rotors = new ArrayList<>(c._rotors);
+            if (!used.contains(rotor._name)) {
+                rotors.remove(k);
+                result.add(c.withRotors(rotors));
+            } else if (rotor._notches.length() > 1) {
+                rotors.set(k, new RotorSpec(rotor._name, rotor._type,
+                                            rotor._notches.substring(1),
+                                            rotor._cycles));
+                result.add(c.withRotors(rotors));
+            }
+        }
+        char first = c._alphabet.charAt(0);
+        for (int k = 0; k < c._posns.length(); k += 1) {
+            if (c._posns.charAt(k) != first) {
+                result.add(c.withSetting(replace(c._posns, k, first),
+                                         c._ring));
+            }
+        }
+        for (int k = 0; k < c._message.length(); k += 1) {
+            if (c._message.charAt(k) != first) {
+                result.add(c.withMessage(replace(c._message, k, first)));
+            }
+        }
+        return result;
+    }
+
+    /** Return S with its character K replaced by CH. */
+    private static String replace(String s, int k, char ch) {
+        return s.substring(0, k) + ch + s.substring(k + 1);
+    }
+
+    /** Check CASES generated cases, stopping at the first divergence,
+     *  which is returned minimized.  Returns null if there is none. */
+    Divergence run(int cases) {
+        for (int k = 0; k < cases; k += 1) {
+            Divergence d = check(generate());
+            if (d != null) {
+                return minimize(d);
+            }
+        }
+        return null;
+    }
+
+    /** Print the throughput of each path, relative to the reference, on
+     *  OUT. */
+    void report(PrintStream out) {
+        out.printf("%d cases, %d characters%n", _cases, _chars);
+        row(out, "reference", _referenceNanos);
+        for (Map.Entry<String, long[]> entry : _nanos.entrySet()) {
+            row(out, entry.getKey(), entry.getValue()[0]);
+        }
+    }
+
+    /** Print the throughput of the path NAME, which took NANOS in all,
+     *  on OUT. */
+    private void row(PrintStream out, String name, long nanos) {
+        out.printf("%-20s %12.0f chars/s %8.2fx%n", name,
+                   nanos == 0 ? 0 : _chars * 1e9 / nanos,
+                   nanos == 0 ? 0 : (double) _referenceNanos / nanos);
+    }
+
+    /** Return the number of cases checked. */
+    long cases() {
+        return _cases;
+    }
+
+    /** Run the fuzzer described by ARGS (see the class comment). */
+    public static void main(String... args) {
+        try {
+            if (args.length > 3) {
+                throw error("Usage: DifferentialFuzzer [SEED [CASES "
+                            + "[LENGTH]]]");
+            }
+            long seed;
+            int cases, length;
+            try {
+                seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+                cases = args.length > 1 ? Integer.parseInt(args[1])
+                    : DEFAULT_CASES;
+                length = args.length > 2 ? Integer.parseInt(args[2])
+                    : DEFAULT_LENGTH;
+            } catch (NumberFormatException excp) {
+                throw error("bad number: %s", excp.getMessage());
+            }
+            DifferentialFuzzer fuzzer = new DifferentialFuzzer(seed, length);
+            Divergence d = fuzzer.run(cases);
+            fuzzer.report(System.out);
+            if (d != null) {
+                System.out.println(d);
+                System.exit(1);
+            }
+            System.out.println("no divergence");
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Source of the cases. */
+    private final Random _random;
+    /** Greatest message length. */
+    private final int _length;
+    /** The paths tested, by name. */
+    private final Map<String, Path> _paths = new LinkedHashMap<>();
+    /** Time taken by each path, by name. */
+    private final Map<String, long[]> _nanos = new LinkedHashMap<>();
+    /** Time taken by the reference. */
+    private long _referenceNanos;
+    /** Characters converted by each path. */
+    private long _chars;
+    /** Cases checked. */
+    private long _cases;
+    /** Composite tables shared by all cases. */
+    private final CompositeCache _composites = new CompositeCache(1 << 12);
+    /** Keystreams shared by all cases. */
+    private final KeystreamCache _keystreams =
+        new KeystreamCache(KEYSTREAM, 1L << 24);
+}
@@ -0,0 +1,67 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Map;
+
+/** The suite of all JUnit tests for the DifferentialFuzzer class.
+ *  @author Shelden Shi
+ */
+public class DifferentialFuzzerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void checkPathsAgree() {
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(49, 40);
+        DifferentialFuzzer.Divergence d = fuzzer.run(150);
+        if (d != null) {
+            fail(d.toString());
+        }
+        assertEquals(150, fuzzer.cases());
+    }
+
+    @Test
+    public void checkMinimizes() {
+        Map<String, DifferentialFuzzer.Path> broken =
+            Collections.singletonMap("broken", (m, c) -> {
+                m.setUp(c.setting(true));
+                int[] msg = c.message(m.getAlphabet());
+                int size = m.getAlphabet().size();
+                for (int k = 0; k < msg.length; k += 1) {
+                    boolean wrong = k >= 3 && msg[k] == 1;
+                    msg[k] = m.convert(msg[k]);
+                    if (wrong) {
+                        msg[k] = (msg[k] + 1) % size;
+                    }
+                }
+                return msg;
+            });
+        DifferentialFuzzer fuzzer = new DifferentialFuzzer(49, 40, broken);
+        DifferentialFuzzer.Divergence d = fuzzer.run(100);
+        assertNotNull(d);
+        assertEquals("broken", d.path());
+        assertTrue(d.index() >= 3);
+        DifferentialFuzzer.Case c = d.reproducer();
+        assertEquals(d.index() + 1, c.length());
+        String setting = c.setting(true);
+        assertFalse(setting.contains("("));
+        String[] lines = c.config().split("\\R");
+        String[] fields = setting.split(" ");
+        assertEquals(lines.length - 2, fields.length - 2);
+        String alphabet = lines[0];
+        String posns = fields[fields.length - 1];
+        for (int k = 0; k < posns.length(); k += 1) {
+            assertEquals(alphabet.charAt(0), posns.charAt(k));
+        }
+        assertNotNull(fuzzer.compare("broken", c));
+        assertNull(fuzzer.compare("engine", c));
+    }
+
+}
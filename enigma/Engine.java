@@ -0,0 +1,294 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A flat, immutable snapshot of the wiring of a configured machine:
+ *  one forward and one backward table per rotor slot, the ring settings,
+ *  the type flags and the notch positions, all held in primitive arrays.
+ *  Rotor positions are not part of the snapshot; they live in a
+ *  caller-supplied array indexed by slot (slot 0 is the reflector), so a
+ *  single Engine may be shared by any number of threads.
+ *
+ *  Stepping is the same for every alphabet and is done here.  How the
+ *  tables are laid out for conversion depends on the alphabet size, and
+ *  is left to the subclasses: ByteEngine for alphabets of at most
+ *  ByteEngine.MAX_SIZE characters, IntEngine for larger ones.  Use
+ *  create or of to get the right one.
+ *  @author Shelden Shi
+ */
+abstract sealed class Engine permits ByteEngine, IntEngine {
+
+    /** An engine for ROTORS (ROTORS[0] being the reflector) with ring
+     *  settings RINGS (one per slot) and plugboard PLUGBOARD.  The
+     *  tables are taken from the rotors' permutations at the time of
+     *  the call. */
+    Engine(Rotor[] rotors, int[] rings, Permutation plugboard) {
+        _numRotors = rotors.length;
+        _size = rotors[0].size();
+        _forward = new int[_numRotors * _size];
+        _backward = new int[_numRotors * _size];
+        _notches = new boolean[_numRotors * _size];
+        _rotates = new boolean[_numRotors];
+        _reflecting = new boolean[_numRotors];
+        _rings = Arrays.copyOf(rings, _numRotors);
+        _plugboard = new int[_size];
+        for (int i = 0; i < _numRotors; i += 1) {
+            Rotor rotor = rotors[i];
+            Permutation perm = rotor.permutation();
+            for (int x = 0; x < _size; x += 1) {
+                _forward[i * _size + x] = perm.permute(x);
+                _backward[i * _size + x] = perm.invert(x);
+            }
+            _rotates[i] = rotor.rotates();
+            _reflecting[i] = rotor.reflecting();
+            if (_rotates[i]) {
+                String notches = rotor.notches();
+                for (int k = 0; k < notches.length(); k += 1) {
+                    int n = rotor.alphabet().toInt(notches.charAt(k));
+                    _notches[i * _size + n] = true;
+                }
+            }
+        }
+        boolean identity = true;
+        for (int x = 0; x < _size; x += 1) {
+            _plugboard[x] = plugboard.permute(x);
+            identity &= _plugboard[x] == x;
+        }
+        _identity = identity;
+    }
+
+    /** An engine with the rotor tables, rings and notches of ENGINE,
+     *  which it shares rather than copies, and plugboard PLUGBOARD. */
+    Engine(Engine engine, Plugboard plugboard) {
+        if (plugboard.size() != engine._size) {
+            throw EnigmaException.error("plugboard is for %d characters, "
+                                        + "not %d", plugboard.size(),
+                                        engine._size);
+        }
+        _numRotors = engine._numRotors;
+        _size = engine._size;
+        _forward = engine._forward;
+        _backward = engine._backward;
+        _notches = engine._notches;
+        _rotates = engine._rotates;
+        _reflecting = engine._reflecting;
+        _rings = engine._rings;
+        _plugboard = plugboard.table().clone();
+        _identity = plugboard.isIdentity();
+    }
+
+    /** Return an engine like me but with plugboard PLUGBOARD, sharing my
+     *  tables, so that changing only the plugboard costs a copy of it
+     *  rather than a rebuild. */
+    abstract Engine withPlugboard(Plugboard plugboard);
+
+    /** Return true iff OTHER and I differ at most in our plugboards,
+     *  one having been made from the other by withPlugboard. */
+    final boolean sharesRotors(Engine other) {
+        return _forward == other._forward && _rings == other._rings;
+    }
+
+    /** Return an engine suited to the alphabet size of ROTORS
+     *  (ROTORS[0] being the reflector), with ring settings RINGS and
+     *  plugboard PLUGBOARD. */
+    static Engine create(Rotor[] rotors, int[] rings, Permutation plugboard) {
+        return create(rotors, rings, plugboard, TableArena.HEAP);
+    }
+
+    /** Return an engine as for create(ROTORS, RINGS, PLUGBOARD) whose
+     *  precomputed tables, if it has any, come from ARENA. */
+    static Engine create(Rotor[] rotors, int[] rings, Permutation plugboard,
+                         TableArena arena) {
+        if (rotors[0].size() <= ByteEngine.MAX_SIZE) {
+            return new ByteEngine(rotors, rings, plugboard, arena);
+        } else {
+            return new IntEngine(rotors, rings, plugboard);
+        }
+    }
+
+    /** Return an engine for the rotors currently inserted in M, using
+     *  their current ring settings, M's plugboard and M's table
+     *  arena. */
+    static Engine of(Machine m) {
+        Rotor[] rotors = m.getMyRotors();
+        int[] rings = new int[rotors.length];
+        for (int i = 0; i < rotors.length; i += 1) {
+            rings[i] = rotors[i].getRing();
+        }
+        return create(rotors, rings, m.getPlugboard(), m.tableArena());
+    }
+
+    /** Return the current positions of the rotors inserted in M, one
+     *  per slot, in the form expected by the other methods. */
+    static int[] positions(Machine m) {
+        Rotor[] rotors = m.getMyRotors();
+        int[] posns = new int[rotors.length];
+        for (int i = 0; i < rotors.length; i += 1) {
+            posns[i] = rotors[i].setting();
+        }
+        return posns;
+    }
+
+    /** Return the size of my alphabet. */
+    final int size() {
+        return _size;
+    }
+
+    /** Return the number of rotor slots I have. */
+    final int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return true iff the rotor in SLOT has a ratchet. */
+    final boolean rotates(int slot) {
+        return _rotates[slot];
+    }
+
+    /** Return true iff the rotor in SLOT is a reflector. */
+    final boolean reflecting(int slot) {
+        return _reflecting[slot];
+    }
+
+    /** Return true iff the rotor in SLOT is at a notch when in
+     *  position POSN. */
+    final boolean atNotch(int slot, int posn) {
+        return _notches[slot * _size + posn];
+    }
+
+    /** Advance POSNS by one keypress, following the same rules as
+     *  Machine.advanceRotorsReference. */
+    final void advance(int[] posns) {
+        int indexAdvance = 1;
+        boolean rotate = true;
+        boolean preAdvanced = true;
+        while (!_reflecting[_numRotors - indexAdvance]) {
+            int slot = _numRotors - indexAdvance;
+            boolean rot = _rotates[slot];
+            boolean notch = rot && _notches[slot * _size + posns[slot]];
+            if (rotate && notch && preAdvanced) {
+                posns[slot] = step(posns[slot]);
+            } else if (preAdvanced && notch
+                    && _notches[(slot - 1) * _size + posns[slot - 1]]) {
+                posns[slot] = step(posns[slot]);
+                rotate = true;
+            } else if (preAdvanced && notch && _rotates[slot - 1]) {
+                posns[slot] = step(posns[slot]);
+                rotate = true;
+            } else if (rotate && rot && indexAdvance == 1) {
+                posns[slot] = step(posns[slot]);
+                rotate = false;
+            } else if (rotate && rot) {
+                posns[slot] = step(posns[slot]);
+                rotate = false;
+                preAdvanced = false;
+            }
+            indexAdvance += 1;
+        }
+    }
+
+    /** Return the conversion of C by the rotors in positions POSNS,
+     *  including the plugboard, without advancing. */
+    final int convert(int[] posns, int c) {
+        if (_identity) {
+            return convertRotors(posns, c);
+        }
+        return _plugboard[convertRotors(posns, _plugboard[c])];
+    }
+
+    /** Return the conversion of C through the rotors alone (no
+     *  plugboard) in positions POSNS. */
+    abstract int convertRotors(int[] posns, int c);
+
+    /** Return the conversion of C by the rotor in SLOT alone, in
+     *  position POSN. */
+    int forward(int slot, int posn, int c) {
+        int shift = posn - _rings[slot];
+        return wrap(_forward[slot * _size + wrap(c + shift)] - shift);
+    }
+
+    /** Return the inverse conversion of C by the rotor in SLOT alone, in
+     *  position POSN. */
+    int backward(int slot, int posn, int c) {
+        int shift = posn - _rings[slot];
+        return wrap(_backward[slot * _size + wrap(c + shift)] - shift);
+    }
+
+    /** Return the plugboard substitution of C. */
+    final int plugboard(int c) {
+        return _plugboard[c];
+    }
+
+    /** Fill OUT with the whole substitution performed by the machine
+     *  (plugboard included) with its rotors in positions POSNS. */
+    final void permutation(int[] posns, int[] out) {
+        for (int c = 0; c < _size; c += 1) {
+            out[c] = convert(posns, c);
+        }
+    }
+
+    /** Fill OUT with the substitution performed, with the rotors in
+     *  positions POSNS, by every slot but the rightmost: in through
+     *  slots numRotors() - 2 down to the reflector and back out.  It
+     *  changes only when a rotor other than the rightmost moves. */
+    final void composite(int[] posns, int[] out) {
+        int slow = _numRotors - 1;
+        for (int c = 0; c < _size; c += 1) {
+            int curr = c;
+            for (int slot = slow - 1; slot >= 0; slot -= 1) {
+                curr = forward(slot, posns[slot], curr);
+            }
+            for (int slot = 1; slot < slow; slot += 1) {
+                curr = backward(slot, posns[slot], curr);
+            }
+            out[c] = curr;
+        }
+    }
+
+    /** Return convert(POSNS, C), given the composite of the other slots
+     *  in positions POSNS, COMPOSITE, as filled in by composite(). */
+    final int convert(int[] posns, int c, int[] composite) {
+        int fast = _numRotors - 1;
+        int curr = forward(fast, posns[fast], _plugboard[c]);
+        return _plugboard[backward(fast, posns[fast], composite[curr])];
+    }
+
+    /** Return POSN advanced by one, modulo the alphabet size. */
+    private int step(int posn) {
+        return posn + 1 == _size ? 0 : posn + 1;
+    }
+
+    /** Return the value of P, which must be in the range
+     *  -size() < P < 2 * size(), modulo the alphabet size.  Positions and
+     *  rings lie in 0 .. size() - 1, so every index formed while
+     *  converting is in that range and needs at most one correction.
+     *  The corrections are done with masks rather than branches, which
+     *  the CPU could not predict. */
+    final int wrap(int p) {
+        int r = p + (_size & (p >> SIGN)) - _size;
+        return r + (_size & (r >> SIGN));
+    }
+
+    /** Shift that turns an int into 0 or -1 according to its sign. */
+    private static final int SIGN = Integer.SIZE - 1;
+
+    /** Alphabet size. */
+    final int _size;
+    /** Number of rotor slots. */
+    final int _numRotors;
+    /** Forward tables at shift 0, _size entries per slot. */
+    final int[] _forward;
+    /** Backward tables at shift 0, _size entries per slot. */
+    final int[] _backward;
+    /** Ring setting of each slot. */
+    final int[] _rings;
+    /** Plugboard table. */
+    private final int[] _plugboard;
+    /** True iff _plugboard is the identity, and may be skipped. */
+    private final boolean _identity;
+    /** Notch flags, _size entries per slot. */
+    private final boolean[] _notches;
+    /** Ratchet flag of each slot. */
+    private final boolean[] _rotates;
+    /** Reflector flag of each slot. */
+    private final boolean[] _reflecting;
+}
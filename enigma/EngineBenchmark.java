@@ -0,0 +1,113 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Compares the speed of the conversion paths of Machine.  Usage:
+ *
+ *      java enigma.EngineBenchmark CONFIG SETTING [CHARACTERS]
+ *
+ *  where CONFIG is a configuration file, SETTING a setting line such as
+ *  "* B Beta I II III AAAA", and CHARACTERS the number of characters
+ *  converted per round (default 10,000,000).  Each path is warmed up and
+ *  then timed over several rounds; the best round is reported.  The
+ *  engine's tables are put where the enigma.tables property says (see
+ *  TableArena.fromProperties).
+ *  @author Shelden Shi
+ */
+public final class EngineBenchmark {
+
+    /** Default number of characters per round. */
+    private static final int DEFAULT_CHARACTERS = 10_000_000;
+    /** Number of timed rounds per path. */
+    private static final int ROUNDS = 5;
+
+    /** Not instantiable. */
+    private EngineBenchmark() {
+    }
+
+    /** A conversion path under test. */
+    interface Path {
+        /** Convert C on M, returning the result. */
+        int convert(Machine m, int c);
+    }
+
+    /** Run the benchmark described by ARGS (see the class comment). */
+    public static void main(String... args) {
+        if (args.length < 2 || args.length > 3) {
+            throw error("Usage: EngineBenchmark CONFIG SETTING [CHARACTERS]");
+        }
+        int chars = args.length > 2 ? Integer.parseInt(args[2])
+            : DEFAULT_CHARACTERS;
+        Machine m = new Main(new String[] {args[0]}).readConfig();
+        m.setTableArena(TableArena.fromProperties());
+        m.setUp(args[1]);
+        report("reference (Rotor calls)", m, chars, Machine::convertReference);
+        report("engine (flat tables)", m, chars, Machine::convert);
+        m.setCompositeCache(new CompositeCache(
+            CompositeCache.DEFAULT_ENTRIES));
+        report("engine + composite cache", m, chars, Machine::convert);
+        m.setCompositeCache(null);
+        reportBatch("batch (scalar kernel)", m, chars, BatchEngine.SCALAR);
+        reportBatch("batch (default kernel)", m, chars, BatchEngine.DEFAULT);
+    }
+
+    /** Number of lanes in the batch rounds. */
+    private static final int LANES = 1024;
+
+    /** Time a BatchEngine using KERNEL over LANES copies of M's current
+     *  configuration, CHARS characters in all, and print the best round
+     *  under the heading NAME. */
+    static void reportBatch(String name, Machine m, int chars,
+                            BatchEngine.Kernel kernel) {
+        int size = m.getAlphabet().size();
+        Engine[] engines = new Engine[LANES];
+        int[][] msgs = new int[LANES][chars / LANES];
+        for (int k = 0; k < LANES; k += 1) {
+            engines[k] = Engine.of(m);
+            for (int i = 0; i < msgs[k].length; i += 1) {
+                msgs[k][i] = (k + i) % size;
+            }
+        }
+        long best = Long.MAX_VALUE;
+        int sink = 0;
+        for (int round = 0; round <= ROUNDS; round += 1) {
+            int[][] posns = new int[LANES][];
+            for (int k = 0; k < LANES; k += 1) {
+                posns[k] = Engine.positions(m);
+            }
+            long start = System.nanoTime();
+            int[][] out = new BatchEngine(engines, posns, kernel)
+                .convert(msgs);
+            long time = System.nanoTime() - start;
+            sink += out[0].length > 0 ? out[0][0] : 0;
+            if (round > 0) {
+                best = Math.min(best, time);
+            }
+        }
+        int total = LANES * msgs[0].length;
+        System.out.printf("%-28s %8.2f ns/char %12.0f chars/s (%d)%n", name,
+                          (double) best / total, total * 1e9 / best,
+                          sink & 1);
+    }
+
+    /** Time PATH on M over rounds of CHARS characters and print the best
+     *  round under the heading NAME. */
+    static void report(String name, Machine m, int chars, Path path) {
+        long best = Long.MAX_VALUE;
+        int sink = 0;
+        int size = m.getAlphabet().size();
+        for (int round = 0; round <= ROUNDS; round += 1) {
+            long start = System.nanoTime();
+            for (int k = 0; k < chars; k += 1) {
+                sink += path.convert(m, k % size);
+            }
+            long time = System.nanoTime() - start;
+            if (round > 0) {
+                best = Math.min(best, time);
+            }
+        }
+        System.out.printf("%-28s %8.2f ns/char %12.0f chars/s (%d)%n", name,
+                          (double) best / chars, chars * 1e9 / best,
+                          sink & 1);
+    }
+}
@@ -0,0 +1,300 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Engine classes.
+ *  @author Shelden Shi
+ */
+public class EngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a string of SIZE distinct characters starting at FIRST. */
+    static String alphabetChars(char first, int size) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < size; k += 1) {
+            result.append((char) (first + k));
+        }
+        return result.toString();
+    }
+
+    /** Return a random permutation of CHARS in cycle notation, drawn
+     *  from RANDOM; if PAIRS, a fixed-point-free involution. */
+    static String randomCycles(String chars, Random random, boolean pairs) {
+        List<Character> shuffled = new ArrayList<>();
+        for (char ch : chars.toCharArray()) {
+            shuffled.add(ch);
+        }
+        Collections.shuffle(shuffled, random);
+        StringBuilder result = new StringBuilder();
+        int k = 0;
+        while (k < shuffled.size()) {
+            int len = pairs ? 2 : 1 + random.nextInt(shuffled.size() - k);
+            len = Math.min(len, shuffled.size() - k);
+            result.append('(');
+            for (int j = 0; j < len; j += 1) {
+                result.append(shuffled.get(k + j));
+            }
+            result.append(')');
+            k += len;
+        }
+        return result.toString();
+    }
+
+    /** Return a random machine over CHARS with NUMROTORS slots and PAWLS
+     *  pawls, with its rotors inserted, drawn from RANDOM. */
+    static Machine randomMachine(String chars, int numRotors, int pawls,
+                                 Random random) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] order = new String[numRotors];
+        order[0] = "R";
+        rotors.add(new Reflector("R", new Permutation(
+            randomCycles(chars, random, true), new Alphabet(chars))));
+        for (int i = 1; i < numRotors; i += 1) {
+            order[i] = "R" + i;
+            Permutation perm = new Permutation(
+                randomCycles(chars, random, false), new Alphabet(chars));
+            if (i < numRotors - pawls) {
+                rotors.add(new FixedRotor(order[i], perm));
+            } else {
+                String notches = "";
+                for (int n = 1 + random.nextInt(3); n > 0; n -= 1) {
+                    notches += chars.charAt(random.nextInt(chars.length()));
+                }
+                rotors.add(new MovingRotor(order[i], perm, notches));
+            }
+        }
+        Machine m = new Machine(new Alphabet(chars), numRotors, pawls,
+                                rotors);
+        m.insertRotors(order);
+        String ring = "", posns = "";
+        for (int i = 1; i < numRotors; i += 1) {
+            ring += chars.charAt(random.nextInt(chars.length()));
+            posns += chars.charAt(random.nextInt(chars.length()));
+        }
+        m.setRing(ring);
+        m.setRotors(posns);
+        m.setPlugboard(new Permutation(
+            randomCycles(chars.substring(0, chars.length() / 2), random, true),
+            new Alphabet(chars)));
+        return m;
+    }
+
+    /** Check that the engine chosen for M converts LENGTH characters
+     *  as the reference path does on the same machine. */
+    private void checkAgainstReference(Machine m, int length, Random random) {
+        String posns = "";
+        for (Rotor r : m.getMyRotors()) {
+            if (!r.reflecting()) {
+                posns += m.getAlphabet().toChar(r.setting());
+            }
+        }
+        int size = m.getAlphabet().size();
+        int[] input = new int[length];
+        int[] expected = new int[length];
+        for (int k = 0; k < length; k += 1) {
+            input[k] = random.nextInt(size);
+            expected[k] = m.convertReference(input[k]);
+        }
+        m.setRotors(posns);
+        for (int k = 0; k < length; k += 1) {
+            assertEquals(msg("engine", "char %d", k), expected[k],
+                         m.convert(input[k]));
+        }
+    }
+
+    @Test
+    public void checkEngineChoice() {
+        Random random = new Random(3);
+        Machine small = randomMachine(alphabetChars('A', 26), 5, 3, random);
+        Machine large = randomMachine(alphabetChars('\u0100', 300), 4, 2,
+                                      random);
+        assertTrue(Engine.of(small) instanceof ByteEngine);
+        assertTrue(Engine.of(large) instanceof IntEngine);
+    }
+
+    @Test
+    public void checkEnginesMatchReference() {
+        Random random = new Random(5);
+        int[] sizes = {2, 5, 26, 61, 256, 257, 300};
+        for (int size : sizes) {
+            for (int trial = 0; trial < 3; trial += 1) {
+                int numRotors = 2 + random.nextInt(5);
+                int pawls = 1 + random.nextInt(numRotors - 1);
+                Machine m = randomMachine(alphabetChars('\u00C0', size),
+                                          numRotors, pawls, random);
+                checkAgainstReference(m, 2000, random);
+            }
+        }
+    }
+
+    @Test
+    public void checkConvertAscii() {
+        Machine m = navalMachine(5, 3);
+        m.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        m.setRotors("AAAA");
+        m.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+        byte[] text = "HELLO WORLD".getBytes();
+        m.convertAscii(text, 0, text.length);
+        assertEquals("IHBDQ QMTQZ", new String(text));
+    }
+
+    @Test
+    public void checkConvertAsciiSkipsWhatConvertSkips() {
+        Machine m = navalMachine(5, 3);
+        String setting = "* B Beta I II III AAAA (AQ) (EP)";
+        m.setUp(setting);
+        byte[] text = "HEL\tLO\u000BWORLD".getBytes();
+        m.convertAscii(text, 0, text.length);
+        assertEquals("IHB\tDQ\u000BQMTQZ", new String(text));
+        for (char ch = '\u001C'; ch <= '\u001F'; ch += 1) {
+            String msg = "HELLO" + ch;
+            m.setUp(setting);
+            try {
+                m.convert(msg);
+                fail("convert accepted " + (int) ch);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+            m.setUp(setting);
+            try {
+                byte[] bytes = msg.getBytes();
+                m.convertAscii(bytes, 0, bytes.length);
+                fail("convertAscii accepted " + (int) ch);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    /** Return a random setting line for a naval machine with five slots
+     *  and three pawls, drawn from RANDOM. */
+    private static String randomSetting(Random random) {
+        List<String> moving = new ArrayList<>(List.of(
+            "I", "II", "III", "IV", "V", "VI", "VII", "VIII"));
+        Collections.shuffle(moving, random);
+        StringBuilder result = new StringBuilder("* ");
+        result.append(random.nextBoolean() ? "B " : "C ");
+        result.append(random.nextBoolean() ? "Beta " : "Gamma ");
+        result.append(String.join(" ", moving.subList(0, 3))).append(' ');
+        for (int i = 0; i < 4; i += 1) {
+            result.append(UPPER_STRING.charAt(random.nextInt(26)));
+        }
+        if (random.nextBoolean()) {
+            result.append(' ');
+            for (int i = 0; i < 4; i += 1) {
+                result.append(UPPER_STRING.charAt(random.nextInt(26)));
+            }
+        }
+        result.append(' ').append(randomCycles(
+            UPPER_STRING.substring(0, 2 * random.nextInt(6)), random, true));
+        return result.toString();
+    }
+
+    /** Return a random message of up to MAXLENGTH letters, drawn from
+     *  RANDOM, with some spaces. */
+    private static String randomMessage(int maxLength, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int n = random.nextInt(maxLength + 1); n > 0; n -= 1) {
+            result.append(UPPER_STRING.charAt(random.nextInt(26)));
+            if (random.nextInt(7) == 0) {
+                result.append(' ');
+            }
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void checkBatchMatchesSequential() {
+        Random random = new Random(11);
+        for (int lanes : new int[] {1, 3, 17, 64}) {
+            String[] settings = new String[lanes];
+            String[] messages = new String[lanes];
+            for (int k = 0; k < lanes; k += 1) {
+                settings[k] = randomSetting(random);
+                messages[k] = randomMessage(300, random);
+            }
+            Machine seq = navalMachine(5, 3);
+            Machine batch = navalMachine(5, 3);
+            String[] result = batch.convertBatch(settings, messages);
+            for (int k = 0; k < lanes; k += 1) {
+                seq.setUp(settings[k]);
+                assertEquals(msg("batch", "lane %d of %d", k, lanes),
+                             seq.convert(messages[k]), result[k]);
+            }
+            String tail = randomMessage(50, random);
+            assertEquals(msg("batch", "state after %d lanes", lanes),
+                         seq.convert(tail), batch.convert(tail));
+        }
+    }
+
+    @Test
+    public void checkBatchKernelsAgree() {
+        Random random = new Random(13);
+        int lanes = 37;
+        Engine[] engines = new Engine[lanes];
+        int[][] posns = new int[lanes][];
+        int[][] msgs = new int[lanes][];
+        for (int k = 0; k < lanes; k += 1) {
+            Machine m = randomMachine(alphabetChars('\u0100', 300), 5, 3,
+                                      random);
+            engines[k] = Engine.of(m);
+            posns[k] = Engine.positions(m);
+            msgs[k] = new int[random.nextInt(400)];
+            for (int i = 0; i < msgs[k].length; i += 1) {
+                msgs[k][i] = random.nextInt(300);
+            }
+        }
+        int[][] scalar = new BatchEngine(engines, clone(posns),
+                                         BatchEngine.SCALAR).convert(msgs);
+        int[][] fast = new BatchEngine(engines, clone(posns),
+                                       BatchEngine.DEFAULT).convert(msgs);
+        for (int k = 0; k < lanes; k += 1) {
+            int[] p = posns[k].clone();
+            for (int i = 0; i < msgs[k].length; i += 1) {
+                engines[k].advance(p);
+                assertEquals(msg("kernel", "lane %d char %d", k, i),
+                             engines[k].convert(p, msgs[k][i]),
+                             scalar[k][i]);
+            }
+            assertArrayEquals(scalar[k], fast[k]);
+        }
+    }
+
+    @Test
+    public void checkDefaultKernelIsVector() {
+        boolean wanted =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && Boolean.parseBoolean(System.getProperty("enigma.vector",
+                                                       "true"));
+        if (wanted) {
+            assertEquals("vector module present but not used",
+                         BatchEngine.VECTOR_KERNEL,
+                         BatchEngine.DEFAULT.getClass().getName());
+        } else {
+            assertSame(BatchEngine.SCALAR, BatchEngine.DEFAULT);
+        }
+    }
+
+    /** Return a deep copy of POSNS. */
+    private static int[][] clone(int[][] posns) {
+        int[][] result = new int[posns.length][];
+        for (int k = 0; k < posns.length; k += 1) {
+            result[k] = posns[k].clone();
+        }
+        return result;
+    }
+
+}
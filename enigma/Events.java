@@ -0,0 +1,85 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Java Flight Recorder event types for the simulator.  Each is begun
+ *  and committed around a whole operation (a configuration, a setting
+ *  line, a message, a lookup), never around a single character, and none
+ *  records a stack trace, so they are cheap enough to leave enabled.
+ *  @author Shelden Shi
+ */
+final class Events {
+
+    /** Not instantiable. */
+    private Events() {
+    }
+
+    /** Reading a machine configuration. */
+    @Name("enigma.ConfigLoad")
+    @Label("Config Load")
+    @Category("Enigma")
+    @Description("Reading a machine configuration")
+    @StackTrace(false)
+    static final class ConfigLoad extends Event {
+        /** Alphabet size. */
+        @Label("Alphabet Size")
+        int alphabetSize;
+        /** Number of rotors available. */
+        @Label("Rotors Available")
+        int rotors;
+        /** Number of rotor slots. */
+        @Label("Slots")
+        int slots;
+    }
+
+    /** Applying a setting line. */
+    @Name("enigma.SetUp")
+    @Label("Set Up")
+    @Category("Enigma")
+    @Description("Applying a setting line")
+    @StackTrace(false)
+    static final class SetUp extends Event {
+        /** Rotor names, reflector first. */
+        @Label("Rotor Order")
+        String rotorOrder;
+        /** Length of the setting line. */
+        @Label("Setting Length")
+        int settingLength;
+    }
+
+    /** One call of a Machine that converts a run of characters: a
+     *  message, a line or buffer of a stream, or a batch of messages. */
+    @Name("enigma.ConvertBatch")
+    @Label("Convert Batch")
+    @Category("Enigma")
+    @Description("Converting a message, buffer or batch of messages")
+    @StackTrace(false)
+    static final class ConvertBatch extends Event {
+        /** Number of characters converted. */
+        @Label("Characters")
+        int characters;
+    }
+
+    /** Looking a key up in a cache or index. */
+    @Name("enigma.CacheLookup")
+    @Label("Cache Lookup")
+    @Category("Enigma")
+    @Description("Looking a key up in a cache or index")
+    @StackTrace(false)
+    static final class CacheLookup extends Event {
+        /** Which cache. */
+        @Label("Cache")
+        String cache;
+        /** Whether the key was found. */
+        @Label("Hit")
+        boolean hit;
+        /** Number of entries returned. */
+        @Label("Entries")
+        int entries;
+    }
+}
@@ -0,0 +1,103 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Events class: the flight
+ *  recorder events of Machine, recorded and read back.
+ *  @author Shelden Shi
+ */
+public class EventsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Return the events named NAME among EVENTS. */
+    private static List<RecordedEvent> named(List<RecordedEvent> events,
+                                             String name) {
+        return events.stream()
+            .filter(e -> e.getEventType().getName().equals(name))
+            .toList();
+    }
+
+    /** Return the events recorded while setting a naval machine up with
+     *  SETTING and converting MESSAGE on it. */
+    private static List<RecordedEvent> record(String setting,
+                                              String message)
+        throws IOException {
+        Machine m = navalMachine(5, 3);
+        return record(() -> {
+            m.setUp(setting);
+            m.convert(message);
+        });
+    }
+
+    /** Return the events recorded while running ACTION. */
+    private static List<RecordedEvent> record(Runnable action)
+        throws IOException {
+        Path file = Files.createTempFile("events", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("enigma.SetUp").withThreshold(null);
+            recording.enable("enigma.ConvertBatch").withThreshold(null);
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void setUpAndConvertEvents() throws IOException {
+        String setting = "* B Beta III IV I AXLE (YF) (ZH)";
+        List<RecordedEvent> events =
+            record(setting, " HELLO\tWORLD  FROM HIS ");
+        List<RecordedEvent> setUps = named(events, "enigma.SetUp");
+        assertEquals(1, setUps.size());
+        assertEquals("B Beta III IV I",
+                     setUps.get(0).getString("rotorOrder"));
+        assertEquals(setting.length(),
+                     setUps.get(0).getInt("settingLength"));
+        List<RecordedEvent> converts =
+            named(events, "enigma.ConvertBatch");
+        assertEquals(1, converts.size());
+        assertEquals(17, converts.get(0).getInt("characters"));
+    }
+
+    @Test
+    public void otherConvertPathsCommitOneEventPerCall()
+        throws IOException {
+        Machine m = navalMachine(5, 3);
+        m.setUp("* B Beta III IV I AXLE (YF) (ZH)");
+        char[] line = " HELLO\tWORLD ".toCharArray();
+        byte[] ascii = "FROM HIS SHOULDER".getBytes();
+        List<RecordedEvent> events = record(() -> {
+            m.convert(line, line.length, new char[2 * line.length]);
+            m.convertAscii(ascii, 0, ascii.length);
+            m.convertBatch(new String[] {"* B Beta I II III AAAA",
+                                         "* B Beta I II III ZZZZ"},
+                           new String[] {"ABC DE", "FGHIJKL"});
+        });
+        List<RecordedEvent> converts =
+            named(events, "enigma.ConvertBatch");
+        assertEquals(3, converts.size());
+        assertEquals(10, converts.get(0).getInt("characters"));
+        assertEquals(15, converts.get(1).getInt("characters"));
+        assertEquals(12, converts.get(2).getInt("characters"));
+    }
+}
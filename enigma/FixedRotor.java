@@ -3,7 +3,7 @@ package enigma;
 /** Class that represents a rotor that has no ratchet and does not advance.
  *  @author Shelden Shi
  */
-class FixedRotor extends Rotor {
+sealed class FixedRotor extends Rotor permits Reflector {
 
     /** A non-moving rotor named NAME whose permutation at the 0 setting
      * is given by PERM. */
@@ -0,0 +1,273 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A score of a trial decryption taken one character at a time, as the
+ *  machine produces them, that can say at any point how high the final
+ *  score could still go.  TopK uses the bound to give up on a candidate
+ *  as soon as it can no longer make the ranking.  Instances hold the
+ *  state of one decryption and are not thread-safe; each worker thread
+ *  takes its own.  Higher scores are better.
+ *  @author Shelden Shi
+ */
+interface IncrementalScorer {
+
+    /** Start scoring a new decryption of LENGTH characters. */
+    void reset(int length);
+
+    /** Take the next character C (an alphabet index) of the
+     *  decryption. */
+    void add(int c);
+
+    /** Return the score of the characters taken so far; once all have
+     *  been, the final score. */
+    double score();
+
+    /** Return an upper bound on the final score, given that REMAINING
+     *  characters are yet to be taken. */
+    double bound(int remaining);
+
+    /** Index of coincidence: the chance that two characters drawn from
+     *  the decryption are alike.  The bound puts every remaining
+     *  character on the most frequent one so far, which is the most the
+     *  sum of f(f - 1) over the character counts f can grow, that sum
+     *  being convex. */
+    final class Coincidence implements IncrementalScorer {
+        /** A scorer over an alphabet of SIZE characters. */
+        Coincidence(int size) {
+            _counts = new int[size];
+        }
+
+        @Override
+        public void reset(int length) {
+            Arrays.fill(_counts, 0);
+            _length = length;
+            _pairs = 0;
+            _max = 0;
+        }
+
+        @Override
+        public void add(int c) {
+            _pairs += 2L * _counts[c];
+            _counts[c] += 1;
+            _max = Math.max(_max, _counts[c]);
+        }
+
+        @Override
+        public double score() {
+            return ratio(_pairs);
+        }
+
+        @Override
+        public double bound(int remaining) {
+            long top = _max + remaining;
+            return ratio(_pairs + top * (top - 1)
+                         - (long) _max * (_max - 1));
+        }
+
+        /** Return PAIRS over the number of ordered pairs of distinct
+         *  characters in the whole decryption. */
+        private double ratio(long pairs) {
+            return _length < 2 ? 0
+                : (double) pairs / ((long) _length * (_length - 1));
+        }
+
+        /** Count of each character so far. */
+        private final int[] _counts;
+        /** Length of the decryption. */
+        private int _length;
+        /** Sum of f(f - 1) over the counts f. */
+        private long _pairs;
+        /** Largest count. */
+        private int _max;
+    }
+
+    /** Log-likelihood of the decryption under a table of n-gram log
+     *  probabilities: the sum of the entries for each n characters in a
+     *  row.  The bound adds the largest entry for each n-gram still to
+     *  end. */
+    final class Ngrams implements IncrementalScorer {
+        /** A scorer for N-grams over an alphabet of SIZE characters
+         *  whose log probabilities are LOGPROBS, entry
+         *  C1 * SIZE ** (N - 1) + ... + CN being that of C1 ... CN. */
+        Ngrams(int n, int size, double[] logProbs) {
+            long entries = (long) Math.pow(size, n);
+            if (n < 1 || logProbs.length != entries) {
+                throw error("bad n-gram table");
+            }
+            _n = n;
+            _modulus = (int) (entries / size);
+            _size = size;
+            _logProbs = logProbs.clone();
+            _max = Arrays.stream(logProbs).max().getAsDouble();
+        }
+
+        /** Return the table of N-gram log probabilities over an alphabet
+         *  of SIZE characters estimated from CORPUS (alphabet indices),
+         *  each count being increased by one so that no entry is
+         *  infinite. */
+        static double[] train(int n, int size, int[] corpus) {
+            double[] result = new double[(int) Math.pow(size, n)];
+            int modulus = result.length / size;
+            int code = 0;
+            long total = result.length;
+            for (int k = 0; k < corpus.length; k += 1) {
+                code = code % modulus * size + corpus[k];
+                if (k >= n - 1) {
+                    result[code] += 1;
+                    total += 1;
+                }
+            }
+            for (int k = 0; k < result.length; k += 1) {
+                result[k] = Math.log((result[k] + 1) / total);
+            }
+            return result;
+        }
+
+        @Override
+        public void reset(int length) {
+            _code = 0;
+            _taken = 0;
+            _score = 0;
+        }
+
+        @Override
+        public void add(int c) {
+            _code = _code % _modulus * _size + c;
+            _taken += 1;
+            if (_taken >= _n) {
+                _score += _logProbs[_code];
+            }
+        }
+
+        @Override
+        public double score() {
+            return _score;
+        }
+
+        @Override
+        public double bound(int remaining) {
+            int ending = Math.min(remaining, _taken + remaining - _n + 1);
+            return _score + Math.max(ending, 0) * _max;
+        }
+
+        /** N-gram length. */
+        private final int _n;
+        /** SIZE ** (N - 1). */
+        private final int _modulus;
+        /** Alphabet size. */
+        private final int _size;
+        /** The table. */
+        private final double[] _logProbs;
+        /** Largest entry of the table. */
+        private final double _max;
+        /** Code of the last N characters. */
+        private int _code;
+        /** Characters taken. */
+        private int _taken;
+        /** Score so far. */
+        private double _score;
+    }
+
+    /** Number of occurrences of the words of a DictionaryFilter.  The
+     *  bound allows the most words that can end at once at every
+     *  remaining character from the first at which one can end. */
+    final class Hits implements IncrementalScorer {
+        /** A scorer counting the words of FILTER. */
+        Hits(DictionaryFilter filter) {
+            _filter = filter;
+        }
+
+        @Override
+        public void reset(int length) {
+            _state = DictionaryFilter.START;
+            _hits = 0;
+        }
+
+        @Override
+        public void add(int c) {
+            _state = _filter.next(_state, c);
+            _hits += _filter.hits(_state);
+        }
+
+        @Override
+        public double score() {
+            return _hits;
+        }
+
+        @Override
+        public double bound(int remaining) {
+            int need = Math.max(_filter.need(_state), 1);
+            if (need > remaining) {
+                return _hits;
+            }
+            return _hits + (double) (remaining - need + 1)
+                * _filter.maxHits();
+        }
+
+        /** The dictionary. */
+        private final DictionaryFilter _filter;
+        /** State of the automaton. */
+        private int _state;
+        /** Words found so far. */
+        private int _hits;
+    }
+
+    /** A weighted sum of other scores.  With the weights not negative,
+     *  the same sum of their bounds is a bound. */
+    final class Sum implements IncrementalScorer {
+        /** The sum of SCORERS, each multiplied by its entry in
+         *  WEIGHTS. */
+        Sum(double[] weights, IncrementalScorer... scorers) {
+            if (weights.length != scorers.length) {
+                throw error("need one weight per scorer");
+            }
+            for (double w : weights) {
+                if (!(w >= 0)) {
+                    throw error("negative weight");
+                }
+            }
+            _weights = weights.clone();
+            _scorers = scorers.clone();
+        }
+
+        @Override
+        public void reset(int length) {
+            for (IncrementalScorer scorer : _scorers) {
+                scorer.reset(length);
+            }
+        }
+
+        @Override
+        public void add(int c) {
+            for (IncrementalScorer scorer : _scorers) {
+                scorer.add(c);
+            }
+        }
+
+        @Override
+        public double score() {
+            double result = 0;
+            for (int k = 0; k < _scorers.length; k += 1) {
+                result += _weights[k] * _scorers[k].score();
+            }
+            return result;
+        }
+
+        @Override
+        public double bound(int remaining) {
+            double result = 0;
+            for (int k = 0; k < _scorers.length; k += 1) {
+                result += _weights[k] * _scorers[k].bound(remaining);
+            }
+            return result;
+        }
+
+        /** The weights. */
+        private final double[] _weights;
+        /** The scores summed. */
+        private final IncrementalScorer[] _scorers;
+    }
+}
@@ -0,0 +1,110 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the IncrementalScorer classes.
+ *  @author Shelden Shi
+ */
+public class IncrementalScorerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Text on which n-gram tables are trained. */
+    static final String CORPUS =
+        "FROM THE SHORES OF GITCHE GUMEE BY THE SHINING BIG SEA WATER "
+        + "STOOD THE WIGWAM OF NOKOMIS DAUGHTER OF THE MOON NOKOMIS "
+        + "DARK BEHIND IT ROSE THE FOREST ROSE THE BLACK AND GLOOMY PINE "
+        + "TREES ROSE THE FIRS WITH CONES UPON THEM BRIGHT BEFORE IT BEAT "
+        + "THE WATER BEAT THE CLEAR AND SUNNY WATER BEAT THE SHINING BIG "
+        + "SEA WATER";
+
+    /** Return scorers of each kind, for the 26-letter alphabet. */
+    static IncrementalScorer[] scorers() {
+        int[] corpus = CribFilter.toIndices(CORPUS, UPPER);
+        DictionaryFilter words = DictionaryFilter.of(
+            Arrays.asList("THE", "WATER", "ROSE", "SEA"), UPPER);
+        return new IncrementalScorer[] {
+            new IncrementalScorer.Coincidence(26),
+            new IncrementalScorer.Ngrams(
+                1, 26, IncrementalScorer.Ngrams.train(1, 26, corpus)),
+            new IncrementalScorer.Ngrams(
+                3, 26, IncrementalScorer.Ngrams.train(3, 26, corpus)),
+            new IncrementalScorer.Hits(words),
+            new IncrementalScorer.Sum(
+                new double[] {100, 0.5},
+                new IncrementalScorer.Coincidence(26),
+                new IncrementalScorer.Hits(words)),
+        };
+    }
+
+    @Test
+    public void checkBounds() {
+        Random random = new Random(5);
+        int[] corpus = CribFilter.toIndices(CORPUS, UPPER);
+        for (IncrementalScorer scorer : scorers()) {
+            for (int trial = 0; trial < 200; trial += 1) {
+                int[] text = new int[1 + random.nextInt(60)];
+                int from = random.nextInt(corpus.length - text.length);
+                for (int k = 0; k < text.length; k += 1) {
+                    text[k] = trial % 2 == 0 ? corpus[from + k]
+                        : random.nextInt(26);
+                }
+                double[] bounds = new double[text.length + 1];
+                scorer.reset(text.length);
+                for (int k = 0; k < text.length; k += 1) {
+                    bounds[k] = scorer.bound(text.length - k);
+                    scorer.add(text[k]);
+                }
+                double score = scorer.score();
+                assertEquals(score, scorer.bound(0), 1e-9);
+                for (int k = 0; k < text.length; k += 1) {
+                    assertTrue(msg("bound", "%s at %d",
+                                   scorer.getClass().getSimpleName(), k),
+                               bounds[k] >= score - 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checkScores() {
+        IncrementalScorer ioc = new IncrementalScorer.Coincidence(26);
+        int[] text = CribFilter.toIndices("AABBBC", UPPER);
+        ioc.reset(text.length);
+        for (int c : text) {
+            ioc.add(c);
+        }
+        assertEquals((2.0 + 6.0) / 30, ioc.score(), 1e-12);
+
+        IncrementalScorer hits = new IncrementalScorer.Hits(
+            DictionaryFilter.of(Arrays.asList("AN", "NAN"), UPPER));
+        text = CribFilter.toIndices("BANANA", UPPER);
+        hits.reset(text.length);
+        for (int c : text) {
+            hits.add(c);
+        }
+        assertEquals(3, hits.score(), 0);
+
+        double[] table = IncrementalScorer.Ngrams.train(
+            2, 26, CribFilter.toIndices("ABAB", UPPER));
+        assertEquals(Math.log(3.0 / (26 * 26 + 3)), table[1], 1e-12);
+        assertEquals(Math.log(2.0 / (26 * 26 + 3)), table[26], 1e-12);
+        try {
+            new IncrementalScorer.Ngrams(2, 26, new double[26]);
+            fail("accepted a table of the wrong size");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package enigma;
+
+/** The engine for alphabets too large for ByteEngine.  Each slot keeps a
+ *  single table for its 0 position, and the offset of the rotor is
+ *  added and removed around each lookup.
+ *  @author Shelden Shi
+ */
+final class IntEngine extends Engine {
+
+    /** An engine for ROTORS (ROTORS[0] being the reflector) with ring
+     *  settings RINGS and plugboard PLUGBOARD. */
+    IntEngine(Rotor[] rotors, int[] rings, Permutation plugboard) {
+        super(rotors, rings, plugboard);
+    }
+
+    /** An engine sharing the tables of ENGINE, with plugboard
+     *  PLUGBOARD. */
+    private IntEngine(IntEngine engine, Plugboard plugboard) {
+        super(engine, plugboard);
+    }
+
+    @Override
+    IntEngine withPlugboard(Plugboard plugboard) {
+        return new IntEngine(this, plugboard);
+    }
+
+    @Override
+    int convertRotors(int[] posns, int c) {
+        int size = _size;
+        int curr = c;
+        for (int slot = _numRotors - 1; slot >= 0; slot -= 1) {
+            int shift = posns[slot] - _rings[slot];
+            curr = wrap(_forward[slot * size + wrap(curr + shift)] - shift);
+        }
+        for (int slot = 1; slot < _numRotors; slot += 1) {
+            int shift = posns[slot] - _rings[slot];
+            curr = wrap(_backward[slot * size + wrap(curr + shift)] - shift);
+        }
+        return curr;
+    }
+}
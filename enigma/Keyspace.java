@@ -0,0 +1,463 @@
+package enigma;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** The settings of a configured machine (the start positions and rings
+ *  of its rotors, for a fixed rotor order and plugboard), up to those
+ *  that convert a message of a given length alike.  Three symmetries
+ *  are removed:
+ *
+ *  - A slot that never rotates is affected only by its position less
+ *    its ring, so its ring is taken to be 0.
+ *  - The fixed slots to the left of the first moving rotor, together
+ *    with the reflector, form one substitution.  Offsets of those slots
+ *    that give the same substitution are equivalent, and the smallest is
+ *    taken.
+ *  - A moving rotor's wiring is likewise affected only by its position
+ *    less its ring, but its notch goes by its position.  Starts of the
+ *    moving rotors that step them alike over the message fall into one
+ *    timing class, and the first start of the class is taken, with the
+ *    rings that keep the offsets.
+ *
+ *  canonical maps a setting to the representative of its class, and
+ *  enumerate visits the representatives alone.  reduction is the factor
+ *  by which that shrinks the space of settings.  From the command line,
+ *
+ *      java enigma.Keyspace CONFIG LENGTH SETTING...
+ *
+ *  reports the reduction for the rotor order of each SETTING over
+ *  messages of LENGTH characters.
+ *  @author Shelden Shi
+ */
+final class Keyspace {
+
+    /** Receives canonical settings. */
+    interface Visitor {
+        /** Called with the start positions START and rings RINGS (one
+         *  per slot, slot 0 being the reflector) of a canonical setting.
+         *  Both arrays are reused and must not be kept. */
+        void visit(int[] start, int[] rings);
+    }
+
+    /** The settings of ENGINE's rotors over messages of LENGTH
+     *  characters.  The rings of ENGINE are ignored, save the
+     *  reflector's. */
+    Keyspace(Engine engine, int length) {
+        _engine = engine;
+        _size = engine.size();
+        _length = length;
+        int numRotors = engine.numRotors();
+        int first = numRotors;
+        int[] moving = new int[numRotors];
+        int[] stuck = new int[numRotors];
+        int k = 0, s = 0;
+        for (int slot = 1; slot < numRotors; slot += 1) {
+            if (engine.rotates(slot)) {
+                first = Math.min(first, slot);
+                moving[k] = slot;
+                k += 1;
+            } else if (first < slot) {
+                stuck[s] = slot;
+                s += 1;
+            }
+        }
+        _moving = Arrays.copyOf(moving, k);
+        _stuck = Arrays.copyOf(stuck, s);
+        _fixed = first - 1;
+        _offsets = power(k);
+        _stuckOffsets = power(s);
+        _fixedClasses = fixedClasses();
+        _timings = classifyTimings();
+    }
+
+    /** Return _size ** K, which must fit in an int. */
+    private int power(int k) {
+        long result = 1;
+        for (int j = 0; j < k; j += 1) {
+            result *= _size;
+            if (result > Integer.MAX_VALUE) {
+                throw error("too many settings to enumerate");
+            }
+        }
+        return (int) result;
+    }
+
+    /** Run the report described in the class comment, as ARGS say. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3) {
+                throw error("Usage: Keyspace CONFIG LENGTH SETTING...");
+            }
+            Machine m = new Main(new String[] {args[0]}).readConfig();
+            int length;
+            try {
+                length = Integer.parseInt(args[1]);
+            } catch (NumberFormatException excp) {
+                throw error("bad length: %s", args[1]);
+            }
+            for (int k = 2; k < args.length; k += 1) {
+                m.setUp(args[k]);
+                Keyspace keys = new Keyspace(Engine.of(m), length);
+                System.out.printf("%s: %s settings, %s canonical, "
+                                  + "reduction %.1f%n", args[k],
+                                  keys.settings(), keys.canonicalSettings(),
+                                  keys.reduction());
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the message length. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the slots of the moving rotors, leftmost first. */
+    int[] moving() {
+        return _moving.clone();
+    }
+
+    /** Return the number of offset classes of the moving rotors. */
+    int offsetClasses() {
+        return _offsets;
+    }
+
+    /** Return the timing classes of the moving rotors, in lexicographic
+     *  order of their moves. */
+    List<Timing> timings() {
+        return _timings;
+    }
+
+    /** Return the number of settings: a position and a ring for every
+     *  slot but the reflector. */
+    BigInteger settings() {
+        return BigInteger.valueOf(_size)
+            .pow(2 * (_engine.numRotors() - 1));
+    }
+
+    /** Return the number of canonical settings. */
+    BigInteger canonicalSettings() {
+        return BigInteger.valueOf(_fixedCodes.size())
+            .multiply(BigInteger.valueOf(_stuckOffsets))
+            .multiply(BigInteger.valueOf(_offsets))
+            .multiply(BigInteger.valueOf(_timings.size()));
+    }
+
+    /** Return the factor by which canonicalization reduces the number of
+     *  settings. */
+    double reduction() {
+        return new BigDecimal(settings())
+            .divide(new BigDecimal(canonicalSettings()),
+                    MathContext.DECIMAL64).doubleValue();
+    }
+
+    /** Return the canonical setting equivalent to start positions START
+     *  and rings RINGS (one per slot, slot 0 being the reflector), as
+     *  {start, rings}. */
+    int[][] canonical(int[] start, int[] rings) {
+        int[] cstart = start.clone();
+        int[] crings = rings.clone();
+        int code = 0;
+        for (int slot = 1; slot <= _fixed; slot += 1) {
+            code = code * _size + _engine.wrap(start[slot] - rings[slot]);
+        }
+        digits(_fixedClasses[code], cstart, 1, _fixed);
+        for (int slot = 1; slot <= _fixed; slot += 1) {
+            crings[slot] = 0;
+        }
+        for (int slot : _stuck) {
+            cstart[slot] = _engine.wrap(start[slot] - rings[slot]);
+            crings[slot] = 0;
+        }
+        int[] posns = start.clone();
+        Timing timing =
+            _timingIndex.get(new Timing(turnovers(posns), -1, 0));
+        int[] first = new int[_moving.length];
+        digits(timing._first, first);
+        for (int j = 0; j < _moving.length; j += 1) {
+            int slot = _moving[j];
+            cstart[slot] = first[j];
+            crings[slot] = _engine.wrap(
+                rings[slot] + _engine.wrap(first[j] - start[slot]));
+        }
+        return new int[][] {cstart, crings};
+    }
+
+    /** Pass each canonical setting to VISITOR.  Returns the number
+     *  visited. */
+    long enumerate(Visitor visitor) {
+        int n = _engine.numRotors();
+        int[] start = new int[n];
+        int[] rings = new int[n];
+        rings[0] = _engine._rings[0];
+        int[] offsets = new int[_moving.length];
+        int[] first = new int[_moving.length];
+        int[] stuck = new int[_stuck.length];
+        long count = 0;
+        for (int fixed : _fixedCodes) {
+            digits(fixed, start, 1, _fixed);
+            for (int s = 0; s < _stuckOffsets; s += 1) {
+                digits(s, stuck);
+                for (int j = 0; j < _stuck.length; j += 1) {
+                    start[_stuck[j]] = stuck[j];
+                }
+                for (int o = 0; o < _offsets; o += 1) {
+                    digits(o, offsets);
+                    for (Timing timing : _timings) {
+                        digits(timing._first, first);
+                        for (int j = 0; j < _moving.length; j += 1) {
+                            start[_moving[j]] = first[j];
+                            rings[_moving[j]] =
+                                _engine.wrap(first[j] - offsets[j]);
+                        }
+                        visitor.visit(start, rings);
+                        count += 1;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Set DIGITS to CODE written in base _size, one digit per moving
+     *  rotor, the leftmost rotor's first. */
+    void digits(int code, int[] digits) {
+        digits(code, digits, 0, digits.length);
+    }
+
+    /** Set DIGITS[FROM .. FROM + COUNT - 1] to CODE written in base
+     *  _size, most significant digit first. */
+    private void digits(int code, int[] digits, int from, int count) {
+        for (int j = from + count - 1; j >= from; j -= 1) {
+            digits[j] = code % _size;
+            code /= _size;
+        }
+    }
+
+    /** Return the turnovers of the moving rotors over my message from
+     *  positions POSNS (one per slot), which are advanced: T * K + J for
+     *  each keypress T at which the moving rotor J (of K, the leftmost
+     *  being 0) other than the rightmost steps, in increasing order.
+     *  The rightmost moving rotor steps at every keypress, and each
+     *  rotor at most once per keypress, so this is all of the moves. */
+    private int[] turnovers(int[] posns) {
+        int k = _moving.length;
+        int[] last = new int[k];
+        for (int j = 0; j < k; j += 1) {
+            last[j] = posns[_moving[j]];
+        }
+        int[] result = new int[k];
+        int n = 0;
+        for (int t = 0; t < _length; t += 1) {
+            _engine.advance(posns);
+            for (int j = 0; j < k - 1; j += 1) {
+                int posn = posns[_moving[j]];
+                if (posn != last[j]) {
+                    if (n == result.length) {
+                        result = Arrays.copyOf(result, 2 * n);
+                    }
+                    result[n] = t * k + j;
+                    n += 1;
+                    last[j] = posn;
+                }
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return the timing classes of the starts of the moving rotors over
+     *  my message, in lexicographic order of their moves, and fill
+     *  _timingIndex. */
+    private List<Timing> classifyTimings() {
+        int[] digits = new int[_moving.length];
+        int[] posns = new int[_engine.numRotors()];
+        for (int code = 0; code < _offsets; code += 1) {
+            digits(code, digits);
+            for (int j = 0; j < _moving.length; j += 1) {
+                posns[_moving[j]] = digits[j];
+            }
+            Timing timing = _timingIndex.computeIfAbsent(
+                new Timing(turnovers(posns), code, _moving.length),
+                x -> x);
+            timing._count += 1;
+        }
+        List<Timing> result = new ArrayList<>(_timingIndex.keySet());
+        result.sort(Timing::compare);
+        return result;
+    }
+
+    /** Return, for each offset code of the fixed slots, the smallest
+     *  code giving the same substitution, and fill _fixedCodes. */
+    private int[] fixedClasses() {
+        int codes = power(_fixed);
+        int[] result = new int[codes];
+        Map<IntBuffer, Integer> seen = new HashMap<>();
+        int[] posns = new int[_fixed + 1];
+        for (int code = 0; code < codes; code += 1) {
+            digits(code, posns, 1, _fixed);
+            for (int slot = 1; slot <= _fixed; slot += 1) {
+                posns[slot] = _engine.wrap(posns[slot]
+                                           + _engine._rings[slot]);
+            }
+            int[] table = new int[_size];
+            for (int c = 0; c < _size; c += 1) {
+                int curr = c;
+                for (int slot = _fixed; slot >= 0; slot -= 1) {
+                    curr = _engine.forward(slot, posns[slot], curr);
+                }
+                for (int slot = 1; slot <= _fixed; slot += 1) {
+                    curr = _engine.backward(slot, posns[slot], curr);
+                }
+                table[c] = curr;
+            }
+            Integer prev = seen.putIfAbsent(IntBuffer.wrap(table), code);
+            result[code] = prev == null ? code : prev;
+            if (prev == null) {
+                _fixedCodes.add(code);
+            }
+        }
+        return result;
+    }
+
+    /** The starts of the moving rotors that step them alike.  A class
+     *  is identified by its turnovers alone: T * K + J for each keypress
+     *  T at which moving rotor J of K (the leftmost being 0) steps, for
+     *  every moving rotor but the rightmost, which steps at every
+     *  keypress. */
+    static final class Timing {
+        /** A class of K moving rotors with turnovers TURNOVERS, first
+         *  found at start FIRST. */
+        private Timing(int[] turnovers, int first, int k) {
+            _turnovers = turnovers;
+            _first = first;
+            _k = k;
+            _hash = Arrays.hashCode(turnovers);
+        }
+
+        /** Return a negative number, zero or a positive number as X
+         *  comes before Y, with it or after it in lexicographic order
+         *  of the distance each rotor has moved after each keypress. */
+        static int compare(Timing x, Timing y) {
+            int i = Arrays.mismatch(x._turnovers, y._turnovers);
+            if (i < 0) {
+                return 0;
+            } else if (i == x._turnovers.length) {
+                return -1;
+            } else if (i == y._turnovers.length) {
+                return 1;
+            } else {
+                return Integer.compare(y._turnovers[i], x._turnovers[i]);
+            }
+        }
+
+        /** Return the first keypress at which my rotors and those of
+         *  OTHER move differently, or -1 if they never do. */
+        int diverges(Timing other) {
+            int[] mine = _turnovers, theirs = other._turnovers;
+            int i = Arrays.mismatch(mine, theirs);
+            if (i < 0) {
+                return -1;
+            } else if (i == mine.length) {
+                return theirs[i] / _k;
+            } else if (i == theirs.length) {
+                return mine[i] / _k;
+            } else {
+                return Math.min(mine[i], theirs[i]) / _k;
+            }
+        }
+
+        /** Set MOVED (one entry per moving rotor) to the distance each
+         *  has moved after keypress T, given that it held the distances
+         *  after keypress T - 1 and that my turnovers before keypress T
+         *  are those before the index NEXT.  Returns the index of my
+         *  first turnover after keypress T.  With T and NEXT 0, MOVED
+         *  must hold zeros. */
+        int move(int t, int next, int[] moved) {
+            int n = next;
+            while (n < _turnovers.length && _turnovers[n] / _k == t) {
+                moved[_turnovers[n] % _k] += 1;
+                n += 1;
+            }
+            if (_k > 0) {
+                moved[_k - 1] = t + 1;
+            }
+            return n;
+        }
+
+        /** Return the index of my first turnover at or after keypress
+         *  T, setting MOVED (one entry per moving rotor) to the distance
+         *  each has moved after keypress T - 1. */
+        int skip(int t, int[] moved) {
+            Arrays.fill(moved, 0);
+            int n = 0;
+            while (n < _turnovers.length && _turnovers[n] / _k < t) {
+                moved[_turnovers[n] % _k] += 1;
+                n += 1;
+            }
+            if (_k > 0) {
+                moved[_k - 1] = t;
+            }
+            return n;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Timing && ((Timing) obj)._hash == _hash
+                && Arrays.equals(((Timing) obj)._turnovers, _turnovers);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** Turnovers, in increasing order. */
+        private final int[] _turnovers;
+        /** Code of the first start in the class. */
+        final int _first;
+        /** Number of moving rotors. */
+        private final int _k;
+        /** Hash of _turnovers. */
+        private final int _hash;
+        /** Number of starts in the class. */
+        int _count;
+    }
+
+    /** The wiring. */
+    private final Engine _engine;
+    /** Alphabet size. */
+    private final int _size;
+    /** Message length. */
+    private final int _length;
+    /** Slots of the moving rotors, leftmost first. */
+    private final int[] _moving;
+    /** Slots that do not rotate, to the right of a moving rotor. */
+    private final int[] _stuck;
+    /** Number of fixed slots left of the first moving rotor, not
+     *  counting the reflector. */
+    private final int _fixed;
+    /** Number of offset classes of the moving rotors. */
+    private final int _offsets;
+    /** Number of offsets of the _stuck slots. */
+    private final int _stuckOffsets;
+    /** Canonical offset code of each offset code of the fixed slots. */
+    private final int[] _fixedClasses;
+    /** The canonical offset codes of the fixed slots. */
+    private final List<Integer> _fixedCodes = new ArrayList<>();
+    /** Timing classes by their moves. */
+    private final Map<Timing, Timing> _timingIndex = new HashMap<>();
+    /** Timing classes, in lexicographic order of their moves. */
+    private final List<Timing> _timings;
+}
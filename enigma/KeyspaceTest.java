@@ -0,0 +1,123 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Keyspace class.
+ *  @author Shelden Shi
+ */
+public class KeyspaceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Message length used by these tests. */
+    private static final int LENGTH = 12;
+
+    /** Return the letters of ALPHA with indices VALUES[1 ..]. */
+    private static String letters(Alphabet alpha, int[] values) {
+        String result = "";
+        for (int k = 1; k < values.length; k += 1) {
+            result += alpha.toChar(values[k]);
+        }
+        return result;
+    }
+
+    /** Return the conversion of LENGTH characters on M with start
+     *  positions START and rings RINGS. */
+    private static String convert(Machine m, int[] start, int[] rings) {
+        Alphabet alpha = m.getAlphabet();
+        m.setRing(letters(alpha, rings));
+        m.setRotors(letters(alpha, start));
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < LENGTH; k += 1) {
+            result.append(alpha.toChar(m.convert(k % alpha.size())));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void checkCanonicalCoversAll() {
+        Machine m = smallMachine();
+        Keyspace keys = new Keyspace(Engine.of(m), LENGTH);
+        HashSet<String> visited = new HashSet<>();
+        long count = keys.enumerate((start, rings) -> {
+            String key = Arrays.toString(start) + Arrays.toString(rings);
+            assertTrue(key, visited.add(key));
+            int[][] canon = keys.canonical(start, rings);
+            assertArrayEquals(start, canon[0]);
+            assertArrayEquals(rings, canon[1]);
+        });
+        assertEquals(keys.canonicalSettings(), BigInteger.valueOf(count));
+        assertEquals(BigInteger.valueOf(6).pow(8), keys.settings());
+        assertTrue(keys.reduction() > 6);
+
+        HashSet<String> images = new HashSet<>();
+        int[] start = new int[5];
+        int[] rings = new int[5];
+        for (int s = 0; s < 1 << 24; s += 1 << 6) {
+            int code = s >> 6;
+            for (int slot = 1; slot < 5; slot += 1) {
+                start[slot] = code % 6;
+                rings[slot] = code / 6 % 6;
+                code /= 36;
+            }
+            int[][] canon = keys.canonical(start, rings);
+            String key = Arrays.toString(canon[0])
+                + Arrays.toString(canon[1]);
+            assertTrue(key, visited.contains(key));
+            images.add(key);
+        }
+        assertTrue(images.size() < visited.size());
+    }
+
+    @Test
+    public void checkCanonicalConvertsAlike() {
+        Random random = new Random(11);
+        Machine[] machines = {smallMachine(), navalMachine(5, 3)};
+        machines[1].setUp("* B Beta I II III AAAA");
+        for (Machine m : machines) {
+            int size = m.getAlphabet().size();
+            Keyspace keys = new Keyspace(Engine.of(m), LENGTH);
+            for (int trial = 0; trial < 500; trial += 1) {
+                int[] start = new int[5];
+                int[] rings = new int[5];
+                for (int slot = 1; slot < 5; slot += 1) {
+                    start[slot] = random.nextInt(size);
+                    rings[slot] = random.nextInt(size);
+                }
+                int[][] canon = keys.canonical(start, rings);
+                assertEquals(convert(m, start, rings),
+                             convert(m, canon[0], canon[1]));
+                int[][] again = keys.canonical(canon[0], canon[1]);
+                assertArrayEquals(canon[0], again[0]);
+                assertArrayEquals(canon[1], again[1]);
+            }
+        }
+    }
+
+    @Test
+    public void checkNavalReduction() {
+        Machine m = navalMachine(5, 3);
+        m.setUp("* B Beta I II III AAAA");
+        Keyspace keys = new Keyspace(Engine.of(m), 40);
+        assertEquals(BigInteger.valueOf(26).pow(8), keys.settings());
+        assertTrue(keys.reduction() > 26 * 26);
+        RingSearch search = new RingSearch(Engine.of(m),
+                                           Engine.positions(m), new int[40]);
+        assertEquals(keys.timings().size(), search.timingClasses());
+        assertEquals((double) 26 * 26 * 26 / search.timingClasses(),
+                     search.reduction(), 1e-9);
+    }
+
+}
@@ -0,0 +1,286 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A cache of keystreams.  For a given wiring, rings, plugboard and
+ *  start positions, the substitution the machine performs at each step
+ *  is fixed, so the first length() of them can be computed once and
+ *  kept as one table, entry STEP * size + C being the conversion of C at
+ *  step STEP.  A message under a cached setting then costs one lookup
+ *  per character and no stepping.  Entries are bytes for alphabets of
+ *  at most 256 characters and chars otherwise, and the tables come from
+ *  a TableArena: on the heap, off it, or in a mapped file from which
+ *  later runs and other processes pick them up without recomputing.
+ *  The least recently used tables are dropped to keep the total size
+ *  of the tables held within a byte budget.  A keystream costs far more
+ *  to compute than the message it is first used for, so it is computed
+ *  only for a setting looked up before: the first lookup of a setting
+ *  just records it among the SEEN most recently missed, and only the
+ *  next one computes and keeps the table.  All methods are thread-safe.
+ *
+ *  Dropping a table from a mapped file does not give its space back:
+ *  TableArena never reuses space in its file.  What a cache can take
+ *  from the file over a run is therefore bounded not by its own budget
+ *  but by the size of the file, enigma.tables.bytes; once the file is
+ *  full, further tables go in direct buffers, which are freed when they
+ *  are dropped.
+ *
+ *  A Machine uses a cache given to it with setKeystreamCache for the
+ *  messages that follow each setUp; Main gives it one when the system
+ *  properties described at fromProperties ask for it.
+ *  @author Shelden Shi
+ */
+final class KeystreamCache {
+
+    /** The substitutions at successive steps from one setting. */
+    static final class Stream {
+        /** A stream of STEPS steps over an alphabet of SIZE characters,
+         *  held in TABLE. */
+        private Stream(int steps, int size, TableStore table) {
+            _steps = steps;
+            _size = size;
+            _table = table;
+        }
+
+        /** Return the number of steps I cover. */
+        int length() {
+            return _steps;
+        }
+
+        /** Return the conversion of C at step STEP (the first character
+         *  of a message being at step 0). */
+        int convert(int step, int c) {
+            return _table.get(step * _size + c);
+        }
+
+        /** Return the number of bytes my table takes. */
+        long bytes() {
+            return _table.bytes();
+        }
+
+        /** Number of steps. */
+        private final int _steps;
+        /** Alphabet size. */
+        private final int _size;
+        /** The table. */
+        private final TableStore _table;
+    }
+
+    /** A cache holding keystreams of LENGTH steps on the heap, whose
+     *  tables take no more than MAXBYTES bytes in all. */
+    KeystreamCache(int length, long maxBytes) {
+        this(length, maxBytes, TableArena.HEAP);
+    }
+
+    /** A cache holding keystreams of LENGTH steps in ARENA, of which
+     *  tables taking no more than MAXBYTES bytes in all are held. */
+    KeystreamCache(int length, long maxBytes, TableArena arena) {
+        if (length <= 0 || maxBytes <= 0) {
+            throw EnigmaException.error("bad keystream cache size");
+        }
+        _length = length;
+        _maxBytes = maxBytes;
+        _arena = arena;
+    }
+
+    /** Default budget for the tables, in bytes. */
+    static final long DEFAULT_BYTES = 64L << 20;
+
+    /** Number of settings looked up once, without a keystream being
+     *  computed, that are remembered so that their next lookup computes
+     *  it. */
+    static final int SEEN = 1024;
+
+    /** Return the cache in ARENA asked for by the system properties
+     *  enigma.keystream (the number of steps per keystream) and
+     *  enigma.keystream.bytes (the budget, DEFAULT_BYTES if absent), or
+     *  null if enigma.keystream is not set. */
+    static KeystreamCache fromProperties(TableArena arena) {
+        Integer length = Integer.getInteger("enigma.keystream");
+        if (length == null) {
+            return null;
+        }
+        return new KeystreamCache(length, Long.getLong(
+            "enigma.keystream.bytes", DEFAULT_BYTES), arena);
+    }
+
+    /** Return the number of steps each keystream covers. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the keystream of ENGINE started from positions START,
+     *  computing it if it is not cached but was looked up before, or
+     *  null if it is neither.  A keystream too large for the whole
+     *  budget is computed but not kept. */
+    Stream get(Engine engine, int[] start) {
+        Events.CacheLookup event = new Events.CacheLookup();
+        event.begin();
+        Key key = new Key(engine, start);
+        Stream result;
+        boolean admit;
+        synchronized (this) {
+            result = _streams.get(key);
+            if (result != null) {
+                _hits += 1;
+                admit = false;
+            } else {
+                _misses += 1;
+                admit = admit(key);
+            }
+        }
+        boolean hit = result != null;
+        if (admit) {
+            result = compute(key, engine, start);
+            put(key, result);
+        }
+        if (event.shouldCommit()) {
+            event.cache = "keystream";
+            event.hit = hit;
+            event.entries = 1;
+            event.commit();
+        }
+        return result;
+    }
+
+    /** Return the keystream of ENGINE from START, which is KEY,
+     *  computing it unless the arena already has it. */
+    private Stream compute(Key key, Engine engine, int[] start) {
+        int size = engine.size();
+        TableStore table = _arena.allocate(key._data, _length * size,
+                                           TableStore.width(size));
+        if (!table.sealed()) {
+            int[] posns = start.clone();
+            int[] row = new int[size];
+            for (int step = 0; step < _length; step += 1) {
+                engine.advance(posns);
+                engine.permutation(posns, row);
+                for (int c = 0; c < size; c += 1) {
+                    table.set(step * size + c, row[c]);
+                }
+            }
+            table.seal();
+        }
+        return new Stream(_length, size, table);
+    }
+
+    /** Return true iff the keystream of KEY, which is not cached, should
+     *  be computed: that is, iff KEY is among the SEEN settings last
+     *  looked up in vain, in which case it is forgotten there.  Otherwise
+     *  remember it there. */
+    private boolean admit(Key key) {
+        if (_seen.remove(key) != null) {
+            return true;
+        }
+        _seen.put(key, Boolean.TRUE);
+        if (_seen.size() > SEEN) {
+            Iterator<Key> oldest = _seen.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        return false;
+    }
+
+    /** Cache STREAM under KEY, evicting the least recently used streams
+     *  as needed.  An evicted stream's space in a mapped file is not
+     *  reclaimed (see the class comment). */
+    private synchronized void put(Key key, Stream stream) {
+        if (stream.bytes() > _maxBytes || _streams.containsKey(key)) {
+            return;
+        }
+        _streams.put(key, stream);
+        _bytes += stream.bytes();
+        Iterator<Stream> oldest = _streams.values().iterator();
+        while (_bytes > _maxBytes) {
+            _bytes -= oldest.next().bytes();
+            oldest.remove();
+        }
+    }
+
+    /** Return the number of keystreams cached. */
+    synchronized int size() {
+        return _streams.size();
+    }
+
+    /** Return the number of bytes the cached tables take. */
+    synchronized long bytes() {
+        return _bytes;
+    }
+
+    /** Return the number of lookups that found their keystream. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that did not find their keystream,
+     *  whether or not they computed it. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Identifies a setting by the content of its engine and its start
+     *  positions, so that equal settings made by different machines or
+     *  setUp calls share a keystream. */
+    private static final class Key {
+        /** The key for ENGINE started from START. */
+        Key(Engine engine, int[] start) {
+            int size = engine.size();
+            int slots = engine.numRotors();
+            int[] data = new int[2 * slots * size + 3 * slots + size + 1];
+            int k = 0;
+            data[k++] = size;
+            for (int slot = 0; slot < slots; slot += 1) {
+                for (int c = 0; c < size; c += 1) {
+                    data[k++] = engine._forward[slot * size + c];
+                    data[k++] = engine.rotates(slot)
+                        && engine.atNotch(slot, c) ? 1 : 0;
+                }
+                data[k++] = engine._rings[slot];
+                data[k++] = start[slot];
+                data[k++] = engine.rotates(slot) ? 1 : 0;
+            }
+            for (int c = 0; c < size; c += 1) {
+                data[k++] = engine.plugboard(c);
+            }
+            _data = data;
+            _hash = Arrays.hashCode(data);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj)._hash == _hash
+                && Arrays.equals(((Key) obj)._data, _data);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** Everything that determines the keystream. */
+        private final int[] _data;
+        /** Hash of _data. */
+        private final int _hash;
+    }
+
+    /** Steps per keystream. */
+    private final int _length;
+    /** Budget for the tables, in bytes. */
+    private final long _maxBytes;
+    /** Where the tables are put. */
+    private final TableArena _arena;
+    /** Cached keystreams, least recently used first. */
+    private final Map<Key, Stream> _streams =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** Keys looked up once and not cached, least recently first. */
+    private final Map<Key, Boolean> _seen = new LinkedHashMap<>();
+    /** Bytes taken by the cached tables. */
+    private long _bytes;
+    /** Lookups that hit. */
+    private long _hits;
+    /** Lookups that missed. */
+    private long _misses;
+}
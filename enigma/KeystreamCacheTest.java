@@ -0,0 +1,138 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author Shelden Shi
+ */
+public class KeystreamCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Setting lines used by these tests. */
+    private static final String[] SETTINGS = {
+        "* B Beta I II III AAAA",
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* C Gamma IV V VI AXLE BCDE (YF) (ZH)",
+    };
+
+    /** Settings whose rings are given, so that each always makes the
+     *  same keystream whatever setting came before. */
+    private static final String[] RINGED = {
+        "* B Beta I II III AAAA AAAA",
+        "* B Beta III IV I AXLE AAAA (HQ) (EX)",
+        "* C Gamma IV V VI AXLE BCDE (YF) (ZH)",
+    };
+
+    /** Messages used by these tests; the last is longer than the
+     *  keystreams. */
+    private static final String[] MESSAGES = {
+        "HELLO WORLD",
+        "FROM HIS SHOULDER HIAWATHA",
+        "TOOK THE CAMERA OF ROSEWOOD MADE OF SLIDING FOLDING ROSEWOOD",
+    };
+
+    /** Return the positions of the rotors of M, as letters. */
+    private static String positions(Machine m) {
+        String result = "";
+        for (Rotor r : m.getMyRotors()) {
+            result += UPPER.toChar(r.setting());
+        }
+        return result;
+    }
+
+    @Test
+    public void checkMatchesUncached() {
+        KeystreamCache cache = new KeystreamCache(40, 1 << 20);
+        Machine plain = navalMachine(5, 3);
+        Machine cached = navalMachine(5, 3);
+        cached.setKeystreamCache(cache);
+        for (int round = 0; round < 2; round += 1) {
+            for (String setting : SETTINGS) {
+                for (String msg : MESSAGES) {
+                    plain.setUp(setting);
+                    cached.setUp(setting);
+                    assertEquals(msg("keystream", "%s", setting),
+                                 plain.convert(msg), cached.convert(msg));
+                    assertEquals(positions(plain), positions(cached));
+                }
+            }
+        }
+        int uses = 2 * SETTINGS.length * MESSAGES.length;
+        assertEquals(uses, cache.hits() + cache.misses());
+        assertTrue(cache.size() >= SETTINGS.length);
+        assertTrue(cache.misses() >= 2 * SETTINGS.length);
+        assertTrue(cache.hits() > 0);
+    }
+
+    @Test
+    public void checkStateAfterPartialKeystream() {
+        Machine plain = navalMachine(5, 3);
+        Machine cached = navalMachine(5, 3);
+        KeystreamCache cache = new KeystreamCache(100, 1 << 20);
+        cached.setKeystreamCache(cache);
+        cached.setUp(SETTINGS[1]);
+        plain.setUp(SETTINGS[1]);
+        cached.setUp(SETTINGS[1]);
+        assertEquals(1, cache.size());
+        assertEquals(plain.convert("ABCDEFGHIJ"), cached.convert("ABCDEFGHIJ"));
+        assertEquals(positions(plain), positions(cached));
+        plain.setRing("BBBB");
+        cached.setRing("BBBB");
+        assertEquals(plain.convert("KLMNOPQRST"), cached.convert("KLMNOPQRST"));
+        assertEquals(positions(plain), positions(cached));
+    }
+
+    @Test
+    public void checkEvictionByBytes() {
+        int length = 50;
+        long perStream = length * 26;
+        KeystreamCache cache = new KeystreamCache(length, 2 * perStream);
+        Machine m = navalMachine(5, 3);
+        m.setKeystreamCache(cache);
+        for (int k = 0; k < 2; k += 1) {
+            m.setUp(RINGED[0]);
+            m.setUp(RINGED[1]);
+        }
+        assertEquals(2, cache.size());
+        assertEquals(2 * perStream, cache.bytes());
+        assertEquals(0, cache.hits());
+        m.setUp(RINGED[1]);
+        assertEquals(1, cache.hits());
+        m.setUp(RINGED[2]);
+        m.setUp(RINGED[2]);
+        assertEquals(2, cache.size());
+        m.setUp(RINGED[1]);
+        assertEquals(2, cache.hits());
+        m.setUp(RINGED[0]);
+        assertEquals(2, cache.hits());
+        assertEquals(7, cache.misses());
+    }
+
+    @Test
+    public void checkAdmitsOnSecondLookup() {
+        KeystreamCache cache = new KeystreamCache(50, 1 << 20);
+        Machine m = navalMachine(5, 3);
+        m.setKeystreamCache(cache);
+        for (String setting : SETTINGS) {
+            m.setUp(setting);
+        }
+        assertEquals(0, cache.size());
+        assertEquals(SETTINGS.length, cache.misses());
+        m.setUp(SETTINGS[2]);
+        assertEquals(1, cache.size());
+        m.convertBatch(SETTINGS, MESSAGES);
+        m.convertBatch(SETTINGS, MESSAGES);
+        assertEquals(1, cache.size());
+        assertEquals(SETTINGS.length + 1, cache.misses());
+        assertEquals(0, cache.hits());
+    }
+
+}
@@ -1,13 +1,15 @@
 package enigma;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.List;
+import java.util.Objects;
 
-/** Class that represents a complete enigma machine.
+/** Class that represents a complete enigma machine.  A machine whose
+ *  metrics are enabled is published through JMX until it is closed.
  *  @author Shelden Shi
  */
-class Machine {
+class Machine implements AutoCloseable {
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
@@ -19,6 +21,8 @@ class Machine {
         _pawls = pawls;
         _allRotors = allRotors;
         _myRotors = new Rotor[_numRotors];
+        _found = new Rotor[_numRotors];
+        _metrics = Metrics.register();
     }
 
     /** Return the number of rotor slots I have. */
@@ -35,88 +39,315 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        SettingStatus.check(checkRotors(rotors));
+        syncRotors();
+        _engine = null;
         int count = 0;
-        int numMovingRotor = 0;
         for (String x : rotors) {
-            for (Rotor y : _allRotors) {
-                if (count == _numRotors) {
-                    break;
+            Rotor y = rotor(x);
+            if (count == _numRotors) {
+                break;
+            } else if (y != null) {
+                _myRotors[count] = y;
+                count++;
+            }
+        }
+    }
+
+    /** Return the SettingStatus of insertRotors(ROTORS), without
+     *  inserting them: OK iff it would succeed.  Names of no available
+     *  rotor are passed over, as insertRotors does. */
+    int checkRotors(String[] rotors) {
+        Rotor[] found = _found;
+        Arrays.fill(found, null);
+        int count = 0;
+        for (String name : rotors) {
+            if (count == _numRotors) {
+                break;
+            }
+            Rotor r = rotor(name);
+            if (r != null) {
+                found[count] = r;
+                count += 1;
+            }
+        }
+        return checkSlots(found);
+    }
+
+    /** Return the SettingStatus of putting ROTORS in my slots, in
+     *  order, null entries being passed over. */
+    private int checkSlots(Rotor[] rotors) {
+        int slot = 0;
+        int moving = 0;
+        for (Rotor r : rotors) {
+            if (r == null) {
+                continue;
+            } else if (slot == 0 && !r.reflecting()) {
+                return SettingStatus.NOT_REFLECTOR;
+            } else if (slot > 0 && !r.rotates() && moving > 0) {
+                return SettingStatus.FIXED_AFTER_MOVING;
+            } else if (r.rotates()) {
+                moving += 1;
+                if (moving > _pawls) {
+                    return SettingStatus.TOO_MANY_MOVING;
+                }
+            }
+            slot += 1;
+        }
+        return SettingStatus.OK;
+    }
+
+    /** Set me according to the setting line SETTINGS, of the form
+     *  "* ROTOR... POSITIONS [RINGS] [(PLUGBOARD CYCLE)...]", naming
+     *  numRotors() rotors, reflector first. */
+    void setUp(String settings) {
+        SettingStatus.check(checkSetUp(settings));
+        Events.SetUp event = new Events.SetUp();
+        event.begin();
+        String[] settingList = settings.split("\\s+");
+        String[] order = new String[_numRotors];
+        String posSetting = "";
+        String plugboard = "";
+        String ring = "";
+        for (int i = 1; i < settingList.length; i++) {
+            if (i < (_numRotors + 1)) {
+                order[i - 1] = settingList[i];
+            } else if (i == (_numRotors + 1)) {
+                posSetting = settingList[i];
+            } else {
+                if (!settingList[i].split("")[0].equals("(")) {
+                    ring = settingList[i];
+                } else {
+                    plugboard += settingList[i];
+                }
+
+            }
+        }
+        install(order, posSetting, ring,
+                new Permutation(plugboard, _alphabet));
+        if (event.shouldCommit()) {
+            event.rotorOrder = String.join(" ", order);
+            event.settingLength = settings.length();
+            event.commit();
+        }
+    }
+
+    /** Set me up with the rotors named ORDER (the reflector first),
+     *  positions POSNS and, unless RING is empty, ring settings RING,
+     *  each one character per slot after the reflector, leftmost first,
+     *  and plugboard PLUGBOARD.  This is setUp(String) without the
+     *  parsing, for alphabets whose characters a setting line cannot
+     *  hold. */
+    void setUp(String[] order, String posns, String ring,
+               Permutation plugboard) {
+        SettingStatus.check(checkSetUp(order, posns, ring));
+        install(order, posns, ring, plugboard);
+    }
+
+    /** Return the SettingStatus of setUp(ORDER, POSNS, RING, ...),
+     *  without setting me up: OK iff it would succeed, the plugboard
+     *  aside.  Does not allocate. */
+    int checkSetUp(String[] order, String posns, String ring) {
+        for (int i = 0; i < order.length; i += 1) {
+            if (order[i] != null && rotor(order[i]) == null) {
+                return SettingStatus.NO_SUCH_ROTOR;
+            }
+            for (int j = 0; j < i; j += 1) {
+                if (Objects.equals(order[i], order[j])) {
+                    return SettingStatus.DUPLICATE_ROTOR;
+                }
+            }
+        }
+        int status = checkRotors(order);
+        if (status == SettingStatus.OK && !ring.isEmpty()) {
+            status = checkRing(ring);
+        }
+        return status == SettingStatus.OK ? checkPositions(posns) : status;
+    }
+
+    /** Return the SettingStatus of setUp(SETTINGS), without setting me
+     *  up: OK iff it would succeed, the plugboard aside.  Does not
+     *  allocate. */
+    int checkSetUp(String settings) {
+        Rotor[] found = _found;
+        Arrays.fill(found, null);
+        int n = settings.length();
+        int start = 0;
+        int posns = 0, posnsEnd = 0, ring = -1, ringEnd = -1;
+        for (int i = 0; i == 0 || start < n; i += 1) {
+            int end = start;
+            while (end < n && !isSpace(settings.charAt(end))) {
+                end += 1;
+            }
+            if (i >= 1 && i <= _numRotors) {
+                Rotor r = rotor(settings, start, end);
+                if (r == null) {
+                    return SettingStatus.NO_SUCH_ROTOR;
                 }
-                if (y.name().equals(x)) {
-                    if (count == 0 && !y.reflecting()) {
-                        throw EnigmaException.error(
-                                "The first rotor has to "
-                                        + "be a reflector");
-                    } else if (count > 0 && !y.rotates()
-                            && numMovingRotor > 0) {
-                        throw EnigmaException.error(
-                                "A FixedRotor can not be "
-                                        + "placed on the right side of "
-                                        + "a moving rotor");
-                    } else if (y.rotates()) {
-                        numMovingRotor += 1;
-                        if (numMovingRotor > _pawls) {
-                            throw EnigmaException.error(
-                                    "too many moving rotors");
-                        }
-                    }
-                    _myRotors[count] = y;
-                    count++;
+                found[i - 1] = r;
+            } else if (i == _numRotors + 1) {
+                posns = start;
+                posnsEnd = end;
+            } else if (i > _numRotors + 1
+                       && settings.charAt(start) != '(') {
+                ring = start;
+                ringEnd = end;
+            }
+            start = end;
+            while (start < n && isSpace(settings.charAt(start))) {
+                start += 1;
+            }
+        }
+        for (int i = 0; i < _numRotors; i += 1) {
+            for (int j = 0; j < i; j += 1) {
+                if (found[i] == found[j]) {
+                    return SettingStatus.DUPLICATE_ROTOR;
                 }
             }
         }
-        if (_myRotors.length != _numRotors) {
-            throw EnigmaException.error(
-                    "Names in rotors do not match "
-                            + "everything in _allrotors");
+        int status = checkSlots(found);
+        if (status == SettingStatus.OK && ring >= 0) {
+            status = checkChars(settings, ring, ringEnd,
+                                SettingStatus.BAD_RING_LENGTH,
+                                SettingStatus.BAD_RING);
+        }
+        if (status != SettingStatus.OK) {
+            return status;
         }
+        return checkChars(settings, posns, posnsEnd,
+                          SettingStatus.BAD_POSITIONS_LENGTH,
+                          SettingStatus.BAD_POSITION);
+    }
+
+    /** Set me up as setUp(ORDER, POSNS, RING, PLUGBOARD) does, the
+     *  settings having been checked. */
+    private void install(String[] order, String posns, String ring,
+                         Permutation plugboard) {
+        insertRotors(order);
+        if (!ring.equals("")) {
+            setRing(ring);
+        }
+        setRotors(posns);
+        setPlugboard(plugboard);
+        if (_keystreamCache != null) {
+            _keystream = _keystreamCache.get(engine(), positions());
+            _step = 0;
+        }
+    }
+
+    /** Return my available rotor named NAME, or null. */
+    private Rotor rotor(String name) {
+        for (Rotor r : _allRotors) {
+            if (r.name().equals(name)) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /** Return my available rotor named TEXT[START .. END - 1], or
+     *  null. */
+    private Rotor rotor(String text, int start, int end) {
+        for (Rotor r : _allRotors) {
+            String name = r.name();
+            if (name.length() == end - start
+                && text.regionMatches(start, name, 0, name.length())) {
+                return r;
+            }
+        }
+        return null;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        String[] settingList = setting.split("");
-        if (settingList.length != _numRotors - 1) {
-            throw EnigmaException.error(
-                    "Wheel settings too short/long");
-        }
-        for (String s : settingList) {
-            List<String> list = Arrays.asList(_alphabet.alphabet());
-            if (!list.contains(s)) {
-                throw EnigmaException.error(
-                        "Bad character in wheel settings");
-            }
-        }
+        SettingStatus.check(checkPositions(setting));
+        syncRotors();
         int count = 0;
         for (Rotor x : _myRotors) {
-            if (!x.reflecting() && (count < settingList.length)) {
-                x.set(settingList[count].charAt(0));
+            if (!x.reflecting() && (count < setting.length())) {
+                x.set(setting.charAt(count));
                 count++;
             }
         }
     }
 
+    /** Return the SettingStatus of setRotors(SETTING), without setting
+     *  the rotors. */
+    int checkPositions(String setting) {
+        return checkChars(setting, 0, setting.length(),
+                          SettingStatus.BAD_POSITIONS_LENGTH,
+                          SettingStatus.BAD_POSITION);
+    }
+
+    /** Return the SettingStatus of setRing(RING), without setting the
+     *  rings. */
+    int checkRing(String ring) {
+        return checkChars(ring, 0, ring.length(),
+                          SettingStatus.BAD_RING_LENGTH,
+                          SettingStatus.BAD_RING);
+    }
+
+    /** Return OK if TEXT[START .. END - 1] holds one character of my
+     *  alphabet per slot after the reflector, else LENGTH if it has the
+     *  wrong length or CHAR if a character is not in the alphabet. */
+    private int checkChars(String text, int start, int end, int length,
+                           int character) {
+        if (end - start != _numRotors - 1) {
+            return length;
+        }
+        for (int k = start; k < end; k += 1) {
+            if (_alphabet.indexOf(text.charAt(k)) < 0) {
+                return character;
+            }
+        }
+        return SettingStatus.OK;
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        settle();
         _plugboard = plugboard;
+        _board = null;
+        _engine = null;
+    }
+
+    /** Set the plugboard to a copy of PLUGBOARD.  Unlike
+     *  setPlugboard(Permutation), this keeps the rotor tables of my
+     *  engine, swapping in only the new plugboard, and builds no
+     *  Permutation unless one is asked for. */
+    void setPlugboard(Plugboard plugboard) {
+        if (plugboard.size() != _alphabet.size()) {
+            throw EnigmaException.error("plugboard is for %d characters, "
+                                        + "not %d", plugboard.size(),
+                                        _alphabet.size());
+        }
+        settle();
+        if (_board == null) {
+            _board = new Plugboard(plugboard);
+        } else {
+            _board.set(plugboard);
+        }
+        _plugboard = null;
+        if (_engine != null) {
+            _engine = _engine.withPlugboard(_board);
+        }
     }
     /** Set the ring.
      * @param ring  ring*/
     void setRing(String ring) {
-        String[] ringList = ring.split("");
-        if (ringList.length != _numRotors - 1) {
-            throw EnigmaException.error(
-                    "Wheel settings too short/long");
-        }
-        int[] ringListInt = new int[ringList.length];
-        for (int counter = 0; counter < ringList.length; counter++) {
-            ringListInt[counter] = _alphabet.toInt(ringList[counter].charAt(0));
+        SettingStatus.check(checkRing(ring));
+        settle();
+        int[] ringListInt = new int[ring.length()];
+        for (int counter = 0; counter < ring.length(); counter++) {
+            ringListInt[counter] = _alphabet.toInt(ring.charAt(counter));
         }
 
+        _engine = null;
         int count = 0;
         for (Rotor x : _myRotors) {
-            if (!x.reflecting() && (count < ringList.length)) {
+            if (!x.reflecting() && (count < ringListInt.length)) {
                 x.setRing(ringListInt[count]);
                 count++;
             }
@@ -128,8 +359,49 @@ class Machine {
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        advanceRotors();
-        int curr = _plugboard.permute(c);
+        if (Metrics.ENABLED) {
+            _metrics.character();
+        }
+        KeystreamCache.Stream keystream = _keystream;
+        if (keystream != null && _step < keystream.length()) {
+            _step += 1;
+            return keystream.convert(_step - 1, c);
+        }
+        Engine engine = engine();
+        int[] posns = positions();
+        engine.advance(posns);
+        CompositeCache composites = _compositeCache;
+        if (composites != null) {
+            CompositeCache.Session session = _composites;
+            if (session == null
+                || !session.engine().sharesRotors(engine)) {
+                session = _composites = composites.session(engine);
+            }
+            int[] composite = session.table(posns);
+            if (composite != null) {
+                return engine.convert(posns, c, composite);
+            }
+        }
+        return engine.convert(posns, c);
+    }
+
+    /** advancing the machine. */
+    void advanceRotors() {
+        engine().advance(positions());
+    }
+
+    /** Returns the result of converting C as convert(int) does, but by
+     *  calling on each Rotor in turn rather than through the flat
+     *  Engine.  Kept as the reference against which faster paths are
+     *  checked and measured. */
+    int convertReference(int c) {
+        if (Metrics.ENABLED) {
+            _metrics.character();
+        }
+        syncRotors();
+        advanceRotorsReference();
+        Permutation plugboard = getPlugboard();
+        int curr = plugboard.permute(c);
         for (int indexForward = 1; indexForward <= _numRotors; indexForward++) {
             Rotor currRotor = _myRotors[_numRotors - indexForward];
             curr = currRotor.convertForward(curr);
@@ -139,10 +411,13 @@ class Machine {
             Rotor currRotor = _myRotors[indexBackward];
             curr = currRotor.convertBackward(curr);
         }
-        return _plugboard.permute(curr);
+        return plugboard.permute(curr);
     }
-    /** advancing the machine. */
-    void advanceRotors() {
+
+    /** Advance the machine by calling on each Rotor in turn; the
+     *  reference for advanceRotors(). */
+    void advanceRotorsReference() {
+        syncRotors();
         int indexAdvance = 1;
         boolean rotate = true;
         boolean preAdvanced = true;
@@ -182,40 +457,321 @@ class Machine {
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String result = "";
-        String[] msgLines = msg.split("");
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Events.ConvertBatch event = new Events.ConvertBatch();
+        event.begin();
+        StringBuilder result = new StringBuilder(msg.length() * 2);
         int count = 0;
-        for (String x : msgLines) {
-            x = x.replaceAll("\\s+", "");
-            String[] msgList = x.split("");
-            for (String y : msgList) {
-                if (y.equals("")) {
-                    result += "";
-                } else {
-                    int temp = convert(_alphabet.toInt(y.charAt(0)));
-                    result = result + _alphabet.toChar(temp);
-                    count++;
+        int converted = 0;
+        for (int i = 0; i < msg.length(); i += 1) {
+            char ch = msg.charAt(i);
+            if (!isSpace(ch)) {
+                int temp = convert(_alphabet.toInt(ch));
+                result.append(_alphabet.toChar(temp));
+                converted += 1;
+                count++;
+                if (count == 5) {
+                    result.append(' ');
+                    count = 0;
                 }
+            }
+        }
+        if (Metrics.ENABLED) {
+            _metrics.message(System.nanoTime() - start);
+        }
+        commit(event, converted);
+        return result.toString();
+    }
+
+    /** Commit EVENT, begun before a call that converted CHARACTERS
+     *  characters, if it is wanted. */
+    private static void commit(Events.ConvertBatch event, int characters) {
+        if (event.shouldCommit()) {
+            event.characters = characters;
+            event.commit();
+        }
+    }
+
+    /** Convert MSG[0 .. LEN - 1] as convert(String) does, putting the
+     *  result into OUT, which must have room for 2 * LEN characters, and
+     *  returning the number of characters put there.  Nothing is
+     *  allocated. */
+    int convert(char[] msg, int len, char[] out) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Events.ConvertBatch event = new Events.ConvertBatch();
+        event.begin();
+        int n = 0;
+        int count = 0;
+        int converted = 0;
+        for (int i = 0; i < len; i += 1) {
+            char ch = msg[i];
+            if (!isSpace(ch)) {
+                out[n] = _alphabet.toChar(convert(_alphabet.toInt(ch)));
+                n += 1;
+                converted += 1;
+                count += 1;
                 if (count == 5) {
-                    result += " ";
+                    out[n] = ' ';
+                    n += 1;
                     count = 0;
                 }
             }
         }
+        if (Metrics.ENABLED) {
+            _metrics.message(System.nanoTime() - start);
+        }
+        commit(event, converted);
+        return n;
+    }
+
+    /** Convert the bytes remaining in IN, each taken as the index of a
+     *  symbol, as convert(int) does, putting the results into OUT, for
+     *  as many bytes as OUT has room.  Returns the number converted.
+     *  My alphabet must be Alphabet.bytes(), so that every byte is a
+     *  symbol. */
+    int convert(ByteBuffer in, ByteBuffer out) {
+        if (_alphabet.size() != Alphabet.BYTES) {
+            throw EnigmaException.error("not a byte alphabet");
+        }
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Events.ConvertBatch event = new Events.ConvertBatch();
+        event.begin();
+        int n = Math.min(in.remaining(), out.remaining());
+        for (int k = 0; k < n; k += 1) {
+            out.put((byte) convert(in.get() & BYTE_MASK));
+        }
+        if (Metrics.ENABLED) {
+            _metrics.message(System.nanoTime() - start);
+        }
+        commit(event, n);
+        return n;
+    }
+
+    /** Mask that recovers an unsigned byte. */
+    private static final int BYTE_MASK = 0xFF;
+
+    /** Return true iff CH is whitespace in the sense of the regular
+     *  expression \\s, which convert(String) skips. */
+    static boolean isSpace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B'
+            || ch == '\f' || ch == '\r';
+    }
+
+    /** Convert the characters TEXT[OFF .. OFF + LEN - 1], which must be
+     *  in my alphabet or whitespace in the sense of isSpace, in place as
+     *  ASCII bytes, advancing the machine before each non-whitespace
+     *  character.  Uses the byte engine directly when my alphabet allows
+     *  it. */
+    void convertAscii(byte[] text, int off, int len) {
+        Events.ConvertBatch event = new Events.ConvertBatch();
+        event.begin();
+        Engine engine = engine();
+        if (engine instanceof ByteEngine && ((ByteEngine) engine).isAscii()) {
+            int n = ((ByteEngine) engine).convertAscii(positions(), text,
+                                                       off, len);
+            if (Metrics.ENABLED) {
+                _metrics.characters(n);
+            }
+            commit(event, n);
+            return;
+        }
+        int converted = 0;
+        for (int k = off; k < off + len; k += 1) {
+            char ch = (char) (text[k] & 0xFF);
+            if (!isSpace(ch)) {
+                int c = convert(_alphabet.toInt(ch));
+                text[k] = (byte) _alphabet.toChar(c);
+                converted += 1;
+            }
+        }
+        commit(event, converted);
+    }
+
+    /** Return the conversions of MESSAGES, each grouped in fives as by
+     *  convert(String), where MESSAGES[K] is converted after setting me
+     *  up with the setting line SETTINGS[K].  The result is the same as
+     *  doing each setUp and convert in turn, and I am left as that would
+     *  leave me, but the messages are converted together by a
+     *  BatchEngine, one lane per message. */
+    String[] convertBatch(String[] settings, String[] messages) {
+        if (settings.length != messages.length) {
+            throw EnigmaException.error("one setting per message needed");
+        }
+        int lanes = messages.length;
+        if (lanes == 0) {
+            return new String[0];
+        }
+        Events.ConvertBatch event = new Events.ConvertBatch();
+        event.begin();
+        Engine[] engines = new Engine[lanes];
+        int[][] posns = new int[lanes][];
+        int[][] msgs = new int[lanes][];
+        KeystreamCache keystreams = _keystreamCache;
+        _keystreamCache = null;
+        try {
+            for (int k = 0; k < lanes; k += 1) {
+                setUp(settings[k]);
+                engines[k] = engine();
+                posns[k] = positions().clone();
+                msgs[k] = toIndices(messages[k]);
+            }
+        } finally {
+            _keystreamCache = keystreams;
+        }
+        int[][] out = new BatchEngine(engines, posns, BatchEngine.DEFAULT)
+            .convert(msgs);
+        System.arraycopy(posns[lanes - 1], 0, positions(), 0, _numRotors);
+        int converted = 0;
+        for (int[] msg : msgs) {
+            converted += msg.length;
+        }
+        if (Metrics.ENABLED) {
+            _metrics.characters(converted);
+        }
+        String[] result = new String[lanes];
+        for (int k = 0; k < lanes; k += 1) {
+            StringBuilder text = new StringBuilder(out[k].length * 2);
+            for (int i = 0; i < out[k].length; i += 1) {
+                text.append(_alphabet.toChar(out[k][i]));
+                if (i % 5 == 4) {
+                    text.append(' ');
+                }
+            }
+            result[k] = text.toString();
+        }
+        commit(event, converted);
         return result;
     }
-    /** Returns _myRotors. */
+
+    /** Return the indices in my alphabet of the characters of MSG,
+     *  skipping those that convert(String) skips. */
+    private int[] toIndices(String msg) {
+        int[] result = new int[msg.length()];
+        int n = 0;
+        for (int i = 0; i < msg.length(); i += 1) {
+            char ch = msg.charAt(i);
+            if (!isSpace(ch)) {
+                result[n] = _alphabet.toInt(ch);
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+    /** Returns _myRotors, whose settings are brought up to date first. */
     Rotor[] getMyRotors() {
+        syncRotors();
         return _myRotors;
     }
-    /** Returns _plugboard. */
+
+    /** Return the flat engine for my current rotors, rings and
+     *  plugboard, building it if the configuration has changed. */
+    private Engine engine() {
+        if (_engine == null) {
+            syncRotors();
+            _engine = Engine.of(this);
+        }
+        return _engine;
+    }
+
+    /** Return the positions used by the engine, loading them from my
+     *  rotors if they have been set or handed out since. */
+    private int[] positions() {
+        settle();
+        if (_posns == null) {
+            _posns = new int[_numRotors];
+            for (int i = 0; i < _numRotors; i += 1) {
+                _posns[i] = _myRotors[i].setting();
+            }
+        }
+        return _posns;
+    }
+
+    /** Copy the positions used by the engine, if any, back into my
+     *  rotors, which become the authoritative copy again. */
+    private void syncRotors() {
+        settle();
+        if (_posns != null) {
+            for (int i = 0; i < _numRotors; i += 1) {
+                if (!_myRotors[i].reflecting()) {
+                    _myRotors[i].set(_posns[i]);
+                }
+            }
+            _posns = null;
+        }
+    }
+    /** Stop converting from the current keystream, if any, and bring
+     *  the engine positions up to the step it had reached. */
+    private void settle() {
+        KeystreamCache.Stream keystream = _keystream;
+        if (keystream == null) {
+            return;
+        }
+        _keystream = null;
+        Engine engine = engine();
+        int[] posns = positions();
+        for (; _step > 0; _step -= 1) {
+            engine.advance(posns);
+        }
+    }
+
+    /** Use CACHE (which may be null, for none) to convert the messages
+     *  that follow each setUp from a precomputed keystream, once their
+     *  setting recurs.  convertBatch does not use it, its lanes being
+     *  converted by their engines. */
+    void setKeystreamCache(KeystreamCache cache) {
+        settle();
+        _keystreamCache = cache;
+    }
+
+    /** Use CACHE (which may be null, for none), normally the shared
+     *  one, for the composite substitutions of my rotors other than the
+     *  rightmost. */
+    void setCompositeCache(CompositeCache cache) {
+        _compositeCache = cache;
+        _composites = null;
+    }
+
+    /** Take the precomputed tables of my engine from ARENA. */
+    void setTableArena(TableArena arena) {
+        syncRotors();
+        _tableArena = arena;
+        _engine = null;
+    }
+
+    /** Return the arena my engine's tables come from. */
+    TableArena tableArena() {
+        return _tableArena;
+    }
+
+    /** Returns my plugboard as a Permutation. */
     Permutation getPlugboard() {
+        if (_plugboard == null) {
+            _plugboard = _board.toPermutation(_alphabet);
+        }
         return _plugboard;
     }
+    /** Returns _allRotors. */
+    Collection<Rotor> getAllRotors() {
+        return _allRotors;
+    }
     /** Returns _plugboard. */
     Alphabet getAlphabet() {
         return _alphabet;
     }
+    /** Returns my metrics, or null if metrics are disabled. */
+    Metrics metrics() {
+        return _metrics;
+    }
+
+    /** Withdraw my metrics, if enabled, from the platform MBean server,
+     *  which otherwise keeps them as long as the process runs.  I may
+     *  still be used, and still count, but am no longer published. */
+    @Override
+    public void close() {
+        if (Metrics.ENABLED) {
+            _metrics.unregister();
+        }
+    }
 
 
     /** Common alphabet of my rotors. */
@@ -230,5 +786,31 @@ class Machine {
     private Rotor[] _myRotors;
     /** plugboard. */
     private Permutation _plugboard = new Permutation("()", new Alphabet());
+    /** The plugboard last given to setPlugboard(Plugboard), or null if
+     *  _plugboard was set since.  _plugboard is null until built from
+     *  it. */
+    private Plugboard _board;
+    /** Throughput and latency counters, if enabled. */
+    private final Metrics _metrics;
+    /** The rotors named by the setting line being checked. */
+    private final Rotor[] _found;
+    /** Flat tables for _myRotors, or null if they must be rebuilt. */
+    private Engine _engine;
+    /** Rotor positions while the engine is converting, or null when
+     *  the rotors themselves hold them. */
+    private int[] _posns;
+    /** Where my engine's precomputed tables are kept. */
+    private TableArena _tableArena = TableArena.HEAP;
+    /** Keystreams for the settings given to setUp, or null. */
+    private KeystreamCache _keystreamCache;
+    /** The keystream being converted from, or null. */
+    private KeystreamCache.Stream _keystream;
+    /** Number of characters converted from _keystream, by which the
+     *  positions are behind. */
+    private int _step;
+    /** Composites of the slow rotors, or null. */
+    private CompositeCache _compositeCache;
+    /** My view of _compositeCache for my current engine, or null. */
+    private CompositeCache.Session _composites;
 
 }
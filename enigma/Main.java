@@ -1,13 +1,14 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Scanner;
-import java.util.Set;
-import java.util.HashSet;
 import java.util.NoSuchElementException;
 
 import static enigma.EnigmaException.*;
@@ -44,7 +45,9 @@ public final class Main {
 
         _config = getInput(args[0]);
 
-        if (args.length > 1) {
+        if (Pipeline.ENABLED) {
+            _reader = getReader(args.length > 1 ? args[1] : null);
+        } else if (args.length > 1) {
             _input = getInput(args[1]);
         } else {
             _input = new Scanner(System.in);
@@ -57,6 +60,14 @@ public final class Main {
         }
     }
 
+    /** A Main that reads its configuration from CONFIG and has no
+     *  messages, for building machines from configurations held in
+     *  memory with readConfig. */
+    Main(Scanner config) {
+        _config = config;
+        _output = System.out;
+    }
+
     /** Return a Scanner reading from the file named NAME. */
     private Scanner getInput(String name) {
         try {
@@ -66,6 +77,19 @@ public final class Main {
         }
     }
 
+    /** Return a Reader of the file named NAME, or of the standard input
+     *  if NAME is null. */
+    private Reader getReader(String name) {
+        try {
+            if (name == null) {
+                return new InputStreamReader(System.in);
+            }
+            return new InputStreamReader(new FileInputStream(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
     /** Return a PrintStream writing to the file named NAME. */
     private PrintStream getOutput(String name) {
         try {
@@ -79,13 +103,44 @@ public final class Main {
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
     private void process() {
-        Machine smd = readConfig();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Events.ConfigLoad load = new Events.ConfigLoad();
+        load.begin();
+        try (TableArena arena = TableArena.fromProperties();
+             Machine smd = readConfig()) {
+            smd.setTableArena(arena);
+            smd.setKeystreamCache(KeystreamCache.fromProperties(arena));
+            smd.setCompositeCache(CompositeCache.fromProperties());
+            if (Metrics.ENABLED) {
+                smd.metrics().configParse(System.nanoTime() - start);
+            }
+            if (load.shouldCommit()) {
+                load.alphabetSize = smd.getAlphabet().size();
+                load.rotors = _allRotor.size();
+                load.slots = smd.numRotors();
+                load.commit();
+            }
+            if (_reader != null) {
+                new Pipeline(smd, _reader, _output).run();
+                return;
+            }
+            process(smd);
+        }
+    }
+
+    /** Apply SMD to the messages in _input, sending the results to
+     *  _output. */
+    private void process(Machine smd) {
         boolean hasSet = false;
         while (_input.hasNextLine()) {
             String settingMsg = _input.nextLine();
             String[] settingList = settingMsg.split("\\s+");
             if (settingList[0].equals("*")) {
+                long start = Metrics.ENABLED ? System.nanoTime() : 0;
                 setUp(smd, settingMsg);
+                if (Metrics.ENABLED) {
+                    smd.metrics().settingLine(System.nanoTime() - start);
+                }
                 hasSet = true;
             } else if (!hasSet && !settingMsg.isEmpty()) {
                 throw error("has not set");
@@ -96,8 +151,10 @@ public final class Main {
     }
 
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+     *  file _config.  If its alphabet line is ByteStream.CONFIG_ALPHABET,
+     *  the machine works on bytes and its rotors are described as
+     *  ByteStream explains. */
+    Machine readConfig() {
         try {
             if (_config.hasNextLine()) {
                 String temp = _config.nextLine();
@@ -119,6 +176,11 @@ public final class Main {
                 _numRotors = Integer.parseInt(numRotorPawlsList[0]);
                 _rawls = Integer.parseInt(numRotorPawlsList[1]);
             }
+            if (ByteStream.CONFIG_ALPHABET.equals(alphabetString)) {
+                readByteRotors();
+                return new Machine(Alphabet.bytes(), _numRotors, _rawls,
+                                   _allRotor);
+            }
             while (_config.hasNextLine()) {
                 String nextLine = _config.nextLine();
                 String[] nextLineList = nextLine.
@@ -155,23 +217,92 @@ public final class Main {
      * @param  cycle cycle */
     private Rotor roterCreater(String name, String type,
                                String notch, String cycle) {
+        if (!type.equals("M") && !type.equals("N") && !type.equals("R")) {
+            throw error("type does not match");
+        }
+        return roterCreater(name, type, notch,
+                new Permutation(cycle, new Alphabet(alphabetString)));
+    }
+
+    /** Return a rotor.
+     * @param name name
+     * @param type type
+     * @param  notch notch(es)
+     * @param  perm permutation */
+    private Rotor roterCreater(String name, String type,
+                               String notch, Permutation perm) {
         if (type.equals("M")) {
             _allRotorNames.add(name);
-            return new MovingRotor(name,
-                    new Permutation(cycle,
-                            new Alphabet(alphabetString)), notch);
+            return new MovingRotor(name, perm, notch);
         } else if (type.equals("N")) {
             _allRotorNames.add(name);
-            return new FixedRotor(name, new Permutation(cycle,
-                    new Alphabet(alphabetString)));
+            return new FixedRotor(name, perm);
         } else if (type.equals("R")) {
             _allRotorNames.add(name);
-            return new Reflector(name, new Permutation(cycle,
-                    new Alphabet(alphabetString)));
+            return new Reflector(name, perm);
         }
         throw error("type does not match");
     }
 
+    /** Read the rotors of a byte configuration from the rest of _config
+     *  into _allRotor.  A line starting with ByteStream.HEX continues the
+     *  table of the rotor before it. */
+    private void readByteRotors() {
+        String[] rotor = null;
+        StringBuilder spec = new StringBuilder();
+        while (_config.hasNextLine()) {
+            String line = _config.nextLine().trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (rotor != null && fields[0].startsWith(ByteStream.HEX)) {
+                spec.append(String.join("", fields));
+                continue;
+            }
+            if (rotor != null) {
+                _allRotor.add(readByteRotor(rotor, spec.toString()));
+            }
+            if (fields.length < 3) {
+                throw error("bad rotor description");
+            }
+            rotor = fields;
+            spec.setLength(0);
+            for (int k = 2; k < fields.length; k += 1) {
+                spec.append(fields[k]);
+            }
+        }
+        if (rotor != null) {
+            _allRotor.add(readByteRotor(rotor, spec.toString()));
+        }
+    }
+
+    /** Return the byte-alphabet rotor whose line starts with the fields
+     *  FIELDS (name, then type and notches) and whose permutation is
+     *  given by SPEC. */
+    private Rotor readByteRotor(String[] fields, String spec) {
+        Alphabet alpha = Alphabet.bytes();
+        String type = fields[1].substring(0, 1);
+        String notch = ByteStream.symbols(
+            ByteStream.parseHex(fields[1].substring(1)));
+        Permutation perm;
+        if (spec.startsWith(ByteStream.SEED)) {
+            try {
+                long seed = Long.parseLong(
+                    spec.substring(ByteStream.SEED.length()));
+                perm = Permutation.seeded(seed, alpha, type.equals("R"));
+            } catch (NumberFormatException excp) {
+                throw error("bad seed for rotor %s", fields[0]);
+            }
+        } else if (spec.startsWith(ByteStream.HEX)) {
+            perm = new Permutation(ByteStream.parseHex(
+                spec.replace(ByteStream.HEX, "")), alpha);
+        } else {
+            throw error("bad rotor description");
+        }
+        return roterCreater(fields[0], type, notch, perm);
+    }
+
     /** Return a rotor, reading its description from _config.
      * @param nextLine next line*/
     private Rotor readRotor(String nextLine) {
@@ -201,55 +332,10 @@ public final class Main {
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        String[] settingList = settings.split("\\s+");
-        String[] order = new String[M.numRotors()];
-        String posSetting = "";
-        String plugboard = "";
-        String ring = "";
-        for (int i = 1; i < settingList.length; i++) {
-            if (i < (M.numRotors() + 1)) {
-                if (!_allRotorNames.contains(settingList[i])) {
-                    throw error("Name not in all rotors");
-                } else {
-                    order[i - 1] = settingList[i];
-                }
-            } else if (i == (M.numRotors() + 1)) {
-                posSetting = settingList[i];
-            } else {
-                if (!settingList[i].split("")[0].equals("(")) {
-                    ring = settingList[i];
-                } else {
-                    plugboard += settingList[i];
-                }
-
-            }
-        }
-        if (checkDuplicateUsingAdd(order)) {
-            throw error("Duplicate rotor name");
-        }
-        M.insertRotors(order);
-        if (!ring.equals("")) {
-            M.setRing(ring);
-        }
-        M.setRotors(posSetting);
-        M.setPlugboard(new Permutation(plugboard,
-                new Alphabet(alphabetString)));
-    }
-    /** Find duplicate of a set.
-     * @return if it has duplicates
-     * @param input an array*/
-    private boolean checkDuplicateUsingAdd(String[] input) {
-        Set<String> tempSet = new HashSet<String>();
-        for (String str : input) {
-            if (!tempSet.add(str)) {
-                return true;
-            }
-        }
-        return false;
+    void setUp(Machine M, String settings) {
+        M.setUp(settings);
     }
 
-
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
@@ -259,6 +345,9 @@ public final class Main {
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** Source of input messages when pipelined, else null. */
+    private Reader _reader;
+
     /** Source of input messages. */
     private Scanner _input;
 
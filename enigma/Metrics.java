@@ -0,0 +1,242 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/** Throughput and latency counters for one machine, published as the
+ *  JMX MBean enigma:type=Machine,name=machine-N.  Counters are LongAdders
+ *  so that sessions sharing a machine do not contend on one cache line.
+ *  Latencies go into histograms with one bucket per power of two.
+ *
+ *  Metrics are off unless the system property enigma.metrics is true.
+ *  Every call site is guarded by the constant ENABLED, so when they are
+ *  off the JIT removes the instrumentation altogether.
+ *  @author Shelden Shi
+ */
+final class Metrics implements MetricsMBean {
+
+    /** True iff metrics are collected. */
+    static final boolean ENABLED = Boolean.getBoolean("enigma.metrics");
+
+    /** Serial number of the next machine registered. */
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    /** Return new metrics registered with the platform MBean server,
+     *  or null if metrics are disabled. */
+    static Metrics register() {
+        if (!ENABLED) {
+            return null;
+        }
+        Metrics result = new Metrics();
+        try {
+            result._name = new ObjectName("enigma:type=Machine,name=machine-"
+                                          + NEXT_ID.getAndIncrement());
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new StandardMBean(result,
+                                                   MetricsMBean.class),
+                                 result._name);
+        } catch (JMException excp) {
+            result._name = null;
+        }
+        return result;
+    }
+
+    /** Remove me from the platform MBean server. */
+    void unregister() {
+        if (_name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                    .unregisterMBean(_name);
+            } catch (JMException excp) {
+                return;
+            } finally {
+                _name = null;
+            }
+        }
+    }
+
+    /** Return the name under which I am registered, or null if I am
+     *  not. */
+    ObjectName name() {
+        return _name;
+    }
+
+    /** Record the conversion of one character. */
+    void character() {
+        _characters.increment();
+    }
+
+    /** Record the conversion of N characters. */
+    void characters(int n) {
+        _characters.add(n);
+    }
+
+    /** Record the conversion of a message in NANOS nanoseconds. */
+    void message(long nanos) {
+        _messages.increment();
+        _conversion.record(nanos);
+    }
+
+    /** Record applying a setting line in NANOS nanoseconds. */
+    void settingLine(long nanos) {
+        _settingLines.increment();
+        _setUp.record(nanos);
+    }
+
+    /** Record reading a configuration in NANOS nanoseconds. */
+    void configParse(long nanos) {
+        _configParse.add(nanos);
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages.sum();
+    }
+
+    @Override
+    public long getSettingLines() {
+        return _settingLines.sum();
+    }
+
+    @Override
+    public long getConfigParseNanos() {
+        return _configParse.sum();
+    }
+
+    @Override
+    public long getSetUpNanos() {
+        return _setUp.total();
+    }
+
+    @Override
+    public long getConversionNanos() {
+        return _conversion.total();
+    }
+
+    @Override
+    public double getCharactersPerSecond() {
+        return perSecond(getCharacters(), getConversionNanos());
+    }
+
+    @Override
+    public double getMessagesPerSecond() {
+        return perSecond(getMessages(), getConversionNanos());
+    }
+
+    @Override
+    public long getConversionP50Nanos() {
+        return _conversion.percentile(HALF);
+    }
+
+    @Override
+    public long getConversionP99Nanos() {
+        return _conversion.percentile(P99);
+    }
+
+    @Override
+    public long getSetUpP99Nanos() {
+        return _setUp.percentile(P99);
+    }
+
+    @Override
+    public void reset() {
+        _characters.reset();
+        _messages.reset();
+        _settingLines.reset();
+        _configParse.reset();
+        _conversion.reset();
+        _setUp.reset();
+    }
+
+    /** Return COUNT events per second of NANOS nanoseconds. */
+    private static double perSecond(long count, long nanos) {
+        return nanos == 0 ? 0.0 : count * NANOS_PER_SECOND / nanos;
+    }
+
+    /** A histogram of durations with one bucket per power of two. */
+    static final class Histogram {
+        /** An empty histogram. */
+        Histogram() {
+            _buckets = new LongAdder[Long.SIZE];
+            for (int i = 0; i < _buckets.length; i += 1) {
+                _buckets[i] = new LongAdder();
+            }
+            _total = new LongAdder();
+        }
+
+        /** Record a duration of NANOS nanoseconds. */
+        void record(long nanos) {
+            long n = Math.max(nanos, 0);
+            _buckets[Long.SIZE - Long.numberOfLeadingZeros(n)].add(1);
+            _total.add(n);
+        }
+
+        /** Return the sum of the durations recorded. */
+        long total() {
+            return _total.sum();
+        }
+
+        /** Return the upper bound of the bucket holding the FRACTION
+         *  quantile of the durations recorded, or 0 if there are none. */
+        long percentile(double fraction) {
+            long count = 0;
+            for (LongAdder bucket : _buckets) {
+                count += bucket.sum();
+            }
+            long target = (long) Math.ceil(count * fraction);
+            long seen = 0;
+            for (int i = 0; i < _buckets.length; i += 1) {
+                seen += _buckets[i].sum();
+                if (seen >= target && seen > 0) {
+                    return i == Long.SIZE - 1 ? Long.MAX_VALUE : 1L << i;
+                }
+            }
+            return 0;
+        }
+
+        /** Set all buckets to zero. */
+        void reset() {
+            for (LongAdder bucket : _buckets) {
+                bucket.reset();
+            }
+            _total.reset();
+        }
+
+        /** Counts; bucket I holds durations below 2**I. */
+        private final LongAdder[] _buckets;
+        /** Sum of durations. */
+        private final LongAdder _total;
+    }
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+    /** Median. */
+    private static final double HALF = 0.5;
+    /** 99th percentile. */
+    private static final double P99 = 0.99;
+
+    /** Name under which I am registered, if any. */
+    private ObjectName _name;
+    /** Characters converted. */
+    private final LongAdder _characters = new LongAdder();
+    /** Messages converted. */
+    private final LongAdder _messages = new LongAdder();
+    /** Setting lines applied. */
+    private final LongAdder _settingLines = new LongAdder();
+    /** Time reading configurations. */
+    private final LongAdder _configParse = new LongAdder();
+    /** Message conversion times. */
+    private final Histogram _conversion = new Histogram();
+    /** Setting line times. */
+    private final Histogram _setUp = new Histogram();
+}
@@ -0,0 +1,48 @@
+package enigma;
+
+/** Management interface of the metrics of one machine, as published
+ *  through JMX.  Times are in nanoseconds.
+ *  @author Shelden Shi
+ */
+public interface MetricsMBean {
+
+    /** Return the number of characters converted. */
+    long getCharacters();
+
+    /** Return the number of messages (lines) converted. */
+    long getMessages();
+
+    /** Return the number of setting lines applied. */
+    long getSettingLines();
+
+    /** Return the total time spent reading the configuration. */
+    long getConfigParseNanos();
+
+    /** Return the total time spent applying setting lines. */
+    long getSetUpNanos();
+
+    /** Return the total time spent converting messages. */
+    long getConversionNanos();
+
+    /** Return the mean number of characters converted per second of
+     *  conversion time. */
+    double getCharactersPerSecond();
+
+    /** Return the mean number of messages converted per second of
+     *  conversion time. */
+    double getMessagesPerSecond();
+
+    /** Return an upper bound on the median time to convert a message. */
+    long getConversionP50Nanos();
+
+    /** Return an upper bound on the 99th percentile of the time to
+     *  convert a message. */
+    long getConversionP99Nanos();
+
+    /** Return an upper bound on the 99th percentile of the time to apply
+     *  a setting line. */
+    long getSetUpP99Nanos();
+
+    /** Set all counters and histograms back to zero. */
+    void reset();
+}
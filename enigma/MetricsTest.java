@@ -0,0 +1,114 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.Scanner;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Metrics class.  Metrics are
+ *  enabled only by a system property read when the class is loaded, so
+ *  unless this JVM was started with it, the tests that need them run in
+ *  a child JVM that is.
+ *  @author Shelden Shi
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** What probe() returns when the counters are right. */
+    private static final String EXPECTED = "characters 12 messages 2 "
+        + "registered true closed false";
+
+    /** Build a machine, convert two messages on it and return what the
+     *  platform MBean server says of its metrics, before and after the
+     *  machine is closed.  Metrics must be enabled. */
+    static String probe() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Machine m = navalMachine(5, 3);
+        ObjectName name = m.metrics().name();
+        m.setUp("* B Beta III IV I AXLE");
+        m.convert("HELLO WORLD");
+        m.convert("AB");
+        String result = String.format("characters %s messages %s "
+                                      + "registered %b",
+                                      server.getAttribute(name,
+                                                          "Characters"),
+                                      server.getAttribute(name, "Messages"),
+                                      server.isRegistered(name));
+        m.close();
+        return result + " closed " + server.isRegistered(name);
+    }
+
+    /** Print probe(), for a child JVM started by the tests; ARGS is
+     *  ignored. */
+    public static void main(String... args) throws JMException {
+        System.out.println(probe());
+    }
+
+    /** Return the output of main in a child JVM with metrics enabled. */
+    private static String probeEnabled()
+        throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator
+            + "bin" + File.separator + "java";
+        Process child =
+            new ProcessBuilder(java, "-Denigma.metrics=true", "-cp",
+                               System.getProperty("java.class.path"),
+                               MetricsTest.class.getName())
+            .redirectErrorStream(true).start();
+        String result;
+        try (Scanner out = new Scanner(child.getInputStream(),
+                                       Charset.defaultCharset())) {
+            result = out.useDelimiter("\\A").hasNext() ? out.next() : "";
+        }
+        assertEquals(result, 0, child.waitFor());
+        return result.trim();
+    }
+
+    @Test
+    public void countersThroughMBeanServer() throws Exception {
+        if (Metrics.ENABLED) {
+            assertEquals(EXPECTED, probe());
+        } else {
+            assertEquals(EXPECTED, probeEnabled());
+        }
+    }
+
+    @Test
+    public void disabledRegistersNothing() {
+        if (!Metrics.ENABLED) {
+            Machine m = navalMachine(5, 3);
+            assertTrue(m.metrics() == null);
+            m.close();
+        }
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        Metrics.Histogram h = new Metrics.Histogram();
+        assertEquals(0, h.percentile(0.5));
+        for (int k = 0; k < 99; k += 1) {
+            h.record(100);
+        }
+        h.record(5000);
+        assertEquals(100 * 99 + 5000, h.total());
+        assertEquals(128, h.percentile(0.5));
+        assertEquals(128, h.percentile(0.99));
+        assertEquals(8192, h.percentile(1.0));
+        h.reset();
+        assertEquals(0, h.total());
+        assertEquals(0, h.percentile(0.99));
+    }
+}
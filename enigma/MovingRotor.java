@@ -3,7 +3,7 @@ package enigma;
 /** Class that represents a rotating rotor in the enigma machine.
  *  @author Shelden Shi
  */
-class MovingRotor extends Rotor {
+final class MovingRotor extends Rotor {
 
     /** A rotor named NAME whose permutation in its default setting is
      *  PERM, and whose notches are at the positions indicated in NOTCHES.
@@ -14,17 +14,17 @@ class MovingRotor extends Rotor {
         super(name, perm);
         notchesArray = notches.split("");
         _notches = notches;
+        _atNotch = new boolean[size()];
+        for (String x : notchesArray) {
+            if (!x.isEmpty()) {
+                _atNotch[_permutation.getAlphabet().toInt(x.charAt(0))] = true;
+            }
+        }
     }
 
     @Override
     boolean atNotch() {
-        for (String x : notchesArray) {
-            int temp = _permutation.getAlphabet().toInt(x.charAt(0));
-            if (temp == setting()) {
-                return true;
-            }
-        }
-        return false;
+        return _atNotch[setting()];
     }
     @Override
     /** Return true iff I have a ratchet and can move. */
@@ -40,6 +40,10 @@ class MovingRotor extends Rotor {
         _notches = newNotches;
     }
     @Override
+    String notches() {
+        return String.join("", notchesArray);
+    }
+    @Override
     void advance() {
         set(setting() + 1);
     }
@@ -47,4 +51,6 @@ class MovingRotor extends Rotor {
     private String[] notchesArray;
     /** notches. */
     private String _notches;
+    /** Whether each position is at a notch. */
+    private final boolean[] _atNotch;
 }
@@ -3,6 +3,7 @@ package enigma;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Random;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
  *  to the characters of an alphabet.
@@ -19,6 +20,11 @@ class Permutation {
         _alphabet = alphabet;
         cycles = cycles.replaceAll("\\s+", "");
         _cycle = cycles;
+        _derangement = _cycle.equals("");
+        _permuteTable = new int[_alphabet.size()];
+        _invertTable = new int[_alphabet.size()];
+        Arrays.fill(_permuteTable, -1);
+        Arrays.fill(_invertTable, -1);
         mapPermuteChar = new HashMap<>();
         mapInvertChar = new HashMap<>();
         mapPermuteInt = new HashMap<>();
@@ -37,15 +43,121 @@ class Permutation {
         }
     }
 
+    /** Set this Permutation to the one taking index K of ALPHABET to
+     *  TABLE[K], which must hold each index once.  Serves alphabets
+     *  such as Alphabet.bytes() whose characters cannot be written in
+     *  cycle notation. */
+    Permutation(int[] table, Alphabet alphabet) {
+        _alphabet = alphabet;
+        int size = alphabet.size();
+        if (table.length != size) {
+            throw EnigmaException.error(
+                    "permutation table has %d entries, not %d",
+                    table.length, size);
+        }
+        _cycle = null;
+        _derangement = false;
+        cycleArray = new String[0];
+        _permuteTable = new int[size];
+        _invertTable = new int[size];
+        Arrays.fill(_invertTable, -1);
+        for (int from = 0; from < size; from += 1) {
+            int to = table[from];
+            if (to < 0 || to >= size || _invertTable[to] >= 0) {
+                throw EnigmaException.error("permutation table is not "
+                                            + "a permutation");
+            }
+            _permuteTable[from] = to;
+            _invertTable[to] = from;
+        }
+    }
+
+    /** A permutation of ALPHABET taking K to TABLE[K], with inverse
+     *  INVERSE, both already checked and not shared. */
+    private Permutation(Alphabet alphabet, int[] table, int[] inverse) {
+        _alphabet = alphabet;
+        _cycle = null;
+        _derangement = false;
+        cycleArray = new String[0];
+        _permuteTable = table;
+        _invertTable = inverse;
+    }
+
+    /** Fill in the maps from _permuteTable and _invertTable if they are
+     *  not there: permutations built from tables leave them out until
+     *  asked for. */
+    private void buildMaps() {
+        if (mapPermuteChar != null) {
+            return;
+        }
+        mapPermuteChar = new HashMap<>();
+        mapInvertChar = new HashMap<>();
+        mapPermuteInt = new HashMap<>();
+        mapInvertInt = new HashMap<>();
+        for (int from = 0; from < _permuteTable.length; from += 1) {
+            int to = _permuteTable[from];
+            if (to < 0) {
+                continue;
+            }
+            String fromChar = String.valueOf(_alphabet.toChar(from));
+            String toChar = String.valueOf(_alphabet.toChar(to));
+            mapPermuteChar.put(fromChar, toChar);
+            mapPermuteInt.put(from, to);
+            mapInvertChar.put(toChar, fromChar);
+            mapInvertInt.put(to, from);
+        }
+    }
+
+    /** Return a permutation of ALPHABET drawn at random from SEED: any
+     *  permutation if not INVOLUTION, else one made of swaps, fixing
+     *  at most one index, as a reflector's must be.  The same seed
+     *  always gives the same permutation. */
+    static Permutation seeded(long seed, Alphabet alphabet,
+                              boolean involution) {
+        Random random = new Random(seed);
+        int size = alphabet.size();
+        int[] order = new int[size];
+        for (int k = 0; k < size; k += 1) {
+            order[k] = k;
+        }
+        for (int k = size - 1; k > 0; k -= 1) {
+            int j = random.nextInt(k + 1);
+            int tmp = order[k];
+            order[k] = order[j];
+            order[j] = tmp;
+        }
+        if (!involution) {
+            return new Permutation(order, alphabet);
+        }
+        int[] table = new int[size];
+        for (int k = 0; k < size; k += 1) {
+            table[k] = k;
+        }
+        for (int k = 0; k + 1 < size; k += 2) {
+            table[order[k]] = order[k + 1];
+            table[order[k + 1]] = order[k];
+        }
+        return new Permutation(table, alphabet);
+    }
+
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     public void addCycle(String cycle) {
+        buildMaps();
+        _inverse = null;
+        _cycles = null;
+        _cycleType = null;
         String[] xCycle = cycle.replaceAll("\\s+", "").split("");
         int xSize = xCycle.length;
         if (xSize == 1) {
             mapToItself(xCycle[0]);
         } else {
             for (int i = 0; i < xSize; i++) {
+                int from = _alphabet.toInt(xCycle[i].charAt(0));
+                _permuteTable[from] = _alphabet.toInt(
+                        xCycle[(i + 1) % xSize].charAt(0));
+                _invertTable[from] = _alphabet.toInt(
+                        xCycle[(i + xSize - 1) % xSize].charAt(0));
                 if (i == 0) {
                     mapPermuteChar.put(xCycle[0], xCycle[1]);
                     mapPermuteInt.put(_alphabet.toInt(xCycle[0].charAt(0)),
@@ -80,6 +192,9 @@ class Permutation {
         mapInvertChar.put(lonely, lonely);
         mapInvertInt.put(_alphabet.toInt(lonely.charAt(0)),
                 _alphabet.toInt(lonely.charAt(0)));
+        int self = _alphabet.toInt(lonely.charAt(0));
+        _permuteTable[self] = self;
+        _invertTable[self] = self;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -99,56 +214,222 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int index = wrap(p);
-        if (!mapPermuteInt.containsKey(index)) {
+        int result = _permuteTable[wrap(p)];
+        if (result < 0) {
             throw EnigmaException.error("Not In Alphabet!");
         }
-        if (derangement()) {
+        if (_derangement) {
             return p;
         } else {
-            return mapPermuteInt.get(index);
+            return result;
         }
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int index = wrap(c);
-        if (!mapInvertInt.containsKey(index)) {
+        int result = _invertTable[wrap(c)];
+        if (result < 0) {
             throw EnigmaException.error("Not In Alphabet!");
         }
-        if (derangement()) {
+        if (_derangement) {
             return c;
         } else {
-            return mapInvertInt.get(index);
+            return result;
         }
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        String s = String.valueOf(p);
-        if (!mapPermuteChar.containsKey(s)) {
+        int index = _alphabet.indexOf(p);
+        if (index < 0 || _permuteTable[index] < 0) {
             throw EnigmaException.error("Not In Alphabet!");
         }
-        if (derangement()) {
+        if (_derangement) {
             return p;
         } else {
-            return mapPermuteChar.get(s).charAt(0);
+            return _alphabet.toChar(_permuteTable[index]);
         }
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        String s = String.valueOf(c);
-        if (!mapInvertChar.containsKey(String.valueOf(s))) {
+        int index = _alphabet.indexOf(c);
+        if (index < 0 || _invertTable[index] < 0) {
             throw EnigmaException.error("Not In Alphabet!");
         }
-        if (derangement()) {
+        if (_derangement) {
             return c;
         } else {
-            return mapInvertChar.get(s).charAt(0);
+            return _alphabet.toChar(_invertTable[index]);
+        }
+    }
+
+    /** Return the image of each index, entry K being permute(K).  The
+     *  array is a copy. */
+    int[] table() {
+        return _permuteTable.clone();
+    }
+
+    /** Return the permutation taking K to permute(Q.permute(K)): Q
+     *  first, then me.  Q must be over the same alphabet. */
+    Permutation compose(Permutation q) {
+        check(q);
+        int[] table = compose(_permuteTable, q._permuteTable);
+        return new Permutation(_alphabet, table,
+                               compose(q._invertTable, _invertTable));
+    }
+
+    /** Return my inverse.  Computed once. */
+    Permutation inverse() {
+        Permutation result = _inverse;
+        if (result == null) {
+            result = new Permutation(_alphabet, _invertTable.clone(),
+                                     _permuteTable.clone());
+            result._inverse = this;
+            _inverse = result;
+        }
+        return result;
+    }
+
+    /** Return my K-th power (K may be negative, the -1st being my
+     *  inverse).  Takes time linear in size() whatever K is. */
+    Permutation power(int k) {
+        int[] table = power(_permuteTable, cycles(), k);
+        return new Permutation(_alphabet, table, inverse(table));
+    }
+
+    /** Return my conjugate by G: the permutation taking G.permute(K) to
+     *  G.permute(permute(K)), which has my cycles with G applied to each
+     *  of their elements.  G must be over the same alphabet. */
+    Permutation conjugate(Permutation g) {
+        check(g);
+        int[] table = conjugate(_permuteTable, g._permuteTable);
+        return new Permutation(_alphabet, table,
+                               conjugate(_invertTable, g._permuteTable));
+    }
+
+    /** Return my cycles, fixed points included, each starting from its
+     *  smallest index, in increasing order of those.  Computed once; the
+     *  arrays must not be changed. */
+    int[][] cycles() {
+        int[][] result = _cycles;
+        if (result == null) {
+            result = cycles(_permuteTable);
+            _cycles = result;
+        }
+        return result;
+    }
+
+    /** Return my cycle type: the lengths of my cycles in decreasing
+     *  order, fixed points included.  Computed once; the array must not
+     *  be changed. */
+    int[] cycleType() {
+        int[] result = _cycleType;
+        if (result == null) {
+            int[][] cycles = cycles();
+            result = new int[cycles.length];
+            for (int k = 0; k < cycles.length; k += 1) {
+                result[k] = -cycles[k].length;
+            }
+            Arrays.sort(result);
+            for (int k = 0; k < result.length; k += 1) {
+                result[k] = -result[k];
+            }
+            _cycleType = result;
+        }
+        return result;
+    }
+
+    /** Throw an exception unless OTHER permutes my alphabet. */
+    private void check(Permutation other) {
+        if (other._alphabet != _alphabet
+            && !Arrays.equals(other._alphabet.alphabet(),
+                              _alphabet.alphabet())) {
+            throw EnigmaException.error("permutations of different "
+                                        + "alphabets");
+        }
+    }
+
+    /** Return the table taking K to P[Q[K]], P and Q being tables of
+     *  permutations of the same size. */
+    static int[] compose(int[] p, int[] q) {
+        int[] result = new int[q.length];
+        compose(p, q, result);
+        return result;
+    }
+
+    /** Set OUT[K] to P[Q[K]] for each K.  OUT may be Q but not P. */
+    static void compose(int[] p, int[] q, int[] out) {
+        for (int k = 0; k < q.length; k += 1) {
+            out[k] = p[q[k]];
+        }
+    }
+
+    /** Return the inverse of the permutation table P. */
+    static int[] inverse(int[] p) {
+        int[] result = new int[p.length];
+        for (int k = 0; k < p.length; k += 1) {
+            result[p[k]] = k;
+        }
+        return result;
+    }
+
+    /** Return the K-th power of the permutation table P, whose cycles
+     *  are CYCLES. */
+    static int[] power(int[] p, int[][] cycles, int k) {
+        int[] result = new int[p.length];
+        for (int[] cycle : cycles) {
+            int length = cycle.length;
+            int shift = Math.floorMod(k, length);
+            for (int i = 0; i < length; i += 1) {
+                int j = i + shift;
+                result[cycle[i]] = cycle[j < length ? j : j - length];
+            }
+        }
+        return result;
+    }
+
+    /** Return the K-th power of the permutation table P. */
+    static int[] power(int[] p, int k) {
+        return power(p, cycles(p), k);
+    }
+
+    /** Return the conjugate of the permutation table P by G: the table
+     *  taking G[K] to G[P[K]]. */
+    static int[] conjugate(int[] p, int[] g) {
+        int[] result = new int[p.length];
+        for (int k = 0; k < p.length; k += 1) {
+            result[g[k]] = g[p[k]];
+        }
+        return result;
+    }
+
+    /** Return the cycles of the permutation table P, each starting from
+     *  its smallest index, in increasing order of those. */
+    static int[][] cycles(int[] p) {
+        boolean[] seen = new boolean[p.length];
+        int[] order = new int[p.length];
+        int[] starts = new int[p.length + 1];
+        int count = 0, n = 0;
+        for (int c = 0; c < p.length; c += 1) {
+            if (!seen[c]) {
+                starts[count] = n;
+                count += 1;
+                for (int x = c; !seen[x]; x = p[x]) {
+                    seen[x] = true;
+                    order[n] = x;
+                    n += 1;
+                }
+            }
+        }
+        starts[count] = n;
+        int[][] result = new int[count][];
+        for (int k = 0; k < count; k += 1) {
+            result[k] = Arrays.copyOfRange(order, starts[k], starts[k + 1]);
         }
+        return result;
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -159,26 +440,30 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        return _cycle.equals("");
+        return _derangement;
     }
     /** Alphabet of this permutation.
      * @return map*/
     HashMap getMapPermuteChar() {
+        buildMaps();
         return mapPermuteChar;
     }
     /** Alphabet of this permutation.
      * @return map*/
     HashMap getMapPermuteInt() {
+        buildMaps();
         return mapPermuteInt;
     }
     /** Alphabet of this permutation.
      * @return map*/
     HashMap getMapInvertChar() {
+        buildMaps();
         return mapInvertChar;
     }
     /** Alphabet of this permutation.
      * @return map*/
     HashMap getMapInvertInt() {
+        buildMaps();
         return mapInvertInt;
     }
     /** Alphabet of this permutation.
@@ -201,4 +486,18 @@ class Permutation {
     private HashMap<Integer, Integer> mapPermuteInt;
     /** Alphabet of this permutation. */
     private HashMap<Integer, Integer> mapInvertInt;
+    /** Image of each index, or -1 if not yet mapped; mirrors
+     *  mapPermuteInt so that permute(int) does not box. */
+    private int[] _permuteTable;
+    /** Inverse image of each index, or -1; mirrors mapInvertInt. */
+    private int[] _invertTable;
+    /** True iff _cycle is empty (the identity), fixed at
+     *  construction. */
+    private boolean _derangement;
+    /** My inverse, or null if not yet asked for. */
+    private volatile Permutation _inverse;
+    /** My cycles, or null if not yet asked for. */
+    private volatile int[][] _cycles;
+    /** My cycle type, or null if not yet asked for. */
+    private volatile int[] _cycleType;
 }
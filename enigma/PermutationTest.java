@@ -5,6 +5,7 @@ import org.junit.Rule;
 import org.junit.rules.Timeout;
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 
 import static enigma.TestUtils.*;
 
@@ -163,4 +164,78 @@ public class PermutationTest {
         perm = new Permutation("(AB) (CD)", new Alphabet(alpha));
         checkPerm("a", "ABCD", "BADC");
     }
+
+    @Test
+    public void checkAlgebra() {
+        Permutation x = Permutation.seeded(1, UPPER, false);
+        Permutation y = Permutation.seeded(2, UPPER, false);
+        Permutation xy = x.compose(y);
+        Permutation conj = x.conjugate(y);
+        Permutation cube = x.power(3);
+        Permutation back = x.power(-2);
+        for (int k = 0; k < 26; k += 1) {
+            assertEquals(x.permute(y.permute(k)), xy.permute(k));
+            assertEquals(k, xy.invert(xy.permute(k)));
+            assertEquals(y.permute(x.permute(k)),
+                         conj.permute(y.permute(k)));
+            assertEquals(k, conj.invert(conj.permute(k)));
+            assertEquals(x.permute(x.permute(x.permute(k))),
+                         cube.permute(k));
+            assertEquals(x.invert(x.invert(k)), back.permute(k));
+            assertEquals(x.invert(k), x.inverse().permute(k));
+        }
+        assertSame(x.inverse(), x.inverse());
+        assertSame(x, x.inverse().inverse());
+        assertSame(x.cycleType(), x.cycleType());
+        assertArrayEquals(x.cycleType(), conj.cycleType());
+        assertArrayEquals(x.table(), x.power(1).table());
+        int order = 1;
+        for (int length : x.cycleType()) {
+            int gcd = order, r = length;
+            while (r != 0) {
+                int t = gcd % r;
+                gcd = r;
+                r = t;
+            }
+            order = order / gcd * length;
+        }
+        int[] identity = new Permutation("", UPPER).table();
+        assertArrayEquals(identity, x.power(0).table());
+        assertArrayEquals(identity, x.power(order).table());
+        assertArrayEquals(identity, x.power(-order).table());
+    }
+
+    @Test
+    public void checkCycles() {
+        Alphabet abc = new Alphabet("ABCDEFG");
+        Permutation q = new Permutation("(CAE) (BG)", abc);
+        int[][] cycles = q.cycles();
+        assertEquals(4, cycles.length);
+        assertArrayEquals(new int[] {0, 4, 2}, cycles[0]);
+        assertArrayEquals(new int[] {1, 6}, cycles[1]);
+        assertArrayEquals(new int[] {3}, cycles[2]);
+        assertArrayEquals(new int[] {5}, cycles[3]);
+        assertArrayEquals(new int[] {3, 2, 1, 1}, q.cycleType());
+        assertArrayEquals(q.cycleType(), CycleCatalog.cycleType(q));
+        int[] table = q.table();
+        assertArrayEquals(Permutation.power(table, 6),
+                          new Permutation("", abc).table());
+        assertArrayEquals(Permutation.inverse(table),
+                          q.inverse().table());
+        int[] out = table.clone();
+        Permutation.compose(table, out, out);
+        assertArrayEquals(Permutation.power(table, 2), out);
+        try {
+            q.compose(new Permutation("", UPPER));
+            fail("composed permutations of different alphabets");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        Permutation bytes = Permutation.seeded(9, Alphabet.bytes(), true);
+        for (int length : bytes.cycleType()) {
+            assertTrue(length <= 2);
+        }
+        assertTrue(Arrays.equals(bytes.table(), bytes.inverse().table()));
+        assertEquals(256, bytes.getMapPermuteInt().size());
+    }
 }
@@ -0,0 +1,287 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** The pipelined form of Main.process, chosen with the system property
+ *  enigma.pipeline.  One thread reads and splits the input into lines,
+ *  one (the caller) sets up the machine and converts, and one writes
+ *  the output, so that reading, converting and writing overlap and the
+ *  whole runs at the speed of the slowest stage.  Every line converts
+ *  from the machine state left by the line before it, so there is a
+ *  single converter.  The stages are joined by RingBuffers whose slots
+ *  are Lines with char buffers that are reused, growing only when a
+ *  line is longer than any before it; ordinary lines are passed through
+ *  without allocating.
+ *
+ *  Input is split into lines as Scanner.nextLine splits it, setting
+ *  lines are recognized and applied as in Main.process, and each
+ *  converted line is printed on a line of its own.  The first error of
+ *  any stage stops the others; output converted before it is still
+ *  written, and the error is then thrown by run.
+ *  @author Shelden Shi
+ */
+final class Pipeline {
+
+    /** True iff Main should use a Pipeline. */
+    static final boolean ENABLED = Boolean.getBoolean("enigma.pipeline");
+
+    /** Default number of lines each ring holds. */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    /** Initial size of each line buffer. */
+    private static final int LINE_SIZE = 128;
+    /** Size of the buffer the input is read into. */
+    private static final int READ_SIZE = 1 << 16;
+
+    /** What a Line holds. */
+    private enum Kind {
+        /** Message text, to be converted, or converted text. */
+        TEXT,
+        /** A setting line. */
+        SETTING,
+        /** The end of the stream. */
+        END
+    }
+
+    /** A slot of a ring: one line of characters. */
+    private static final class Line {
+        /** Make room for at least SIZE characters, discarding my
+         *  contents. */
+        void reserve(int size) {
+            if (_chars.length < size) {
+                _chars = new char[Math.max(size, 2 * _chars.length)];
+            }
+        }
+
+        /** Append CH, growing if need be. */
+        void append(char ch) {
+            if (_length == _chars.length) {
+                char[] bigger = new char[2 * _chars.length];
+                System.arraycopy(_chars, 0, bigger, 0, _length);
+                _chars = bigger;
+            }
+            _chars[_length] = ch;
+            _length += 1;
+        }
+
+        /** Return true iff I am a setting line, by the test that
+         *  Main.process applies. */
+        boolean isSetting() {
+            return _length > 0 && _chars[0] == '*'
+                && (_length == 1 || Machine.isSpace(_chars[1]));
+        }
+
+        /** What I hold. */
+        private Kind _kind;
+        /** The characters. */
+        private char[] _chars = new char[LINE_SIZE];
+        /** Number of characters in use. */
+        private int _length;
+    }
+
+    /** A pipeline that applies MACHINE to the lines read from INPUT,
+     *  printing the results on OUTPUT, with rings of CAPACITY lines (a
+     *  power of two). */
+    Pipeline(Machine machine, Reader input, PrintStream output,
+             int capacity) {
+        _machine = machine;
+        _input = input;
+        _output = output;
+        _lines = new RingBuffer<>(capacity, Line::new);
+        _converted = new RingBuffer<>(capacity, Line::new);
+    }
+
+    /** A pipeline that applies MACHINE to the lines read from INPUT,
+     *  printing the results on OUTPUT. */
+    Pipeline(Machine machine, Reader input, PrintStream output) {
+        this(machine, input, output, DEFAULT_CAPACITY);
+    }
+
+    /** Process all the input, returning once all the output has been
+     *  written. */
+    void run() {
+        Thread reader = new Thread(this::read, "enigma-reader");
+        Thread writer = new Thread(this::write, "enigma-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+        convert();
+        try {
+            writer.join();
+            reader.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            fail(excp);
+        }
+        Throwable err = _error;
+        if (err instanceof EnigmaException) {
+            throw (EnigmaException) err;
+        } else if (err instanceof IOException) {
+            throw error("I/O error: %s", err.getMessage());
+        } else if (err instanceof RuntimeException) {
+            throw (RuntimeException) err;
+        } else if (err instanceof Error) {
+            throw (Error) err;
+        } else if (err != null) {
+            throw new IllegalStateException(err);
+        }
+    }
+
+    /** The reader stage: split the input into Lines, ending with an END
+     *  line. */
+    private void read() {
+        char[] buf = new char[READ_SIZE];
+        Line line = null;
+        boolean afterCR = false;
+        try {
+            for (int n = _input.read(buf); n >= 0 && _error == null;
+                 n = _input.read(buf)) {
+                for (int k = 0; k < n; k += 1) {
+                    char ch = buf[k];
+                    if (afterCR && ch == '\n') {
+                        afterCR = false;
+                        continue;
+                    }
+                    afterCR = ch == '\r';
+                    if (line == null) {
+                        line = _lines.claim();
+                        line._length = 0;
+                    }
+                    if (isLineEnd(ch)) {
+                        line._kind = line.isSetting() ? Kind.SETTING
+                            : Kind.TEXT;
+                        _lines.publish();
+                        line = null;
+                    } else {
+                        line.append(ch);
+                    }
+                }
+            }
+            if (line != null) {
+                line._kind = line.isSetting() ? Kind.SETTING : Kind.TEXT;
+                _lines.publish();
+                line = null;
+            }
+        } catch (IOException | RuntimeException excp) {
+            fail(excp);
+        }
+        if (line == null) {
+            line = _lines.claim();
+        }
+        line._kind = Kind.END;
+        _lines.publish();
+    }
+
+    /** Return true iff CH ends a line, as for Scanner.nextLine. */
+    private static boolean isLineEnd(char ch) {
+        return ch == '\n' || ch == '\r' || ch == '\u2028'
+            || ch == '\u2029' || ch == '\u0085';
+    }
+
+    /** The converter stage: apply each setting line to the machine and
+     *  convert each text line into the output ring.  After an error,
+     *  the input is drained without converting, so that the reader is
+     *  not left waiting for room. */
+    private void convert() {
+        boolean hasSet = false;
+        while (true) {
+            Line in = _lines.take();
+            if (in._kind == Kind.END) {
+                _lines.release();
+                break;
+            }
+            if (_error == null) {
+                try {
+                    hasSet = convert(in, hasSet);
+                } catch (RuntimeException excp) {
+                    fail(excp);
+                }
+            }
+            _lines.release();
+        }
+        Line out = _converted.claim();
+        out._kind = Kind.END;
+        _converted.publish();
+    }
+
+    /** Handle IN, where HASSET tells whether a setting line has been
+     *  seen, and return whether one has been seen after IN. */
+    private boolean convert(Line in, boolean hasSet) {
+        if (in._kind == Kind.SETTING) {
+            long start = Metrics.ENABLED ? System.nanoTime() : 0;
+            _machine.setUp(new String(in._chars, 0, in._length));
+            if (Metrics.ENABLED) {
+                _machine.metrics().settingLine(System.nanoTime() - start);
+            }
+            return true;
+        }
+        if (!hasSet && in._length > 0) {
+            throw error("has not set");
+        }
+        Line out = _converted.claim();
+        out.reserve(2 * in._length);
+        out._length = _machine.convert(in._chars, in._length, out._chars);
+        out._kind = Kind.TEXT;
+        _converted.publish();
+        return hasSet;
+    }
+
+    /** The writer stage: print each converted line until END. */
+    private void write() {
+        Writer w = new BufferedWriter(new OutputStreamWriter(_output),
+                                      READ_SIZE);
+        String newline = System.lineSeparator();
+        boolean ok = true;
+        while (true) {
+            Line out = _converted.take();
+            if (out._kind == Kind.END) {
+                _converted.release();
+                break;
+            }
+            if (ok) {
+                try {
+                    w.write(out._chars, 0, out._length);
+                    w.write(newline);
+                } catch (IOException excp) {
+                    fail(excp);
+                    ok = false;
+                }
+            }
+            _converted.release();
+        }
+        try {
+            w.flush();
+        } catch (IOException excp) {
+            fail(excp);
+        }
+    }
+
+    /** Record EXCP as the error of the run, unless there already is
+     *  one. */
+    private synchronized void fail(Throwable excp) {
+        if (_error == null) {
+            _error = excp;
+        }
+    }
+
+    /** The machine. */
+    private final Machine _machine;
+    /** Where the input comes from. */
+    private final Reader _input;
+    /** Where the output goes. */
+    private final PrintStream _output;
+    /** Lines from the reader to the converter. */
+    private final RingBuffer<Line> _lines;
+    /** Lines from the converter to the writer. */
+    private final RingBuffer<Line> _converted;
+    /** The first error of any stage, or null. */
+    private volatile Throwable _error;
+}
@@ -0,0 +1,120 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Pipeline and RingBuffer
+ *  classes.
+ *  @author Shelden Shi
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return what the pipeline prints for INPUT on a naval machine with
+     *  rings of CAPACITY lines. */
+    private String pipelined(String input, int capacity) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        new Pipeline(navalMachine(5, 3), new StringReader(input), out,
+                     capacity).run();
+        out.flush();
+        return bytes.toString();
+    }
+
+    /** Return what Main.process prints for INPUT on a naval machine. */
+    private String sequential(String input) {
+        Machine m = navalMachine(5, 3);
+        StringBuilder result = new StringBuilder();
+        for (String line : input.split("\r\n|\n|\r", -1)) {
+            if (line.matches("\\*(\\s.*)?")) {
+                m.setUp(line);
+            } else {
+                result.append(m.convert(line)).append(System.lineSeparator());
+            }
+        }
+        if (input.endsWith("\n")) {
+            int sep = System.lineSeparator().length();
+            result.setLength(result.length() - sep);
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void checkMatchesSequential() {
+        Random random = new Random(17);
+        StringBuilder input = new StringBuilder();
+        String[] settings = {
+            "* B Beta I II III AAAA",
+            "* C Gamma IV V VI AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "* B Beta III IV I AXLE BCDE (YF) (ZH)",
+        };
+        for (int k = 0; k < 3000; k += 1) {
+            if (k % 400 == 0) {
+                input.append(settings[k / 400 % settings.length]);
+            } else {
+                for (int n = random.nextInt(300); n > 0; n -= 1) {
+                    input.append(random.nextInt(6) == 0 ? ' '
+                                 : UPPER_STRING.charAt(random.nextInt(26)));
+                }
+            }
+            input.append(k % 7 == 0 ? "\r\n" : "\n");
+        }
+        String text = input.toString();
+        assertEquals(sequential(text), pipelined(text, 8));
+        assertEquals(sequential(text), pipelined(text, 1024));
+    }
+
+    @Test
+    public void checkErrors() {
+        String input = "* B Beta I II III AAAA\nHELLO\n* B Beta I II IX AAAA\n"
+            + "WORLD\n";
+        try {
+            pipelined(input, 2);
+            fail("bad setting line accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("Name not in all rotors", excp.getMessage());
+        }
+        try {
+            pipelined("HELLO\n", 2);
+            fail("message before setting accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("has not set", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkRingBufferOrder() throws InterruptedException {
+        RingBuffer<int[]> ring = new RingBuffer<>(4, () -> new int[1]);
+        int count = 200_000;
+        long[] sum = new long[1];
+        Thread consumer = new Thread(() -> {
+            for (int k = 0; k < count; k += 1) {
+                int[] slot = ring.take();
+                if (slot[0] == k) {
+                    sum[0] += 1;
+                }
+                ring.release();
+            }
+        });
+        consumer.start();
+        for (int k = 0; k < count; k += 1) {
+            ring.claim()[0] = k;
+            ring.publish();
+        }
+        consumer.join();
+        assertEquals(count, sum[0]);
+    }
+
+}
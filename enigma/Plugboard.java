@@ -0,0 +1,159 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A plugboard held as a bare table of swaps, for solvers that try
+ *  plugboard after plugboard on the same rotors.  Entry C of the table
+ *  is the character C is plugged to, or C itself, so the table is always
+ *  an involution; a pair is added or removed by setting two entries.
+ *  Unlike a Permutation, a Plugboard carries no maps or cycle strings,
+ *  and Machine.setPlugboard(Plugboard) hands it to the engine without
+ *  rebuilding the rotor tables.  Plugboards are mutable and not
+ *  thread-safe; a machine keeps its own copy of the one it is given.
+ *  @author Shelden Shi
+ */
+final class Plugboard {
+
+    /** An empty plugboard for an alphabet of SIZE characters. */
+    Plugboard(int size) {
+        if (size <= 0) {
+            throw error("bad plugboard size");
+        }
+        _table = new int[size];
+        clear();
+    }
+
+    /** A copy of BOARD. */
+    Plugboard(Plugboard board) {
+        _table = board._table.clone();
+        _pairs = board._pairs;
+    }
+
+    /** Return the plugboard of ALPHA given by PAIRS, a string of pairs
+     *  of its characters such as "AQ EP" or "(AQ) (EP)".  Whitespace and
+     *  parentheses are ignored. */
+    static Plugboard of(String pairs, Alphabet alpha) {
+        String chars = pairs.replaceAll("[\\s()]+", "");
+        if (chars.length() % 2 != 0) {
+            throw error("plugboard pairs have an odd number of characters");
+        }
+        Plugboard result = new Plugboard(alpha.size());
+        for (int k = 0; k < chars.length(); k += 2) {
+            result.add(index(chars.charAt(k), alpha),
+                       index(chars.charAt(k + 1), alpha));
+        }
+        return result;
+    }
+
+    /** Return the index of CH in ALPHA. */
+    private static int index(char ch, Alphabet alpha) {
+        if (!alpha.contains(ch)) {
+            throw error("plugboard character %c not in alphabet", ch);
+        }
+        return alpha.toInt(ch);
+    }
+
+    /** Return the number of characters of my alphabet. */
+    int size() {
+        return _table.length;
+    }
+
+    /** Return the number of pairs plugged. */
+    int pairs() {
+        return _pairs;
+    }
+
+    /** Return true iff no pairs are plugged. */
+    boolean isIdentity() {
+        return _pairs == 0;
+    }
+
+    /** Return the character C is plugged to, or C if it is not. */
+    int swap(int c) {
+        return _table[c];
+    }
+
+    /** Return true iff C is plugged. */
+    boolean plugged(int c) {
+        return _table[c] != c;
+    }
+
+    /** Plug A to B, neither of which may be plugged already. */
+    void add(int a, int b) {
+        check(a);
+        check(b);
+        if (a == b || _table[a] != a || _table[b] != b) {
+            throw error("cannot plug %d to %d", a, b);
+        }
+        _table[a] = b;
+        _table[b] = a;
+        _pairs += 1;
+    }
+
+    /** Unplug C and its partner.  Returns the partner, or -1 if C was
+     *  not plugged. */
+    int remove(int c) {
+        check(c);
+        int partner = _table[c];
+        if (partner == c) {
+            return -1;
+        }
+        _table[c] = c;
+        _table[partner] = partner;
+        _pairs -= 1;
+        return partner;
+    }
+
+    /** Unplug every pair. */
+    void clear() {
+        for (int c = 0; c < _table.length; c += 1) {
+            _table[c] = c;
+        }
+        _pairs = 0;
+    }
+
+    /** Make me a copy of BOARD, which must be for an alphabet of my
+     *  size. */
+    void set(Plugboard board) {
+        if (board._table.length != _table.length) {
+            throw error("plugboard sizes differ");
+        }
+        System.arraycopy(board._table, 0, _table, 0, _table.length);
+        _pairs = board._pairs;
+    }
+
+    /** Return my table: entry C is swap(C).  Not a copy. */
+    int[] table() {
+        return _table;
+    }
+
+    /** Return me as a Permutation of ALPHA, which must have my size. */
+    Permutation toPermutation(Alphabet alpha) {
+        return new Permutation(_table.clone(), alpha);
+    }
+
+    /** Throw an exception unless C is an index of my alphabet. */
+    private void check(int c) {
+        if (c < 0 || c >= _table.length) {
+            throw error("plugboard index %d out of range", c);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Plugboard
+            && Arrays.equals(_table, ((Plugboard) obj)._table);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(_table);
+    }
+
+    /** Entry C is the character C is plugged to, or C. */
+    private final int[] _table;
+    /** Number of pairs plugged. */
+    private int _pairs;
+}
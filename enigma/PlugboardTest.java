@@ -0,0 +1,104 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Plugboard class.
+ *  @author Shelden Shi
+ */
+public class PlugboardTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Rotor order and positions of the machines tested. */
+    private static final String SETTING = "* B Beta III IV I AXLE";
+
+    @Test
+    public void checkPairs() {
+        Plugboard board = new Plugboard(26);
+        assertTrue(board.isIdentity());
+        board.add(0, 16);
+        board.add(4, 15);
+        assertEquals(2, board.pairs());
+        assertEquals(16, board.swap(0));
+        assertEquals(0, board.swap(16));
+        assertEquals(1, board.swap(1));
+        assertEquals(board, Plugboard.of("(AQ) (EP)", UPPER));
+        try {
+            board.add(16, 1);
+            fail("plugged a character twice");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertEquals(0, board.remove(16));
+        assertEquals(-1, board.remove(0));
+        assertFalse(board.plugged(0));
+        assertEquals(1, board.pairs());
+        assertEquals(Plugboard.of("PE", UPPER), board);
+        board.remove(4);
+        assertTrue(board.isIdentity());
+        Permutation perm = Plugboard.of("AQ EP TZ", UPPER)
+            .toPermutation(UPPER);
+        assertEquals('Q', perm.permute('A'));
+        assertEquals('T', perm.invert('Z'));
+        assertEquals('B', perm.permute('B'));
+        try {
+            Plugboard.of("AQE", UPPER);
+            fail("accepted an odd number of characters");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkMachine() {
+        Random random = new Random(47);
+        Machine packed = navalMachine(5, 3);
+        packed.setCompositeCache(new CompositeCache(1 << 10));
+        Machine plain = navalMachine(5, 3);
+        packed.setUp(SETTING);
+        plain.setUp(SETTING);
+        Plugboard board = new Plugboard(26);
+        for (int trial = 0; trial < 50; trial += 1) {
+            if (board.pairs() > 0 && random.nextInt(3) == 0) {
+                board.remove(random.nextInt(26));
+            } else {
+                int a = random.nextInt(26), b = random.nextInt(26);
+                if (a != b && !board.plugged(a) && !board.plugged(b)) {
+                    board.add(a, b);
+                }
+            }
+            packed.setPlugboard(board);
+            plain.setPlugboard(board.toPermutation(UPPER));
+            for (int k = 0; k < 30; k += 1) {
+                int c = random.nextInt(26);
+                int expected = plain.convertReference(c);
+                int got = trial % 5 == 0 ? packed.convertReference(c)
+                    : packed.convert(c);
+                assertEquals(msg("packed", "trial %d, character %d",
+                                 trial, k), expected, got);
+            }
+        }
+        Plugboard saved = new Plugboard(board);
+        packed.setPlugboard(board);
+        board.clear();
+        for (int c = 0; c < 26; c += 1) {
+            assertEquals(saved.swap(c), packed.getPlugboard().permute(c));
+        }
+        packed.setPlugboard(board);
+        plain.setPlugboard(new Permutation("", UPPER));
+        for (int k = 0; k < 100; k += 1) {
+            int c = random.nextInt(26);
+            assertEquals(plain.convert(c), packed.convert(c));
+        }
+    }
+
+}
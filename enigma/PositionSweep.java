@@ -0,0 +1,126 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Exhaustive sweep of the start positions of a configured machine.
+ *  Positions are visited in reflected (Gray) order, rightmost rotor
+ *  fastest, so that neighbouring starts differ in the position of a
+ *  single rotor by one.  The rotors other than the rightmost are
+ *  folded into a chain of composite tables, level J being the
+ *  substitution performed by slots 0 through J on the way in and out.
+ *  When a rotor in slot J moves, only levels J and above are rebuilt,
+ *  so each keypress costs two rotor lookups, one composite lookup and
+ *  the plugboard, however many rotors the machine has.
+ *  @author Shelden Shi
+ */
+final class PositionSweep {
+
+    /** Receives the result of converting the message from one start. */
+    interface Listener {
+        /** Called with the start positions START (one per slot, slot 0
+         *  being the reflector) and the converted message OUTPUT.  Both
+         *  arrays are reused for the next start and must not be kept. */
+        void visit(int[] start, int[] output);
+    }
+
+    /** A sweep over the start positions of ENGINE. */
+    PositionSweep(Engine engine) {
+        _engine = engine;
+        _size = engine.size();
+        _numRotors = engine.numRotors();
+        _levels = new int[_numRotors - 1][_size];
+        _levelPosns = new int[_numRotors - 1];
+        _valid = 0;
+    }
+
+    /** Convert MSG (alphabet indices) from every start position, in Gray
+     *  order, passing each result to LISTENER.  Returns the number of
+     *  starts visited. */
+    long sweep(int[] msg, Listener listener) {
+        int[] start = new int[_numRotors];
+        int[] dirs = new int[_numRotors];
+        int[] posns = new int[_numRotors];
+        int[] output = new int[msg.length];
+        Arrays.fill(dirs, 1);
+        long count = 0;
+        while (true) {
+            System.arraycopy(start, 0, posns, 0, _numRotors);
+            convert(posns, msg, output);
+            listener.visit(start, output);
+            count += 1;
+            int slot = _numRotors - 1;
+            while (slot > 0) {
+                int next = start[slot] + dirs[slot];
+                if (next >= 0 && next < _size) {
+                    start[slot] = next;
+                    break;
+                }
+                dirs[slot] = -dirs[slot];
+                slot -= 1;
+            }
+            if (slot == 0) {
+                return count;
+            }
+        }
+    }
+
+    /** Convert MSG into OUTPUT, advancing POSNS before each keypress as
+     *  the machine would. */
+    void convert(int[] posns, int[] msg, int[] output) {
+        int fast = _numRotors - 1;
+        for (int k = 0; k < msg.length; k += 1) {
+            _engine.advance(posns);
+            int[] core = core(posns);
+            int c = _engine.plugboard(msg[k]);
+            c = _engine.forward(fast, posns[fast], c);
+            c = _engine.backward(fast, posns[fast], core[c]);
+            output[k] = _engine.plugboard(c);
+        }
+    }
+
+    /** Return the composite table of slots 0 through numRotors() - 2 in
+     *  positions POSNS, rebuilding only the levels whose rotors have
+     *  moved since the last call. */
+    private int[] core(int[] posns) {
+        int top = _numRotors - 2;
+        int from = _valid;
+        for (int j = 1; j < _valid; j += 1) {
+            if (_levelPosns[j] != posns[j]) {
+                from = j;
+                break;
+            }
+        }
+        if (from == 0) {
+            for (int c = 0; c < _size; c += 1) {
+                _levels[0][c] = _engine.forward(0, posns[0], c);
+            }
+            _levelPosns[0] = posns[0];
+            from = 1;
+        }
+        for (int j = from; j <= top; j += 1) {
+            int[] below = _levels[j - 1];
+            int[] level = _levels[j];
+            int posn = posns[j];
+            for (int c = 0; c < _size; c += 1) {
+                level[c] = _engine.backward(j, posn,
+                        below[_engine.forward(j, posn, c)]);
+            }
+            _levelPosns[j] = posn;
+        }
+        _valid = top + 1;
+        return _levels[top];
+    }
+
+    /** The wiring swept. */
+    private final Engine _engine;
+    /** Alphabet size. */
+    private final int _size;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Composite tables; level J covers slots 0 through J. */
+    private final int[][] _levels;
+    /** Position of slot J when level J was built. */
+    private final int[] _levelPosns;
+    /** Number of levels currently valid. */
+    private int _valid;
+}
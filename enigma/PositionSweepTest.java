@@ -0,0 +1,69 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PositionSweep class.
+ *  @author Shelden Shi
+ */
+public class PositionSweepTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void checkSweepMatchesMachine() {
+        Machine m = navalMachine(4, 2);
+        m.insertRotors(new String[] {"B", "Beta", "VI", "III"});
+        m.setRing("CXA");
+        m.setPlugboard(new Permutation("(AQ) (EP) (TZ)", UPPER));
+        int[] msg = new int[30];
+        for (int k = 0; k < msg.length; k += 1) {
+            msg[k] = (k * 7) % 26;
+        }
+        HashSet<String> seen = new HashSet<>();
+        PositionSweep sweep = new PositionSweep(Engine.of(m));
+        long count = sweep.sweep(msg, (start, output) -> {
+            String posns = "";
+            for (int i = 1; i < start.length; i += 1) {
+                posns += UPPER.toChar(start[i]);
+            }
+            assertTrue(seen.add(posns));
+            m.setRotors(posns);
+            for (int k = 0; k < msg.length; k += 1) {
+                assertEquals(posns, m.convert(msg[k]), output[k]);
+            }
+        });
+        assertEquals(26 * 26 * 26, count);
+    }
+
+    @Test
+    public void checkGrayOrder() {
+        Machine m = navalMachine(3, 2);
+        m.insertRotors(new String[] {"C", "I", "II"});
+        int[] prev = new int[3];
+        boolean[] first = {true};
+        new PositionSweep(Engine.of(m)).sweep(new int[0], (start, out) -> {
+            if (!first[0]) {
+                int diffs = 0;
+                for (int i = 0; i < start.length; i += 1) {
+                    if (start[i] != prev[i]) {
+                        diffs += 1;
+                        assertEquals(1, Math.abs(start[i] - prev[i]));
+                    }
+                }
+                assertEquals(1, diffs);
+            }
+            first[0] = false;
+            System.arraycopy(start, 0, prev, 0, start.length);
+        });
+    }
+
+}
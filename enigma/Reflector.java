@@ -5,7 +5,7 @@ import static enigma.EnigmaException.*;
 /** Class that represents a reflector in the enigma.
  *  @author Sheldon Shi
  */
-class Reflector extends FixedRotor {
+final class Reflector extends FixedRotor {
 
     /** A non-moving rotor named NAME whose permutation at the 0 setting
      * is PERM. */
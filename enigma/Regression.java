@@ -0,0 +1,277 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static enigma.EnigmaException.*;
+
+/** A performance regression check of Main over a directory of
+ *  workloads, such as Workload writes.  From the command line,
+ *
+ *      java enigma.Regression [-update] DIR BASELINE [TOLERANCE]
+ *
+ *  runs Main on each NAME.conf and NAME.in in DIR, in this JVM, ROUNDS
+ *  times after a warm-up run, and measures the throughput of its best
+ *  round in message characters per second, the bytes the main thread
+ *  allocates per character, and the peak heap use.  These are compared
+ *  with the results recorded in the properties file BASELINE: a
+ *  throughput more than TOLERANCE (a fraction, default 0.2) below its
+ *  baseline, or an allocation rate or peak heap more than TOLERANCE
+ *  above it (and by more than ALLOCATION_SLACK or HEAP_SLACK), is a
+ *  regression.  Workloads missing from BASELINE are added to it, as are
+ *  all of them with -update.  Exits with status 1 on a regression.
+ *  Run with the same heap size and charset as the baseline was.
+ *  @author Shelden Shi
+ */
+final class Regression {
+
+    /** Number of timed rounds per workload. */
+    static final int ROUNDS = 3;
+
+    /** Default tolerance. */
+    static final double DEFAULT_TOLERANCE = 0.2;
+
+    /** Allocation increase, in bytes per character, never taken for a
+     *  regression. */
+    static final double ALLOCATION_SLACK = 1;
+
+    /** Peak heap increase, in bytes, never taken for a regression. */
+    static final long HEAP_SLACK = 16L << 20;
+
+    /** Results of one workload. */
+    static final class Result {
+        /** Results of CHARSPERSECOND characters per second,
+         *  BYTESPERCHAR bytes allocated per character and a peak heap
+         *  of PEAKHEAP bytes. */
+        Result(double charsPerSecond, double bytesPerChar, long peakHeap) {
+            _charsPerSecond = charsPerSecond;
+            _bytesPerChar = bytesPerChar;
+            _peakHeap = peakHeap;
+        }
+
+        /** Return the result for NAME recorded in PROPS, or null if there
+         *  is none. */
+        static Result load(Properties props, String name) {
+            String chars = props.getProperty(name + ".charsPerSecond");
+            String bytes = props.getProperty(name + ".bytesPerChar");
+            String heap = props.getProperty(name + ".peakHeap");
+            if (chars == null || bytes == null || heap == null) {
+                return null;
+            }
+            try {
+                return new Result(Double.parseDouble(chars),
+                                  Double.parseDouble(bytes),
+                                  Long.parseLong(heap));
+            } catch (NumberFormatException excp) {
+                throw error("bad baseline for %s", name);
+            }
+        }
+
+        /** Record me in PROPS as the result for NAME. */
+        void store(Properties props, String name) {
+            props.setProperty(name + ".charsPerSecond",
+                              String.format("%.0f", _charsPerSecond));
+            props.setProperty(name + ".bytesPerChar",
+                              String.format("%.3f", _bytesPerChar));
+            props.setProperty(name + ".peakHeap", Long.toString(_peakHeap));
+        }
+
+        /** Return a description of each way I regress from BASE by more
+         *  than TOLERANCE; empty if I do not. */
+        List<String> regressions(Result base, double tolerance) {
+            List<String> result = new ArrayList<>();
+            if (_charsPerSecond < base._charsPerSecond * (1 - tolerance)) {
+                result.add(String.format("throughput %.0f%% of baseline",
+                                         100 * _charsPerSecond
+                                         / base._charsPerSecond));
+            }
+            if (_bytesPerChar > base._bytesPerChar * (1 + tolerance)
+                && _bytesPerChar > base._bytesPerChar + ALLOCATION_SLACK) {
+                result.add(String.format("allocation %.1f bytes/char, "
+                                         + "baseline %.1f", _bytesPerChar,
+                                         base._bytesPerChar));
+            }
+            if (_peakHeap > base._peakHeap * (1 + tolerance)
+                && _peakHeap > base._peakHeap + HEAP_SLACK) {
+                result.add(String.format("peak heap %d MB, baseline %d MB",
+                                         _peakHeap >> 20,
+                                         base._peakHeap >> 20));
+            }
+            return result;
+        }
+
+        /** Characters per second. */
+        private final double _charsPerSecond;
+        /** Bytes allocated per character. */
+        private final double _bytesPerChar;
+        /** Peak heap use in bytes. */
+        private final long _peakHeap;
+    }
+
+    /** Not instantiable. */
+    private Regression() {
+    }
+
+    /** Return the results of running Main on the configuration CONF and
+     *  input IN, which holds CHARS message characters. */
+    static Result measure(File conf, File in, long chars) throws IOException {
+        File out = File.createTempFile("regression", ".out");
+        try {
+            run(conf, in, out);
+            long best = Long.MAX_VALUE;
+            long allocated = Long.MAX_VALUE;
+            long peak = 0;
+            for (int round = 0; round < ROUNDS; round += 1) {
+                System.gc();
+                resetPeaks();
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                run(conf, in, out);
+                best = Math.min(best, System.nanoTime() - start);
+                allocated = Math.min(allocated, allocatedBytes() - bytes);
+                peak = Math.max(peak, peakHeap());
+            }
+            return new Result(chars * 1e9 / best,
+                              (double) allocated / Math.max(chars, 1), peak);
+        } finally {
+            Files.deleteIfExists(out.toPath());
+        }
+    }
+
+    /** Run Main on CONF and IN, writing to OUT. */
+    private static void run(File conf, File in, File out) {
+        Main.main(conf.getPath(), in.getPath(), out.getPath());
+    }
+
+    /** Return the number of message characters in IN: those that are
+     *  not whitespace, on lines that are not setting lines. */
+    static long characters(File in) throws IOException {
+        long result = 0;
+        for (String line : Files.readAllLines(in.toPath(),
+                                              Charset.defaultCharset())) {
+            if (line.startsWith("*")) {
+                continue;
+            }
+            for (int k = 0; k < line.length(); k += 1) {
+                if (!Machine.isSpace(line.charAt(k))) {
+                    result += 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of bytes allocated so far by this thread. */
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean())
+            .getCurrentThreadAllocatedBytes();
+    }
+
+    /** Reset the peak usage of the heap pools. */
+    private static void resetPeaks() {
+        for (MemoryPoolMXBean pool
+                 : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /** Return the sum of the peak usages of the heap pools since they
+     *  were last reset. */
+    private static long peakHeap() {
+        long result = 0;
+        for (MemoryPoolMXBean pool
+                 : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                result += pool.getPeakUsage().getUsed();
+            }
+        }
+        return result;
+    }
+
+    /** Run the check described by ARGS (see the class comment). */
+    public static void main(String... args) {
+        try {
+            boolean update = args.length > 0 && args[0].equals("-update");
+            if (update) {
+                args = Arrays.copyOfRange(args, 1, args.length);
+            }
+            if (args.length < 2 || args.length > 3) {
+                throw error("Usage: Regression [-update] DIR BASELINE "
+                            + "[TOLERANCE]");
+            }
+            double tolerance;
+            try {
+                tolerance = args.length > 2 ? Double.parseDouble(args[2])
+                    : DEFAULT_TOLERANCE;
+            } catch (NumberFormatException excp) {
+                throw error("bad tolerance: %s", args[2]);
+            }
+            File dir = new File(args[0]);
+            File baseline = new File(args[1]);
+            File[] confs = dir.listFiles((d, name) -> name.endsWith(".conf"));
+            if (confs == null || confs.length == 0) {
+                throw error("no workloads in %s", dir);
+            }
+            Arrays.sort(confs);
+            Properties props = new Properties();
+            if (baseline.exists()) {
+                try (InputStream base = new FileInputStream(baseline)) {
+                    props.load(base);
+                }
+            }
+            boolean regressed = false, changed = false;
+            System.out.printf("%-12s %14s %12s %10s%n", "workload",
+                              "chars/s", "bytes/char", "peak MB");
+            for (File conf : confs) {
+                String name = conf.getName().replaceAll("\\.conf$", "");
+                File in = new File(dir, name + ".in");
+                if (!in.exists()) {
+                    continue;
+                }
+                Result now = measure(conf, in, characters(in));
+                Result base = Result.load(props, name);
+                String status;
+                if (base == null || update) {
+                    now.store(props, name);
+                    changed = true;
+                    status = base == null ? "recorded" : "updated";
+                } else {
+                    List<String> problems = now.regressions(base, tolerance);
+                    regressed |= !problems.isEmpty();
+                    status = problems.isEmpty() ? "OK"
+                        : "REGRESSED: " + String.join("; ", problems);
+                }
+                System.out.printf("%-12s %14.0f %12.2f %10d  %s%n", name,
+                                  now._charsPerSecond, now._bytesPerChar,
+                                  now._peakHeap >> 20, status);
+            }
+            if (changed) {
+                try (OutputStream base = new FileOutputStream(baseline)) {
+                    props.store(base, "enigma.Regression baseline");
+                }
+            }
+            if (regressed) {
+                System.exit(1);
+            }
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/** A bounded, lock-free queue between exactly one producer thread and
+ *  one consumer thread.  Its slots are allocated once, when it is made,
+ *  and are handed back and forth rather than copied: the producer
+ *  claims a free slot, fills it in and publishes it; the consumer takes
+ *  the oldest published slot, reads it and releases it for reuse.  The
+ *  only shared state is one counter for each side, written by that side
+ *  alone with release semantics, so neither side ever takes a lock.
+ *  @author Shelden Shi
+ */
+final class RingBuffer<T> {
+
+    /** Spins before a waiting thread starts to park. */
+    private static final int SPINS = 100;
+    /** Nanoseconds a waiting thread parks for at a time. */
+    private static final long PARK_NANOS = 10_000;
+
+    /** A ring of CAPACITY slots, which must be a power of two, each
+     *  made by SLOT. */
+    @SuppressWarnings("unchecked")
+    RingBuffer(int capacity, Supplier<T> slot) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw EnigmaException.error("capacity must be a power of two");
+        }
+        _slots = (T[]) new Object[capacity];
+        for (int k = 0; k < capacity; k += 1) {
+            _slots[k] = slot.get();
+        }
+        _mask = capacity - 1;
+    }
+
+    /** Return the next free slot, waiting for one if necessary.  Only
+     *  the producer may call this, and it must publish the slot before
+     *  claiming another. */
+    T claim() {
+        long tail = _tail.get();
+        for (int spins = 0; tail - _head.get() == _slots.length;
+             spins += 1) {
+            pause(spins);
+        }
+        return _slots[(int) tail & _mask];
+    }
+
+    /** Make the slot last claimed visible to the consumer. */
+    void publish() {
+        _tail.lazySet(_tail.get() + 1);
+    }
+
+    /** Return the oldest published slot, waiting for one if necessary.
+     *  Only the consumer may call this, and it must release the slot
+     *  before taking another. */
+    T take() {
+        long head = _head.get();
+        for (int spins = 0; head == _tail.get(); spins += 1) {
+            pause(spins);
+        }
+        return _slots[(int) head & _mask];
+    }
+
+    /** Hand the slot last taken back to the producer. */
+    void release() {
+        _head.lazySet(_head.get() + 1);
+    }
+
+    /** Wait a little, having already waited SPINS times: busy at first,
+     *  then parking so that an idle stage does not hold a CPU. */
+    private static void pause(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /** The slots. */
+    private final T[] _slots;
+    /** Mask that reduces a count to a slot index. */
+    private final int _mask;
+    /** Number of slots taken by the consumer. */
+    private final AtomicLong _head = new AtomicLong();
+    /** Number of slots published by the producer. */
+    private final AtomicLong _tail = new AtomicLong();
+}
@@ -0,0 +1,219 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** A joint search of the start positions and ring settings of the
+ *  moving rotors of a configured machine.  A rotor's wiring enters the
+ *  conversion only through its position less its ring, while its notch
+ *  goes by its position alone.  So the settings fall into offset
+ *  classes, all of whose members convert with the same wiring offsets
+ *  at the start of a message and differ only in when the rotors turn
+ *  over.  Over a message of a given length, the starts of the moving
+ *  rotors fall in turn into far fewer timing classes, each stepping the
+ *  rotors at the same keypresses.  A message is therefore decrypted
+ *  once per offset class and timing class, not once per ring setting
+ *  and start, which saves a factor of roughly the alphabet size per
+ *  rotor; reduction() reports the factor, and the classes are those
+ *  of Keyspace.  The timing classes are visited in lexicographic order of
+ *  their moves, and each decryption reuses the prefix it shares with
+ *  the previous class, redoing only the keypresses after the first
+ *  turnover at which they differ.  The slots other than the rightmost
+ *  are converted through a private CompositeCache, whose tables are
+ *  shared by all offset classes with the same slow positions.
+ *  @author Shelden Shi
+ */
+final class RingSearch {
+
+    /** Judges a trial decryption. */
+    interface Scorer {
+        /** Return the score of PLAIN (alphabet indices), higher being
+         *  better.  PLAIN is reused and must not be kept. */
+        double score(int[] plain);
+    }
+
+    /** A best setting found. */
+    static final class Result {
+        /** A result of SCORE for start positions START and rings RINGS
+         *  (one per slot, slot 0 being the reflector), one of
+         *  EQUIVALENT settings giving the same decryption. */
+        private Result(int[] start, int[] rings, double score,
+                       long equivalent) {
+            _start = start;
+            _rings = rings;
+            _score = score;
+            _equivalent = equivalent;
+        }
+
+        /** Return the start positions, one per slot. */
+        int[] start() {
+            return _start.clone();
+        }
+
+        /** Return the ring settings, one per slot. */
+        int[] rings() {
+            return _rings.clone();
+        }
+
+        /** Return the score. */
+        double score() {
+            return _score;
+        }
+
+        /** Return the number of settings (starts and rings of the
+         *  moving rotors) that decrypt the message as mine does. */
+        long equivalent() {
+            return _equivalent;
+        }
+
+        /** Start positions. */
+        private final int[] _start;
+        /** Ring settings. */
+        private final int[] _rings;
+        /** Score. */
+        private final double _score;
+        /** Number of equivalent settings. */
+        private final long _equivalent;
+    }
+
+    /** A search of the settings of the moving rotors of ENGINE that
+     *  decrypt CIPHER (alphabet indices).  The other slots keep the
+     *  positions they have in START (one per slot, slot 0 being the
+     *  reflector) and the rings they have in ENGINE. */
+    RingSearch(Engine engine, int[] start, int[] cipher) {
+        _engine = engine;
+        _size = engine.size();
+        _start = start.clone();
+        _cipher = cipher.clone();
+        _keyspace = new Keyspace(engine, cipher.length);
+        _moving = _keyspace.moving();
+        _classes = _keyspace.offsetClasses();
+        _timings = _keyspace.timings();
+    }
+
+    /** Return the settings I search, as a Keyspace. */
+    Keyspace keyspace() {
+        return _keyspace;
+    }
+
+    /** Return the factor by which the equivalence of settings reduces
+     *  the number of decryptions, before reuse of shared prefixes. */
+    double reduction() {
+        return (double) _classes / _timings.size();
+    }
+
+    /** Return the number of offset classes. */
+    int offsetClasses() {
+        return _classes;
+    }
+
+    /** Return the number of timing classes. */
+    int timingClasses() {
+        return _timings.size();
+    }
+
+    /** Return the number of keypresses decrypted by the searches so
+     *  far. */
+    long decrypted() {
+        return _decrypted;
+    }
+
+    /** Return the number of keypresses a search trying every start and
+     *  ring setting of the moving rotors would decrypt. */
+    double bruteForce() {
+        return (double) _classes * _classes * _cipher.length;
+    }
+
+    /** Return the best setting according to SCORER, the first found
+     *  among ties, or null if none scores above negative infinity (as
+     *  none do that a DictionaryFilter in front of SCORER rejects). */
+    Result search(Scorer scorer) {
+        int n = _cipher.length;
+        int k = _moving.length;
+        int[] plain = new int[n];
+        int[] offsets = new int[k];
+        int[] moved = new int[k];
+        int[] posns = _start.clone();
+        CompositeCache.Session composites =
+            new CompositeCache(CompositeCache.DEFAULT_ENTRIES)
+            .session(_engine);
+        double best = Double.NEGATIVE_INFINITY;
+        int bestClass = -1;
+        Keyspace.Timing bestTiming = null;
+        for (int code = 0; code < _classes; code += 1) {
+            _keyspace.digits(code, offsets);
+            Keyspace.Timing prev = null;
+            for (Keyspace.Timing timing : _timings) {
+                int from = 0;
+                if (prev != null) {
+                    int diff = prev.diverges(timing);
+                    from = diff < 0 ? n : diff;
+                }
+                int next = timing.skip(from, moved);
+                for (int t = from; t < n; t += 1) {
+                    next = timing.move(t, next, moved);
+                    for (int j = 0; j < k; j += 1) {
+                        int slot = _moving[j];
+                        posns[slot] = _engine.wrap(_engine.wrap(
+                            offsets[j] + moved[j] % _size)
+                            + _engine._rings[slot]);
+                    }
+                    int[] composite = composites.table(posns);
+                    plain[t] = composite == null
+                        ? _engine.convert(posns, _cipher[t])
+                        : _engine.convert(posns, _cipher[t], composite);
+                }
+                _decrypted += n - from;
+                double score = scorer.score(plain);
+                if (score > best) {
+                    best = score;
+                    bestClass = code;
+                    bestTiming = timing;
+                }
+                prev = timing;
+            }
+        }
+        if (bestTiming == null) {
+            return null;
+        }
+        return result(bestClass, bestTiming, best);
+    }
+
+    /** Return the result for offset class CODE and timing class TIMING,
+     *  scoring SCORE: its first start, with the rings that give it those
+     *  offsets. */
+    private Result result(int code, Keyspace.Timing timing,
+                          double score) {
+        int[] offsets = new int[_moving.length];
+        int[] first = new int[_moving.length];
+        _keyspace.digits(code, offsets);
+        _keyspace.digits(timing._first, first);
+        int[] start = _start.clone();
+        int[] rings = _engine._rings.clone();
+        for (int j = 0; j < _moving.length; j += 1) {
+            int slot = _moving[j];
+            start[slot] = first[j];
+            rings[slot] = Math.floorMod(first[j] - offsets[j], _size);
+        }
+        return new Result(start, rings, score, timing._count);
+    }
+
+    /** The wiring searched. */
+    private final Engine _engine;
+    /** Alphabet size. */
+    private final int _size;
+    /** Positions of the slots that are not searched. */
+    private final int[] _start;
+    /** The ciphertext. */
+    private final int[] _cipher;
+    /** The settings searched. */
+    private final Keyspace _keyspace;
+    /** Slots of the moving rotors, leftmost first. */
+    private final int[] _moving;
+    /** Number of offset classes. */
+    private final int _classes;
+    /** Timing classes, in lexicographic order of their moves. */
+    private final List<Keyspace.Timing> _timings;
+    /** Keypresses decrypted so far. */
+    private long _decrypted;
+}
@@ -0,0 +1,116 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RingSearch class.
+ *  @author Shelden Shi
+ */
+public class RingSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return the letters of ALPHA with indices VALUES[1 ..]. */
+    private static String letters(Alphabet alpha, int[] values) {
+        String result = "";
+        for (int k = 1; k < values.length; k += 1) {
+            result += alpha.toChar(values[k]);
+        }
+        return result;
+    }
+
+    /** Return the conversion of MSG on M with rings RINGS and start
+     *  positions POSNS. */
+    private static String decrypt(Machine m, String rings, String posns,
+                                  int[] msg) {
+        m.setRing(rings);
+        m.setRotors(posns);
+        StringBuilder result = new StringBuilder();
+        for (int c : msg) {
+            result.append(m.getAlphabet().toChar(m.convert(c)));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void checkAgainstBruteForce() {
+        Machine m = smallMachine();
+        Engine engine = Engine.of(m);
+        int[] start = Engine.positions(m);
+        int[] cipher = new int[24];
+        int[] target = new int[cipher.length];
+        for (int k = 0; k < cipher.length; k += 1) {
+            cipher[k] = (k * 5 + 1) % 6;
+            target[k] = (k * k) % 6;
+        }
+        HashSet<String> seen = new HashSet<>();
+        RingSearch search = new RingSearch(engine, start, cipher);
+        RingSearch.Result best = search.search(plain -> {
+            seen.add(Arrays.toString(plain));
+            return matches(plain, target);
+        });
+        assertEquals(6 * 6 * 6, search.offsetClasses());
+        assertTrue(search.timingClasses() < 6 * 6 * 6);
+        assertTrue(search.decrypted() < search.bruteForce() / 6);
+
+        int bestBrute = -1;
+        String letters = "ABCDEF";
+        for (int s = 0; s < 6 * 6 * 6 * 6 * 6 * 6; s += 1) {
+            String posns = "B", rings = "C";
+            for (int code = s, j = 0; j < 3; j += 1, code /= 36) {
+                posns += letters.charAt(code % 6);
+                rings += letters.charAt(code / 6 % 6);
+            }
+            String plain = decrypt(m, rings, posns, cipher);
+            int[] indices = CribFilter.toIndices(plain, SMALL);
+            assertTrue(plain, seen.contains(Arrays.toString(indices)));
+            bestBrute = Math.max(bestBrute, matches(indices, target));
+        }
+        assertEquals(bestBrute, best.score(), 0);
+        String plain = decrypt(m, letters(SMALL, best.rings()),
+                               letters(SMALL, best.start()), cipher);
+        assertEquals(best.score(), matches(CribFilter.toIndices(plain, SMALL),
+                                           target), 0);
+        assertTrue(best.equivalent() >= 1);
+    }
+
+    /** Return the number of places at which X and Y agree. */
+    private static int matches(int[] x, int[] y) {
+        int result = 0;
+        for (int k = 0; k < x.length; k += 1) {
+            result += x[k] == y[k] ? 1 : 0;
+        }
+        return result;
+    }
+
+    @Test
+    public void checkRecoversNaval() {
+        Machine m = navalMachine(5, 3);
+        m.setUp("* B Beta I II III AQEV AKRX (AQ) (EP) (TZ)");
+        String text = "WEATHERFORECASTFORTHEBISCAYREGIONFOLLOWS";
+        int[] plain = CribFilter.toIndices(text, UPPER);
+        int[] cipher = new int[plain.length];
+        for (int k = 0; k < plain.length; k += 1) {
+            cipher[k] = m.convert(plain[k]);
+        }
+        m.setRing("AAAA");
+        m.setRotors("AAAA");
+        RingSearch search = new RingSearch(Engine.of(m),
+                                           Engine.positions(m), cipher);
+        RingSearch.Result best = search.search(p -> matches(p, plain));
+        assertEquals(plain.length, best.score(), 0);
+        assertEquals(text, decrypt(m, letters(UPPER, best.rings()),
+                                   letters(UPPER, best.start()), cipher));
+        assertTrue(best.equivalent() > 1);
+    }
+
+}
@@ -5,7 +5,7 @@ import static enigma.EnigmaException.*;
 /** Superclass that represents a rotor in the enigma machine.
  *  @author Shelden Shi
  */
-class Rotor {
+sealed class Rotor permits FixedRotor, MovingRotor {
 
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
@@ -99,6 +99,13 @@ class Rotor {
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
+
+    /** Return the characters of the positions at which I am at a notch.
+     *  By default, there are none. */
+    String notches() {
+        return "";
+    }
+
     /** Advance me one position, if possible. By default, does nothing.
      * @return ring */
     int getRing() {
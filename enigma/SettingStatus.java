@@ -0,0 +1,65 @@
+package enigma;
+
+/** Status codes for the validation of machine settings by Machine's
+ *  check methods.  Enumerators of settings try many that are invalid,
+ *  and a check reports why by returning one of these ints rather than
+ *  throwing, which would cost a stack trace and a formatted message
+ *  each time.  The methods that set a machine up call the same checks
+ *  and turn a status other than OK into an EnigmaException with the
+ *  message given here.
+ *  @author Shelden Shi
+ */
+final class SettingStatus {
+
+    /** Not instantiable. */
+    private SettingStatus() {
+    }
+
+    /** The settings are valid. */
+    static final int OK = 0;
+    /** A rotor name is not that of an available rotor. */
+    static final int NO_SUCH_ROTOR = 1;
+    /** A rotor is named twice, or two are missing. */
+    static final int DUPLICATE_ROTOR = 2;
+    /** The first rotor is not a reflector. */
+    static final int NOT_REFLECTOR = 3;
+    /** A fixed rotor is right of a moving one. */
+    static final int FIXED_AFTER_MOVING = 4;
+    /** There are more moving rotors than pawls. */
+    static final int TOO_MANY_MOVING = 5;
+    /** The positions are not one per slot after the reflector. */
+    static final int BAD_POSITIONS_LENGTH = 6;
+    /** A position is not in the alphabet. */
+    static final int BAD_POSITION = 7;
+    /** The ring settings are not one per slot after the reflector. */
+    static final int BAD_RING_LENGTH = 8;
+    /** A ring setting is not in the alphabet. */
+    static final int BAD_RING = 9;
+
+    /** Messages for each status, indexed by status. */
+    private static final String[] MESSAGES = {
+        "OK",
+        "Name not in all rotors",
+        "Duplicate rotor name",
+        "The first rotor has to be a reflector",
+        "A FixedRotor can not be placed on the right side of a moving rotor",
+        "too many moving rotors",
+        "Wheel settings too short/long",
+        "Bad character in wheel settings",
+        "Wheel settings too short/long",
+        "Arguement is not in the alphabet",
+    };
+
+    /** Return the message for STATUS. */
+    static String message(int status) {
+        return MESSAGES[status];
+    }
+
+    /** Throw an EnigmaException with the message for STATUS unless it
+     *  is OK. */
+    static void check(int status) {
+        if (status != OK) {
+            throw EnigmaException.error("%s", MESSAGES[status]);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SettingStatus class and the
+ *  check methods of Machine.
+ *  @author Shelden Shi
+ */
+public class SettingStatusTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Names from which random settings are drawn: reflectors, fixed
+     *  and moving rotors, and one that is no rotor. */
+    private static final String[] NAMES = {
+        "B", "C", "Beta", "Gamma", "I", "II", "III", "IV", "V", "X",
+    };
+
+    /** Return a random string of LENGTH characters from CHARS. */
+    private static String random(Random random, int length, String chars) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < length; k += 1) {
+            result.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void checkStatuses() {
+        Machine m = navalMachine(5, 3);
+        assertEquals(SettingStatus.OK,
+                     m.checkSetUp("* B Beta III IV I AXLE (YF) (ZH)"));
+        assertEquals(SettingStatus.OK,
+                     m.checkSetUp("* B Beta III IV I AXLE AQZE (YF)"));
+        assertEquals(SettingStatus.NO_SUCH_ROTOR,
+                     m.checkSetUp("* B Beta III IV X AXLE"));
+        assertEquals(SettingStatus.DUPLICATE_ROTOR,
+                     m.checkSetUp("* B Beta III IV III AXLE"));
+        assertEquals(SettingStatus.NOT_REFLECTOR,
+                     m.checkSetUp("* Beta B III IV I AXLE"));
+        assertEquals(SettingStatus.FIXED_AFTER_MOVING,
+                     m.checkSetUp("* B III Beta IV I AXLE"));
+        assertEquals(SettingStatus.TOO_MANY_MOVING,
+                     m.checkRotors(new String[] {"B", "II", "III", "IV",
+                                                 "I"}));
+        assertEquals(SettingStatus.BAD_POSITIONS_LENGTH,
+                     m.checkSetUp("* B Beta III IV I AXL"));
+        assertEquals(SettingStatus.BAD_POSITION,
+                     m.checkPositions("AX1E"));
+        assertEquals(SettingStatus.BAD_RING_LENGTH, m.checkRing("AQZEE"));
+        assertEquals(SettingStatus.BAD_RING,
+                     m.checkSetUp("* B Beta III IV I AXLE AQ-E"));
+        m.setUp("* B Beta III IV I AXLE");
+        assertEquals(SettingStatus.OK,
+                     m.checkSetUp(new String[] {"B", "Beta", "III", "IV",
+                                                "I"}, "AXLE", ""));
+        assertEquals(SettingStatus.DUPLICATE_ROTOR,
+                     m.checkSetUp(new String[] {"B", "Beta", "III", "IV",
+                                                "IV"}, "AXLE", ""));
+    }
+
+    @Test
+    public void checkAgreesWithSetUp() {
+        Random random = new Random(48);
+        Machine m = navalMachine(5, 3);
+        String letters = "ABCXYZ-";
+        for (int trial = 0; trial < 5000; trial += 1) {
+            StringBuilder line = new StringBuilder("*");
+            int names = 3 + random.nextInt(3);
+            for (int k = 0; k < names; k += 1) {
+                line.append(' ').append(NAMES[random.nextInt(NAMES.length)]);
+            }
+            line.append(' ').append(random(random, 3 + random.nextInt(3),
+                                           letters));
+            if (random.nextBoolean()) {
+                line.append(' ').append(random(random, 4, letters));
+            }
+            if (random.nextBoolean()) {
+                line.append(" (AQ)");
+            }
+            String settings = line.toString();
+            int status = m.checkSetUp(settings);
+            try {
+                m.setUp(settings);
+                assertEquals(msg("agree", "%s", settings),
+                             SettingStatus.OK, status);
+            } catch (EnigmaException excp) {
+                assertTrue(msg("agree", "%s", settings),
+                           status != SettingStatus.OK);
+                assertEquals(SettingStatus.message(status),
+                             excp.getMessage());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,534 @@
+package enigma;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static enigma.EnigmaException.*;
+
+/** The stepping period and state-cycle structure of a configured
+ *  machine, found from the notches without stepping through the period.
+ *  From the command line,
+ *
+ *      java enigma.SteppingPeriod CONFIG SETTING...
+ *
+ *  reports them for each SETTING line (such as "* B Beta I II III AAAA")
+ *  on the machine described by the configuration file CONFIG.
+ *
+ *  Number the moving rotors 1 (rightmost) to L.  Under the rules of
+ *  Machine.advanceRotorsReference, whether rotor J steps at a keypress
+ *  depends only on its own position and on a signal from rotors 1 to
+ *  J - 1, which is CARRY if the rotors among them at a notch are a run
+ *  ending at J - 1, IDLE if none is at a notch, and BLOCKED otherwise.
+ *  Rotor 1 always steps.  Rotor J steps on CARRY, and on IDLE when it is
+ *  at a notch and J < L.  It passes CARRY on when it was at a notch and
+ *  stepped, BLOCKED when it stepped on a CARRY from elsewhere, and
+ *  otherwise what it received (except that rotor 1 passes IDLE rather
+ *  than BLOCKED).  So the rightmost J rotors form a machine of their
+ *  own, and the signals they send over one period of the rightmost
+ *  J - 1 take rotor J from each position to a fixed next one.  Rotor
+ *  J's position is eventually periodic under that map, and the period
+ *  of the rightmost J rotors is its cycle length (the factor of J) times
+ *  the period of the rightmost J - 1.
+ *
+ *  Signal sequences are kept as shared binary trees of runs.  A rotor
+ *  passes most of a sequence through untouched, and only the parts
+ *  holding a CARRY, or an IDLE met while at a notch, are visited and
+ *  rebuilt, so the cost grows with the number of carries and the
+ *  alphabet size rather than with the period, which may be far beyond
+ *  the range of a long for wide machines.
+ *  @author Shelden Shi
+ */
+final class SteppingPeriod {
+
+    /** Signal: no rotor to the right is at a notch. */
+    private static final int IDLE = 0;
+    /** Signal: the rotor to the right stepped from a notch. */
+    private static final int CARRY = 1;
+    /** Signal: a step to the right stopped short of this rotor. */
+    private static final int BLOCKED = 2;
+
+    /** Largest number of (cycle, position) pairs cycles() will
+     *  examine on one rotor. */
+    static final long MAX_WORK = 1L << 24;
+
+    /** The stepping of ENGINE's moving rotors from positions POSNS (one
+     *  per slot, slot 0 being the reflector). */
+    SteppingPeriod(Engine engine, int[] posns) {
+        _size = engine.size();
+        int numRotors = engine.numRotors();
+        int moving = 0;
+        while (moving < numRotors - 1
+               && engine.rotates(numRotors - 1 - moving)) {
+            moving += 1;
+        }
+        for (int slot = 0; slot < numRotors - moving; slot += 1) {
+            if (engine.rotates(slot)) {
+                throw error("moving rotors must be to the right of the "
+                            + "others");
+            }
+        }
+        _wheels = new Wheel[moving];
+        for (int j = 0; j < moving; j += 1) {
+            int slot = numRotors - 1 - j;
+            boolean[] notches = new boolean[_size];
+            for (int p = 0; p < _size; p += 1) {
+                notches[p] = engine.atNotch(slot, p);
+            }
+            _wheels[j] = new Wheel(notches, j + 1 < moving, j == 0);
+        }
+        _factors = new int[numRotors];
+        Arrays.fill(_factors, 1);
+        Track track = Track.START;
+        for (int j = 0; j < moving; j += 1) {
+            int slot = numRotors - 1 - j;
+            track = new Track(track, _wheels[j], posns[slot], _size);
+            _factors[slot] = track._loop;
+        }
+        _period = track._period;
+        _tail = track._tail;
+    }
+
+    /** Return the stepping of M's rotors from their current
+     *  positions. */
+    static SteppingPeriod of(Machine m) {
+        return new SteppingPeriod(Engine.of(m), Engine.positions(m));
+    }
+
+    /** Return the number of keypresses after which the positions
+     *  repeat, once they have started to. */
+    BigInteger period() {
+        return _period;
+    }
+
+    /** Return the number of keypresses before the positions first reach
+     *  a state they return to: 0 unless the start can never recur. */
+    BigInteger tail() {
+        return _tail;
+    }
+
+    /** Return the factor by which the rotor in SLOT multiplies the
+     *  period of the rotors to its right: its cycle length counted in
+     *  their periods.  It is 1 for rotors that do not move. */
+    int factor(int slot) {
+        return _factors[slot];
+    }
+
+    /** Return the number of combinations of positions of the moving
+     *  rotors. */
+    BigInteger states() {
+        return BigInteger.valueOf(_size).pow(_wheels.length);
+    }
+
+    /** Return the number of combinations of positions of the moving
+     *  rotors that lie on a cycle, the others being reachable only as
+     *  starts. */
+    BigInteger cyclicStates() {
+        BigInteger result = BigInteger.ZERO;
+        for (var e : cycles().entrySet()) {
+            result = result.add(e.getKey().multiply(
+                BigInteger.valueOf(e.getValue())));
+        }
+        return result;
+    }
+
+    /** Return the cycles into which stepping divides the combinations of
+     *  positions of the moving rotors, as a map from cycle length to
+     *  the number of cycles of that length.  Every start leads into
+     *  exactly one of them.  Computed on first call; throws an exception
+     *  if that would take more than MAX_WORK steps of the analysis on
+     *  one rotor. */
+    synchronized SortedMap<BigInteger, Integer> cycles() {
+        if (_cycles == null) {
+            List<Orbit> orbits = List.of(Orbit.START);
+            for (int j = 0; j < _wheels.length; j += 1) {
+                if ((long) orbits.size() * _size > MAX_WORK) {
+                    throw error("too many cycles to enumerate");
+                }
+                boolean build = j + 1 < _wheels.length;
+                List<Orbit> next = new ArrayList<>();
+                for (Orbit orbit : orbits) {
+                    orbit.split(_wheels[j], _size, build, next);
+                }
+                orbits = next;
+            }
+            SortedMap<BigInteger, Integer> result = new TreeMap<>();
+            for (Orbit orbit : orbits) {
+                result.merge(orbit._length, 1, Integer::sum);
+            }
+            _cycles = Collections.unmodifiableSortedMap(result);
+        }
+        return _cycles;
+    }
+
+    /** Report the stepping of the machine in the configuration file
+     *  ARGS[0] under each of the setting lines ARGS[1 ..] on the
+     *  standard output. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2) {
+                throw error("Usage: SteppingPeriod CONFIG SETTING...");
+            }
+            Machine m = new Main(new String[] {args[0]}).readConfig();
+            for (int k = 1; k < args.length; k += 1) {
+                m.setUp(args[k]);
+                System.out.print(report(m, of(m)));
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return a description of STEPPING, the stepping of M. */
+    static String report(Machine m, SteppingPeriod stepping) {
+        Rotor[] rotors = m.getMyRotors();
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("period %s =", stepping.period()));
+        String sep = " ";
+        for (int slot = rotors.length - 1; slot > 0; slot -= 1) {
+            if (rotors[slot].rotates()) {
+                out.append(String.format("%s%d (%s)", sep,
+                                         stepping.factor(slot),
+                                         rotors[slot].name()));
+                sep = " x ";
+            }
+        }
+        out.append(String.format("%ntail %s%n", stepping.tail()));
+        out.append(String.format("states %s, %s on cycles:",
+                                 stepping.states(),
+                                 stepping.cyclicStates()));
+        for (var e : stepping.cycles().entrySet()) {
+            out.append(String.format(" %d x %s", e.getValue(), e.getKey()));
+        }
+        return out.append(String.format("%n")).toString();
+    }
+
+    /** A sequence of signals: a run of one signal, or one sequence
+     *  followed by another. */
+    private static final class Word {
+        /** A run of COUNT signals SIGNAL. */
+        Word(int signal, int count) {
+            _signal = signal;
+            _count = count;
+            _left = _right = null;
+            _length = BigInteger.valueOf(count);
+            _hasCarry = signal == CARRY;
+            _hasIdle = signal == IDLE;
+        }
+
+        /** LEFT followed by RIGHT. */
+        Word(Word left, Word right) {
+            _signal = -1;
+            _count = 0;
+            _left = left;
+            _right = right;
+            _length = left._length.add(right._length);
+            _hasCarry = left._hasCarry || right._hasCarry;
+            _hasIdle = left._hasIdle || right._hasIdle;
+        }
+
+        /** Return A followed by B, either of which may be null for an
+         *  empty sequence. */
+        static Word concat(Word a, Word b) {
+            return a == null ? b : b == null ? a : new Word(a, b);
+        }
+
+        /** Return PARTS[FROM .. TO - 1] one after another, as a balanced
+         *  tree, or null if there are none. */
+        static Word join(List<Word> parts, int from, int to) {
+            if (to - from <= 1) {
+                return to > from ? parts.get(from) : null;
+            }
+            int mid = (from + to) >>> 1;
+            return new Word(join(parts, from, mid), join(parts, mid, to));
+        }
+
+        /** Signal of a run, or -1. */
+        private final int _signal;
+        /** Length of a run. */
+        private final int _count;
+        /** Parts of a concatenation, or null. */
+        private final Word _left, _right;
+        /** Number of signals. */
+        private final BigInteger _length;
+        /** True iff some signal is CARRY. */
+        private final boolean _hasCarry;
+        /** True iff some signal is IDLE. */
+        private final boolean _hasIdle;
+    }
+
+    /** A moving rotor, as far as stepping goes: its notches and its
+     *  current position. */
+    private static final class Wheel {
+        /** A rotor with NOTCHES (indexed by position).  It steps at a
+         *  notch on IDLE iff SELF, and passes IDLE for BLOCKED iff
+         *  FIRST. */
+        Wheel(boolean[] notches, boolean self, boolean first) {
+            _notches = notches;
+            _self = self;
+            _first = first;
+        }
+
+        /** Step through W from my current position, returning the
+         *  signals I pass on: W itself if none differ or BUILD is
+         *  false. */
+        Word pass(Word w, boolean build) {
+            if (!w._hasCarry && !(w._hasIdle && _self && _notches[_posn])) {
+                return w;
+            }
+            if (w._left == null) {
+                return run(w._signal, w._count, build);
+            }
+            Word left = pass(w._left, build);
+            Word right = pass(w._right, build);
+            if (!build || left == w._left && right == w._right) {
+                return w;
+            }
+            return new Word(left, right);
+        }
+
+        /** Step through the first N signals of W from my current
+         *  position. */
+        void pass(Word w, BigInteger n) {
+            if (n.signum() == 0) {
+                return;
+            } else if (n.compareTo(w._length) >= 0) {
+                pass(w, false);
+            } else if (w._left == null) {
+                run(w._signal, n.intValueExact(), false);
+            } else if (n.compareTo(w._left._length) <= 0) {
+                pass(w._left, n);
+            } else {
+                pass(w._left, false);
+                pass(w._right, n.subtract(w._left._length));
+            }
+        }
+
+        /** Step through COUNT signals SIGNAL, returning the signals I
+         *  pass on if BUILD, else null. */
+        private Word run(int signal, int count, boolean build) {
+            List<Word> out = build ? new ArrayList<>() : null;
+            int last = -1, length = 0;
+            for (int k = 0; k < count; k += 1) {
+                int sent;
+                if (signal == CARRY) {
+                    sent = _notches[_posn] ? CARRY : _first ? IDLE : BLOCKED;
+                } else if (signal == IDLE && _self && _notches[_posn]) {
+                    sent = CARRY;
+                } else {
+                    if (build) {
+                        add(out, last, length);
+                        out.add(new Word(signal, count - k));
+                    }
+                    return build ? Word.join(out, 0, out.size()) : null;
+                }
+                _posn = _posn + 1 == _notches.length ? 0 : _posn + 1;
+                if (sent != last) {
+                    if (build) {
+                        add(out, last, length);
+                    }
+                    last = sent;
+                    length = 0;
+                }
+                length += 1;
+            }
+            if (build) {
+                add(out, last, length);
+            }
+            return build ? Word.join(out, 0, out.size()) : null;
+        }
+
+        /** Add a run of LENGTH signals SIGNAL to OUT, if LENGTH > 0. */
+        private static void add(List<Word> out, int signal, int length) {
+            if (length > 0) {
+                out.add(new Word(signal, length));
+            }
+        }
+
+        /** Current position. */
+        private int _posn;
+        /** Notches, by position. */
+        private final boolean[] _notches;
+        /** True iff I step at a notch on IDLE. */
+        private final boolean _self;
+        /** True iff I am the rightmost rotor. */
+        private final boolean _first;
+    }
+
+    /** The course of the rightmost J rotors from the start: the signals
+     *  they send before some point (the split, a multiple of their
+     *  period after the time they reach a cycle), and those they send
+     *  over each period after it. */
+    private static final class Track {
+        /** Before any rotor: a CARRY at every keypress, which is what
+         *  the rightmost rotor acts as if it received. */
+        static final Track START = new Track();
+
+        /** The START track. */
+        private Track() {
+            _input = null;
+            _wheel = null;
+            _start = 0;
+            _bounds = null;
+            _lead = 0;
+            _loop = 1;
+            _prefix = null;
+            _cycle = new Word(CARRY, 1);
+            _split = BigInteger.ZERO;
+            _period = BigInteger.ONE;
+            _tail = BigInteger.ZERO;
+        }
+
+        /** The track of WHEEL, of an alphabet of SIZE, from position
+         *  START, after the rotors whose track is INPUT. */
+        Track(Track input, Wheel wheel, int start, int size) {
+            _input = input;
+            _wheel = wheel;
+            _start = start;
+            wheel._posn = start;
+            Word before = input._prefix == null ? null
+                : wheel.pass(input._prefix, true);
+            int[] index = new int[size];
+            Arrays.fill(index, -1);
+            int[] bounds = new int[size];
+            List<Word> sent = new ArrayList<>();
+            int q;
+            for (q = 0; index[wheel._posn] < 0; q += 1) {
+                index[wheel._posn] = q;
+                bounds[q] = wheel._posn;
+                sent.add(wheel.pass(input._cycle, true));
+            }
+            _bounds = bounds;
+            _lead = index[wheel._posn];
+            _loop = q - _lead;
+            _prefix = Word.concat(before, Word.join(sent, 0, _lead));
+            _cycle = Word.join(sent, _lead, q);
+            _split = input._split.add(
+                input._period.multiply(BigInteger.valueOf(_lead)));
+            _period = input._period.multiply(BigInteger.valueOf(_loop));
+            BigInteger lo = input._tail, hi = _split;
+            while (lo.compareTo(hi) < 0) {
+                BigInteger mid = lo.add(hi).shiftRight(1);
+                if (position(mid) == position(mid.add(_period))) {
+                    hi = mid;
+                } else {
+                    lo = mid.add(BigInteger.ONE);
+                }
+            }
+            _tail = lo;
+        }
+
+        /** Return the position of my rotor after TIME keypresses. */
+        private int position(BigInteger time) {
+            if (time.compareTo(_input._split) <= 0) {
+                _wheel._posn = _start;
+                if (_input._prefix != null) {
+                    _wheel.pass(_input._prefix, time);
+                }
+            } else {
+                BigInteger[] qr = time.subtract(_input._split)
+                    .divideAndRemainder(_input._period);
+                BigInteger lead = BigInteger.valueOf(_lead);
+                int q = qr[0].compareTo(lead) < 0 ? qr[0].intValue()
+                    : _lead + qr[0].subtract(lead)
+                        .mod(BigInteger.valueOf(_loop)).intValue();
+                _wheel._posn = _bounds[q];
+                _wheel.pass(_input._cycle, qr[1]);
+            }
+            return _wheel._posn;
+        }
+
+        /** The track of the rotors to the right of mine. */
+        private final Track _input;
+        /** My rotor. */
+        private final Wheel _wheel;
+        /** Its start position. */
+        private final int _start;
+        /** Its positions at the input's split and the following ends
+         *  of input periods, through its first repeat. */
+        private final int[] _bounds;
+        /** Input periods before my rotor's positions at their ends
+         *  repeat. */
+        private final int _lead;
+        /** Input periods in my period: my rotor's factor. */
+        private final int _loop;
+        /** Signals sent before my split, or null if none. */
+        private final Word _prefix;
+        /** Signals sent over each period after my split. */
+        private final Word _cycle;
+        /** Keypresses before my split. */
+        private final BigInteger _split;
+        /** My period. */
+        private final BigInteger _period;
+        /** Keypresses before my rotors reach a cycle. */
+        private final BigInteger _tail;
+    }
+
+    /** A cycle of the rightmost J rotors, with the signals they send
+     *  once round it from some state on it. */
+    private static final class Orbit {
+        /** The single state of no rotors. */
+        static final Orbit START = new Orbit(new Word(CARRY, 1),
+                                             BigInteger.ONE);
+
+        /** A cycle of LENGTH keypresses sending WORD. */
+        Orbit(Word word, BigInteger length) {
+            _word = word;
+            _length = length;
+        }
+
+        /** Add to OUT the cycles of my rotors and WHEEL, of an alphabet
+         *  of SIZE, that follow mine, with their signals if BUILD. */
+        void split(Wheel wheel, int size, boolean build, List<Orbit> out) {
+            int[] next = new int[size];
+            for (int p = 0; p < size; p += 1) {
+                wheel._posn = p;
+                wheel.pass(_word, false);
+                next[p] = wheel._posn;
+            }
+            int[] mark = new int[size];
+            for (int p = 0; p < size; p += 1) {
+                int y = p;
+                while (mark[y] == 0) {
+                    mark[y] = p + 1;
+                    y = next[y];
+                }
+                if (mark[y] != p + 1) {
+                    continue;
+                }
+                List<Word> sent = new ArrayList<>();
+                int loop = 0;
+                wheel._posn = y;
+                do {
+                    sent.add(wheel.pass(_word, build));
+                    loop += 1;
+                } while (wheel._posn != y);
+                out.add(new Orbit(build ? Word.join(sent, 0, loop) : null,
+                                  _length.multiply(BigInteger.valueOf(loop))));
+            }
+        }
+
+        /** Signals sent once round. */
+        private final Word _word;
+        /** Keypresses once round. */
+        private final BigInteger _length;
+    }
+
+    /** Alphabet size. */
+    private final int _size;
+    /** The moving rotors, rightmost first. */
+    private final Wheel[] _wheels;
+    /** Factor of each slot. */
+    private final int[] _factors;
+    /** Period from the start. */
+    private final BigInteger _period;
+    /** Keypresses before reaching a cycle. */
+    private final BigInteger _tail;
+    /** Cycle lengths and counts, once computed. */
+    private SortedMap<BigInteger, Integer> _cycles;
+}
@@ -0,0 +1,224 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SteppingPeriod class.
+ *  @author Shelden Shi
+ */
+public class SteppingPeriodTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return the state of the moving rotors of ENGINE in positions
+     *  POSNS as a number. */
+    private static int encode(Engine engine, int[] posns) {
+        int code = 0;
+        for (int slot = 1; slot < posns.length; slot += 1) {
+            if (engine.rotates(slot)) {
+                code = code * engine.size() + posns[slot];
+            }
+        }
+        return code;
+    }
+
+    /** Return {tail, period} of ENGINE from POSNS, by stepping. */
+    private static long[] simulate(Engine engine, int[] posns) {
+        HashMap<Integer, Long> seen = new HashMap<>();
+        int[] p = posns.clone();
+        for (long time = 0; ; time += 1) {
+            Long first = seen.putIfAbsent(encode(engine, p), time);
+            if (first != null) {
+                return new long[] {first, time - first};
+            }
+            engine.advance(p);
+        }
+    }
+
+    /** Return the cycle lengths and counts of ENGINE's stepping, over
+     *  all positions of its moving rotors, by stepping. */
+    private static SortedMap<BigInteger, Integer> allCycles(Engine engine) {
+        int n = engine.numRotors();
+        int moving = 0;
+        for (int slot = 1; slot < n; slot += 1) {
+            moving += engine.rotates(slot) ? 1 : 0;
+        }
+        int states = (int) Math.pow(engine.size(), moving);
+        int[] next = new int[states];
+        int[] posns = new int[n];
+        for (int s = 0; s < states; s += 1) {
+            int code = s;
+            for (int slot = n - 1; slot >= n - moving; slot -= 1) {
+                posns[slot] = code % engine.size();
+                code /= engine.size();
+            }
+            engine.advance(posns);
+            next[s] = encode(engine, posns);
+        }
+        SortedMap<BigInteger, Integer> result = new TreeMap<>();
+        int[] mark = new int[states];
+        for (int s = 0; s < states; s += 1) {
+            int y = s;
+            while (mark[y] == 0) {
+                mark[y] = s + 1;
+                y = next[y];
+            }
+            if (mark[y] == s + 1) {
+                int length = 0;
+                int z = y;
+                do {
+                    z = next[z];
+                    length += 1;
+                } while (z != y);
+                result.merge(BigInteger.valueOf(length), 1, Integer::sum);
+            }
+        }
+        return result;
+    }
+
+    /** Return a machine over ALPHA with one reflector, one fixed rotor
+     *  and moving rotors whose notches are NOTCHES, set up in that
+     *  order, rightmost last, at positions POSNS. */
+    private static Machine custom(Alphabet alpha, String[] notches,
+                                  String posns) {
+        List<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation("", alpha)));
+        rotors.add(new FixedRotor("F", new Permutation("", alpha)));
+        String[] order = new String[notches.length + 2];
+        order[0] = "R";
+        order[1] = "F";
+        for (int k = 0; k < notches.length; k += 1) {
+            order[k + 2] = "M" + k;
+            rotors.add(new MovingRotor(order[k + 2],
+                                       new Permutation("", alpha),
+                                       notches[k]));
+        }
+        Machine m = new Machine(alpha, order.length, notches.length,
+                                rotors);
+        m.insertRotors(order);
+        m.setRotors(alpha.toChar(0) + posns);
+        return m;
+    }
+
+    /** Check the analysis of M against stepping. */
+    private static void check(Machine m) {
+        Engine engine = Engine.of(m);
+        int[] posns = Engine.positions(m);
+        long[] expected = simulate(engine, posns);
+        SteppingPeriod stepping = new SteppingPeriod(engine, posns);
+        String where = Arrays.toString(posns);
+        assertEquals(msg("tail", where), expected[0],
+                     stepping.tail().longValue());
+        assertEquals(msg("period", where), expected[1],
+                     stepping.period().longValue());
+    }
+
+    @Test
+    public void checkNavalAgainstStepping() {
+        Machine m = navalMachine(5, 3);
+        String[] settings = {
+            "* B Beta I II III AAAA",
+            "* B Beta I II III AAEQ",
+            "* B Beta I II III AADU",
+            "* B Beta VI VII VIII AAZM",
+            "* C Gamma VI II VII ALMZ",
+            "* C Gamma III VIII V AXEZ",
+        };
+        for (String setting : settings) {
+            m.setUp(setting);
+            check(m);
+        }
+        m.setUp(settings[0]);
+        SteppingPeriod stepping = SteppingPeriod.of(m);
+        assertEquals(BigInteger.valueOf(26 * 25 * 26), stepping.period());
+        assertEquals(26, stepping.factor(4));
+        assertEquals(25, stepping.factor(3));
+        assertEquals(26, stepping.factor(2));
+        assertEquals(1, stepping.factor(1));
+    }
+
+    @Test
+    public void checkAllStarts() {
+        Machine m = custom(new Alphabet("ABCDEFG"),
+                           new String[] {"AB", "C", "FG", "ACE"}, "AAAA");
+        Engine engine = Engine.of(m);
+        int[] posns = Engine.positions(m);
+        for (int s = 0; s < 7 * 7 * 7 * 7; s += 1) {
+            int code = s;
+            for (int slot = 5; slot >= 2; slot -= 1) {
+                posns[slot] = code % 7;
+                code /= 7;
+            }
+            long[] expected = simulate(engine, posns);
+            SteppingPeriod stepping = new SteppingPeriod(engine, posns);
+            assertEquals(expected[0], stepping.tail().longValue());
+            assertEquals(expected[1], stepping.period().longValue());
+        }
+    }
+
+    @Test
+    public void checkCycles() {
+        Machine m = navalMachine(6, 4);
+        m.setUp("* B Beta VI I VII II AAAAA");
+        SteppingPeriod stepping = SteppingPeriod.of(m);
+        assertEquals(allCycles(Engine.of(m)), stepping.cycles());
+        assertEquals(BigInteger.valueOf(26).pow(4), stepping.states());
+        m.setUp("* B Beta III IV I V AXLEZ");
+        assertEquals(allCycles(Engine.of(m)), SteppingPeriod.of(m).cycles());
+        Machine odd = custom(new Alphabet("ABCDEFGHI"),
+                             new String[] {"ABCDEFGHI", "A", "BE", "I"},
+                             "CAFE");
+        SteppingPeriod oddStepping = SteppingPeriod.of(odd);
+        assertEquals(allCycles(Engine.of(odd)), oddStepping.cycles());
+        int cyclic = 0;
+        for (var e : oddStepping.cycles().entrySet()) {
+            cyclic += e.getKey().intValue() * e.getValue();
+        }
+        assertEquals(BigInteger.valueOf(cyclic), oddStepping.cyclicStates());
+        check(odd);
+    }
+
+    @Test
+    public void checkWideAndLarge() {
+        Machine wide = navalMachine(10, 8);
+        wide.setUp("* B Beta I II III IV V VI VII VIII AAAAAAAAA");
+        SteppingPeriod stepping = SteppingPeriod.of(wide);
+        BigInteger period = BigInteger.ONE;
+        for (int slot = 1; slot < 10; slot += 1) {
+            period = period.multiply(BigInteger.valueOf(stepping.factor(slot)));
+        }
+        assertEquals(period, stepping.period());
+        assertTrue(stepping.period().compareTo(BigInteger.TEN.pow(10)) > 0);
+
+        StringBuilder chars = new StringBuilder();
+        for (int k = 0; k < 400; k += 1) {
+            chars.append((char) ('\u0100' + k));
+        }
+        Alphabet big = new Alphabet(chars.toString());
+        String notches = "\u0100\u0101\u0180";
+        Machine two = custom(big, new String[] {notches, "\u0150"},
+                             "\u0120\u0105");
+        check(two);
+        Machine four = custom(big, new String[] {"\u0100", notches,
+                                                 "\u0150", "\u0101"},
+                              "\u0100\u0100\u0100\u0100");
+        SteppingPeriod large = SteppingPeriod.of(four);
+        assertTrue(large.cycles().containsKey(large.period()));
+        assertTrue(large.cyclicStates().compareTo(large.states()) <= 0);
+    }
+
+}
@@ -0,0 +1,300 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Where large lookup tables (the per-offset rotor tables of a
+ *  ByteEngine and the keystreams of a KeystreamCache) are put.  HEAP
+ *  keeps them in Java arrays.  direct() puts each in a direct
+ *  ByteBuffer, outside the heap, so that the collector neither copies
+ *  nor scans them.  map(FILE, BYTES) carves them out of one memory-mapped
+ *  file, which also makes them persistent and shared: a table is found
+ *  again by its key, by a later run or by another process mapping the
+ *  same file, and is then used as it is rather than recomputed.
+ *
+ *  A mapped file holds a header, a directory of (key hash, offset)
+ *  slots with linear probing, and the tables themselves, each preceded
+ *  by its full key (checked on lookup), its size and a seal flag that
+ *  is set once it has been filled in.  Space is allocated from the end
+ *  and never reclaimed; when the file is full, tables are put in direct
+ *  buffers instead.  Allocation holds a lock on the file, so several
+ *  processes may share it.
+ *  @author Shelden Shi
+ */
+class TableArena implements AutoCloseable {
+
+    /** The arena that keeps tables on the Java heap. */
+    static final TableArena HEAP = new TableArena();
+
+    /** File magic number. */
+    private static final int MAGIC = 0x45544142;
+    /** File format version. */
+    private static final int VERSION = 1;
+    /** Bytes in the file header. */
+    private static final int HEADER = 32;
+    /** Offset of the next free byte in the header. */
+    private static final int NEXT = 16;
+    /** Offset of the number of directory slots in the header. */
+    private static final int SLOTS = 24;
+    /** Bytes per directory slot. */
+    private static final int SLOT_BYTES = 16;
+    /** Bytes of a table's header: key length, entries, width, seal. */
+    private static final int RECORD_HEADER = 16;
+    /** Alignment of tables in the file. */
+    private static final int ALIGN = 8;
+    /** Bytes of file per directory slot. */
+    private static final int BYTES_PER_SLOT = 4096;
+    /** Default size of a mapped file. */
+    static final long DEFAULT_BYTES = 256L << 20;
+
+    /** Kinds of arena. */
+    private enum Kind {
+        /** Java arrays. */
+        HEAP,
+        /** Direct buffers. */
+        DIRECT,
+        /** A mapped file. */
+        MAPPED
+    }
+
+    /** The heap arena. */
+    private TableArena() {
+        this(Kind.HEAP);
+    }
+
+    /** An arena of kind KIND with no file. */
+    private TableArena(Kind kind) {
+        _kind = kind;
+        _file = null;
+        _channel = null;
+        _map = null;
+        _slots = 0;
+    }
+
+    /** An arena in FILE, opened as RAF, which is created with BYTES
+     *  bytes if it is empty. */
+    private TableArena(File file, RandomAccessFile raf, long bytes)
+        throws IOException {
+        _kind = Kind.MAPPED;
+        _file = file;
+        _channel = raf.getChannel();
+        FileLock lock = _channel.lock();
+        try {
+            boolean fresh = raf.length() == 0;
+            if (fresh) {
+                if (bytes <= HEADER || bytes > Integer.MAX_VALUE) {
+                    throw error("bad table file size %d", bytes);
+                }
+                raf.setLength(bytes);
+            }
+            _map = _channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                raf.length());
+            if (fresh) {
+                int slots = Integer.highestOneBit(
+                    (int) Math.max(2, bytes / BYTES_PER_SLOT));
+                _map.putInt(0, MAGIC);
+                _map.putInt(4, VERSION);
+                _map.putLong(8, bytes);
+                _map.putInt(SLOTS, slots);
+                _map.putLong(NEXT, HEADER + (long) slots * SLOT_BYTES);
+            } else if (_map.getInt(0) != MAGIC || _map.getInt(4) != VERSION) {
+                throw error("%s is not a table file", file);
+            }
+            _slots = _map.getInt(SLOTS);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /** Return an arena that puts tables in direct buffers. */
+    static TableArena direct() {
+        return new TableArena(Kind.DIRECT);
+    }
+
+    /** Return an arena that puts tables in FILE, memory-mapped, creating
+     *  it with room for BYTES bytes if it does not exist or is empty. */
+    static TableArena map(File file, long bytes) {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                return new TableArena(file, raf, bytes);
+            } catch (IOException | EnigmaException excp) {
+                raf.close();
+                throw excp;
+            }
+        } catch (IOException excp) {
+            throw error("could not map %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Return the arena asked for by the system property enigma.tables:
+     *  "heap" (the default), "direct", or the name of a file to map,
+     *  created with enigma.tables.bytes bytes (DEFAULT_BYTES if
+     *  absent). */
+    static TableArena fromProperties() {
+        String kind = System.getProperty("enigma.tables", "heap");
+        switch (kind) {
+        case "heap":
+            return HEAP;
+        case "direct":
+            return direct();
+        default:
+            return map(new File(kind),
+                       Long.getLong("enigma.tables.bytes", DEFAULT_BYTES));
+        }
+    }
+
+    /** Return true iff I keep tables on the heap. */
+    boolean onHeap() {
+        return _kind == Kind.HEAP;
+    }
+
+    /** Return a table of LENGTH entries of WIDTH (1 or 2) bytes for the
+     *  contents identified by KEY.  If it is sealed(), it already holds
+     *  those contents; otherwise the caller fills it in and then calls
+     *  its seal method. */
+    TableStore allocate(int[] key, int length, int width) {
+        switch (_kind) {
+        case HEAP:
+            return TableStore.heap(length, width);
+        case DIRECT:
+            return directStore(length, width);
+        default:
+            synchronized (this) {
+                try {
+                    FileLock lock = _channel.lock();
+                    try {
+                        TableStore result = mapped(key, length, width);
+                        return result != null ? result
+                            : directStore(length, width);
+                    } finally {
+                        lock.release();
+                    }
+                } catch (IOException excp) {
+                    throw error("table file %s: %s", _file,
+                                excp.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Return a new table of LENGTH entries of WIDTH bytes in a direct
+     *  buffer. */
+    private static TableStore directStore(int length, int width) {
+        return TableStore.buffer(ByteBuffer.allocateDirect(length * width),
+                                 length, width, -1);
+    }
+
+    /** Return the table in my file for KEY, LENGTH and WIDTH, adding it
+     *  if absent, or null if there is no room. */
+    private TableStore mapped(int[] key, int length, int width) {
+        long hash = hash(key, length, width);
+        int mask = _slots - 1;
+        for (int probe = 0; probe < _slots; probe += 1) {
+            int slot = HEADER + (((int) hash + probe) & mask) * SLOT_BYTES;
+            long offset = _map.getLong(slot + Long.BYTES);
+            if (offset == 0) {
+                return add(slot, hash, key, length, width);
+            }
+            if (_map.getLong(slot) == hash
+                && matches((int) offset, key, length, width)) {
+                return store((int) offset, key.length, length, width);
+            }
+        }
+        return null;
+    }
+
+    /** Return true iff the table at OFFSET of my file has KEY, LENGTH
+     *  and WIDTH. */
+    private boolean matches(int offset, int[] key, int length, int width) {
+        if (_map.getInt(offset) != key.length
+            || _map.getInt(offset + 4) != length
+            || _map.getInt(offset + 8) != width) {
+            return false;
+        }
+        for (int k = 0; k < key.length; k += 1) {
+            if (_map.getInt(offset + RECORD_HEADER + 4 * k) != key[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Add a table for KEY, LENGTH and WIDTH (with hash HASH) to my
+     *  file, entering it in the directory at SLOT, and return it, or
+     *  return null if there is no room. */
+    private TableStore add(int slot, long hash, int[] key, int length,
+                           int width) {
+        long next = _map.getLong(NEXT);
+        long size = RECORD_HEADER + 4L * key.length + (long) length * width;
+        size = (size + ALIGN - 1) / ALIGN * ALIGN;
+        if (next + size > _map.capacity()) {
+            return null;
+        }
+        int offset = (int) next;
+        _map.putInt(offset, key.length);
+        _map.putInt(offset + 4, length);
+        _map.putInt(offset + 8, width);
+        _map.putInt(offset + 12, 0);
+        for (int k = 0; k < key.length; k += 1) {
+            _map.putInt(offset + RECORD_HEADER + 4 * k, key[k]);
+        }
+        _map.putLong(NEXT, next + size);
+        _map.putLong(slot, hash);
+        _map.putLong(slot + Long.BYTES, next);
+        return store(offset, key.length, length, width);
+    }
+
+    /** Return the table of LENGTH entries of WIDTH bytes at OFFSET of my
+     *  file, whose key has KEYLENGTH ints. */
+    private TableStore store(int offset, int keyLength, int length,
+                             int width) {
+        ByteBuffer view = _map.duplicate();
+        view.position(offset + RECORD_HEADER + 4 * keyLength);
+        return TableStore.buffer(view, length, width, offset + 12);
+    }
+
+    /** Return a 64-bit hash of KEY, LENGTH and WIDTH. */
+    private static long hash(int[] key, int length, int width) {
+        long h = 0xcbf29ce484222325L;
+        h = (h ^ length) * 0x100000001b3L;
+        h = (h ^ width) * 0x100000001b3L;
+        h = (h ^ Arrays.hashCode(key)) * 0x100000001b3L;
+        for (int v : key) {
+            h = (h ^ v) * 0x100000001b3L;
+        }
+        return h ^ (h >>> 29);
+    }
+
+    /** Stop allocating from my file.  Tables already handed out stay
+     *  valid. */
+    @Override
+    public void close() {
+        if (_channel != null) {
+            try {
+                _channel.close();
+            } catch (IOException excp) {
+                throw error("could not close %s", _file);
+            }
+        }
+    }
+
+    /** What kind of arena I am. */
+    private final Kind _kind;
+    /** My file, if mapped. */
+    private final File _file;
+    /** Channel of my file, if mapped. */
+    private final FileChannel _channel;
+    /** Mapping of my file, if mapped. */
+    private final MappedByteBuffer _map;
+    /** Number of directory slots, if mapped. */
+    private final int _slots;
+}
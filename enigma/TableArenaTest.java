@@ -0,0 +1,101 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the TableArena and TableStore
+ *  classes.
+ *  @author Shelden Shi
+ */
+public class TableArenaTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Setting line used by these tests. */
+    private static final String SETTING =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Message used by these tests. */
+    private static final String MESSAGE =
+        "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF ROSEWOOD";
+
+    @Test
+    public void checkStores() {
+        TableArena[] arenas = { TableArena.HEAP, TableArena.direct() };
+        for (TableArena arena : arenas) {
+            for (int width = 1; width <= 2; width += 1) {
+                TableStore t = arena.allocate(new int[] {1}, 300, width);
+                int max = width == 1 ? 255 : 65535;
+                for (int k = 0; k < t.length(); k += 1) {
+                    t.set(k, (k * 37) % (max + 1));
+                }
+                for (int k = 0; k < t.length(); k += 1) {
+                    assertEquals((k * 37) % (max + 1), t.get(k));
+                }
+                assertEquals(300L * width, t.bytes());
+                assertFalse(t.sealed());
+            }
+        }
+    }
+
+    @Test
+    public void checkMappedPersistence() throws IOException {
+        File file = File.createTempFile("enigma", ".tables");
+        file.deleteOnExit();
+        int[] key = {7, 8, 9};
+        try (TableArena arena = TableArena.map(file, 1 << 16)) {
+            TableStore t = arena.allocate(key, 1000, 2);
+            assertFalse(t.sealed());
+            for (int k = 0; k < 1000; k += 1) {
+                t.set(k, 3 * k);
+            }
+            t.seal();
+            assertTrue(arena.allocate(key, 1000, 2).sealed());
+            assertFalse(arena.allocate(new int[] {7, 8}, 1000, 2).sealed());
+        }
+        try (TableArena arena = TableArena.map(file, 1 << 16)) {
+            TableStore t = arena.allocate(key, 1000, 2);
+            assertTrue(t.sealed());
+            for (int k = 0; k < 1000; k += 1) {
+                assertEquals(3 * k, t.get(k));
+            }
+            TableStore big = arena.allocate(new int[] {1}, 1 << 20, 1);
+            assertFalse(big.sealed());
+            assertEquals(1 << 20, big.length());
+        }
+    }
+
+    @Test
+    public void checkEnginesAndKeystreams() throws IOException {
+        Machine plain = navalMachine(5, 3);
+        plain.setUp(SETTING);
+        String expected = plain.convert(MESSAGE);
+        File file = File.createTempFile("enigma", ".tables");
+        file.deleteOnExit();
+        for (int run = 0; run < 2; run += 1) {
+            try (TableArena arena = TableArena.map(file, 1 << 20)) {
+                TableArena[] arenas = { TableArena.direct(), arena };
+                for (TableArena a : arenas) {
+                    Machine m = navalMachine(5, 3);
+                    m.setTableArena(a);
+                    m.setUp(SETTING);
+                    assertEquals(expected, m.convert(MESSAGE));
+                    KeystreamCache cache = new KeystreamCache(100, 1 << 20, a);
+                    m.setKeystreamCache(cache);
+                    m.setUp(SETTING);
+                    assertEquals(expected, m.convert(MESSAGE));
+                }
+            }
+        }
+    }
+
+}
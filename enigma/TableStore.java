@@ -0,0 +1,171 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+
+/** A fixed-length table of small unsigned values (one or two bytes
+ *  each), such as a rotor's precomputed tables or a keystream.  The
+ *  same get and set serve whether the entries live in a Java array or
+ *  outside the heap in a direct or memory-mapped ByteBuffer, so code
+ *  that uses a table does not care where a TableArena put it.
+ *  @author Shelden Shi
+ */
+abstract sealed class TableStore
+    permits TableStore.Bytes, TableStore.Chars, TableStore.Buffer {
+
+    /** Mask that recovers an unsigned byte. */
+    private static final int BYTE_MASK = 0xFF;
+
+    /** A table of LENGTH entries of WIDTH bytes. */
+    private TableStore(int length, int width) {
+        _length = length;
+        _width = width;
+    }
+
+    /** Return a table of LENGTH entries of WIDTH (1 or 2) bytes on the
+     *  heap. */
+    static TableStore heap(int length, int width) {
+        return width == 1 ? new Bytes(length) : new Chars(length);
+    }
+
+    /** Return a table of LENGTH entries of WIDTH (1 or 2) bytes held in
+     *  BUF from its position on.  If SEAL is not negative, it is the
+     *  index in BUF of the int that seal() sets to 1. */
+    static TableStore buffer(ByteBuffer buf, int length, int width,
+                             int seal) {
+        return new Buffer(buf, length, width, seal);
+    }
+
+    /** Return the width of entries needed for an alphabet of SIZE
+     *  characters. */
+    static int width(int size) {
+        return size <= BYTE_MASK + 1 ? 1 : 2;
+    }
+
+    /** Return entry K. */
+    abstract int get(int k);
+
+    /** Set entry K to V. */
+    abstract void set(int k, int v);
+
+    /** Return true iff my entries were filled in and sealed before I
+     *  was handed out, as happens when a mapped file already held
+     *  them. */
+    boolean sealed() {
+        return false;
+    }
+
+    /** Record that my entries are complete, so that later users of the
+     *  same storage may rely on them. */
+    void seal() {
+    }
+
+    /** Return my number of entries. */
+    final int length() {
+        return _length;
+    }
+
+    /** Return the number of bytes my entries take. */
+    final long bytes() {
+        return (long) _length * _width;
+    }
+
+    /** Entries in a byte array. */
+    static final class Bytes extends TableStore {
+        /** LENGTH entries. */
+        private Bytes(int length) {
+            super(length, 1);
+            _data = new byte[length];
+        }
+
+        @Override
+        int get(int k) {
+            return _data[k] & BYTE_MASK;
+        }
+
+        @Override
+        void set(int k, int v) {
+            _data[k] = (byte) v;
+        }
+
+        /** The entries. */
+        private final byte[] _data;
+    }
+
+    /** Entries in a char array. */
+    static final class Chars extends TableStore {
+        /** LENGTH entries. */
+        private Chars(int length) {
+            super(length, 2);
+            _data = new char[length];
+        }
+
+        @Override
+        int get(int k) {
+            return _data[k];
+        }
+
+        @Override
+        void set(int k, int v) {
+            _data[k] = (char) v;
+        }
+
+        /** The entries. */
+        private final char[] _data;
+    }
+
+    /** Entries in a ByteBuffer, normally direct or mapped. */
+    static final class Buffer extends TableStore {
+        /** LENGTH entries of WIDTH bytes from the position of BUF, with
+         *  a seal flag at index SEAL of BUF unless SEAL is negative. */
+        private Buffer(ByteBuffer buf, int length, int width, int seal) {
+            super(length, width);
+            _buf = buf;
+            _base = buf.position();
+            _wide = width == 2;
+            _seal = seal;
+        }
+
+        @Override
+        int get(int k) {
+            if (_wide) {
+                return _buf.getChar(_base + 2 * k);
+            }
+            return _buf.get(_base + k) & BYTE_MASK;
+        }
+
+        @Override
+        void set(int k, int v) {
+            if (_wide) {
+                _buf.putChar(_base + 2 * k, (char) v);
+            } else {
+                _buf.put(_base + k, (byte) v);
+            }
+        }
+
+        @Override
+        boolean sealed() {
+            return _seal >= 0 && _buf.getInt(_seal) != 0;
+        }
+
+        @Override
+        void seal() {
+            if (_seal >= 0) {
+                _buf.putInt(_seal, 1);
+            }
+        }
+
+        /** The buffer. */
+        private final ByteBuffer _buf;
+        /** Index in _buf of entry 0. */
+        private final int _base;
+        /** True iff entries take two bytes. */
+        private final boolean _wide;
+        /** Index in _buf of the seal flag, or -1. */
+        private final int _seal;
+    }
+
+    /** Number of entries. */
+    private final int _length;
+    /** Bytes per entry. */
+    private final int _width;
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -126,4 +127,60 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** The notches of the naval moving rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a new machine with NUMROTORS slots and PAWLS pawls whose
+     *  available rotors are all the naval rotors, built afresh. */
+    static Machine navalMachine(int numRotors, int pawls) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : NAVALA.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name),
+                                               new Alphabet());
+            if (NAVAL_NOTCHES.containsKey(name)) {
+                rotors.add(new MovingRotor(name, perm,
+                                           NAVAL_NOTCHES.get(name)));
+            } else if (name.equals("B") || name.equals("C")) {
+                rotors.add(new Reflector(name, perm));
+            } else {
+                rotors.add(new FixedRotor(name, perm));
+            }
+        }
+        return new Machine(new Alphabet(), numRotors, pawls, rotors);
+    }
+
+    /** Alphabet of smallMachine. */
+    static final Alphabet SMALL = new Alphabet("ABCDEF");
+
+    /** Return a machine over SMALL with a reflector, a fixed rotor and
+     *  three moving rotors, R F L M Q, with rings CAAA and positions
+     *  BAAA. */
+    static Machine smallMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation("(AB) (CD) (EF)",
+                                                      SMALL)));
+        rotors.add(new FixedRotor("F", new Permutation("(AE)", SMALL)));
+        rotors.add(new MovingRotor("L", new Permutation("(ACE) (BF)", SMALL),
+                                   "D"));
+        rotors.add(new MovingRotor("M", new Permutation("(ABCDEF)", SMALL),
+                                   "BF"));
+        rotors.add(new MovingRotor("Q", new Permutation("(AFBD)", SMALL),
+                                   "A"));
+        Machine m = new Machine(SMALL, 5, 3, rotors);
+        m.insertRotors(new String[] {"R", "F", "L", "M", "Q"});
+        m.setRing("CAAA");
+        m.setRotors("BAAA");
+        return m;
+    }
+
 }
@@ -0,0 +1,193 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** The K best candidate settings by the score of their decryptions,
+ *  with early termination.  A candidate is decrypted one character at a
+ *  time, each fed to an IncrementalScorer, and abandoned as soon as the
+ *  scorer's bound on its final score falls to the current threshold:
+ *  the lowest score in the ranking once it holds K candidates.  Most
+ *  bad candidates are thus dropped after a few dozen characters.  The
+ *  threshold only rises, and is kept in an atomic so that worker
+ *  threads read it without locking; the ranking itself is locked only
+ *  to add a candidate that beats it.  All methods are thread-safe.
+ *  @author Shelden Shi
+ *  @param <T> the type of the candidates
+ */
+final class TopK<T> {
+
+    /** A ranked candidate. */
+    static final class Entry<T> {
+        /** CANDIDATE, scoring SCORE. */
+        private Entry(T candidate, double score) {
+            _candidate = candidate;
+            _score = score;
+        }
+
+        /** Return the candidate. */
+        T candidate() {
+            return _candidate;
+        }
+
+        /** Return its score. */
+        double score() {
+            return _score;
+        }
+
+        /** The candidate. */
+        private final T _candidate;
+        /** Its score. */
+        private final double _score;
+    }
+
+    /** A ranking of the best K candidates. */
+    TopK(int k) {
+        if (k <= 0) {
+            throw error("bad ranking size");
+        }
+        _k = k;
+    }
+
+    /** Return the threshold: the score a candidate must beat to enter
+     *  the ranking, negative infinity until it is full. */
+    double threshold() {
+        return Double.longBitsToDouble(_threshold.get());
+    }
+
+    /** Add CANDIDATE, scoring SCORE, if it beats the threshold. Returns
+     *  true iff it was added. */
+    boolean offer(T candidate, double score) {
+        if (!(score > threshold())) {
+            return false;
+        }
+        synchronized (_ranking) {
+            if (_ranking.size() == _k) {
+                if (!(score > _ranking.peek()._score)) {
+                    return false;
+                }
+                _ranking.poll();
+            }
+            _ranking.add(new Entry<>(candidate, score));
+            if (_ranking.size() == _k) {
+                raise(_ranking.peek()._score);
+            }
+        }
+        return true;
+    }
+
+    /** Raise the threshold to SCORE unless it is already higher. */
+    private void raise(double score) {
+        long bits = Double.doubleToLongBits(score);
+        while (true) {
+            long prev = _threshold.get();
+            if (Double.longBitsToDouble(prev) >= score
+                || _threshold.compareAndSet(prev, bits)) {
+                return;
+            }
+        }
+    }
+
+    /** Decrypt CIPHER on M, which is set up as CANDIDATE, feeding each
+     *  character to SCORER, and offer the candidate with its final score
+     *  unless the scorer's bound shows first that it cannot beat the
+     *  threshold.  Returns true iff the candidate was added. */
+    boolean evaluate(T candidate, Machine m, int[] cipher,
+                     IncrementalScorer scorer) {
+        scorer.reset(cipher.length);
+        for (int k = 0; k < cipher.length; k += 1) {
+            if (!(scorer.bound(cipher.length - k) > threshold())) {
+                _abandoned.increment();
+                _decrypted.add(k);
+                return false;
+            }
+            scorer.add(m.convert(cipher[k]));
+        }
+        _completed.increment();
+        _decrypted.add(cipher.length);
+        return offer(candidate, scorer.score());
+    }
+
+    /** Return the K best of CANDIDATES for CIPHER, evaluated in parallel.
+     *  Each worker thread takes a machine from MACHINES and a scorer from
+     *  SCORERS, and sets the machine up for each candidate with
+     *  SETUP.  The machines are closed once the ranking is done. */
+    static <T> TopK<T> rank(Collection<T> candidates, int k, int[] cipher,
+                            Supplier<Machine> machines,
+                            BiConsumer<Machine, T> setUp,
+                            Supplier<IncrementalScorer> scorers) {
+        TopK<T> result = new TopK<>(k);
+        Queue<Machine> taken = new ConcurrentLinkedQueue<>();
+        ThreadLocal<Machine> machine = ThreadLocal.withInitial(() -> {
+            Machine m = machines.get();
+            taken.add(m);
+            return m;
+        });
+        ThreadLocal<IncrementalScorer> scorer =
+            ThreadLocal.withInitial(scorers);
+        try {
+            candidates.parallelStream().forEach(candidate -> {
+                Machine m = machine.get();
+                setUp.accept(m, candidate);
+                result.evaluate(candidate, m, cipher, scorer.get());
+            });
+        } finally {
+            for (Machine m : taken) {
+                m.close();
+            }
+        }
+        return result;
+    }
+
+    /** Return the ranking, best first. */
+    List<Entry<T>> results() {
+        List<Entry<T>> result;
+        synchronized (_ranking) {
+            result = new ArrayList<>(_ranking);
+        }
+        result.sort(Comparator.comparingDouble((Entry<T> e) -> e._score)
+                    .reversed());
+        return result;
+    }
+
+    /** Return the number of candidates decrypted in full. */
+    long completed() {
+        return _completed.sum();
+    }
+
+    /** Return the number of candidates abandoned early. */
+    long abandoned() {
+        return _abandoned.sum();
+    }
+
+    /** Return the number of characters decrypted. */
+    long decrypted() {
+        return _decrypted.sum();
+    }
+
+    /** Size of the ranking. */
+    private final int _k;
+    /** The ranking, lowest score first. */
+    private final PriorityQueue<Entry<T>> _ranking =
+        new PriorityQueue<>(Comparator.comparingDouble(Entry::score));
+    /** Bits of the threshold. */
+    private final AtomicLong _threshold = new AtomicLong(
+        Double.doubleToLongBits(Double.NEGATIVE_INFINITY));
+    /** Candidates decrypted in full. */
+    private final LongAdder _completed = new LongAdder();
+    /** Candidates abandoned. */
+    private final LongAdder _abandoned = new LongAdder();
+    /** Characters decrypted. */
+    private final LongAdder _decrypted = new LongAdder();
+}
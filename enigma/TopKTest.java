@@ -0,0 +1,104 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the TopK class.
+ *  @author Shelden Shi
+ */
+public class TopKTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Ranking size used by these tests. */
+    private static final int K = 5;
+
+    /** Rotor order and plugboard of the candidates. */
+    private static final String ORDER = "* B Beta III IV I ";
+
+    /** Return every start of the moving rotors, as positions for
+     *  ORDER. */
+    private static List<String> candidates() {
+        List<String> result = new ArrayList<>();
+        for (int s = 0; s < 26 * 26 * 26; s += 1) {
+            result.add("A" + UPPER.toChar(s / 676)
+                       + UPPER.toChar(s / 26 % 26) + UPPER.toChar(s % 26));
+        }
+        return result;
+    }
+
+    @Test
+    public void checkOffer() {
+        TopK<String> top = new TopK<>(2);
+        assertEquals(Double.NEGATIVE_INFINITY, top.threshold(), 0);
+        assertTrue(top.offer("a", 1));
+        assertTrue(top.offer("b", 3));
+        assertEquals(1, top.threshold(), 0);
+        assertFalse(top.offer("c", 1));
+        assertTrue(top.offer("d", 2));
+        assertEquals(2, top.threshold(), 0);
+        List<TopK.Entry<String>> results = top.results();
+        assertEquals("b", results.get(0).candidate());
+        assertEquals("d", results.get(1).candidate());
+    }
+
+    @Test
+    public void checkMatchesExhaustive() {
+        String text = "BEFOREITBEATTHEWATERBEATTHECLEARANDSUNNYWATER"
+            + "ROSETHEFIRSWITHCONES";
+        int[] plain = CribFilter.toIndices(text, UPPER);
+        Machine m = navalMachine(5, 3);
+        m.setUp(ORDER + "AKRX");
+        int[] cipher = new int[plain.length];
+        for (int k = 0; k < plain.length; k += 1) {
+            cipher[k] = m.convert(plain[k]);
+        }
+        List<String> candidates = candidates();
+        for (int kind = 0; kind < IncrementalScorerTest.scorers().length;
+             kind += 1) {
+            int which = kind;
+            IncrementalScorer full = IncrementalScorerTest.scorers()[kind];
+            double[] scores = new double[candidates.size()];
+            for (int c = 0; c < scores.length; c += 1) {
+                m.setUp(ORDER + candidates.get(c));
+                full.reset(cipher.length);
+                for (int x : cipher) {
+                    full.add(m.convert(x));
+                }
+                scores[c] = full.score();
+            }
+            Arrays.sort(scores);
+
+            TopK<String> top = TopK.rank(
+                candidates, K, cipher, () -> navalMachine(5, 3),
+                (machine, posns) -> machine.setUp(ORDER + posns),
+                () -> IncrementalScorerTest.scorers()[which]);
+            List<TopK.Entry<String>> results = top.results();
+            assertEquals(K, results.size());
+            for (int r = 0; r < K; r += 1) {
+                assertEquals(msg("rank", "scorer %d, rank %d", kind, r),
+                             scores[scores.length - 1 - r],
+                             results.get(r).score(), 1e-9);
+            }
+            assertEquals(candidates.size(),
+                         top.completed() + top.abandoned());
+            assertTrue(top.decrypted()
+                       < (long) candidates.size() * cipher.length);
+            if (kind == 2) {
+                assertEquals("AKRX", results.get(0).candidate());
+                assertTrue(top.abandoned() > candidates.size() / 2);
+            }
+        }
+    }
+
+}
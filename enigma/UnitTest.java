@@ -11,7 +11,30 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      CycleCatalogTest.class,
+                                      PositionSweepTest.class,
+                                      CribFilterTest.class,
+                                      AllocationTest.class,
+                                      EngineTest.class,
+                                      ConversionProcessorTest.class,
+                                      PipelineTest.class,
+                                      KeystreamCacheTest.class,
+                                      TableArenaTest.class,
+                                      SteppingPeriodTest.class,
+                                      ByteStreamTest.class,
+                                      CompositeCacheTest.class,
+                                      RingSearchTest.class,
+                                      KeyspaceTest.class,
+                                      DictionaryFilterTest.class,
+                                      IncrementalScorerTest.class,
+                                      TopKTest.class,
+                                      PlugboardTest.class,
+                                      SettingStatusTest.class,
+                                      DifferentialFuzzerTest.class,
+                                      WorkloadTest.class,
+                                      MetricsTest.class,
+                                      EventsTest.class));
     }
 
 }
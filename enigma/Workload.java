@@ -0,0 +1,342 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Synthetic workloads for performance regression testing: large
+ *  configurations and long inputs, generated deterministically from a
+ *  seed.  From the command line,
+ *
+ *      java enigma.Workload DIR [SEED [SCALE]]
+ *
+ *  writes NAME.conf and NAME.in into the directory DIR for each of the
+ *  PROFILES, drawn from SEED (default 1), with SCALE (default 1) times
+ *  the profile's number of setting lines and characters.  The files are
+ *  written in the default charset, which must be able to hold the
+ *  alphabets (run with -Dfile.encoding=UTF-8 where it cannot), and are
+ *  read back by Main in the same one.  Regression times Main on them.
+ *  @author Shelden Shi
+ */
+final class Workload {
+
+    /** The shape of a workload. */
+    static final class Profile {
+        /** The workload NAME over an alphabet of SIZE characters, ASCII
+         *  iff ASCII, with a catalog of ROTORS rotors, SLOTS slots and
+         *  PAWLS pawls, and an input of SETTINGS setting lines and
+         *  CHARACTERS message characters. */
+        Profile(String name, int size, boolean ascii, int rotors,
+                int slots, int pawls, int settings, long characters) {
+            _name = name;
+            _size = size;
+            _ascii = ascii;
+            _rotors = rotors;
+            _slots = slots;
+            _pawls = pawls;
+            _settings = settings;
+            _characters = characters;
+        }
+
+        /** Return my name. */
+        String name() {
+            return _name;
+        }
+
+        /** Name. */
+        private final String _name;
+        /** Alphabet size. */
+        private final int _size;
+        /** True iff the alphabet is ASCII. */
+        private final boolean _ascii;
+        /** Number of rotors in the catalog. */
+        private final int _rotors;
+        /** Number of slots. */
+        private final int _slots;
+        /** Number of pawls. */
+        private final int _pawls;
+        /** Number of setting lines. */
+        private final int _settings;
+        /** Number of message characters. */
+        private final long _characters;
+    }
+
+    /** The workloads written: the naval alphabet with a large catalog,
+     *  a wide ASCII machine, and one over an alphabet too large for
+     *  ByteEngine. */
+    static final List<Profile> PROFILES = Collections.unmodifiableList(
+        List.of(new Profile("naval", 26, true, 60, 5, 3, 2000, 4_000_000),
+                new Profile("wide", 90, true, 300, 9, 5, 5000, 4_000_000),
+                new Profile("large", 700, false, 120, 6, 4, 1000,
+                            2_000_000)));
+
+    /** Characters from which ASCII alphabets are drawn: the printable
+     *  ones save those special to configuration files and setting
+     *  lines. */
+    private static final String ASCII = ascii();
+
+    /** Return ASCII. */
+    private static String ascii() {
+        StringBuilder result = new StringBuilder();
+        for (char ch = '!'; ch <= '~'; ch += 1) {
+            if ("()*|".indexOf(ch) < 0) {
+                result.append(ch);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Characters from which other alphabets are drawn: Latin letters
+     *  beyond ASCII and IPA, then Cyrillic. */
+    private static final String WIDE = wide();
+
+    /** Return WIDE. */
+    private static String wide() {
+        StringBuilder result = new StringBuilder();
+        for (char ch = '\u0100'; ch <= '\u02ff'; ch += 1) {
+            result.append(ch);
+        }
+        for (char ch = '\u0400'; ch <= '\u04ff'; ch += 1) {
+            result.append(ch);
+        }
+        return result.toString();
+    }
+
+    /** Characters per message line, not counting spaces. */
+    private static final int LINE = 50;
+
+    /** Characters per group within a message line. */
+    private static final int GROUP = 5;
+
+    /** Most plugboard pairs in a setting line. */
+    private static final int MAX_PAIRS = 10;
+
+    /** A generator of workloads drawn from SEED, with SCALE times the
+     *  setting lines and characters of each profile. */
+    Workload(long seed, double scale) {
+        if (!(scale > 0)) {
+            throw error("bad workload scale");
+        }
+        _seed = seed;
+        _scale = scale;
+    }
+
+    /** Write the workload PROFILE into DIR as NAME.conf and NAME.in,
+     *  NAME being its name.  Returns the number of message characters
+     *  written. */
+    long write(Profile profile, File dir) throws IOException {
+        Random random = new Random(_seed * 31 + profile._name.hashCode());
+        String alphabet = alphabet(profile, random);
+        if (!Charset.defaultCharset().newEncoder().canEncode(alphabet)) {
+            throw error("the default charset, %s, cannot hold the "
+                        + "alphabet of %s", Charset.defaultCharset(),
+                        profile._name);
+        }
+        Alphabet alpha = new Alphabet(alphabet);
+        List<String> reflectors = new ArrayList<>();
+        List<String> fixeds = new ArrayList<>();
+        List<String> movings = new ArrayList<>();
+        int fixed = profile._slots - 1 - profile._pawls;
+        try (Writer out = writer(new File(dir, profile._name + ".conf"))) {
+            out.write(alphabet + "\n");
+            out.write(String.format(" %d %d\n", profile._slots,
+                                    profile._pawls));
+            for (int k = 0; k < profile._rotors; k += 1) {
+                String name = "W" + k;
+                char type;
+                String notches = "";
+                if (k == 0 || random.nextInt(20) == 0) {
+                    type = 'R';
+                    reflectors.add(name);
+                } else if (fixeds.size() < fixed
+                           || random.nextInt(4) == 0) {
+                    type = 'N';
+                    fixeds.add(name);
+                } else {
+                    type = 'M';
+                    movings.add(name);
+                    notches = chars(1 + random.nextInt(2), alphabet,
+                                    random);
+                }
+                Permutation perm = Permutation.seeded(random.nextLong(),
+                                                      alpha, type == 'R');
+                out.write(String.format(" %s %c%s %s\n", name, type,
+                                        notches, cycles(perm, alphabet)));
+            }
+        }
+        if (movings.size() < profile._pawls) {
+            throw error("too few rotors in profile %s", profile._name);
+        }
+        int settings = Math.max(1, (int) (profile._settings * _scale));
+        long characters = Math.max(settings,
+                                   (long) (profile._characters * _scale));
+        long written = 0;
+        try (Writer out = writer(new File(dir, profile._name + ".in"))) {
+            for (int s = 0; s < settings; s += 1) {
+                out.write(setting(profile, alphabet, reflectors, fixeds,
+                                  movings, random));
+                out.write('\n');
+                long end = characters * (s + 1) / settings;
+                while (written < end) {
+                    int n = (int) Math.min(LINE, end - written);
+                    out.write(message(n, alphabet, random));
+                    out.write('\n');
+                    written += n;
+                }
+            }
+        }
+        return written;
+    }
+
+    /** Return a writer of FILE in the default charset. */
+    private static Writer writer(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(file), Charset.defaultCharset()));
+    }
+
+    /** Return the alphabet of PROFILE, drawn with RANDOM and not all
+     *  digits. */
+    private static String alphabet(Profile profile, Random random) {
+        String pool = profile._ascii ? ASCII : WIDE;
+        if (profile._size > pool.length()) {
+            throw error("alphabet of profile %s too large", profile._name);
+        }
+        List<Character> chars = new ArrayList<>();
+        for (int k = 0; k < pool.length(); k += 1) {
+            chars.add(pool.charAt(k));
+        }
+        while (true) {
+            Collections.shuffle(chars, random);
+            StringBuilder result = new StringBuilder();
+            for (int k = 0; k < profile._size; k += 1) {
+                result.append(chars.get(k));
+            }
+            if (!result.toString().matches("\\d+")) {
+                return result.toString();
+            }
+        }
+    }
+
+    /** Return PERM in the cycle notation of a configuration file, over
+     *  ALPHABET. */
+    private static String cycles(Permutation perm, String alphabet) {
+        StringBuilder result = new StringBuilder();
+        for (int[] cycle : perm.cycles()) {
+            result.append('(');
+            for (int c : cycle) {
+                result.append(alphabet.charAt(c));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return a setting line for PROFILE over ALPHABET, choosing the
+     *  rotors among REFLECTORS, FIXEDS and MOVINGS with RANDOM. */
+    private static String setting(Profile profile, String alphabet,
+                                  List<String> reflectors,
+                                  List<String> fixeds, List<String> movings,
+                                  Random random) {
+        StringBuilder result = new StringBuilder("*");
+        result.append(' ').append(
+            reflectors.get(random.nextInt(reflectors.size())));
+        Collections.shuffle(fixeds, random);
+        Collections.shuffle(movings, random);
+        int fixed = profile._slots - 1 - profile._pawls;
+        for (int k = 0; k < fixed; k += 1) {
+            result.append(' ').append(fixeds.get(k));
+        }
+        for (int k = 0; k < profile._pawls; k += 1) {
+            result.append(' ').append(movings.get(k));
+        }
+        result.append(' ').append(chars(profile._slots - 1, alphabet,
+                                        random));
+        if (random.nextBoolean()) {
+            result.append(' ').append(chars(profile._slots - 1, alphabet,
+                                            random));
+        }
+        List<Character> chars = new ArrayList<>();
+        for (int k = 0; k < alphabet.length(); k += 1) {
+            chars.add(alphabet.charAt(k));
+        }
+        Collections.shuffle(chars, random);
+        int pairs = random.nextInt(Math.min(MAX_PAIRS, chars.size() / 2)
+                                   + 1);
+        for (int k = 0; k < pairs; k += 1) {
+            result.append(" (").append(chars.get(2 * k))
+                .append(chars.get(2 * k + 1)).append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return a message line of N characters of ALPHABET drawn with
+     *  RANDOM, in groups of GROUP. */
+    private static String message(int n, String alphabet, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < n; k += 1) {
+            if (k > 0 && k % GROUP == 0) {
+                result.append(' ');
+            }
+            result.append(alphabet.charAt(random.nextInt(
+                alphabet.length())));
+        }
+        return result.toString();
+    }
+
+    /** Return a string of N characters of ALPHABET drawn with
+     *  RANDOM. */
+    private static String chars(int n, String alphabet, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < n; k += 1) {
+            result.append(alphabet.charAt(random.nextInt(
+                alphabet.length())));
+        }
+        return result.toString();
+    }
+
+    /** Write the workloads described by ARGS (see the class
+     *  comment). */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 3) {
+                throw error("Usage: Workload DIR [SEED [SCALE]]");
+            }
+            long seed;
+            double scale;
+            try {
+                seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+                scale = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+            } catch (NumberFormatException excp) {
+                throw error("bad number: %s", excp.getMessage());
+            }
+            File dir = new File(args[0]);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw error("could not create %s", dir);
+            }
+            Workload workload = new Workload(seed, scale);
+            for (Profile profile : PROFILES) {
+                long chars = workload.write(profile, dir);
+                System.out.printf("%s: %d characters%n", profile._name,
+                                  chars);
+            }
+        } catch (IOException | EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Seed of the workloads. */
+    private final long _seed;
+    /** Factor applied to the setting lines and characters. */
+    private final double _scale;
+}
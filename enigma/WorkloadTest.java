@@ -0,0 +1,100 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the Workload and Regression
+ *  classes.
+ *  @author Shelden Shi
+ */
+public class WorkloadTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Scale of the workloads generated. */
+    private static final double SCALE = 0.002;
+
+    /** Return a new empty temporary directory. */
+    private static File tempDir() throws IOException {
+        File dir = Files.createTempDirectory("workload").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /** Delete DIR and its files. */
+    private static void delete(File dir) {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void checkWorkloads() throws IOException {
+        File a = tempDir(), b = tempDir();
+        try {
+            for (Workload.Profile profile
+                     : Workload.PROFILES.subList(0, 2)) {
+                String name = profile.name();
+                long chars = new Workload(50, SCALE).write(profile, a);
+                new Workload(50, SCALE).write(profile, b);
+                for (String ext : new String[] {".conf", ".in"}) {
+                    assertArrayEquals(
+                        Files.readAllBytes(new File(a, name + ext).toPath()),
+                        Files.readAllBytes(new File(b, name + ext).toPath()));
+                }
+                File in = new File(a, name + ".in");
+                assertEquals(chars, Regression.characters(in));
+                Machine m = new Main(new Scanner(
+                    new File(a, name + ".conf"))).readConfig();
+                List<String> lines =
+                    Files.readAllLines(in.toPath(), Charset.defaultCharset());
+                int settings = 0;
+                for (String line : lines) {
+                    if (line.startsWith("*")) {
+                        m.setUp(line);
+                        settings += 1;
+                    } else {
+                        assertEquals(line.replaceAll(" ", "").length(),
+                                     m.convert(line).replaceAll(" ", "")
+                                     .length());
+                    }
+                }
+                assertTrue(settings > 1);
+                assertTrue(lines.get(0).startsWith("*"));
+            }
+        } finally {
+            delete(a);
+            delete(b);
+        }
+    }
+
+    @Test
+    public void checkRegressions() {
+        Regression.Result base = new Regression.Result(1e6, 10, 100L << 20);
+        Properties props = new Properties();
+        base.store(props, "w");
+        Regression.Result loaded = Regression.Result.load(props, "w");
+        assertTrue(loaded.regressions(base, 0.2).isEmpty());
+        assertNull(Regression.Result.load(props, "x"));
+        assertTrue(new Regression.Result(0.9e6, 11.5, 110L << 20)
+                   .regressions(base, 0.2).isEmpty());
+        assertEquals(1, new Regression.Result(0.7e6, 10, 100L << 20)
+                     .regressions(base, 0.2).size());
+        assertEquals(2, new Regression.Result(1e6, 13, 200L << 20)
+                     .regressions(base, 0.2).size());
+    }
+
+}
@@ -0,0 +1,127 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** The BatchEngine kernel that uses the jdk.incubator.vector API.  A full
+ *  vector of lanes is stepped and converted at once: the stepping rules
+ *  of Engine.advance become mask arithmetic, so that lanes whose rotors
+ *  move differently never branch apart, and each rotor of the conversion
+ *  is one gather at the lane's table offset plus its current character,
+ *  followed by one subtraction of its shift.  The module must be added
+ *  with --add-modules jdk.incubator.vector both to compile this class and
+ *  to use it, so it lives under a source root of its own and is compiled
+ *  in a step of its own, after the rest of the package.  BatchEngine
+ *  loads it by name, and falls back to its scalar kernel where it is
+ *  missing or cannot be linked.
+ *  @author Shelden Shi
+ */
+final class VectorKernel implements BatchEngine.Kernel {
+
+    /** The preferred species of the platform. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public int width() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public void convert(BatchEngine b, int[] curr, int active) {
+        int width = SPECIES.length();
+        int[] index = b._scratch;
+        for (int lane = 0; lane < active; lane += width) {
+            advance(b, lane, SPECIES.indexInRange(lane, active), index);
+            IntVector plug =
+                IntVector.fromArray(SPECIES, b._plugboardBase, lane);
+            IntVector c = gather(b._plugboards,
+                                 plug.add(IntVector.fromArray(SPECIES,
+                                                              curr, lane)),
+                                 index);
+            for (int slot = b._numRotors - 1; slot >= 0; slot -= 1) {
+                c = through(b._forward, b, slot, lane, c, index);
+            }
+            for (int slot = 1; slot < b._numRotors; slot += 1) {
+                c = through(b._backward, b, slot, lane, c, index);
+            }
+            gather(b._plugboards, plug.add(c), index).intoArray(curr, lane);
+        }
+    }
+
+    /** Advance the lanes of B starting at LANE that are set in ACTIVE by
+     *  one keypress, following the rules of Engine.advance.  INDEX is
+     *  scratch of the species length. */
+    private static void advance(BatchEngine b, int lane,
+                                VectorMask<Integer> active, int[] index) {
+        VectorMask<Integer> none = SPECIES.maskAll(false);
+        VectorMask<Integer> rotate = active;
+        VectorMask<Integer> preAdvanced = active;
+        for (int indexAdvance = 1;
+             !b._reflecting[b._numRotors - indexAdvance];
+             indexAdvance += 1) {
+            int slot = b._numRotors - indexAdvance;
+            if (!b._rotates[slot]) {
+                continue;
+            }
+            VectorMask<Integer> notch =
+                IntVector.fromArray(SPECIES, b._notch[slot], lane)
+                .compare(VectorOperators.NE, 0);
+            VectorMask<Integer> first = rotate.and(notch).and(preAdvanced);
+            VectorMask<Integer> carry = b._rotates[slot - 1]
+                ? preAdvanced.and(notch).andNot(first) : none;
+            VectorMask<Integer> rest =
+                rotate.andNot(first).andNot(carry);
+            if (indexAdvance != 1) {
+                preAdvanced = preAdvanced.andNot(rest);
+            }
+            rotate = first.or(carry);
+            VectorMask<Integer> step = rotate.or(rest);
+            if (step.anyTrue()) {
+                step(b, slot, lane, step, index);
+            }
+        }
+    }
+
+    /** Advance the rotor in SLOT of the lanes of B starting at LANE that
+     *  are set in STEP by one.  INDEX is scratch of the species length. */
+    private static void step(BatchEngine b, int slot, int lane,
+                             VectorMask<Integer> step, int[] index) {
+        int size = b._size;
+        IntVector base = IntVector.fromArray(SPECIES, b._bases[slot], lane);
+        IntVector posn =
+            IntVector.fromArray(SPECIES, b._positions[slot], lane)
+            .add(1, step);
+        posn = posn.blend(0, posn.compare(VectorOperators.EQ, size));
+        IntVector shift = IntVector.fromArray(SPECIES, b._shifts[slot], lane)
+            .add(1, step);
+        shift = shift.blend(0, shift.compare(VectorOperators.EQ, size));
+        posn.intoArray(b._positions[slot], lane);
+        shift.intoArray(b._shifts[slot], lane);
+        base.add(size).add(shift).intoArray(b._offsets[slot], lane);
+        gather(b._notchTable, base.add(posn), index)
+            .intoArray(b._notch[slot], lane);
+    }
+
+    /** Return C, the current characters of the lanes of B starting at
+     *  LANE, each between -size and size, after passing through the
+     *  rotor in SLOT using the tables in TABLE.  INDEX is scratch of the
+     *  species length. */
+    private static IntVector through(int[] table, BatchEngine b, int slot,
+                                     int lane, IntVector c, int[] index) {
+        IntVector offset =
+            IntVector.fromArray(SPECIES, b._offsets[slot], lane);
+        return gather(table, offset.add(c), index)
+            .sub(IntVector.fromArray(SPECIES, b._shifts[slot], lane));
+    }
+
+    /** Return the entries of TABLE at the indices in IDX, using INDEX as
+     *  scratch. */
+    private static IntVector gather(int[] table, IntVector idx,
+                                    int[] index) {
+        idx.intoArray(index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, index, 0);
+    }
+}